@@ -0,0 +1,32 @@
+package ru.skypro.homework.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.security.SecurityProperties;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import ru.skypro.homework.filter.ImageUploadBulkheadFilter;
+import ru.skypro.homework.service.impl.ImageUploadBulkhead;
+
+import java.time.Duration;
+
+/**
+ * Регистрация {@link ImageUploadBulkheadFilter}.
+ * <p>
+ * Фильтр стоит сразу после Spring Security: запросы без аутентификации получают 401, не занимая места
+ * загрузки, а тело принятого запроса читается только после получения места.
+ * </p>
+ */
+@Configuration
+public class ImageUploadBulkheadConfig {
+
+    @Bean
+    public FilterRegistrationBean<ImageUploadBulkheadFilter> imageUploadBulkheadFilter(
+            ImageUploadBulkhead bulkhead,
+            @Value("${images.upload.bulkhead.retry-after:5s}") Duration retryAfter) {
+        FilterRegistrationBean<ImageUploadBulkheadFilter> registration =
+                new FilterRegistrationBean<>(new ImageUploadBulkheadFilter(bulkhead, retryAfter));
+        registration.setOrder(SecurityProperties.DEFAULT_FILTER_ORDER + 1);
+        return registration;
+    }
+}
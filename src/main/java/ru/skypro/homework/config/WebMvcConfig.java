@@ -0,0 +1,130 @@
+package ru.skypro.homework.config;
+
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.support.ResourceRegion;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.converter.ResourceHttpMessageConverter;
+import org.springframework.http.converter.ResourceRegionHttpMessageConverter;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import javax.servlet.http.HttpServletRequest;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+/**
+ * Настройка Spring MVC: отдача файловых ресурсов (изображений) без копирования через heap.
+ * <p>
+ * Стандартные конвертеры {@link Resource} и {@link ResourceRegion} копируют файл через буфер в памяти.
+ * Здесь они заменены на варианты, которые для файлов на диске:
+ * <ul>
+ *   <li>передают файл целиком через Tomcat sendfile, если коннектор его поддерживает;</li>
+ *   <li>иначе копируют через {@link FileChannel#transferTo(long, long, WritableByteChannel)}.</li>
+ * </ul>
+ * Заголовки Range / 206 / 416 обрабатываются Spring MVC для любых ответов с телом {@link Resource}.
+ * </p>
+ */
+@Configuration
+public class WebMvcConfig implements WebMvcConfigurer {
+
+    private static final String SENDFILE_SUPPORTED = "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+
+    @Override
+    public void extendMessageConverters(List<HttpMessageConverter<?>> converters) {
+        for (int i = 0; i < converters.size(); i++) {
+            HttpMessageConverter<?> converter = converters.get(i);
+            if (converter.getClass() == ResourceHttpMessageConverter.class) {
+                converters.set(i, new FileChannelResourceHttpMessageConverter());
+            } else if (converter.getClass() == ResourceRegionHttpMessageConverter.class) {
+                converters.set(i, new FileChannelResourceRegionHttpMessageConverter());
+            }
+        }
+    }
+
+    /**
+     * Передаёт диапазон файла в ответ: через sendfile (если это возможно и разрешено) или transferTo.
+     * @return true, если файл отдан (в т.ч. поставлен в очередь sendfile); false, если ресурс не файл
+     */
+    private static boolean transfer(Resource resource, long position, long count, HttpOutputMessage outputMessage,
+                                    boolean allowSendfile) throws IOException {
+        if (!resource.isFile()) {
+            return false;
+        }
+        Path path = resource.getFile().toPath();
+        HttpServletRequest request = currentRequest();
+        if (allowSendfile && request != null && Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORTED))) {
+            request.setAttribute(SENDFILE_FILENAME, path.toAbsolutePath().toString());
+            request.setAttribute(SENDFILE_START, position);
+            request.setAttribute(SENDFILE_END, position + count);
+            return true;
+        }
+        OutputStream body = outputMessage.getBody();
+        try (FileChannel file = FileChannel.open(path, StandardOpenOption.READ)) {
+            WritableByteChannel target = Channels.newChannel(body);
+            long sent = 0;
+            while (sent < count) {
+                long n = file.transferTo(position + sent, count - sent, target);
+                if (n <= 0) {
+                    break;
+                }
+                sent += n;
+            }
+        }
+        return true;
+    }
+
+    private static HttpServletRequest currentRequest() {
+        RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+        return attributes instanceof ServletRequestAttributes
+                ? ((ServletRequestAttributes) attributes).getRequest()
+                : null;
+    }
+
+    /**
+     * Конвертер полного ресурса: файл отдаётся через sendfile / transferTo.
+     */
+    static class FileChannelResourceHttpMessageConverter extends ResourceHttpMessageConverter {
+        @Override
+        protected void writeContent(Resource resource, HttpOutputMessage outputMessage) throws IOException {
+            if (!transfer(resource, 0, resource.contentLength(), outputMessage, true)) {
+                super.writeContent(resource, outputMessage);
+            }
+        }
+    }
+
+    /**
+     * Конвертер диапазона ресурса (ответ 206 с одним диапазоном): участок файла отдаётся через sendfile / transferTo.
+     * Ответы с несколькими диапазонами (multipart/byteranges) пишутся стандартной реализацией.
+     */
+    static class FileChannelResourceRegionHttpMessageConverter extends ResourceRegionHttpMessageConverter {
+        @Override
+        protected void writeResourceRegion(ResourceRegion region, HttpOutputMessage outputMessage) throws IOException {
+            Resource resource = region.getResource();
+            if (!resource.isFile()) {
+                super.writeResourceRegion(region, outputMessage);
+                return;
+            }
+            long start = region.getPosition();
+            long count = region.getCount();
+            long length = resource.contentLength();
+            HttpHeaders headers = outputMessage.getHeaders();
+            headers.add(HttpHeaders.CONTENT_RANGE, "bytes " + start + '-' + (start + count - 1) + '/' + length);
+            headers.setContentLength(count);
+            transfer(resource, start, count, outputMessage, true);
+        }
+    }
+}
@@ -22,6 +22,8 @@ import static org.springframework.security.config.Customizer.withDefaults;
  * <ul>
  *   <li>Определяет (whitelist) эндпоинты.</li>
  *   <li>Разрешает анонимный доступ к GET /ads (список, карточка) для публичного просмотра.</li>
+ *   <li>Выгрузка каталога GET /ads/export держит соединение с БД всё время передачи и доступна только
+ *   аутентифицированным пользователям.</li>
  *   <li>Требует роль USER или ADMIN для эндпоинтов /ads/** и /users/**.</li>
  *   <li>Включает HTTP Basic (для простоты тестирования) + CORS (для фронта на http://localhost:3000).</li>
  *   <li>Явно разрешает preflight OPTIONS для всех путей.</li>
@@ -61,6 +63,7 @@ public class WebSecurityConfig {
                 .authorizeHttpRequests(auth -> auth
                         .mvcMatchers(HttpMethod.OPTIONS, "/**").permitAll() // разрешаем preflight для любых путей
                         .mvcMatchers(AUTH_WHITELIST).permitAll()
+                        .mvcMatchers(HttpMethod.GET, "/ads/export").hasAnyAuthority("USER", "ADMIN")
                         .mvcMatchers(HttpMethod.GET, "/ads", "/ads/", "/ads/*").permitAll()
                         .mvcMatchers("/ads/**").hasAnyAuthority("USER", "ADMIN")
                         .mvcMatchers("/users/**").hasAnyAuthority("USER", "ADMIN")
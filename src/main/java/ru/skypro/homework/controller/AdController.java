@@ -1,20 +1,32 @@
 package ru.skypro.homework.controller;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.security.SecurityRequirement;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import ru.skypro.homework.dto.*;
 import ru.skypro.homework.service.AdService;
+import ru.skypro.homework.service.ImageNotFoundException;
+import ru.skypro.homework.service.ImageTooLargeException;
+import ru.skypro.homework.service.ResourceVersion;
+import ru.skypro.homework.service.SerializedPage;
+import ru.skypro.homework.service.impl.AdExportLimiter;
 
 import javax.validation.Valid;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 
 /**
  * REST-контроллер для управления объявлениями (ads).
@@ -24,9 +36,16 @@ import javax.validation.Valid;
  * </p>
  * Особенности:
  * <ul>
- *   <li>Публичный доступ: GET /ads (список), GET /ads/{id} (карточка).</li>
- *   <li>Требует аутентификацию: создание/редактирование/удаление объявлений и все операции с комментариями.</li>
- *   <li>Изображения объявлений возвращаются как URL (поле image в DTO) вида /images/{id}.</li>
+ *   <li>Публичный доступ: GET /ads (постраничный список с курсором, фильтром и сортировкой по цене), GET /ads/{id} (карточка),
+ *   GET /ads/search (полнотекстовый поиск), GET /ads/suggest (мгновенный поиск).</li>
+ *   <li>Требует аутентификацию: создание/редактирование/удаление объявлений, все операции с комментариями
+ *   и GET /ads/export (потоковая выгрузка каталога, число одновременных выгрузок ограничено).</li>
+ *   <li>Изображения объявлений возвращаются как URL (поле image в DTO) вида /images/{id}. Изображение можно передать
+ *   в том же multipart-запросе или сослаться на загруженное заранее через /uploads (параметр imageId).</li>
+ *   <li>GET /ads и GET /ads/{id} отдают ETag и Last-Modified; при совпадении If-None-Match / If-Modified-Since
+ *   отвечают 304 без обращения к БД и сериализации тела.</li>
+ *   <li>Первые страницы публичной ленты отдаются из готового снимка байтов (gzip или без сжатия
+ *   в зависимости от Accept-Encoding).</li>
  * </ul>
  */
 @Slf4j
@@ -37,33 +56,192 @@ import javax.validation.Valid;
 public class AdController {
 
     private final AdService adService;
+    private final ObjectMapper objectMapper;
+    private final AdExportLimiter exportLimiter;
 
     /**
-     * Получить список всех объявлений.
-     * @return обёртка {@link Ads} (count + results)
+     * Получить страницу объявлений.
+     * <p>
+     * Если запрос совпадает со снимком публичной ленты, тело отдаётся готовыми байтами;
+     * при поддержке клиентом gzip — сжатым, с ETag, отличающимся от несжатого представления.
+     * </p>
+     * @param cursor курсор из поля next предыдущего ответа (для первой страницы не передаётся)
+     * @param size размер страницы (ограничен сверху настройкой ads.page.max-size)
+     * @param minPrice минимальная цена
+     * @param maxPrice максимальная цена
+     * @param sort порядок: newest (по умолчанию), price_asc, price_desc
+     * @param request текущий запрос (условные заголовки, Accept-Encoding)
+     * @return обёртка {@link Ads} (count + results + next), 400 при повреждённом курсоре или неизвестном порядке
+     * сортировки или null, если отправлен ответ 304
      */
     @GetMapping
-    public Ads getAllAds() {
-        return adService.getAllAds();
+    public ResponseEntity<?> getAllAds(@RequestParam(required = false) String cursor,
+                                       @RequestParam(required = false) Integer size,
+                                       @RequestParam(required = false) Integer minPrice,
+                                       @RequestParam(required = false) Integer maxPrice,
+                                       @RequestParam(required = false) String sort,
+                                       WebRequest request) {
+        ResourceVersion version = adService.getCatalogVersion();
+        SerializedPage snapshot;
+        try {
+            snapshot = adService.getListingSnapshot(cursor, size, minPrice, maxPrice, sort);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+        boolean gzip = snapshot != null && acceptsGzip(request.getHeader(HttpHeaders.ACCEPT_ENCODING));
+        String etag = gzip ? gzipEtag(version.getEtag()) : version.getEtag();
+        if (request.checkNotModified(etag, version.getLastModified())) {
+            return null;
+        }
+        if (snapshot == null) {
+            try {
+                return ResponseEntity.ok(adService.getAllAds(cursor, size, minPrice, maxPrice, sort));
+            } catch (IllegalArgumentException e) {
+                return ResponseEntity.badRequest().build();
+            }
+        }
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_JSON)
+                .header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        if (gzip) {
+            return response.header(HttpHeaders.CONTENT_ENCODING, "gzip").body(snapshot.getGzip());
+        }
+        return response.body(snapshot.getIdentity());
+    }
+
+    /**
+     * Полнотекстовый поиск объявлений по заголовку и описанию.
+     * @param query поисковая строка (поддерживаются кавычки, OR и исключение слов через минус)
+     * @param cursor курсор из поля next предыдущего ответа
+     * @param size размер страницы
+     * @return обёртка {@link Ads} с результатами по убыванию релевантности или 400 при повреждённом курсоре
+     */
+    @Operation(summary = "Поиск объявлений",
+            responses = {
+                    @ApiResponse(responseCode = "200", description = "Результаты поиска", content = @io.swagger.v3.oas.annotations.media.Content(schema = @io.swagger.v3.oas.annotations.media.Schema(implementation = Ads.class))),
+                    @ApiResponse(responseCode = "400", description = "Некорректный курсор")
+            })
+    @GetMapping("/search")
+    public ResponseEntity<Ads> searchAds(@RequestParam("q") String query,
+                                         @RequestParam(required = false) String cursor,
+                                         @RequestParam(required = false) Integer size) {
+        try {
+            return ResponseEntity.ok(adService.searchAds(query, cursor, size));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
+    /**
+     * Мгновенный поиск объявлений по мере ввода (in-memory индекс, без запросов к БД).
+     * @param query поисковая строка (слова через пробел — все обязательны, OR — альтернатива)
+     * @param minPrice минимальная цена
+     * @param maxPrice максимальная цена
+     * @param cursor курсор из поля next предыдущего ответа
+     * @param size размер страницы
+     * @return обёртка {@link Ads} с результатами от новых к старым или 400 при повреждённом курсоре
+     */
+    @Operation(summary = "Мгновенный поиск объявлений",
+            responses = {
+                    @ApiResponse(responseCode = "200", description = "Результаты поиска", content = @io.swagger.v3.oas.annotations.media.Content(schema = @io.swagger.v3.oas.annotations.media.Schema(implementation = Ads.class))),
+                    @ApiResponse(responseCode = "400", description = "Некорректный курсор")
+            })
+    @GetMapping("/suggest")
+    public ResponseEntity<Ads> suggestAds(@RequestParam("q") String query,
+                                          @RequestParam(required = false) Integer minPrice,
+                                          @RequestParam(required = false) Integer maxPrice,
+                                          @RequestParam(required = false) String cursor,
+                                          @RequestParam(required = false) Integer size) {
+        try {
+            return ResponseEntity.ok(adService.suggestAds(query, minPrice, maxPrice, cursor, size));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
+    /**
+     * Потоковая выгрузка всего каталога в формате NDJSON (одна карточка {@link Ad} на строку).
+     * Ответ пишется по мере чтения строк из БД, тело целиком в памяти не собирается.
+     * Выгрузка держит соединение с БД до конца передачи, поэтому сверх лимита ads.export.max-concurrent
+     * запрос сразу отклоняется с 503 и заголовком Retry-After.
+     * @return поток карточек объявлений или 503, если выполняется слишком много выгрузок
+     */
+    @Operation(summary = "Выгрузка всех объявлений (NDJSON)",
+            security = {@SecurityRequirement(name = "BearerAuth")},
+            responses = {
+                    @ApiResponse(responseCode = "200", description = "Поток карточек объявлений"),
+                    @ApiResponse(responseCode = "401", description = "Unauthorized"),
+                    @ApiResponse(responseCode = "503", description = "Слишком много одновременных выгрузок")
+            })
+    @GetMapping(value = "/export", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> exportAds() {
+        if (!exportLimiter.tryEnter()) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .header(HttpHeaders.RETRY_AFTER, exportLimiter.retryAfterSeconds())
+                    .build();
+        }
+        ObjectWriter writer = objectMapper.writerFor(Ad.class);
+        StreamingResponseBody body = out -> {
+            try {
+                adService.exportAds(ad -> {
+                    try {
+                        out.write(writer.writeValueAsBytes(ad));
+                        out.write('\n');
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            } finally {
+                exportLimiter.exit();
+            }
+        };
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_NDJSON).body(body);
     }
 
     /**
      * Создать новое объявление с изображением (multipart/form-data).
      * @param properties данные объявления
      * @param image файл изображения (обязателен согласно спецификации)
+     * @return 201 Created, 400 если файл не является изображением, 413 если изображение слишком большое
      */
     @PostMapping(consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
     public ResponseEntity<Void> addAd(
             @RequestPart("properties") CreateOrUpdateAd properties,
             @RequestPart("image") MultipartFile image) {
-        adService.addAd(properties, image);
+        try {
+            adService.addAd(properties, image);
+        } catch (ImageTooLargeException e) {
+            return ResponseEntity.status(HttpStatus.PAYLOAD_TOO_LARGE).build();
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+        return ResponseEntity.status(HttpStatus.CREATED).build();
+    }
+
+    /**
+     * Создать новое объявление с изображением, загруженным заранее через /uploads.
+     * @param properties данные объявления
+     * @param imageId идентификатор изображения из завершённой сессии загрузки
+     * @return 201 Created, 400 если imageId недопустимого вида, 404 если изображения с таким id нет
+     */
+    @PostMapping(consumes = MediaType.APPLICATION_JSON_VALUE, params = "imageId")
+    public ResponseEntity<Void> addAdWithUploadedImage(@RequestBody CreateOrUpdateAd properties,
+                                                       @RequestParam("imageId") String imageId) {
+        try {
+            adService.addAdWithUploadedImage(properties, imageId);
+        } catch (ImageNotFoundException e) {
+            return ResponseEntity.notFound().build();
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
         return ResponseEntity.status(HttpStatus.CREATED).build();
     }
 
     /**
      * Получить объявление по id.
      * @param id идентификатор объявления
-     * @return {@link ExtendedAd}
+     * @param request текущий запрос (условные заголовки)
+     * @return {@link ExtendedAd} или null, если отправлен ответ 304
      */
     @Operation(summary = "Получение информации об объявлении",
             security = {@SecurityRequirement(name = "BearerAuth")},
@@ -73,7 +251,11 @@ public class AdController {
                     @ApiResponse(responseCode = "404", description = "Not Found")
             })
     @GetMapping("/{id}")
-    public ExtendedAd getAds(@PathVariable Integer id) {
+    public ExtendedAd getAds(@PathVariable Integer id, WebRequest request) {
+        ResourceVersion version = adService.getAdVersion(id);
+        if (request.checkNotModified(version.getEtag(), version.getLastModified())) {
+            return null;
+        }
         return adService.getAdById(id);
     }
 
@@ -150,21 +332,48 @@ public class AdController {
      * Обновить изображение объявления (заменяет старое и старое удаляет).
      * @param id идентификатор объявления
      * @param file новое изображение
-     * @return обновлённое объявление {@link Ad}
+     * @return обновлённое объявление {@link Ad}, 400 если файл не является изображением,
+     * 413 если изображение слишком большое
      */
     @Operation(summary = "Обновление картинки объявления",
             security = {@SecurityRequirement(name = "BearerAuth")},
             responses = {
                     @ApiResponse(responseCode = "200", description = "Картинка обновлена", content = @io.swagger.v3.oas.annotations.media.Content(schema = @io.swagger.v3.oas.annotations.media.Schema(implementation = Ad.class))),
+                    @ApiResponse(responseCode = "400", description = "Файл не является изображением JPEG, PNG, GIF или WebP"),
                     @ApiResponse(responseCode = "401", description = "Unauthorized"),
                     @ApiResponse(responseCode = "403", description = "Forbidden"),
-                    @ApiResponse(responseCode = "404", description = "Not Found")
+                    @ApiResponse(responseCode = "404", description = "Not Found"),
+                    @ApiResponse(responseCode = "413", description = "Изображение слишком большое")
             })
     @PatchMapping(value = "/{id}/image", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
     public ResponseEntity<Ad> updateImage(
             @Parameter(description = "Идентификатор объявления", example = "1", required = true) @PathVariable Integer id,
             @RequestParam("image") MultipartFile file) {
-        return ResponseEntity.ok(adService.updateImage(id, file));
+        try {
+            return ResponseEntity.ok(adService.updateImage(id, file));
+        } catch (ImageTooLargeException e) {
+            return ResponseEntity.status(HttpStatus.PAYLOAD_TOO_LARGE).build();
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
+    /**
+     * Заменить изображение объявления изображением, загруженным заранее через /uploads.
+     * @param id идентификатор объявления
+     * @param imageId идентификатор изображения из завершённой сессии загрузки
+     * @return обновлённое объявление {@link Ad}, 400 если imageId недопустимого вида,
+     * 404 если изображения с таким id нет
+     */
+    @PatchMapping(value = "/{id}/image", params = "imageId")
+    public ResponseEntity<Ad> updateImageFromUpload(@PathVariable Integer id, @RequestParam("imageId") String imageId) {
+        try {
+            return ResponseEntity.ok(adService.updateImageFromUpload(id, imageId));
+        } catch (ImageNotFoundException e) {
+            return ResponseEntity.notFound().build();
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
     }
 
     /**
@@ -223,4 +432,32 @@ public class AdController {
     public Comment updateComment(@Valid @RequestBody CreateOrUpdateComment updatedData, @PathVariable Integer adId, @PathVariable Integer commentId) {
         return adService.updateComment(updatedData, adId, commentId);
     }
+
+    private static boolean acceptsGzip(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        for (String coding : acceptEncoding.split(",")) {
+            String[] parts = coding.trim().split(";");
+            String name = parts[0].trim();
+            if (!name.equalsIgnoreCase("gzip") && !name.equals("*")) {
+                continue;
+            }
+            boolean rejected = false;
+            for (int i = 1; i < parts.length; i++) {
+                String param = parts[i].trim().replace(" ", "");
+                if (param.startsWith("q=") && param.substring(2).matches("0(\\.0*)?")) {
+                    rejected = true;
+                }
+            }
+            if (!rejected) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String gzipEtag(String etag) {
+        return etag.substring(0, etag.length() - 1) + "-gzip\"";
+    }
 }
@@ -1,10 +1,15 @@
 package ru.skypro.homework.controller;
 
 import lombok.RequiredArgsConstructor;
+import org.springframework.core.io.Resource;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.WebRequest;
 import ru.skypro.homework.service.ImageService;
 
 /**
@@ -19,6 +24,11 @@ import ru.skypro.homework.service.ImageService;
  *   <li>Не требует авторизации (путь /images/** whitelisted в {@link ru.skypro.homework.config.WebSecurityConfig}).</li>
  *   <li>Автоматически определяет Content-Type (если не указан в метаданных — пробует по расширению / probeContentType).</li>
  *   <li>При отсутствии изображения возвращает 404.</li>
+ *   <li>Параметр size выбирает уменьшенный вариант (thumb, card, full) — его отдают мапперы DTO.</li>
+ *   <li>Поддерживает частичную выдачу по заголовку Range (206 Partial Content).</li>
+ *   <li>Условные запросы получают 304 без обращения к БД: содержимое по id никогда не меняется. If-None-Match
+ *   сравнивается с ETag, вычисленным по id; при одном If-Modified-Since сначала проверяется наличие изображения
+ *   (отрицательный кэш и хранилище), чтобы удалённые и несуществующие id получали 404.</li>
  * </ul>
  */
 @RestController
@@ -30,10 +40,52 @@ public class ImageController {
     /**
      * Получить бинарное содержимое изображения по id.
      * @param id имя файла (идентификатор, например ad_10_...uuid....jpg)
-     * @return 200 OK и байты файла либо 404 Not Found
+     * @param size размерный вариант: thumb, card или full (без параметра — оригинал)
+     * @param webRequest запрос (условные заголовки)
+     * @return 200 OK и содержимое файла (206 Partial Content для запроса с Range), 304 Not Modified либо 400 / 404
      */
     @GetMapping("/images/{id:.+}")
-    public ResponseEntity<byte[]> getImage(@PathVariable String id) {
-        return imageService.getImage(id);
+    public ResponseEntity<Resource> getImage(@PathVariable String id,
+                                             @RequestParam(required = false) String size,
+                                             WebRequest webRequest) {
+        if (isConditional(webRequest)) {
+            String etag = imageService.getImageEtag(id, size);
+            if (etag != null && isNotModified(id, etag, webRequest)) {
+                return ResponseEntity.status(HttpStatus.NOT_MODIFIED)
+                        .eTag(etag)
+                        .header(HttpHeaders.CACHE_CONTROL, ImageService.IMMUTABLE_CACHE_CONTROL)
+                        .build();
+            }
+        }
+        return size == null ? imageService.getImage(id) : imageService.getImage(id, size);
+    }
+
+    private static boolean isConditional(WebRequest webRequest) {
+        return webRequest.getHeader(HttpHeaders.IF_NONE_MATCH) != null
+                || webRequest.getHeader(HttpHeaders.IF_MODIFIED_SINCE) != null;
+    }
+
+    /**
+     * If-None-Match сравнивается с ETag, вычисленным по id (слабое сравнение, как требует RFC 7232 для GET);
+     * при одном If-Modified-Since любая дата означает, что у клиента уже есть эта (единственная) версия,
+     * если изображение с таким id существует.
+     */
+    private boolean isNotModified(String id, String etag, WebRequest webRequest) {
+        String[] ifNoneMatch = webRequest.getHeaderValues(HttpHeaders.IF_NONE_MATCH);
+        if (ifNoneMatch == null) {
+            return imageService.exists(id);
+        }
+        for (String header : ifNoneMatch) {
+            for (String candidate : header.split(",")) {
+                String tag = candidate.trim();
+                if (tag.startsWith("W/")) {
+                    tag = tag.substring(2);
+                }
+                if (tag.equals(etag)) {
+                    return true;
+                }
+            }
+        }
+        return false;
     }
 }
@@ -0,0 +1,135 @@
+package ru.skypro.homework.controller;
+
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.security.SecurityRequirement;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import ru.skypro.homework.dto.UploadSession;
+import ru.skypro.homework.service.ImageTooLargeException;
+import ru.skypro.homework.service.ImageUploadService;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+
+/**
+ * REST-контроллер поэтапной (возобновляемой) загрузки изображений.
+ * <p>
+ * Порядок работы клиента: POST /uploads создаёт сессию; PUT /uploads/{id}?offset=N передаёт очередную часть
+ * телом запроса (application/octet-stream); после обрыва GET /uploads/{id} сообщает, сколько байтов принято;
+ * POST /uploads/{id}/complete возвращает imageId, который передаётся в POST /ads?imageId=...
+ * или PATCH /ads/{id}/image?imageId=... вместо файла.
+ * </p>
+ * Особенности:
+ * <ul>
+ *   <li>Требует аутентификацию; сессия видна только создавшему её пользователю (для остальных — 404).</li>
+ *   <li>Часть с неверным смещением или параллельная передача в ту же сессию получают 409 с текущим состоянием.</li>
+ *   <li>Превышение images.upload.max-size — 413, принятая часть отбрасывается.</li>
+ * </ul>
+ */
+@RestController
+@RequiredArgsConstructor
+@RequestMapping("/uploads")
+public class ImageUploadController {
+
+    private final ImageUploadService imageUploadService;
+
+    /**
+     * Создать сессию загрузки.
+     * @return 201 Created с состоянием сессии
+     * @throws IOException при ошибке записи сессии
+     */
+    @Operation(summary = "Создание сессии загрузки изображения",
+            security = {@SecurityRequirement(name = "BearerAuth")},
+            responses = {
+                    @ApiResponse(responseCode = "201", description = "Сессия создана", content = @io.swagger.v3.oas.annotations.media.Content(schema = @io.swagger.v3.oas.annotations.media.Schema(implementation = UploadSession.class))),
+                    @ApiResponse(responseCode = "401", description = "Unauthorized")
+            })
+    @PostMapping
+    public ResponseEntity<UploadSession> create() throws IOException {
+        UploadSession session = imageUploadService.create();
+        return ResponseEntity.created(URI.create("/uploads/" + session.getId())).body(session);
+    }
+
+    /**
+     * Состояние сессии: сколько байтов принято и, после завершения, идентификатор изображения.
+     * @param id идентификатор сессии
+     * @return 200 OK или 404
+     * @throws IOException при ошибке чтения сессии
+     */
+    @GetMapping("/{id}")
+    public ResponseEntity<UploadSession> get(@PathVariable String id) throws IOException {
+        return ofNullable(imageUploadService.get(id));
+    }
+
+    /**
+     * Передать часть содержимого.
+     * @param id идентификатор сессии
+     * @param offset смещение части (количество уже принятых байтов)
+     * @param body содержимое части
+     * @return 200 OK с новым смещением, 404, 409 при неверном смещении или 413 при превышении размера
+     * @throws IOException при ошибке чтения запроса или записи на диск
+     */
+    @Operation(summary = "Передача части изображения",
+            security = {@SecurityRequirement(name = "BearerAuth")},
+            responses = {
+                    @ApiResponse(responseCode = "200", description = "Часть принята", content = @io.swagger.v3.oas.annotations.media.Content(schema = @io.swagger.v3.oas.annotations.media.Schema(implementation = UploadSession.class))),
+                    @ApiResponse(responseCode = "404", description = "Not Found"),
+                    @ApiResponse(responseCode = "409", description = "Смещение не совпадает с принятым объёмом"),
+                    @ApiResponse(responseCode = "413", description = "Изображение слишком большое")
+            })
+    @PutMapping("/{id}")
+    public ResponseEntity<UploadSession> append(@PathVariable String id,
+                                                @RequestParam long offset,
+                                                InputStream body) throws IOException {
+        try {
+            return ofNullable(imageUploadService.append(id, offset, body));
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(imageUploadService.get(id));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.PAYLOAD_TOO_LARGE).build();
+        }
+    }
+
+    /**
+     * Завершить загрузку.
+     * @param id идентификатор сессии
+     * @return 200 OK с imageId, 400 если ничего не загружено или файл не является изображением,
+     * 404, 409, если часть ещё передаётся, или 413, если изображение слишком большое
+     * @throws IOException при ошибке чтения сессии
+     */
+    @PostMapping("/{id}/complete")
+    public ResponseEntity<UploadSession> complete(@PathVariable String id) throws IOException {
+        try {
+            return ofNullable(imageUploadService.complete(id));
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).build();
+        } catch (ImageTooLargeException e) {
+            return ResponseEntity.status(HttpStatus.PAYLOAD_TOO_LARGE).build();
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
+    /**
+     * Отменить загрузку.
+     * @param id идентификатор сессии
+     * @return 204 No Content или 404
+     * @throws IOException при ошибке удаления
+     */
+    @DeleteMapping("/{id}")
+    public ResponseEntity<Void> cancel(@PathVariable String id) throws IOException {
+        try {
+            return imageUploadService.cancel(id) ? ResponseEntity.noContent().build() : ResponseEntity.notFound().build();
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).build();
+        }
+    }
+
+    private static ResponseEntity<UploadSession> ofNullable(UploadSession session) {
+        return session == null ? ResponseEntity.notFound().build() : ResponseEntity.ok(session);
+    }
+}
@@ -11,7 +11,7 @@ import java.util.List;
 @Data
 public class Ads {
     /**
-     * Общее количество объявлений.
+     * Количество объявлений на текущей странице.
      */
     private Integer count;
 
@@ -19,4 +19,9 @@ public class Ads {
      * Список объявлений.
      */
     private List<Ad> results;
+
+    /**
+     * Непрозрачный курсор следующей страницы (null, если страница последняя).
+     */
+    private String next;
 }
@@ -0,0 +1,30 @@
+package ru.skypro.homework.dto;
+
+import lombok.Data;
+
+/**
+ * DTO состояния поэтапной загрузки изображения.
+ * Клиент передаёт части с указанием смещения и после обрыва продолжает с {@code offset}.
+ */
+@Data
+public class UploadSession {
+    /**
+     * Идентификатор сессии загрузки.
+     */
+    private String id;
+
+    /**
+     * Количество принятых байтов: следующая часть передаётся с этим смещением.
+     */
+    private long offset;
+
+    /**
+     * Идентификатор изображения после завершения загрузки (до завершения null).
+     */
+    private String imageId;
+
+    /**
+     * Время, после которого сессия удаляется, если в неё ничего не передавали, мс.
+     */
+    private long expiresAt;
+}
@@ -0,0 +1,67 @@
+package ru.skypro.homework.filter;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.filter.OncePerRequestFilter;
+import ru.skypro.homework.service.impl.ImageUploadBulkhead;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Locale;
+
+/**
+ * Пропускает запросы с изображениями через {@link ImageUploadBulkhead} до чтения тела запроса.
+ * <p>
+ * Загрузкой считаются multipart-запросы (объявление с картинкой, PATCH изображения объявления и пользователя)
+ * и запись в сессии поэтапной загрузки: PUT и POST на /uploads/**. При перегрузке отвечает 503
+ * с заголовком Retry-After, не принимая тело.
+ * </p>
+ */
+public class ImageUploadBulkheadFilter extends OncePerRequestFilter {
+
+    private static final String UPLOADS_PATH = "/uploads/";
+
+    private final ImageUploadBulkhead bulkhead;
+    private final String retryAfter;
+
+    public ImageUploadBulkheadFilter(ImageUploadBulkhead bulkhead, Duration retryAfter) {
+        this.bulkhead = bulkhead;
+        this.retryAfter = Long.toString(Math.max(1, retryAfter.getSeconds()));
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        String method = request.getMethod();
+        if (!HttpMethod.POST.matches(method) && !HttpMethod.PUT.matches(method) && !HttpMethod.PATCH.matches(method)) {
+            return true;
+        }
+        String contentType = request.getContentType();
+        if (contentType != null && contentType.toLowerCase(Locale.ROOT).startsWith("multipart/")) {
+            return false;
+        }
+        String path = request.getRequestURI().substring(request.getContextPath().length());
+        return !path.startsWith(UPLOADS_PATH) || HttpMethod.PATCH.matches(method);
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request,
+                                    HttpServletResponse response,
+                                    FilterChain filterChain)
+            throws ServletException, IOException {
+        if (!bulkhead.tryEnter()) {
+            response.setHeader(HttpHeaders.RETRY_AFTER, retryAfter);
+            response.sendError(HttpStatus.SERVICE_UNAVAILABLE.value(), "Слишком много одновременных загрузок изображений");
+            return;
+        }
+        try {
+            filterChain.doFilter(request, response);
+        } finally {
+            bulkhead.exit();
+        }
+    }
+}
@@ -7,6 +7,8 @@ import ru.skypro.homework.dto.ExtendedAd;
 import ru.skypro.homework.model.AdEntity;
 import ru.skypro.homework.model.ImageEntity;
 import ru.skypro.homework.model.UserEntity;
+import ru.skypro.homework.repository.AdCardView;
+import ru.skypro.homework.service.ImageVariant;
 
 import java.util.Objects;
 
@@ -35,12 +37,28 @@ public class AdMapper {
         dto.setPk(entity.getId());
         dto.setAuthor(entity.getAuthor() != null ? entity.getAuthor().getId() : null);
         ImageEntity img = entity.getImage();
-        dto.setImage(img != null ? "/images/" + img.getId() : null);
+        dto.setImage(ImageVariant.CARD.url(img != null ? img.getId() : null));
         dto.setPrice(entity.getPrice());
         dto.setTitle(entity.getTitle());
         return dto;
     }
 
+    /**
+     * Преобразование проекции карточки (списки объявлений) в краткое DTO.
+     * @param view проекция из {@link ru.skypro.homework.repository.AdRepository}
+     * @return DTO {@link ru.skypro.homework.dto.Ad} или null если вход null
+     */
+    public Ad toDto(AdCardView view) {
+        if (view == null) return null;
+        Ad dto = new Ad();
+        dto.setPk(view.getPk());
+        dto.setAuthor(view.getAuthor());
+        dto.setImage(ImageVariant.CARD.url(view.getImageId()));
+        dto.setPrice(view.getPrice());
+        dto.setTitle(view.getTitle());
+        return dto;
+    }
+
     /**
      * Преобразование сущности в расширенное DTO (карточка объявления).
      * @param entity сущность объявления
@@ -59,7 +77,7 @@ public class AdMapper {
         }
         dto.setDescription(entity.getDescription());
         ImageEntity img = entity.getImage();
-        dto.setImage(img != null ? "/images/" + img.getId() : null);
+        dto.setImage(ImageVariant.FULL.url(img != null ? img.getId() : null));
         dto.setPrice(entity.getPrice());
         dto.setTitle(entity.getTitle());
         return dto;
@@ -8,6 +8,7 @@ import ru.skypro.homework.model.AdEntity;
 import ru.skypro.homework.model.CommentEntity;
 import ru.skypro.homework.model.ImageEntity;
 import ru.skypro.homework.model.UserEntity;
+import ru.skypro.homework.service.ImageVariant;
 
 import java.time.Instant;
 import java.util.List;
@@ -44,7 +45,7 @@ public class CommentMapper {
             dto.setAuthor(author.getId());
             dto.setAuthorFirstName(author.getFirstName());
             ImageEntity img = author.getImage();
-            dto.setAuthorImage(img != null ? "/images/" + img.getId() : null);
+            dto.setAuthorImage(ImageVariant.THUMB.url(img != null ? img.getId() : null));
         }
         return dto;
     }
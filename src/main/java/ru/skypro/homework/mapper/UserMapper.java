@@ -6,6 +6,7 @@ import ru.skypro.homework.dto.UpdateUser;
 import ru.skypro.homework.dto.User;
 import ru.skypro.homework.model.ImageEntity;
 import ru.skypro.homework.model.UserEntity;
+import ru.skypro.homework.service.ImageVariant;
 
 /**
  * Маппер пользователя: преобразует сущность пользователя{@link UserEntity}
@@ -14,7 +15,7 @@ import ru.skypro.homework.model.UserEntity;
  * Основные задачи:
  * <ul>
  *   <li>Отсечение чувствительных данных (хэш пароля не попадает в {@code User}).</li>
- *   <li>Формирование ссылки на аватар (/images/{id}) из связанной {@code ImageEntity}.</li>
+ *   <li>Формирование ссылки на аватар (/images/{id}?size=card) из связанной {@code ImageEntity}.</li>
  *   <li>Частичное обновление только разрешённых полей (имя, фамилия, телефон).</li>
  *   <li>Подготовка сущности для регистрации (пароль шифруется позже в сервисе).</li>
  * </ul>
@@ -37,7 +38,7 @@ public class UserMapper {
         dto.setPhone(entity.getPhone());
         dto.setRole(entity.getRole() != null ? entity.getRole().name() : null);
         ImageEntity img = entity.getImage();
-        dto.setImage(img != null ? "/images/" + img.getId() : null);
+        dto.setImage(ImageVariant.CARD.url(img != null ? img.getId() : null));
         return dto;
     }
 
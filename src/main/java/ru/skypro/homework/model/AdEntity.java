@@ -13,7 +13,8 @@ import javax.persistence.*;
 @Table(name = "ads")
 public class AdEntity {
     @Id
-    @GeneratedValue(strategy = GenerationType.AUTO)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "ads_seq")
+    @SequenceGenerator(name = "ads_seq", sequenceName = "ads_seq", allocationSize = 50)
     private Integer id;
 
     @Column(nullable = false)
@@ -23,4 +23,16 @@ public class ImageEntity {
 
     @Column(name = "created_at")
     private Long createdAt;
+
+    @Column(name = "checksum", length = 64)
+    private String checksum;
+
+    @Column(name = "width")
+    private Integer width;
+
+    @Column(name = "height")
+    private Integer height;
+
+    @Column(name = "ref_count", nullable = false)
+    private Integer refCount = 1;
 }
@@ -0,0 +1,20 @@
+package ru.skypro.homework.repository;
+
+/**
+ * Проекция краткой карточки объявления для списков.
+ * <p>
+ * Заполняется одним SQL-запросом по таблице ads (id автора и изображения берутся из внешних ключей),
+ * не создаёт управляемых сущностей и не инициирует ленивую загрузку автора/изображения.
+ * </p>
+ */
+public interface AdCardView {
+    Integer getPk();
+
+    Integer getAuthor();
+
+    String getImageId();
+
+    Integer getPrice();
+
+    String getTitle();
+}
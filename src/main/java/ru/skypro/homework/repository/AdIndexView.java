@@ -0,0 +1,8 @@
+package ru.skypro.homework.repository;
+
+/**
+ * Карточка объявления вместе с описанием — источник данных для построения in-memory поискового индекса.
+ */
+public interface AdIndexView extends AdCardView {
+    String getDescription();
+}
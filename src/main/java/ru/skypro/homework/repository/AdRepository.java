@@ -1,15 +1,164 @@
 package ru.skypro.homework.repository;
 
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 import ru.skypro.homework.model.AdEntity;
 
+import javax.persistence.QueryHint;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 @Repository
 public interface AdRepository extends JpaRepository<AdEntity, Integer> {
     List<AdEntity> findAllByAuthor_Id(Integer authorId);
     Optional<AdEntity> findByIdAndAuthor_Id(Integer id, Integer authorId);
-}
 
+    /**
+     * Объявление вместе с автором и изображением одним запросом (для {@link ru.skypro.homework.dto.ExtendedAd}).
+     * @param id id объявления
+     * @return объявление с загруженными связями
+     */
+    @Query("select a from AdEntity a join fetch a.author left join fetch a.image where a.id = :id")
+    Optional<AdEntity> findDetailedById(@Param("id") Integer id);
+
+    /**
+     * Идентификаторы объявлений автора (для инвалидации кэшей без загрузки сущностей).
+     * @param authorId id автора
+     * @return id объявлений
+     */
+    @Query("select a.id from AdEntity a where a.author.id = :authorId")
+    List<Integer> findIdsByAuthor(@Param("authorId") Integer authorId);
+
+    /**
+     * Страница карточек объявлений от новых к старым, начиная строго после id из курсора (keyset по первичному ключу).
+     * @param id id последнего объявления предыдущей страницы ({@link Integer#MAX_VALUE} для первой страницы)
+     * @param pageable ограничение размера страницы (номер страницы всегда 0)
+     * @return карточки объявлений с id меньше заданного
+     */
+    @Query("select a.id as pk, a.author.id as author, a.image.id as imageId, a.price as price, a.title as title " +
+            "from AdEntity a where a.id < :id order by a.id desc")
+    List<AdCardView> findCardsBefore(@Param("id") Integer id, Pageable pageable);
+
+    /**
+     * Страница карточек от новых к старым с фильтром по диапазону цены.
+     * @param id id последнего объявления предыдущей страницы ({@link Integer#MAX_VALUE} для первой страницы)
+     * @param minPrice минимальная цена включительно
+     * @param maxPrice максимальная цена включительно
+     * @param pageable ограничение размера страницы (номер страницы всегда 0)
+     * @return карточки объявлений с id меньше заданного и ценой в диапазоне
+     */
+    @Query("select a.id as pk, a.author.id as author, a.image.id as imageId, a.price as price, a.title as title " +
+            "from AdEntity a where a.id < :id and a.price between :minPrice and :maxPrice order by a.id desc")
+    List<AdCardView> findCardsBeforeInPriceRange(@Param("id") Integer id,
+                                                 @Param("minPrice") Integer minPrice,
+                                                 @Param("maxPrice") Integer maxPrice,
+                                                 Pageable pageable);
+
+    /**
+     * Страница карточек по возрастанию цены, строго после пары (price, id) из курсора.
+     * <p>
+     * Условие price &gt;= :price задаёт начало диапазона в индексе idx_ads_price_id (price, id),
+     * в который включены остальные столбцы карточки, поэтому PostgreSQL читает страницу index-only scan.
+     * </p>
+     * @param price цена последнего объявления предыдущей страницы (minPrice для первой страницы)
+     * @param id id последнего объявления предыдущей страницы ({@link Integer#MIN_VALUE} для первой страницы)
+     * @param maxPrice максимальная цена включительно
+     * @param pageable ограничение размера страницы (номер страницы всегда 0)
+     * @return карточки объявлений по возрастанию (price, id)
+     */
+    @Query("select a.id as pk, a.author.id as author, a.image.id as imageId, a.price as price, a.title as title " +
+            "from AdEntity a where a.price >= :price and a.price <= :maxPrice and (a.price > :price or a.id > :id) " +
+            "order by a.price asc, a.id asc")
+    List<AdCardView> findCardsByPriceAscAfter(@Param("price") Integer price,
+                                              @Param("id") Integer id,
+                                              @Param("maxPrice") Integer maxPrice,
+                                              Pageable pageable);
+
+    /**
+     * Страница карточек по убыванию цены, строго после пары (price, id) из курсора
+     * (обратный обход индекса idx_ads_price_id).
+     * @param price цена последнего объявления предыдущей страницы (maxPrice для первой страницы)
+     * @param id id последнего объявления предыдущей страницы ({@link Integer#MAX_VALUE} для первой страницы)
+     * @param minPrice минимальная цена включительно
+     * @param pageable ограничение размера страницы (номер страницы всегда 0)
+     * @return карточки объявлений по убыванию (price, id)
+     */
+    @Query("select a.id as pk, a.author.id as author, a.image.id as imageId, a.price as price, a.title as title " +
+            "from AdEntity a where a.price <= :price and a.price >= :minPrice and (a.price < :price or a.id < :id) " +
+            "order by a.price desc, a.id desc")
+    List<AdCardView> findCardsByPriceDescAfter(@Param("price") Integer price,
+                                               @Param("id") Integer id,
+                                               @Param("minPrice") Integer minPrice,
+                                               Pageable pageable);
+
+    /**
+     * Карточки всех объявлений автора от новых к старым.
+     * @param authorId id автора
+     * @return карточки объявлений
+     */
+    @Query("select a.id as pk, a.author.id as author, a.image.id as imageId, a.price as price, a.title as title " +
+            "from AdEntity a where a.author.id = :authorId order by a.id desc")
+    List<AdCardView> findCardsByAuthor(@Param("authorId") Integer authorId);
+
+    /**
+     * Полнотекстовый поиск по заголовку и описанию с ранжированием и keyset-пагинацией.
+     * <p>
+     * Использует сгенерированный столбец ads.search_vector (changeset 015) и GIN-индекс по нему,
+     * запрос разбирается через websearch_to_tsquery (поддерживает кавычки, OR и минус-слова).
+     * Страница продолжается строго после пары (rank, id) последнего результата предыдущей страницы.
+     * Только для PostgreSQL.
+     * </p>
+     * @param query поисковая строка пользователя
+     * @param rank релевантность последнего результата ({@link Double#MAX_VALUE} для первой страницы)
+     * @param id id последнего результата ({@link Integer#MAX_VALUE} для первой страницы)
+     * @param limit максимальное количество строк
+     * @return найденные карточки по убыванию релевантности
+     */
+    @Query(value = "SELECT hits.* FROM (" +
+            " SELECT a.id AS \"pk\", a.author_id AS \"author\", a.image_id AS \"imageId\"," +
+            " a.price AS \"price\", a.title AS \"title\", CAST(ts_rank(a.search_vector, q) AS double precision) AS \"rank\"" +
+            " FROM ads a, websearch_to_tsquery('russian', :query) q" +
+            " WHERE a.search_vector @@ q" +
+            ") hits" +
+            " WHERE hits.\"rank\" < :rank OR (hits.\"rank\" = :rank AND hits.\"pk\" < :id)" +
+            " ORDER BY hits.\"rank\" DESC, hits.\"pk\" DESC" +
+            " LIMIT :limit", nativeQuery = true)
+    List<AdSearchHit> search(@Param("query") String query,
+                             @Param("rank") double rank,
+                             @Param("id") int id,
+                             @Param("limit") int limit);
+
+    /**
+     * Потоковое чтение карточек всех объявлений в порядке id.
+     * <p>
+     * Строки читаются серверным курсором порциями по fetch size, поэтому в памяти одновременно
+     * находится только текущая порция. Поток нужно закрывать и читать внутри транзакции.
+     * </p>
+     * @return поток карточек объявлений
+     */
+    @QueryHints({
+            @QueryHint(name = org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE, value = "500"),
+            @QueryHint(name = org.hibernate.jpa.QueryHints.HINT_READONLY, value = "true")
+    })
+    @Query("select a.id as pk, a.author.id as author, a.image.id as imageId, a.price as price, a.title as title " +
+            "from AdEntity a order by a.id")
+    Stream<AdCardView> streamAllCards();
+
+    /**
+     * Потоковое чтение карточек всех объявлений с описанием в порядке id (построение поискового индекса).
+     * Поток нужно закрывать и читать внутри транзакции.
+     * @return поток карточек с описанием
+     */
+    @QueryHints({
+            @QueryHint(name = org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE, value = "500"),
+            @QueryHint(name = org.hibernate.jpa.QueryHints.HINT_READONLY, value = "true")
+    })
+    @Query("select a.id as pk, a.author.id as author, a.image.id as imageId, a.price as price, a.title as title, " +
+            "a.description as description from AdEntity a order by a.id")
+    Stream<AdIndexView> streamAllForIndex();
+}
@@ -0,0 +1,9 @@
+package ru.skypro.homework.repository;
+
+/**
+ * Карточка объявления, найденная полнотекстовым поиском, вместе с её релевантностью.
+ * Релевантность нужна для keyset-пагинации по паре (rank, id).
+ */
+public interface AdSearchHit extends AdCardView {
+    Double getRank();
+}
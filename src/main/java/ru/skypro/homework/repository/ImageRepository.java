@@ -1,10 +1,69 @@
 package ru.skypro.homework.repository;
 
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 import ru.skypro.homework.model.ImageEntity;
 
+import java.util.List;
+
 @Repository
 public interface ImageRepository extends JpaRepository<ImageEntity, String> {
-}
 
+    /**
+     * Добавляет ссылку на изображение с заданным содержимым.
+     * @param id идентификатор изображения
+     * @return 1, если запись существует; 0, если её нужно создать
+     */
+    @Transactional
+    @Modifying(flushAutomatically = true)
+    @Query("update ImageEntity i set i.refCount = i.refCount + 1 where i.id = :id")
+    int incrementRefCount(@Param("id") String id);
+
+    /**
+     * Создаёт запись изображения, если записи с таким id ещё нет. При одновременной вставке того же id
+     * ждёт завершения другой транзакции и ничего не меняет, если она создала запись.
+     * @param image новая запись
+     * @return 1, если запись создана; 0, если она уже существует
+     */
+    @Transactional
+    @Modifying(flushAutomatically = true)
+    @Query(value = "insert into images (id, content_type, size, width, height, checksum, ref_count, created_at) "
+            + "values (:#{#image.id}, :#{#image.contentType}, :#{#image.size}, :#{#image.width}, :#{#image.height}, "
+            + ":#{#image.checksum}, :#{#image.refCount}, :#{#image.createdAt}) "
+            + "on conflict (id) do nothing", nativeQuery = true)
+    int insertIfAbsent(@Param("image") ImageEntity image);
+
+    /**
+     * Снимает ссылку на изображение (счётчик не опускается ниже нуля).
+     * @param id идентификатор изображения
+     * @return число изменённых строк
+     */
+    @Transactional
+    @Modifying(flushAutomatically = true)
+    @Query("update ImageEntity i set i.refCount = i.refCount - 1 where i.id = :id and i.refCount > 0")
+    int decrementRefCount(@Param("id") String id);
+
+    /**
+     * Удаляет запись изображения, на которое не осталось ссылок.
+     * @param id идентификатор изображения
+     * @return 1, если запись удалена; 0, если она ещё используется или не существует
+     */
+    @Transactional
+    @Modifying(flushAutomatically = true)
+    @Query("delete from ImageEntity i where i.id = :id and i.refCount <= 0")
+    int deleteIfUnreferenced(@Param("id") String id);
+
+    /**
+     * Страница записей изображений в порядке id, начиная строго после id из курсора (keyset по первичному ключу).
+     * @param id id последней записи предыдущей страницы (пустая строка для первой страницы)
+     * @param pageable ограничение размера страницы (номер страницы всегда 0)
+     * @return записи с id больше заданного
+     */
+    @Query("select i from ImageEntity i where i.id > :id order by i.id")
+    List<ImageEntity> findPageAfter(@Param("id") String id, Pageable pageable);
+}
@@ -3,6 +3,8 @@ package ru.skypro.homework.service;
 import org.springframework.web.multipart.MultipartFile;
 import ru.skypro.homework.dto.*;
 
+import java.util.function.Consumer;
+
 /**
  * Сервис для управления объявлениями и их комментариями.
  * <p>
@@ -11,7 +13,7 @@ import ru.skypro.homework.dto.*;
  *   <li>CRUD операций над объявлениями.</li>
  *   <li>Работа с изображением объявления (замена / сохранение).</li>
  *   <li>CRUD операций над комментариями конкретного объявления.</li>
- *   <li>Получение списков (все объявления, объявления текущего пользователя) с агрегированным count.</li>
+ *   <li>Получение списков (постраничная лента объявлений, объявления текущего пользователя) с агрегированным count.</li>
  * </ul>
  * </p>
  */
@@ -24,10 +26,69 @@ public interface AdService {
     void addAd(CreateOrUpdateAd properties, MultipartFile image);
 
     /**
-     * Возвращает список всех объявлений в обёртке.
-     * @return {@link Ads}
+     * Создаёт объявление с изображением из завершённой сессии загрузки.
+     * @param properties DTO с основными данными
+     * @param imageId идентификатор изображения, полученный при завершении загрузки
+     */
+    void addAdWithUploadedImage(CreateOrUpdateAd properties, String imageId);
+
+    /**
+     * Возвращает страницу объявлений в обёртке с фильтром по цене и сортировкой.
+     * @param cursor курсор из поля next предыдущей страницы (null — первая страница)
+     * @param size желаемый размер страницы (null — размер по умолчанию, ограничен сверху)
+     * @param minPrice минимальная цена включительно (null — без ограничения)
+     * @param maxPrice максимальная цена включительно (null — без ограничения)
+     * @param sort порядок: newest (по умолчанию), price_asc или price_desc
+     * @return {@link Ads} с курсором следующей страницы
+     */
+    Ads getAllAds(String cursor, Integer size, Integer minPrice, Integer maxPrice, String sort);
+
+    /**
+     * Готовая (сериализованная и сжатая) страница публичной ленты, если запрос совпадает со снимком.
+     * Параметры те же, что у {@link #getAllAds(String, Integer, Integer, Integer, String)}.
+     * @return страница из снимка или null, если запрос нужно обслужить обычным путём
+     */
+    SerializedPage getListingSnapshot(String cursor, Integer size, Integer minPrice, Integer maxPrice, String sort);
+
+    /**
+     * Текущая версия ленты объявлений (для ETag / Last-Modified в GET /ads).
+     * @return версия ленты
+     */
+    ResourceVersion getCatalogVersion();
+
+    /**
+     * Текущая версия карточки объявления (для ETag / Last-Modified в GET /ads/{id}).
+     * @param id идентификатор объявления
+     * @return версия карточки
+     */
+    ResourceVersion getAdVersion(Integer id);
+
+    /**
+     * Полнотекстовый поиск объявлений по заголовку и описанию.
+     * @param query поисковая строка
+     * @param cursor курсор из поля next предыдущей страницы результатов (null — первая страница)
+     * @param size желаемый размер страницы
+     * @return {@link Ads} с результатами по убыванию релевантности и курсором следующей страницы
      */
-    Ads getAllAds();
+    Ads searchAds(String query, String cursor, Integer size);
+
+    /**
+     * Мгновенный поиск (по мере ввода) по in-memory индексу с фильтром по цене.
+     * @param query поисковая строка (слова через пробел — AND, группы через OR — объединение)
+     * @param minPrice минимальная цена (null — без ограничения)
+     * @param maxPrice максимальная цена (null — без ограничения)
+     * @param cursor курсор из поля next предыдущей страницы (null — первая страница)
+     * @param size желаемый размер страницы
+     * @return {@link Ads} с результатами от новых к старым и курсором следующей страницы
+     */
+    Ads suggestAds(String query, Integer minPrice, Integer maxPrice, String cursor, Integer size);
+
+    /**
+     * Последовательно передаёт потребителю карточки всех объявлений каталога (выгрузка для партнёров).
+     * Карточки не накапливаются в памяти: каждая отдаётся сразу после чтения из курсора БД.
+     * @param consumer получатель карточек
+     */
+    void exportAds(Consumer<Ad> consumer);
 
     /**
      * Получить расширенное описание объявления.
@@ -64,6 +125,14 @@ public interface AdService {
      */
     Ad updateImage(Integer id, MultipartFile file);
 
+    /**
+     * Обновить изображение объявления изображением из завершённой сессии загрузки.
+     * @param id id объявления
+     * @param imageId идентификатор изображения, полученный при завершении загрузки
+     * @return обновлённое DTO объявления
+     */
+    Ad updateImageFromUpload(Integer id, String imageId);
+
     /**
      * Получить все комментарии объявления.
      * @param adId id объявления
@@ -0,0 +1,15 @@
+package ru.skypro.homework.service;
+
+/**
+ * Изображения с переданным id нет: оно не загружалось или неиспользованная загрузка уже удалена.
+ * <p>
+ * Подкласс {@link IllegalArgumentException}: там, где отдельная обработка не нужна, он отклоняется
+ * как любой некорректный аргумент (400), а контроллеры, принимающие imageId, отвечают на него 404.
+ * </p>
+ */
+public class ImageNotFoundException extends IllegalArgumentException {
+
+    public ImageNotFoundException(String message) {
+        super(message);
+    }
+}
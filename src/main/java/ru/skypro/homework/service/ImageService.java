@@ -1,9 +1,12 @@
 package ru.skypro.homework.service;
 
+import org.springframework.core.io.Resource;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.multipart.MultipartFile;
 import ru.skypro.homework.model.ImageEntity;
 
+import java.nio.file.Path;
+
 /**
  * Сервис работы с изображениями
  * <p>
@@ -14,14 +17,41 @@ import ru.skypro.homework.model.ImageEntity;
  */
 public interface ImageService {
 
+    /**
+     * Cache-Control ответа с изображением: содержимое по id неизменно, поэтому клиент и CDN
+     * кэшируют его на год без ревалидации.
+     */
+    String IMMUTABLE_CACHE_CONTROL = "public, max-age=31536000, immutable";
+
     /**
      * Сохраняет файл изображения и метаданные.
      * @param file multipart файл
      * @param prefix префикс для имени (например ad_{id}, user_{id})
      * @return сохранённая сущность ImageEntity
+     * @throws IllegalArgumentException если файл пустой или не является изображением
+     * @throws ImageTooLargeException если в изображении больше пикселей, чем допустимо
      */
     ImageEntity save(MultipartFile file, String prefix);
 
+    /**
+     * Сохраняет содержимое завершённой поэтапной загрузки, не добавляя на него ссылку.
+     * Файл после вызова больше не нужен: он передаётся в хранилище или удаляется.
+     * @param file собранный файл загрузки
+     * @return запись изображения; на неё нужно сослаться через {@link #reference(String)}
+     * @throws IllegalArgumentException если файл пустой или не является изображением
+     * @throws ImageTooLargeException если в изображении больше пикселей, чем допустимо
+     */
+    ImageEntity stage(Path file);
+
+    /**
+     * Добавляет ссылку на сохранённое изображение (например, из объявления).
+     * @param id идентификатор изображения
+     * @return запись изображения
+     * @throws IllegalArgumentException если id недопустимого вида
+     * @throws ImageNotFoundException если изображения нет
+     */
+    ImageEntity reference(String id);
+
     /**
      * Загружает бинарные данные изображения в память.
      * @param id идентификатор (имя файла)
@@ -30,11 +60,35 @@ public interface ImageService {
     ImageContent load(String id);
 
     /**
-     * Формирует HTTP-ответ с байтами изображения и корректными заголовками.
+     * Формирует HTTP-ответ с файлом изображения и корректными заголовками.
+     * Файл не загружается в память; запросы с Range получают 206 с нужным участком.
      * @param id идентификатор изображения
      * @return 200 OK или 404 / 500 при ошибке
      */
-    ResponseEntity<byte[]> getImage(String id);
+    ResponseEntity<Resource> getImage(String id);
+
+    /**
+     * Формирует HTTP-ответ с размерным вариантом изображения ({@link ImageVariant}).
+     * @param id идентификатор изображения
+     * @param size значение параметра size: thumb, card или full
+     * @return 200 OK или 400 при неизвестном размере, 404 / 500 при ошибке
+     */
+    ResponseEntity<Resource> getImage(String id, String size);
+
+    /**
+     * Строгий ETag изображения, вычисляемый по id без обращения к БД и диску.
+     * @param id идентификатор изображения
+     * @param size значение параметра size или null для оригинала
+     * @return ETag в кавычках или null, если id недопустимого вида или размер неизвестен
+     */
+    String getImageEtag(String id, String size);
+
+    /**
+     * Проверяет наличие изображения без обращения к БД: по отрицательному кэшу, кэшу содержимого и хранилищу.
+     * @param id идентификатор изображения
+     * @return true, если изображение есть; false, если id недопустимого вида, изображения нет или проверка не удалась
+     */
+    boolean exists(String id);
 
     /**
      * Удаляет файл и метаданные.
@@ -0,0 +1,116 @@
+package ru.skypro.homework.service;
+
+import org.springframework.core.io.Resource;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Хранилище содержимого изображений (оригиналов), на которое опирается {@link ImageService}.
+ * <p>
+ * Реализация выбирается настройкой images.store.type: file — файл на изображение в каталоге images.upload.dir
+ * (по умолчанию), pack — сегментные файлы с отображением в память, postgres — large object в базе данных
+ * (для нескольких узлов без общего диска). Метаданные (таблица images, счётчик ссылок) и размерные варианты
+ * хранилище не касаются; варианты всегда остаются локальным кэшем узла.
+ * </p>
+ * Идентификатор однозначно определяет содержимое, поэтому повторная запись того же id может быть пропущена.
+ */
+public interface ImageStore {
+
+    /**
+     * Сохраняет содержимое под идентификатором. Исходный файл после вызова хранилищу больше не нужен:
+     * он перемещается или удаляется.
+     * @param id идентификатор изображения
+     * @param source временный файл с содержимым
+     * @param contentType MIME-тип, который нужно сохранить вместе с содержимым, или null
+     * @throws IOException при ошибке записи
+     */
+    void put(String id, Path source, String contentType) throws IOException;
+
+    /**
+     * @param id идентификатор изображения
+     * @return изображение или null, если его нет
+     * @throws IOException при ошибке чтения
+     */
+    StoredImage get(String id) throws IOException;
+
+    /**
+     * Удаляет содержимое; отсутствующее изображение не считается ошибкой.
+     * @param id идентификатор изображения
+     * @throws IOException при ошибке удаления
+     */
+    void delete(String id) throws IOException;
+
+    /**
+     * Постраничный обход сохранённых изображений для фоновой сверки с таблицей images.
+     * Изображения, записанные или удалённые во время обхода, могут как попасть в него, так и нет.
+     * @param cursor курсор из предыдущей страницы или null для начала обхода
+     * @param limit желаемый размер страницы; реализация может вернуть больше, если обходит хранилище крупными частями
+     * @return страница идентификаторов
+     * @throws IOException при ошибке чтения
+     */
+    Page list(String cursor, int limit) throws IOException;
+
+    /**
+     * @return false, если чтение из хранилища уже не дороже чтения из {@code ImageCache}
+     * и копировать изображения в кэш не нужно
+     */
+    default boolean cacheable() {
+        return true;
+    }
+
+    /**
+     * Изображение в хранилище.
+     */
+    interface StoredImage {
+
+        /**
+         * @return содержимое; для файлового хранилища — файл на диске (отдаётся через sendfile)
+         */
+        Resource resource();
+
+        /**
+         * @return размер в байтах
+         */
+        long size();
+
+        /**
+         * @return время записи, мс
+         */
+        long lastModified();
+
+        /**
+         * @return сохранённый MIME-тип или null
+         * @throws IOException при ошибке чтения
+         */
+        String contentType() throws IOException;
+    }
+
+    /**
+     * Страница обхода хранилища.
+     */
+    final class Page {
+        private final List<String> ids;
+        private final String next;
+
+        public Page(List<String> ids, String next) {
+            this.ids = ids;
+            this.next = next;
+        }
+
+        /**
+         * @return идентификаторы изображений страницы
+         */
+        public List<String> ids() {
+            return ids;
+        }
+
+        /**
+         * @return курсор следующей страницы или null, если обход завершён
+         */
+        public String next() {
+            return next;
+        }
+    }
+}
@@ -0,0 +1,15 @@
+package ru.skypro.homework.service;
+
+/**
+ * Изображение корректного формата, но с числом пикселей больше images.upload.max-pixels.
+ * <p>
+ * Подкласс {@link IllegalArgumentException}: там, где отдельная обработка не нужна, он отклоняется
+ * как любое некорректное изображение (400), а контроллеры загрузки отвечают на него 413.
+ * </p>
+ */
+public class ImageTooLargeException extends IllegalArgumentException {
+
+    public ImageTooLargeException(String message) {
+        super(message);
+    }
+}
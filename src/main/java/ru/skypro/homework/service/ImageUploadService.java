@@ -0,0 +1,61 @@
+package ru.skypro.homework.service;
+
+import ru.skypro.homework.dto.UploadSession;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Поэтапная (возобновляемая) загрузка изображений, не связанная с созданием объявления.
+ * <p>
+ * Клиент создаёт сессию, передаёт содержимое частями с указанием смещения и завершает загрузку,
+ * получая идентификатор изображения. На этот идентификатор затем ссылаются при создании объявления
+ * или замене его изображения. Сессии доступны только создавшему их пользователю.
+ * </p>
+ */
+public interface ImageUploadService {
+
+    /**
+     * Создаёт сессию загрузки текущего пользователя. Формат изображения определяется по содержимому при завершении.
+     * @return новая сессия
+     * @throws IOException при ошибке записи сессии
+     */
+    UploadSession create() throws IOException;
+
+    /**
+     * @param id идентификатор сессии
+     * @return состояние сессии или null, если её нет (истекла или принадлежит другому пользователю)
+     * @throws IOException при ошибке чтения сессии
+     */
+    UploadSession get(String id) throws IOException;
+
+    /**
+     * Дописывает часть содержимого потоком, не собирая её в памяти.
+     * @param id идентификатор сессии
+     * @param offset смещение части; должно совпадать с количеством уже принятых байтов
+     * @param body содержимое части
+     * @return состояние сессии после записи или null, если сессии нет
+     * @throws IllegalStateException если смещение не совпадает, часть уже передаётся или загрузка завершена
+     * @throws IllegalArgumentException если изображение превышает допустимый размер
+     * @throws IOException при ошибке чтения запроса или записи на диск
+     */
+    UploadSession append(String id, long offset, InputStream body) throws IOException;
+
+    /**
+     * Завершает загрузку: содержимое сохраняется как изображение. Повторный вызов возвращает тот же результат.
+     * @param id идентификатор сессии
+     * @return сессия с идентификатором изображения или null, если сессии нет
+     * @throws IllegalStateException если часть ещё передаётся
+     * @throws IllegalArgumentException если ничего не загружено
+     * @throws IOException при ошибке чтения сессии
+     */
+    UploadSession complete(String id) throws IOException;
+
+    /**
+     * Отменяет загрузку и удаляет принятые данные.
+     * @param id идентификатор сессии
+     * @return false, если сессии нет
+     * @throws IOException при ошибке удаления
+     */
+    boolean cancel(String id) throws IOException;
+}
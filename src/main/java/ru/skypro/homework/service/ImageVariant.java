@@ -0,0 +1,68 @@
+package ru.skypro.homework.service;
+
+import java.util.Locale;
+
+/**
+ * Размерный вариант изображения (параметр size в GET /images/{id}).
+ * <p>
+ * Вариант вписывается в квадрат {@link #getMaxSide()} пикселей с сохранением пропорций,
+ * изображения меньше этого размера не увеличиваются.
+ * </p>
+ */
+public enum ImageVariant {
+    /**
+     * Миниатюра: аватары авторов в комментариях и в шапке.
+     */
+    THUMB(160),
+    /**
+     * Карточка объявления в ленте и в результатах поиска.
+     */
+    CARD(480),
+    /**
+     * Просмотр объявления целиком.
+     */
+    FULL(1280);
+
+    private final int maxSide;
+
+    ImageVariant(int maxSide) {
+        this.maxSide = maxSide;
+    }
+
+    /**
+     * @return максимальная сторона варианта в пикселях
+     */
+    public int getMaxSide() {
+        return maxSide;
+    }
+
+    /**
+     * @return значение параметра size для этого варианта
+     */
+    public String key() {
+        return name().toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Ссылка на вариант изображения для DTO.
+     * @param imageId идентификатор изображения (может быть null)
+     * @return /images/{id}?size={key} или null, если изображения нет
+     */
+    public String url(String imageId) {
+        return imageId != null ? "/images/" + imageId + "?size=" + key() : null;
+    }
+
+    /**
+     * Разбор значения параметра запроса.
+     * @param value thumb, card или full
+     * @return вариант изображения
+     * @throws IllegalArgumentException если значение неизвестно
+     */
+    public static ImageVariant of(String value) {
+        try {
+            return valueOf(value.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException | NullPointerException e) {
+            throw new IllegalArgumentException("Неизвестный размер изображения: " + value, e);
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package ru.skypro.homework.service;
+
+/**
+ * Версия ресурса для условных GET-запросов: строгий ETag и время последнего изменения.
+ */
+public final class ResourceVersion {
+
+    private final String etag;
+    private final long lastModified;
+
+    public ResourceVersion(String etag, long lastModified) {
+        this.etag = etag;
+        this.lastModified = lastModified;
+    }
+
+    /**
+     * @return строгий ETag в кавычках, например "1700000000000-42"
+     */
+    public String getEtag() {
+        return etag;
+    }
+
+    /**
+     * @return время последнего изменения в миллисекундах epoch
+     */
+    public long getLastModified() {
+        return lastModified;
+    }
+}
@@ -0,0 +1,29 @@
+package ru.skypro.homework.service;
+
+/**
+ * Заранее сериализованная страница ответа: JSON как есть и сжатый gzip.
+ */
+public final class SerializedPage {
+
+    private final byte[] identity;
+    private final byte[] gzip;
+
+    public SerializedPage(byte[] identity, byte[] gzip) {
+        this.identity = identity;
+        this.gzip = gzip;
+    }
+
+    /**
+     * @return тело ответа без сжатия (Content-Encoding: identity)
+     */
+    public byte[] getIdentity() {
+        return identity;
+    }
+
+    /**
+     * @return тело ответа, сжатое gzip (Content-Encoding: gzip)
+     */
+    public byte[] getGzip() {
+        return gzip;
+    }
+}
@@ -0,0 +1,7 @@
+package ru.skypro.homework.service.impl;
+
+/**
+ * Событие изменения ленты объявлений, публикуется {@link AdVersions} при каждом увеличении версии ленты.
+ */
+final class AdCatalogChangedEvent {
+}
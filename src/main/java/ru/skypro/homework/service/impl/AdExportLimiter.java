@@ -0,0 +1,76 @@
+package ru.skypro.homework.service.impl;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Ограничение числа одновременных выгрузок каталога (GET /ads/export).
+ * <p>
+ * Выгрузка держит транзакцию и соединение из пула на всё время передачи ответа клиенту, поэтому одновременно
+ * выполняется не больше ads.export.max-concurrent выгрузок. Остальные запросы не ждут и отклоняются сразу,
+ * чтобы медленные клиенты не заняли все соединения пула.
+ * </p>
+ * Метрики: ads.export.active и ads.export.rejected.
+ */
+@Component
+public class AdExportLimiter {
+
+    private final Semaphore permits;
+    private final int maxConcurrent;
+    private final Duration retryAfter;
+    private final Counter rejected;
+
+    public AdExportLimiter(MeterRegistry meterRegistry,
+                           @Value("${ads.export.max-concurrent:2}") int maxConcurrent,
+                           @Value("${ads.export.retry-after:30s}") Duration retryAfter) {
+        this.maxConcurrent = Math.max(1, maxConcurrent);
+        this.retryAfter = retryAfter;
+        this.permits = new Semaphore(this.maxConcurrent);
+        Gauge.builder("ads.export.active", this, AdExportLimiter::active)
+                .description("Выгрузки каталога, выполняющиеся сейчас")
+                .register(meterRegistry);
+        this.rejected = Counter.builder("ads.export.rejected")
+                .description("Выгрузки каталога, отклонённые из-за превышения лимита")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Занимает место для выгрузки без ожидания.
+     * После успешного вызова место обязательно освобождается через {@link #exit()}.
+     * @return true, если место получено; false, если лимит исчерпан
+     */
+    public boolean tryEnter() {
+        if (permits.tryAcquire()) {
+            return true;
+        }
+        rejected.increment();
+        return false;
+    }
+
+    /**
+     * Освобождает место, занятое {@link #tryEnter()}.
+     */
+    public void exit() {
+        permits.release();
+    }
+
+    /**
+     * @return количество выполняющихся выгрузок
+     */
+    public int active() {
+        return maxConcurrent - permits.availablePermits();
+    }
+
+    /**
+     * @return значение заголовка Retry-After (в секундах) для отклонённых запросов
+     */
+    public String retryAfterSeconds() {
+        return String.valueOf(Math.max(1, retryAfter.getSeconds()));
+    }
+}
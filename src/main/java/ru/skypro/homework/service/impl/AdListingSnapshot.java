@@ -0,0 +1,152 @@
+package ru.skypro.homework.service.impl;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import ru.skypro.homework.dto.Ads;
+import ru.skypro.homework.service.AdService;
+import ru.skypro.homework.service.SerializedPage;
+
+import javax.annotation.PreDestroy;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Снимок первых страниц публичной ленты (GET /ads без фильтров, сортировка newest, размер по умолчанию)
+ * в виде готовых байтов JSON и gzip.
+ * <p>
+ * Лента одинакова для всех анонимных клиентов, поэтому страницы сериализуются и сжимаются один раз,
+ * а запросы обслуживаются отдачей массива байтов — без запросов к БД, маппинга и Jackson.
+ * Снимок перестраивается в фоновом потоке после изменений ленты ({@link AdCatalogChangedEvent})
+ * с задержкой ads.snapshot.debounce, чтобы серия изменений приводила к одной перестройке.
+ * </p>
+ * Снимок привязан к версии ленты из {@link AdVersions}, на которой он был построен: пока после изменения
+ * не построен новый снимок, {@link #page(String)} возвращает null и запрос обслуживается обычным путём.
+ */
+@Slf4j
+@Component
+public class AdListingSnapshot {
+
+    private final ObjectProvider<AdService> adService;
+    private final ObjectMapper objectMapper;
+    private final AdVersions adVersions;
+    private final boolean enabled;
+    private final int pages;
+    private final Duration debounce;
+    private final ScheduledExecutorService executor;
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+
+    private volatile Snapshot current;
+
+    public AdListingSnapshot(ObjectProvider<AdService> adService,
+                             ObjectMapper objectMapper,
+                             AdVersions adVersions,
+                             @Value("${ads.snapshot.enabled:false}") boolean enabled,
+                             @Value("${ads.snapshot.pages:10}") int pages,
+                             @Value("${ads.snapshot.debounce:500ms}") Duration debounce) {
+        this.adService = adService;
+        this.objectMapper = objectMapper;
+        this.adVersions = adVersions;
+        this.enabled = enabled;
+        this.pages = pages;
+        this.debounce = debounce;
+        this.executor = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "ads-listing-snapshot");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Готовая страница ленты из снимка.
+     * @param cursor курсор страницы (null — первая страница)
+     * @return страница или null, если снимок выключен, устарел или не содержит такой страницы
+     */
+    public SerializedPage page(String cursor) {
+        Snapshot snapshot = current;
+        if (snapshot == null || !snapshot.version.equals(adVersions.catalog().getEtag())) {
+            return null;
+        }
+        return snapshot.pages.get(cursor != null ? cursor : "");
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onStartup() {
+        scheduleRebuild();
+    }
+
+    @EventListener
+    void onCatalogChanged(AdCatalogChangedEvent event) {
+        scheduleRebuild();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private void scheduleRebuild() {
+        if (enabled && scheduled.compareAndSet(false, true)) {
+            executor.schedule(this::rebuildQuietly, debounce.toMillis(), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void rebuildQuietly() {
+        scheduled.set(false);
+        try {
+            rebuild();
+        } catch (IOException | RuntimeException e) {
+            log.warn("Не удалось перестроить снимок ленты объявлений", e);
+        }
+    }
+
+    /**
+     * Строит снимок синхронно. Версия ленты читается до чтения данных, поэтому снимок,
+     * собранный во время незафиксированного изменения, получит промежуточную версию и не будет выдаваться.
+     * @throws IOException если не удалось сериализовать страницу
+     */
+    void rebuild() throws IOException {
+        String version = adVersions.catalog().getEtag();
+        AdService service = adService.getObject();
+        Map<String, SerializedPage> built = new HashMap<>();
+        String cursor = "";
+        for (int i = 0; i < pages && cursor != null; i++) {
+            Ads page = service.getAllAds(cursor.isEmpty() ? null : cursor, null, null, null, null);
+            built.put(cursor, serialize(page));
+            cursor = page.getNext();
+        }
+        current = new Snapshot(version, built);
+        log.debug("Снимок ленты объявлений перестроен: версия={}, страниц={}", version, built.size());
+    }
+
+    private SerializedPage serialize(Ads page) throws IOException {
+        byte[] identity = objectMapper.writeValueAsBytes(page);
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(identity.length / 4 + 64);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(compressed)) {
+            gzip.write(identity);
+        }
+        return new SerializedPage(identity, compressed.toByteArray());
+    }
+
+    private static final class Snapshot {
+        private final String version;
+        private final Map<String, SerializedPage> pages;
+
+        Snapshot(String version, Map<String, SerializedPage> pages) {
+            this.version = version;
+            this.pages = pages;
+        }
+    }
+}
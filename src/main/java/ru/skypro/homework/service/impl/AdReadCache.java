@@ -0,0 +1,111 @@
+package ru.skypro.homework.service.impl;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import ru.skypro.homework.dto.Ads;
+import ru.skypro.homework.dto.ExtendedAd;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Ограниченный in-process кэш чтений объявлений.
+ * <p>
+ * Хранит страницы ленты ({@link Ads}) по ключу запроса и карточки {@link ExtendedAd} по id объявления.
+ * Размер и время жизни записей задаются настройками ads.cache.*, статистика попаданий/промахов
+ * публикуется в Micrometer (метрики cache.* с тегом cache=ads.pages / ads.details).
+ * </p>
+ * Инвалидация:
+ * <ul>
+ *   <li>любое изменение объявления сбрасывает все страницы ленты и карточку этого объявления;</li>
+ *   <li>изменение профиля автора сбрасывает карточки его объявлений (в ExtendedAd есть имя, email, телефон).</li>
+ * </ul>
+ * Сброс выполняется после commit транзакции, чтобы конкурентное чтение не закэшировало старое значение.
+ */
+@Component
+public class AdReadCache {
+
+    private final Cache<String, Ads> pages;
+    private final Cache<Integer, ExtendedAd> details;
+
+    public AdReadCache(MeterRegistry meterRegistry,
+                       @Value("${ads.cache.pages.max-size:1000}") long pagesMaxSize,
+                       @Value("${ads.cache.details.max-size:10000}") long detailsMaxSize,
+                       @Value("${ads.cache.ttl:5m}") Duration ttl) {
+        this.pages = Caffeine.newBuilder()
+                .maximumSize(pagesMaxSize)
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build();
+        this.details = Caffeine.newBuilder()
+                .maximumSize(detailsMaxSize)
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, pages, "ads.pages");
+        CaffeineCacheMetrics.monitor(meterRegistry, details, "ads.details");
+    }
+
+    /**
+     * Страница ленты из кэша или из загрузчика при промахе.
+     * @param key ключ запроса (все параметры, влияющие на результат)
+     * @param loader загрузка страницы из БД
+     * @return страница объявлений
+     */
+    public Ads page(String key, Supplier<Ads> loader) {
+        return pages.get(key, k -> loader.get());
+    }
+
+    /**
+     * Карточка объявления из кэша или из загрузчика при промахе.
+     * @param id id объявления
+     * @param loader загрузка карточки из БД
+     * @return карточка объявления
+     */
+    public ExtendedAd detail(Integer id, Function<Integer, ExtendedAd> loader) {
+        return details.get(id, loader);
+    }
+
+    /**
+     * Сбросить ленту (после создания объявления).
+     */
+    public void invalidatePages() {
+        AfterCommit.run(pages::invalidateAll);
+    }
+
+    /**
+     * Сбросить ленту и карточку изменённого или удалённого объявления.
+     * @param adId id объявления
+     */
+    public void invalidateAd(Integer adId) {
+        AfterCommit.run(() -> {
+            details.invalidate(adId);
+            pages.invalidateAll();
+        });
+    }
+
+    /**
+     * Сбросить ленту и карточки нескольких объявлений (например, при удалении автора со всеми объявлениями).
+     * @param adIds id объявлений
+     */
+    public void invalidateAds(Collection<Integer> adIds) {
+        AfterCommit.run(() -> {
+            details.invalidateAll(adIds);
+            pages.invalidateAll();
+        });
+    }
+
+    /**
+     * Сбросить карточки объявлений автора после изменения его профиля.
+     * @param adIds id объявлений автора
+     */
+    public void invalidateDetails(Collection<Integer> adIds) {
+        AfterCommit.run(() -> details.invalidateAll(adIds));
+    }
+}
@@ -0,0 +1,607 @@
+package ru.skypro.homework.service.impl;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+import ru.skypro.homework.dto.Ad;
+import ru.skypro.homework.mapper.AdMapper;
+import ru.skypro.homework.model.AdEntity;
+import ru.skypro.homework.repository.AdIndexView;
+import ru.skypro.homework.repository.AdRepository;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * In-memory инвертированный индекс по заголовку и описанию объявлений для мгновенного поиска (search as you type).
+ * <p>
+ * Каждому слову соответствует отсортированный массив id объявлений (int[] без упаковки в Integer),
+ * рядом хранятся краткие карточки {@link Ad}, поэтому запрос к индексу не обращается к БД.
+ * Индекс строится при старте приложения: строки читаются серверным курсором порциями,
+ * разбор текста каждой порции выполняется параллельно. Дальше индекс поддерживается
+ * инкрементально из методов изменения объявлений (после commit транзакции).
+ * </p>
+ * Запрос:
+ * <ul>
+ *   <li>слова через пробел — пересечение (AND);</li>
+ *   <li>группы слов, разделённые OR или |, — объединение (OR);</li>
+ *   <li>последнее слово запроса (если строка не заканчивается пробелом) ищется по префиксу;</li>
+ *   <li>результаты фильтруются по цене и выдаются от новых к старым.</li>
+ * </ul>
+ * Запрос вычисляется лениво, от больших id к меньшим: пересечение — перескоками по спискам, объединение
+ * (группы OR и слова с общим префиксом) — слиянием через кучу. Обход начинается сразу с курсора
+ * keyset-пагинации и останавливается, как только набрано limit результатов, поэтому короткий префикс,
+ * которому соответствуют тысячи слов, не требует сливать их списки целиком.
+ * Метрики: ads.search.index.rebuild (время полной перестройки), ads.search.index.memory
+ * (оценка занимаемой памяти в байтах), ads.search.index.documents и ads.search.index.terms.
+ */
+@Slf4j
+@Component
+public class AdSearchIndex {
+
+    private static final int BATCH_SIZE = 10_000;
+    private static final int MIN_PREFIX_LENGTH = 2;
+    private static final Pattern SEPARATORS = Pattern.compile("[^\\p{L}\\p{Nd}]+");
+    /**
+     * Признак конца обхода в {@link Cursor#seek(int)}.
+     */
+    private static final int NONE = Integer.MIN_VALUE;
+
+    private final AdRepository adRepository;
+    private final AdMapper adMapper;
+    private final Timer rebuildTimer;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private Segment segment = new Segment();
+    /**
+     * Изменения, пришедшие во время полной перестройки; повторяются на новом сегменте перед его публикацией.
+     */
+    private List<Consumer<Segment>> pending;
+
+    public AdSearchIndex(AdRepository adRepository, AdMapper adMapper, MeterRegistry meterRegistry) {
+        this.adRepository = adRepository;
+        this.adMapper = adMapper;
+        this.rebuildTimer = Timer.builder("ads.search.index.rebuild")
+                .description("Время полной перестройки поискового индекса объявлений")
+                .register(meterRegistry);
+        Gauge.builder("ads.search.index.memory", this, AdSearchIndex::estimatedBytes)
+                .description("Оценка памяти, занимаемой поисковым индексом объявлений")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        Gauge.builder("ads.search.index.documents", this, AdSearchIndex::documentCount)
+                .register(meterRegistry);
+        Gauge.builder("ads.search.index.terms", this, AdSearchIndex::termCount)
+                .register(meterRegistry);
+    }
+
+    /**
+     * Полностью перестраивает индекс по данным БД.
+     * Поиск продолжает обслуживаться старым сегментом до публикации нового.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    @Transactional(readOnly = true)
+    public void rebuild() {
+        long start = System.nanoTime();
+        lock.writeLock().lock();
+        try {
+            pending = new ArrayList<>();
+        } finally {
+            lock.writeLock().unlock();
+        }
+        Segment fresh = new Segment();
+        try (Stream<AdIndexView> rows = adRepository.streamAllForIndex()) {
+            List<AdIndexView> batch = new ArrayList<>(BATCH_SIZE);
+            Iterator<AdIndexView> iterator = rows.iterator();
+            while (iterator.hasNext()) {
+                batch.add(iterator.next());
+                if (batch.size() == BATCH_SIZE) {
+                    fresh.appendAll(parse(batch));
+                    batch.clear();
+                }
+            }
+            fresh.appendAll(parse(batch));
+            fresh.trim();
+        } finally {
+            lock.writeLock().lock();
+            try {
+                if (fresh.trimmed) {
+                    pending.forEach(op -> op.accept(fresh));
+                    segment = fresh;
+                }
+                pending = null;
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+        long elapsed = System.nanoTime() - start;
+        rebuildTimer.record(elapsed, TimeUnit.NANOSECONDS);
+        log.info("Поисковый индекс объявлений перестроен за {} мс: документов={}, слов={}",
+                TimeUnit.NANOSECONDS.toMillis(elapsed), documentCount(), termCount());
+    }
+
+    /**
+     * Добавляет объявление в индекс или обновляет его (после commit текущей транзакции).
+     * Карточка и слова вычисляются сразу, пока сущность доступна в текущей сессии.
+     * @param entity сохранённое объявление
+     */
+    public void put(AdEntity entity) {
+        Doc doc = new Doc(adMapper.toDto(entity), terms(entity.getTitle(), entity.getDescription()));
+        AfterCommit.run(() -> apply(s -> s.put(doc)));
+    }
+
+    /**
+     * Удаляет объявление из индекса (после commit текущей транзакции).
+     * @param adId id объявления
+     */
+    public void remove(Integer adId) {
+        AfterCommit.run(() -> apply(s -> s.remove(adId)));
+    }
+
+    /**
+     * Удаляет несколько объявлений из индекса (после commit текущей транзакции).
+     * @param adIds id объявлений
+     */
+    public void removeAll(Collection<Integer> adIds) {
+        List<Integer> ids = List.copyOf(adIds);
+        AfterCommit.run(() -> apply(s -> ids.forEach(s::remove)));
+    }
+
+    /**
+     * Поиск по индексу.
+     * @param query поисковая строка
+     * @param minPrice минимальная цена включительно (null — без ограничения)
+     * @param maxPrice максимальная цена включительно (null — без ограничения)
+     * @param beforeId выдавать только объявления с id меньше заданного (keyset-пагинация)
+     * @param limit максимальное количество результатов
+     * @return карточки найденных объявлений от новых к старым
+     */
+    public List<Ad> search(String query, Integer minPrice, Integer maxPrice, int beforeId, int limit) {
+        List<List<String>> groups = parseQuery(query);
+        boolean prefixLast = !query.isEmpty() && !Character.isWhitespace(query.charAt(query.length() - 1));
+        lock.readLock().lock();
+        try {
+            List<Cursor> matched = new ArrayList<>(groups.size());
+            for (int g = 0; g < groups.size(); g++) {
+                Cursor group = segment.match(groups.get(g), prefixLast && g == groups.size() - 1);
+                if (group != null) {
+                    matched.add(group);
+                }
+            }
+            List<Ad> result = new ArrayList<>(Math.min(limit, segment.docs.size()));
+            if (matched.isEmpty() || beforeId == NONE) {
+                return result;
+            }
+            Cursor cursor = matched.size() == 1 ? matched.get(0) : new UnionCursor(matched);
+            for (int id = cursor.seek(beforeId - 1); id != NONE && result.size() < limit; id = next(cursor, id)) {
+                Ad card = segment.docs.get(id).card;
+                Integer price = card.getPrice();
+                if (minPrice != null && (price == null || price < minPrice)) {
+                    continue;
+                }
+                if (maxPrice != null && (price == null || price > maxPrice)) {
+                    continue;
+                }
+                result.add(card);
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private static int next(Cursor cursor, int id) {
+        return id == NONE + 1 ? NONE : cursor.seek(id - 1);
+    }
+
+    long estimatedBytes() {
+        lock.readLock().lock();
+        try {
+            return segment.estimatedBytes();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    int documentCount() {
+        lock.readLock().lock();
+        try {
+            return segment.docs.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    int termCount() {
+        lock.readLock().lock();
+        try {
+            return segment.postings.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void apply(Consumer<Segment> op) {
+        lock.writeLock().lock();
+        try {
+            op.accept(segment);
+            if (pending != null) {
+                pending.add(op);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private List<Doc> parse(List<AdIndexView> batch) {
+        return batch.parallelStream()
+                .map(row -> new Doc(adMapper.toDto(row), terms(row.getTitle(), row.getDescription())))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Разбивает текст на слова: нижний регистр, ё → е, разделители — всё, кроме букв и цифр.
+     * @param text исходный текст (может быть null)
+     * @return слова в порядке появления (с повторами)
+     */
+    static List<String> tokenize(String text) {
+        if (text == null || text.isBlank()) {
+            return List.of();
+        }
+        String normalized = text.toLowerCase(Locale.ROOT).replace('ё', 'е');
+        return Arrays.stream(SEPARATORS.split(normalized))
+                .filter(token -> !token.isEmpty())
+                .collect(Collectors.toList());
+    }
+
+    private static String[] terms(String title, String description) {
+        return Stream.concat(tokenize(title).stream(), tokenize(description).stream())
+                .distinct()
+                .toArray(String[]::new);
+    }
+
+    private static List<List<String>> parseQuery(String query) {
+        List<List<String>> groups = new ArrayList<>();
+        List<String> current = new ArrayList<>();
+        for (String word : query.trim().split("\\s+")) {
+            if (word.equals("OR") || word.equals("|")) {
+                if (!current.isEmpty()) {
+                    groups.add(current);
+                    current = new ArrayList<>();
+                }
+                continue;
+            }
+            current.addAll(tokenize(word));
+        }
+        if (!current.isEmpty()) {
+            groups.add(current);
+        }
+        return groups;
+    }
+
+    /**
+     * Набор документов с инвертированными списками; заменяется целиком при полной перестройке.
+     */
+    private static final class Segment {
+        private final NavigableMap<String, Postings> postings = new TreeMap<>();
+        private final Map<Integer, Doc> docs = new HashMap<>();
+        private boolean trimmed;
+
+        /**
+         * Добавление порции документов в порядке возрастания id (массовая загрузка, без сдвигов в массивах).
+         */
+        void appendAll(List<Doc> batch) {
+            for (Doc doc : batch) {
+                int id = doc.card.getPk();
+                docs.put(id, doc);
+                for (String term : doc.terms) {
+                    postings.computeIfAbsent(term, t -> new Postings()).append(id);
+                }
+            }
+        }
+
+        void trim() {
+            postings.values().forEach(Postings::trim);
+            trimmed = true;
+        }
+
+        void put(Doc doc) {
+            int id = doc.card.getPk();
+            remove(id);
+            docs.put(id, doc);
+            for (String term : doc.terms) {
+                postings.computeIfAbsent(term, t -> new Postings()).insert(id);
+            }
+        }
+
+        void remove(Integer id) {
+            Doc old = docs.remove(id);
+            if (old == null) {
+                return;
+            }
+            for (String term : old.terms) {
+                Postings list = postings.get(term);
+                if (list != null && list.remove(id) && list.size == 0) {
+                    postings.remove(term);
+                }
+            }
+        }
+
+        /**
+         * Документы, содержащие все слова группы; последнее слово при prefix=true ищется по префиксу.
+         * @return курсор по найденным документам или null, если какого-то слова нет в индексе
+         */
+        Cursor match(List<String> terms, boolean prefix) {
+            List<Cursor> lists = new ArrayList<>(terms.size());
+            for (int i = 0; i < terms.size(); i++) {
+                String term = terms.get(i);
+                Cursor list;
+                if (prefix && i == terms.size() - 1 && term.length() >= MIN_PREFIX_LENGTH) {
+                    list = prefixMatch(term);
+                } else {
+                    Postings postings = this.postings.get(term);
+                    list = postings != null ? new PostingsCursor(postings) : null;
+                }
+                if (list == null) {
+                    return null;
+                }
+                lists.add(list);
+            }
+            if (lists.isEmpty()) {
+                return null;
+            }
+            return lists.size() == 1 ? lists.get(0) : new IntersectCursor(lists);
+        }
+
+        private Cursor prefixMatch(String prefix) {
+            Collection<Postings> lists = postings.subMap(prefix, true, prefix + Character.MAX_VALUE, false).values();
+            if (lists.isEmpty()) {
+                return null;
+            }
+            List<Cursor> cursors = new ArrayList<>(lists.size());
+            for (Postings list : lists) {
+                cursors.add(new PostingsCursor(list));
+            }
+            return cursors.size() == 1 ? cursors.get(0) : new UnionCursor(cursors);
+        }
+
+        /**
+         * Грубая оценка: заголовки объектов, узлы TreeMap/HashMap, строки слов, массивы id и карточки.
+         */
+        long estimatedBytes() {
+            long bytes = 0;
+            for (Map.Entry<String, Postings> entry : postings.entrySet()) {
+                bytes += 40 + 40 + 2L * entry.getKey().length() + 32 + 4L * entry.getValue().ids.length;
+            }
+            for (Doc doc : docs.values()) {
+                String title = doc.card.getTitle();
+                bytes += 48 + 32 + 16 + 8L * doc.terms.length + 64 + 40 + (title != null ? 2L * title.length() : 0);
+            }
+            return bytes;
+        }
+    }
+
+    /**
+     * Отсортированный по возрастанию список id объявлений, содержащих слово.
+     */
+    private static final class Postings {
+        private int[] ids;
+        private int size;
+
+        Postings() {
+            this(new int[4], 0);
+        }
+
+        Postings(int[] ids, int size) {
+            this.ids = ids;
+            this.size = size;
+        }
+
+        void append(int id) {
+            ensureCapacity();
+            ids[size++] = id;
+        }
+
+        void insert(int id) {
+            int pos = Arrays.binarySearch(ids, 0, size, id);
+            if (pos >= 0) {
+                return;
+            }
+            pos = -(pos + 1);
+            ensureCapacity();
+            System.arraycopy(ids, pos, ids, pos + 1, size - pos);
+            ids[pos] = id;
+            size++;
+        }
+
+        boolean remove(int id) {
+            int pos = Arrays.binarySearch(ids, 0, size, id);
+            if (pos < 0) {
+                return false;
+            }
+            System.arraycopy(ids, pos + 1, ids, pos, size - pos - 1);
+            size--;
+            return true;
+        }
+
+        void trim() {
+            if (ids.length != size) {
+                ids = Arrays.copyOf(ids, size);
+            }
+        }
+
+        private void ensureCapacity() {
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, Math.max(4, size + (size >> 1)));
+            }
+        }
+    }
+
+    /**
+     * Обход найденных id по убыванию. Вызовы {@link #seek(int)} идут с невозрастающим max,
+     * поэтому каждый курсор продвигается только вперёд.
+     */
+    private interface Cursor {
+
+        /**
+         * @return наибольший найденный id, не превышающий max, или {@link #NONE}
+         */
+        int seek(int max);
+
+        /**
+         * @return оценка сверху числа найденных id (для порядка обхода при пересечении)
+         */
+        long estimate();
+    }
+
+    /**
+     * Курсор по одному списку: бинарный поиск в ещё не пройденной части.
+     */
+    private static final class PostingsCursor implements Cursor {
+        private final Postings list;
+        /**
+         * ids[0..end) ещё не пройдены; последний найденный id остаётся внутри, повторный seek его вернёт.
+         */
+        private int end;
+
+        PostingsCursor(Postings list) {
+            this.list = list;
+            this.end = list.size;
+        }
+
+        @Override
+        public int seek(int max) {
+            int pos = Arrays.binarySearch(list.ids, 0, end, max);
+            if (pos < 0) {
+                pos = -(pos + 1) - 1;
+            }
+            end = pos + 1;
+            return pos >= 0 ? list.ids[pos] : NONE;
+        }
+
+        @Override
+        public long estimate() {
+            return list.size;
+        }
+    }
+
+    /**
+     * Пересечение: перескоки по спискам, начиная с самого короткого, пока все не сойдутся на одном id.
+     */
+    private static final class IntersectCursor implements Cursor {
+        private final Cursor[] lists;
+
+        IntersectCursor(List<Cursor> lists) {
+            this.lists = lists.toArray(new Cursor[0]);
+            Arrays.sort(this.lists, Comparator.comparingLong(Cursor::estimate));
+        }
+
+        @Override
+        public int seek(int max) {
+            int candidate = lists[0].seek(max);
+            int agreed = 1;
+            for (int i = 1; candidate != NONE && agreed < lists.length; i = (i + 1) % lists.length) {
+                int id = lists[i].seek(candidate);
+                if (id == candidate) {
+                    agreed++;
+                } else {
+                    candidate = id;
+                    agreed = 1;
+                }
+            }
+            return candidate;
+        }
+
+        @Override
+        public long estimate() {
+            return lists[0].estimate();
+        }
+    }
+
+    /**
+     * Объединение: k-путевое слияние через кучу по текущему id каждого курсора.
+     * Продвигаются только курсоры, стоящие выше запрошенной границы.
+     */
+    private static final class UnionCursor implements Cursor {
+        private final List<Cursor> lists;
+        private final PriorityQueue<Head> heads;
+        private boolean started;
+
+        UnionCursor(List<Cursor> lists) {
+            this.lists = lists;
+            this.heads = new PriorityQueue<>(lists.size(), (a, b) -> Integer.compare(b.id, a.id));
+        }
+
+        @Override
+        public int seek(int max) {
+            if (!started) {
+                started = true;
+                for (Cursor list : lists) {
+                    offer(new Head(list), max);
+                }
+            }
+            while (!heads.isEmpty() && heads.peek().id > max) {
+                offer(heads.poll(), max);
+            }
+            return heads.isEmpty() ? NONE : heads.peek().id;
+        }
+
+        private void offer(Head head, int max) {
+            head.id = head.cursor.seek(max);
+            if (head.id != NONE) {
+                heads.add(head);
+            }
+        }
+
+        @Override
+        public long estimate() {
+            long total = 0;
+            for (Cursor list : lists) {
+                total += list.estimate();
+            }
+            return total;
+        }
+
+        private static final class Head {
+            private final Cursor cursor;
+            private int id;
+
+            Head(Cursor cursor) {
+                this.cursor = cursor;
+            }
+        }
+    }
+
+    /**
+     * Проиндексированный документ: карточка для выдачи и уникальные слова (нужны для удаления из списков).
+     */
+    private static final class Doc {
+        private final Ad card;
+        private final String[] terms;
+
+        Doc(Ad card, String[] terms) {
+            this.card = card;
+            this.terms = terms;
+        }
+    }
+}
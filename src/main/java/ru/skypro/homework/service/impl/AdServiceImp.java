@@ -1,6 +1,8 @@
 package ru.skypro.homework.service.impl;
 
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.security.access.AccessDeniedException;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
@@ -14,15 +16,22 @@ import ru.skypro.homework.model.AdEntity;
 import ru.skypro.homework.model.CommentEntity;
 import ru.skypro.homework.model.ImageEntity;
 import ru.skypro.homework.model.UserEntity;
+import ru.skypro.homework.repository.AdCardView;
 import ru.skypro.homework.repository.AdRepository;
+import ru.skypro.homework.repository.AdSearchHit;
 import ru.skypro.homework.repository.CommentRepository;
 import ru.skypro.homework.repository.UserRepository;
 import ru.skypro.homework.service.AdService;
+import ru.skypro.homework.service.ImageNotFoundException;
 import ru.skypro.homework.service.ImageService;
+import ru.skypro.homework.service.ResourceVersion;
+import ru.skypro.homework.service.SerializedPage;
 
 import java.util.List;
 import java.util.Optional;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 /**
  * Реализация сервиса для работы с объявлениями (AdService).
@@ -33,6 +42,10 @@ import java.util.stream.Collectors;
  *   <li>Работа с изображениями объявлений</li>
  *   <li>Получение объявлений и комментариев</li>
  *   <li>Проверка прав пользователя на действия</li>
+ *   <li>Кэширование ленты и карточек объявлений ({@link AdReadCache}) с инвалидацией при изменениях</li>
+ *   <li>Поддержка in-memory поискового индекса ({@link AdSearchIndex}) при изменениях</li>
+ *   <li>Версии ленты и карточек ({@link AdVersions}) для условных GET-запросов</li>
+ *   <li>Отдача первых страниц публичной ленты из готового снимка ({@link AdListingSnapshot})</li>
  * </ul>
  * <p>
  * Исключения:
@@ -52,30 +65,85 @@ public class AdServiceImp implements AdService {
     private final AdMapper adMapper;
     private final CommentMapper commentMapper;
     private final ImageService imageService;
+    private final AdReadCache adReadCache;
+    private final AdSearchIndex adSearchIndex;
+    private final AdVersions adVersions;
+    private final AdListingSnapshot adListingSnapshot;
+
+    @Value("${ads.page.default-size:20}")
+    private int defaultPageSize;
+
+    @Value("${ads.page.max-size:100}")
+    private int maxPageSize;
 
     public AdServiceImp(AdRepository adRepository,
                         CommentRepository commentRepository,
                         UserRepository userRepository,
                         AdMapper adMapper,
                         CommentMapper commentMapper,
-                        ImageService imageService) {
+                        ImageService imageService,
+                        AdReadCache adReadCache,
+                        AdSearchIndex adSearchIndex,
+                        AdVersions adVersions,
+                        AdListingSnapshot adListingSnapshot) {
         this.adRepository = adRepository;
         this.commentRepository = commentRepository;
         this.userRepository = userRepository;
         this.adMapper = adMapper;
         this.commentMapper = commentMapper;
         this.imageService = imageService;
+        this.adReadCache = adReadCache;
+        this.adSearchIndex = adSearchIndex;
+        this.adVersions = adVersions;
+        this.adListingSnapshot = adListingSnapshot;
     }
 
     /**
      * Создаёт новое объявление и сохраняет изображение, если оно передано.
+     * Объявление и изображение сохраняются в одной транзакции: отклонённое изображение не оставляет
+     * объявления без картинки.
      * @param properties DTO с данными объявления
      * @param image изображение объявления (может быть null)
      * @throws IllegalStateException если не найден текущий пользователь
-     * @throws IllegalArgumentException если properties отсутствует
+     * @throws IllegalArgumentException если properties отсутствует или файл не является изображением
+     * @throws ru.skypro.homework.service.ImageTooLargeException если изображение слишком большое
      */
     @Override
+    @Transactional
     public void addAd(CreateOrUpdateAd properties, MultipartFile image) {
+        AdEntity entity = newAd(properties);
+        adRepository.save(entity);
+        if (image != null && !image.isEmpty()) {
+            ImageEntity saved = imageService.save(image, "ad_" + entity.getId());
+            entity.setImage(saved);
+            adRepository.save(entity);
+        }
+        adReadCache.invalidatePages();
+        adVersions.touch(entity.getId());
+        adSearchIndex.put(entity);
+    }
+
+    /**
+     * Создаёт объявление с изображением, загруженным заранее через сессию загрузки.
+     * Объявление и ссылка на изображение сохраняются в одной транзакции.
+     * @param properties DTO с данными объявления
+     * @param imageId идентификатор изображения из завершённой загрузки
+     * @throws IllegalStateException если не найден текущий пользователь
+     * @throws IllegalArgumentException если properties отсутствует или imageId недопустимого вида
+     * @throws ImageNotFoundException если изображения нет
+     */
+    @Override
+    @Transactional
+    public void addAdWithUploadedImage(CreateOrUpdateAd properties, String imageId) {
+        AdEntity entity = newAd(properties);
+        entity.setImage(imageService.reference(imageId));
+        adRepository.save(entity);
+        adReadCache.invalidatePages();
+        adVersions.touch(entity.getId());
+        adSearchIndex.put(entity);
+    }
+
+    private AdEntity newAd(CreateOrUpdateAd properties) {
         UserEntity author = getCurrentUser();
         if (author == null) {
             throw new IllegalStateException("Текущий пользователь не найден");
@@ -83,43 +151,232 @@ public class AdServiceImp implements AdService {
         if (properties == null) {
             throw new IllegalArgumentException("Данные объявления отсутствуют");
         }
-        AdEntity entity = adMapper.fromCreate(properties, author);
-        adRepository.save(entity);
-        if (image != null && !image.isEmpty()) {
-            ImageEntity saved = imageService.save(image, "ad_" + entity.getId());
-            entity.setImage(saved);
-            adRepository.save(entity);
-        }
+        return adMapper.fromCreate(properties, author);
     }
 
     /**
-     * Возвращает все объявления.
-     * @return DTO Ads с коллекцией объявлений
+     * Возвращает страницу объявлений с фильтром по цене в заданном порядке.
+     * <p>
+     * Используется keyset-пагинация: курсор хранит ключ сортировки последнего объявления страницы
+     * (id для newest, пару price + id для сортировки по цене), поэтому стоимость запроса
+     * не зависит от того, насколько далеко клиент пролистал ленту. Сортировка по цене
+     * обслуживается составным индексом (price, id).
+     * Запрашивается на одну строку больше размера страницы, чтобы понять, есть ли продолжение.
+     * Строки читаются проекцией {@link AdCardView} одним запросом, без гидрации сущностей.
+     * Готовые страницы кэшируются в {@link AdReadCache}; при попадании в кэш транзакция и соединение с БД не нужны.
+     * </p>
+     * @param cursor курсор следующей страницы (null — первая страница)
+     * @param size размер страницы (null — по умолчанию, не больше ads.page.max-size)
+     * @param minPrice минимальная цена (null — без ограничения)
+     * @param maxPrice максимальная цена (null — без ограничения)
+     * @param sort newest, price_asc или price_desc (null — newest)
+     * @return DTO Ads со страницей объявлений и курсором next
+     * @throws IllegalArgumentException если курсор или порядок сортировки некорректны
      */
     @Override
-    @Transactional(readOnly = true)
-    public Ads getAllAds() {
-        List<Ad> list = adRepository.findAll().stream()
+    public Ads getAllAds(String cursor, Integer size, Integer minPrice, Integer maxPrice, String sort) {
+        int limit = pageSize(size);
+        AdSort order = AdSort.of(sort);
+        String key = order.key() + "|" + (cursor != null ? cursor : "") + "|" + limit
+                + "|" + (minPrice != null ? minPrice : "") + "|" + (maxPrice != null ? maxPrice : "");
+        return adReadCache.page(key, () -> loadPage(cursor, limit, minPrice, maxPrice, order));
+    }
+
+    private Ads loadPage(String cursor, int limit, Integer minPrice, Integer maxPrice, AdSort order) {
+        boolean hasCursor = cursor != null && !cursor.isBlank();
+        int min = minPrice != null ? minPrice : Integer.MIN_VALUE;
+        int max = maxPrice != null ? maxPrice : Integer.MAX_VALUE;
+        PageRequest pageable = PageRequest.of(0, limit + 1);
+        List<AdCardView> rows;
+        switch (order) {
+            case PRICE_ASC: {
+                KeysetCursor after = hasCursor ? KeysetCursor.decode(cursor, order.key(), 2) : null;
+                rows = adRepository.findCardsByPriceAscAfter(
+                        after != null ? after.intAt(0) : min,
+                        after != null ? after.intAt(1) : Integer.MIN_VALUE,
+                        max, pageable);
+                break;
+            }
+            case PRICE_DESC: {
+                KeysetCursor after = hasCursor ? KeysetCursor.decode(cursor, order.key(), 2) : null;
+                rows = adRepository.findCardsByPriceDescAfter(
+                        after != null ? after.intAt(0) : max,
+                        after != null ? after.intAt(1) : Integer.MAX_VALUE,
+                        min, pageable);
+                break;
+            }
+            default: {
+                int afterId = hasCursor ? KeysetCursor.decode(cursor, "id", 1).intAt(0) : Integer.MAX_VALUE;
+                rows = minPrice == null && maxPrice == null
+                        ? adRepository.findCardsBefore(afterId, pageable)
+                        : adRepository.findCardsBeforeInPriceRange(afterId, min, max, pageable);
+            }
+        }
+        boolean hasNext = rows.size() > limit;
+        List<AdCardView> page = hasNext ? rows.subList(0, limit) : rows;
+        List<Ad> list = page.stream()
                 .map(adMapper::toDto)
                 .collect(Collectors.toList());
         Ads wrapper = new Ads();
         wrapper.setResults(list);
         wrapper.setCount(list.size());
+        if (hasNext) {
+            AdCardView last = page.get(page.size() - 1);
+            wrapper.setNext(order == AdSort.NEWEST
+                    ? KeysetCursor.encode("id", last.getPk())
+                    : KeysetCursor.encode(order.key(), last.getPrice(), last.getPk()));
+        }
+        return wrapper;
+    }
+
+    /**
+     * Страница публичной ленты из снимка: только для ленты без фильтров по цене,
+     * в порядке newest и с размером страницы по умолчанию.
+     * @param cursor курсор страницы
+     * @param size размер страницы
+     * @param minPrice минимальная цена
+     * @param maxPrice максимальная цена
+     * @param sort порядок выдачи
+     * @return страница из снимка или null
+     * @throws IllegalArgumentException если порядок сортировки некорректен
+     */
+    @Override
+    public SerializedPage getListingSnapshot(String cursor, Integer size, Integer minPrice, Integer maxPrice, String sort) {
+        if (minPrice != null || maxPrice != null || AdSort.of(sort) != AdSort.NEWEST || pageSize(size) != pageSize(null)) {
+            return null;
+        }
+        return adListingSnapshot.page(cursor);
+    }
+
+    /**
+     * Версия ленты: меняется при любом изменении объявлений, не требует обращения к БД.
+     * @return версия ленты объявлений
+     */
+    @Override
+    public ResourceVersion getCatalogVersion() {
+        return adVersions.catalog();
+    }
+
+    /**
+     * Версия карточки объявления: меняется при изменении объявления или профиля его автора.
+     * @param id идентификатор объявления
+     * @return версия карточки
+     */
+    @Override
+    public ResourceVersion getAdVersion(Integer id) {
+        return adVersions.ad(id);
+    }
+
+    /**
+     * Полнотекстовый поиск по заголовку и описанию (PostgreSQL tsvector + GIN-индекс).
+     * <p>
+     * Результаты упорядочены по релевантности, затем по id; курсор хранит пару (rank, id) последнего
+     * результата страницы. Пустой запрос возвращает пустую страницу без обращения к БД.
+     * </p>
+     * @param query поисковая строка
+     * @param cursor курсор следующей страницы (null — первая страница)
+     * @param size размер страницы
+     * @return DTO Ads с найденными объявлениями
+     * @throws IllegalArgumentException если курсор некорректен
+     */
+    @Override
+    public Ads searchAds(String query, String cursor, Integer size) {
+        int limit = pageSize(size);
+        if (query == null || query.isBlank()) {
+            Ads empty = new Ads();
+            empty.setResults(List.of());
+            empty.setCount(0);
+            return empty;
+        }
+        String normalized = query.trim();
+        String key = "search|" + normalized + "|" + (cursor != null ? cursor : "") + "|" + limit;
+        return adReadCache.page(key, () -> loadSearchPage(normalized, cursor, limit));
+    }
+
+    private Ads loadSearchPage(String query, String cursor, int limit) {
+        double afterRank = Double.MAX_VALUE;
+        int afterId = Integer.MAX_VALUE;
+        if (cursor != null && !cursor.isBlank()) {
+            KeysetCursor decoded = KeysetCursor.decode(cursor, "rank", 2);
+            afterRank = decoded.doubleAt(0);
+            afterId = decoded.intAt(1);
+        }
+        List<AdSearchHit> rows = adRepository.search(query, afterRank, afterId, limit + 1);
+        boolean hasNext = rows.size() > limit;
+        List<AdSearchHit> page = hasNext ? rows.subList(0, limit) : rows;
+        Ads wrapper = new Ads();
+        wrapper.setResults(page.stream().map(adMapper::toDto).collect(Collectors.toList()));
+        wrapper.setCount(page.size());
+        if (hasNext) {
+            AdSearchHit last = page.get(page.size() - 1);
+            wrapper.setNext(KeysetCursor.encode("rank", last.getRank(), last.getPk()));
+        }
+        return wrapper;
+    }
+
+    /**
+     * Мгновенный поиск по in-memory индексу {@link AdSearchIndex} без обращения к БД.
+     * <p>
+     * Слова запроса пересекаются (AND), группы через OR объединяются, последнее слово ищется по префиксу.
+     * Результаты идут от новых к старым; курсор хранит id последнего объявления страницы.
+     * </p>
+     * @param query поисковая строка
+     * @param minPrice минимальная цена (null — без ограничения)
+     * @param maxPrice максимальная цена (null — без ограничения)
+     * @param cursor курсор следующей страницы (null — первая страница)
+     * @param size размер страницы
+     * @return DTO Ads с найденными объявлениями
+     * @throws IllegalArgumentException если курсор некорректен
+     */
+    @Override
+    public Ads suggestAds(String query, Integer minPrice, Integer maxPrice, String cursor, Integer size) {
+        int limit = pageSize(size);
+        Ads wrapper = new Ads();
+        if (query == null || query.isBlank()) {
+            wrapper.setResults(List.of());
+            wrapper.setCount(0);
+            return wrapper;
+        }
+        int beforeId = cursor != null && !cursor.isBlank()
+                ? KeysetCursor.decode(cursor, "suggest", 1).intAt(0)
+                : Integer.MAX_VALUE;
+        List<Ad> rows = adSearchIndex.search(query, minPrice, maxPrice, beforeId, limit + 1);
+        boolean hasNext = rows.size() > limit;
+        List<Ad> page = hasNext ? rows.subList(0, limit) : rows;
+        wrapper.setResults(page);
+        wrapper.setCount(page.size());
+        if (hasNext) {
+            wrapper.setNext(KeysetCursor.encode("suggest", page.get(page.size() - 1).getPk()));
+        }
         return wrapper;
     }
 
+    /**
+     * Выгружает карточки всех объявлений через серверный курсор.
+     * Память не зависит от размера таблицы: проекции не попадают в контекст персистентности,
+     * а JDBC-драйвер держит только текущую порцию строк (fetch size).
+     * @param consumer получатель карточек
+     */
+    @Override
+    @Transactional(readOnly = true)
+    public void exportAds(Consumer<Ad> consumer) {
+        try (Stream<AdCardView> cards = adRepository.streamAllCards()) {
+            cards.map(adMapper::toDto).forEach(consumer);
+        }
+    }
+
     /**
      * Возвращает расширенную информацию по объявлению по id.
+     * Карточка читается через {@link AdReadCache}; при промахе объявление загружается вместе с автором одним запросом.
      * @param id идентификатор объявления
      * @return DTO ExtendedAd
      * @throws IllegalArgumentException если объявление не найдено
      */
     @Override
-    @Transactional(readOnly = true)
     public ExtendedAd getAdById(Integer id) {
-        AdEntity entity = adRepository.findById(id)
-                .orElseThrow(() -> new IllegalArgumentException("Объявление не найдено"));
-        return adMapper.toExtendedDto(entity);
+        return adReadCache.detail(id, adId -> adRepository.findDetailedById(adId)
+                .map(adMapper::toExtendedDto)
+                .orElseThrow(() -> new IllegalArgumentException("Объявление не найдено")));
     }
 
     /**
@@ -129,6 +386,7 @@ public class AdServiceImp implements AdService {
      * @throws AccessDeniedException если недостаточно прав
      */
     @Override
+    @Transactional
     public void removeAd(Integer id) {
         AdEntity entity = adRepository.findById(id)
                 .orElseThrow(() -> new IllegalArgumentException("Объявление не найдено"));
@@ -140,6 +398,9 @@ public class AdServiceImp implements AdService {
             imageService.delete(entity.getImage().getId());
         }
         adRepository.delete(entity);
+        adReadCache.invalidateAd(id);
+        adVersions.touch(id);
+        adSearchIndex.remove(id);
     }
 
     /**
@@ -165,6 +426,9 @@ public class AdServiceImp implements AdService {
         log.debug("Обновление объявления id={} новым title='{}', price={}, desc length={}", id, updatedData.getTitle(), updatedData.getPrice(), updatedData.getDescription() != null ? updatedData.getDescription().length() : 0);
         adMapper.updateEntity(updatedData, entity);
         adRepository.save(entity);
+        adReadCache.invalidateAd(id);
+        adVersions.touch(id);
+        adSearchIndex.put(entity);
         Ad dto = adMapper.toDto(entity);
         if (dto.getImage() == null) {
             dto.setImage("");
@@ -184,7 +448,7 @@ public class AdServiceImp implements AdService {
         if (current == null) {
             throw new IllegalStateException("Текущий пользователь не найден");
         }
-        List<Ad> ads = adRepository.findAllByAuthor_Id(current.getId()).stream()
+        List<Ad> ads = adRepository.findCardsByAuthor(current.getId()).stream()
                 .map(adMapper::toDto)
                 .collect(Collectors.toList());
         Ads wrapper = new Ads();
@@ -194,28 +458,57 @@ public class AdServiceImp implements AdService {
     }
 
     /**
-     * Обновляет изображение объявления.
+     * Обновляет изображение объявления. Замена выполняется в одной транзакции: файл прежнего изображения
+     * удаляется в фоне только после её фиксации.
      * @param id идентификатор объявления
      * @param file новое изображение
      * @return DTO Ad
-     * @throws IllegalArgumentException если объявление не найдено или файл пустой
+     * @throws IllegalArgumentException если объявление не найдено, файл пустой или не является изображением
      * @throws AccessDeniedException если недостаточно прав
      */
     @Override
+    @Transactional
     public Ad updateImage(Integer id, MultipartFile file) {
+        AdEntity entity = findForImageUpdate(id);
+        if (file == null || file.isEmpty()) {
+            throw new IllegalArgumentException("Файл изображения пустой");
+        }
+        return replaceImage(entity, imageService.save(file, "ad_" + entity.getId()));
+    }
+
+    /**
+     * Заменяет изображение объявления изображением, загруженным заранее через сессию загрузки.
+     * @param id идентификатор объявления
+     * @param imageId идентификатор изображения из завершённой загрузки
+     * @return DTO Ad
+     * @throws IllegalArgumentException если объявление не найдено или imageId недопустимого вида
+     * @throws ImageNotFoundException если изображения нет
+     * @throws AccessDeniedException если недостаточно прав
+     */
+    @Override
+    @Transactional
+    public Ad updateImageFromUpload(Integer id, String imageId) {
+        AdEntity entity = findForImageUpdate(id);
+        return replaceImage(entity, imageService.reference(imageId));
+    }
+
+    private AdEntity findForImageUpdate(Integer id) {
         AdEntity entity = adRepository.findById(id)
                 .orElseThrow(() -> new IllegalArgumentException("Объявление не найдено"));
         UserEntity current = getCurrentUser();
         if (!canModify(entity, current)) {
             throw new AccessDeniedException("Недостаточно прав для обновления изображения объявления");
         }
-        if (file == null || file.isEmpty()) {
-            throw new IllegalArgumentException("Файл изображения пустой");
-        }
+        return entity;
+    }
+
+    private Ad replaceImage(AdEntity entity, ImageEntity newImage) {
         ImageEntity oldImage = entity.getImage();
-        ImageEntity newImage = imageService.save(file, "ad_" + entity.getId());
         entity.setImage(newImage);
         adRepository.save(entity);
+        adReadCache.invalidateAd(entity.getId());
+        adVersions.touch(entity.getId());
+        adSearchIndex.put(entity);
         if (oldImage != null) {
             imageService.delete(oldImage.getId());
         }
@@ -303,6 +596,13 @@ public class AdServiceImp implements AdService {
         commentRepository.delete(entity);
     }
 
+    private int pageSize(Integer requested) {
+        if (requested == null || requested <= 0) {
+            return Math.min(defaultPageSize, maxPageSize);
+        }
+        return Math.min(requested, maxPageSize);
+    }
+
     private UserEntity getCurrentUser() {
         Authentication auth = SecurityContextHolder.getContext().getAuthentication();
         if (auth == null || auth.getName() == null) {
@@ -0,0 +1,46 @@
+package ru.skypro.homework.service.impl;
+
+import java.util.Locale;
+
+/**
+ * Порядок выдачи ленты объявлений (параметр sort в GET /ads).
+ * Имя порядка в нижнем регистре одновременно служит типом keyset-курсора.
+ */
+enum AdSort {
+    /**
+     * От новых к старым (по id), используется по умолчанию.
+     */
+    NEWEST,
+    /**
+     * По возрастанию цены, при равной цене — по возрастанию id.
+     */
+    PRICE_ASC,
+    /**
+     * По убыванию цены, при равной цене — по убыванию id.
+     */
+    PRICE_DESC;
+
+    /**
+     * Разбор значения параметра запроса.
+     * @param value newest, price_asc или price_desc (null или пустая строка — newest)
+     * @return порядок выдачи
+     * @throws IllegalArgumentException если значение неизвестно
+     */
+    static AdSort of(String value) {
+        if (value == null || value.isBlank()) {
+            return NEWEST;
+        }
+        try {
+            return valueOf(value.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Неизвестный порядок сортировки: " + value, e);
+        }
+    }
+
+    /**
+     * @return значение параметра sort (и тип курсора) для этого порядка
+     */
+    String key() {
+        return name().toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,128 @@
+package ru.skypro.homework.service.impl;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Component;
+import ru.skypro.homework.service.ResourceVersion;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Версии каталога и отдельных объявлений для ETag / Last-Modified.
+ * <p>
+ * Каждое изменение объявления увеличивает общий счётчик; версия каталога — текущее значение счётчика,
+ * версия объявления — значение счётчика при его последнем изменении (или стартовая версия,
+ * если объявление не менялось с момента запуска). В ETag входит время запуска узла,
+ * поэтому после перезапуска все ранее выданные ETag становятся недействительными.
+ * </p>
+ * Версия увеличивается дважды: сразу (чтобы ответы, собранные до commit, не получили итоговую версию)
+ * и после commit — после сброса {@link AdReadCache}, чтобы итоговая версия выдавалась только со свежими данными.
+ * Поэтому вызывать методы touch нужно после соответствующей инвалидации кэша.
+ * При изменении версии ленты публикуется {@link AdCatalogChangedEvent}.
+ * <p>
+ * Хранится не больше ads.versions.max-size версий карточек. Для вытесненного объявления (как и для
+ * не менявшегося) выдаётся наибольшая из вытесненных версий: она не меньше настоящей версии карточки,
+ * поэтому вытеснение может лишь заставить клиента заново получить карточку, но не вернёт 304 на изменённую.
+ * </p>
+ */
+@Component
+public class AdVersions {
+
+    private final ApplicationEventPublisher eventPublisher;
+    private final long epoch = System.currentTimeMillis();
+    private final ResourceVersion initial = new ResourceVersion(etag(0), epoch);
+    private final Cache<Integer, Version> ads;
+    private final AtomicReference<Version> evicted = new AtomicReference<>(new Version(0, initial));
+    private long counter;
+    private volatile ResourceVersion catalog = initial;
+
+    public AdVersions(ApplicationEventPublisher eventPublisher,
+                      @Value("${ads.versions.max-size:100000}") long maxSize) {
+        this.eventPublisher = eventPublisher;
+        // вытеснение выполняется в потоке записи, чтобы размер не превышал предел между обслуживаниями кэша
+        this.ads = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .executor(Runnable::run)
+                .<Integer, Version>evictionListener((id, version, cause) ->
+                        evicted.accumulateAndGet(version, (a, b) -> b.number > a.number ? b : a))
+                .build();
+    }
+
+    /**
+     * @return текущая версия ленты объявлений
+     */
+    public ResourceVersion catalog() {
+        return catalog;
+    }
+
+    /**
+     * @param adId id объявления
+     * @return текущая версия карточки объявления
+     */
+    public ResourceVersion ad(Integer adId) {
+        Version version = ads.getIfPresent(adId);
+        return (version != null ? version : evicted.get()).value;
+    }
+
+    /**
+     * Отмечает изменение объявления: меняются версии ленты и карточки.
+     * @param adId id объявления
+     */
+    public void touch(Integer adId) {
+        touchAll(List.of(adId));
+    }
+
+    /**
+     * Отмечает изменение нескольких объявлений: меняются версии ленты и их карточек.
+     * @param adIds id объявлений
+     */
+    public void touchAll(Collection<Integer> adIds) {
+        List<Integer> ids = List.copyOf(adIds);
+        bump(ids, true);
+        AfterCommit.run(() -> bump(ids, true));
+    }
+
+    /**
+     * Отмечает изменение только карточек (например, профиля автора), лента не меняется.
+     * @param adIds id объявлений
+     */
+    public void touchDetails(Collection<Integer> adIds) {
+        List<Integer> ids = List.copyOf(adIds);
+        bump(ids, false);
+        AfterCommit.run(() -> bump(ids, false));
+    }
+
+    private void bump(List<Integer> adIds, boolean catalogChanged) {
+        synchronized (this) {
+            Version next = new Version(++counter, new ResourceVersion(etag(counter), System.currentTimeMillis()));
+            adIds.forEach(id -> ads.put(id, next));
+            if (catalogChanged) {
+                catalog = next.value;
+            }
+        }
+        if (catalogChanged) {
+            eventPublisher.publishEvent(new AdCatalogChangedEvent());
+        }
+    }
+
+    private String etag(long version) {
+        return "\"" + epoch + "-" + version + "\"";
+    }
+
+    /**
+     * Версия с номером изменения, по которому сравниваются вытесненные версии.
+     */
+    private static final class Version {
+        private final long number;
+        private final ResourceVersion value;
+
+        Version(long number, ResourceVersion value) {
+            this.number = number;
+            this.value = value;
+        }
+    }
+}
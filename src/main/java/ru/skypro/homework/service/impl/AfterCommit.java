@@ -0,0 +1,34 @@
+package ru.skypro.homework.service.impl;
+
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Откладывает действие до успешной фиксации текущей транзакции.
+ * <p>
+ * Если метод вызван вне транзакции (изменения уже зафиксированы репозиторием), действие выполняется сразу.
+ * При откате транзакции действие не выполняется.
+ * </p>
+ */
+final class AfterCommit {
+
+    private AfterCommit() {
+    }
+
+    /**
+     * Выполнить действие после commit текущей транзакции (или сразу, если транзакции нет).
+     * @param action действие
+     */
+    static void run(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
+    }
+}
@@ -0,0 +1,88 @@
+package ru.skypro.homework.service.impl;
+
+import org.springframework.core.io.AbstractResource;
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Ресурс, читающий содержимое изображения прямо из буфера (direct или отображённого в память),
+ * без копирования в heap. Поддерживает частичное чтение через skip (ответы на запросы с Range).
+ */
+final class ByteBufferResource extends AbstractResource {
+
+    private final ByteBuffer data;
+    private final String filename;
+
+    /**
+     * @param data содержимое: весь буфер от 0 до capacity
+     * @param filename имя файла для ответа
+     */
+    ByteBufferResource(ByteBuffer data, String filename) {
+        this.data = data;
+        this.filename = filename;
+    }
+
+    @Override
+    public boolean exists() {
+        return true;
+    }
+
+    @Override
+    public long contentLength() {
+        return data.capacity();
+    }
+
+    @Override
+    public String getFilename() {
+        return filename;
+    }
+
+    @Override
+    public String getDescription() {
+        return "image buffer [" + filename + "]";
+    }
+
+    @Override
+    public InputStream getInputStream() {
+        return new BufferInputStream(data.duplicate());
+    }
+
+    private static final class BufferInputStream extends InputStream {
+        private final ByteBuffer buffer;
+
+        BufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] bytes, int off, int len) {
+            if (len == 0) {
+                return 0;
+            }
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            int n = Math.min(len, buffer.remaining());
+            buffer.get(bytes, off, n);
+            return n;
+        }
+
+        @Override
+        public long skip(long n) {
+            int skipped = (int) Math.max(0, Math.min(n, buffer.remaining()));
+            buffer.position(buffer.position() + skipped);
+            return skipped;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+    }
+}
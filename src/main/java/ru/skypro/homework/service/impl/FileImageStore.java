@@ -0,0 +1,186 @@
+package ru.skypro.homework.service.impl;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.stereotype.Component;
+import ru.skypro.homework.service.ImageStore;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.regex.Pattern;
+
+/**
+ * Файловое хранилище изображений: файл на изображение в каталоге images.upload.dir
+ * в шардированной раскладке {@link ImageStoreLayout}.
+ * <p>
+ * Наличие изображения определяется одним чтением атрибутов на путь: сначала в шардированной раскладке,
+ * затем в плоской и ещё раз в шардированной (файл мог перенести {@link ImageStoreMigration}).
+ * MIME-тип, если он передан при записи, лежит рядом с файлом в {id}.type.
+ * </p>
+ */
+@Component
+@ConditionalOnProperty(name = "images.store.type", havingValue = "file", matchIfMissing = true)
+public class FileImageStore implements ImageStore {
+
+    private static final Pattern SHARD_DIR = Pattern.compile("[0-9a-f]{2}");
+
+    private final Path root;
+
+    public FileImageStore(@Value("${images.upload.dir:images}") String imagesDir) {
+        this.root = Paths.get(imagesDir);
+    }
+
+    /**
+     * Переименовывает временный файл в итоговый путь. Файл с тем же содержимым мог остаться от прежней записи —
+     * переименование поверх существующего безопасно, байты совпадают.
+     */
+    @Override
+    public void put(String id, Path source, String contentType) throws IOException {
+        Path target = ImageStoreLayout.path(root, id);
+        Files.createDirectories(target.getParent());
+        if (contentType != null) {
+            writeType(target, contentType);
+        }
+        Files.move(source, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    @Override
+    public StoredImage get(String id) throws IOException {
+        Path sharded = ImageStoreLayout.path(root, id);
+        for (Path path : new Path[]{sharded, ImageStoreLayout.legacyPath(root, id), sharded}) {
+            try {
+                BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+                if (attributes.isRegularFile()) {
+                    return new FileImage(path, attributes);
+                }
+            } catch (NoSuchFileException e) {
+                // пробуем следующий путь
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Обходит шардированную раскладку по каталогам второго уровня в порядке имён; курсор — последний пройденный
+     * каталог вида ab/cd. Каталог читается целиком, поэтому страница может быть больше limit. Файлы плоской
+     * раскладки не обходятся: их переносит {@link ImageStoreMigration}.
+     */
+    @Override
+    public Page list(String cursor, int limit) throws IOException {
+        List<String> ids = new ArrayList<>();
+        for (String top : shardDirs(root)) {
+            if (cursor != null && top.compareTo(cursor.substring(0, 2)) < 0) {
+                continue;
+            }
+            for (String leaf : shardDirs(root.resolve(top))) {
+                String shard = top + "/" + leaf;
+                if (cursor != null && shard.compareTo(cursor) <= 0) {
+                    continue;
+                }
+                // в каталоге шарда лежит и подкаталог вариантов, он не изображение
+                try (DirectoryStream<Path> files = Files.newDirectoryStream(root.resolve(top).resolve(leaf),
+                        Files::isRegularFile)) {
+                    for (Path file : files) {
+                        String id = file.getFileName().toString();
+                        if (!id.endsWith(".part") && !id.endsWith(ImageStoreLayout.TYPE_SUFFIX)) {
+                            ids.add(id);
+                        }
+                    }
+                }
+                if (ids.size() >= limit) {
+                    return new Page(ids, shard);
+                }
+            }
+        }
+        return new Page(ids, null);
+    }
+
+    @Override
+    public void delete(String id) throws IOException {
+        for (Path path : List.of(ImageStoreLayout.path(root, id), ImageStoreLayout.legacyPath(root, id))) {
+            Files.deleteIfExists(path);
+            Files.deleteIfExists(ImageStoreLayout.typePath(path));
+        }
+    }
+
+    /**
+     * @return имена подкаталогов шардированной раскладки (две hex-цифры) в порядке возрастания
+     */
+    private static List<String> shardDirs(Path dir) throws IOException {
+        List<String> names = new ArrayList<>();
+        if (!Files.isDirectory(dir)) {
+            return names;
+        }
+        try (DirectoryStream<Path> dirs = Files.newDirectoryStream(dir, Files::isDirectory)) {
+            for (Path path : dirs) {
+                String name = path.getFileName().toString();
+                if (SHARD_DIR.matcher(name).matches()) {
+                    names.add(name);
+                }
+            }
+        }
+        Collections.sort(names);
+        return names;
+    }
+
+    private static void writeType(Path target, String contentType) throws IOException {
+        Path typePath = ImageStoreLayout.typePath(target);
+        Path tmp = typePath.resolveSibling(typePath.getFileName() + "." + UUID.randomUUID() + ".part");
+        try {
+            Files.writeString(tmp, contentType, StandardCharsets.UTF_8);
+            Files.move(tmp, typePath, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    private static final class FileImage implements StoredImage {
+        private final Path path;
+        private final BasicFileAttributes attributes;
+
+        FileImage(Path path, BasicFileAttributes attributes) {
+            this.path = path;
+            this.attributes = attributes;
+        }
+
+        @Override
+        public Resource resource() {
+            return new FileSystemResource(path);
+        }
+
+        @Override
+        public long size() {
+            return attributes.size();
+        }
+
+        @Override
+        public long lastModified() {
+            return attributes.lastModifiedTime().toMillis();
+        }
+
+        /**
+         * MIME-тип из файла {id}.type, иначе по содержимому файла.
+         */
+        @Override
+        public String contentType() throws IOException {
+            try {
+                return Files.readString(ImageStoreLayout.typePath(path), StandardCharsets.UTF_8).trim();
+            } catch (NoSuchFileException e) {
+                return Files.probeContentType(path);
+            }
+        }
+    }
+}
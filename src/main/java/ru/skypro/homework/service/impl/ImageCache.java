@@ -0,0 +1,203 @@
+package ru.skypro.homework.service.impl;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.Resource;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.time.Duration;
+
+/**
+ * Кэш «горячих» изображений вне heap.
+ * <p>
+ * Содержимое файлов хранится в direct {@link ByteBuffer}, поэтому не нагружает сборщик мусора,
+ * а попадание в кэш обслуживается без обращения к диску и к таблице images.
+ * Суммарный объём ограничен бюджетом images.cache.max-bytes (вес записи — её размер в байтах),
+ * файлы крупнее images.cache.max-entry-size не кэшируются.
+ * </p>
+ * Вытеснение выполняет Caffeine (W-TinyLFU): новая запись допускается только если она обращалась чаще
+ * вытесняемой, поэтому однократный проход по множеству редких изображений не вымывает популярные.
+ * Перед этим действует фильтр «уже встречалось» (последние images.cache.admission.window промахов, только id):
+ * содержимое копируется в direct-буфер лишь при повторном промахе. Однократные чтения не выделяют
+ * память вне heap и отдаются ресурсом хранилища как есть — для файлов через sendfile / transferTo.
+ * Метрики: cache.* с тегом cache=images.hot (попадания, промахи, вытеснения),
+ * images.cache.resident (занятые байты) и images.cache.hit.ratio.
+ * <p>
+ * Отдельно хранится небольшой отрицательный кэш: id, для которых файла не оказалось, помнятся
+ * images.cache.missing.ttl (не больше images.cache.missing.max-size записей), и повторные запросы
+ * несуществующих изображений не обращаются к диску.
+ * </p>
+ */
+@Component
+public class ImageCache {
+
+    private final Cache<String, CachedImage> cache;
+    private final Cache<String, Boolean> missing;
+    private final Cache<String, Boolean> seen;
+    private final long maxEntrySize;
+
+    public ImageCache(MeterRegistry meterRegistry,
+                      @Value("${images.cache.max-bytes:64MB}") DataSize maxBytes,
+                      @Value("${images.cache.max-entry-size:1MB}") DataSize maxEntrySize,
+                      @Value("${images.cache.missing.max-size:10000}") long missingMaxSize,
+                      @Value("${images.cache.missing.ttl:30s}") Duration missingTtl,
+                      @Value("${images.cache.admission.window:10000}") long admissionWindow) {
+        this.maxEntrySize = Math.min(maxEntrySize.toBytes(), Integer.MAX_VALUE);
+        this.cache = Caffeine.newBuilder()
+                .maximumWeight(maxBytes.toBytes())
+                .weigher((String id, CachedImage image) -> image.size())
+                .recordStats()
+                .build();
+        this.missing = Caffeine.newBuilder()
+                .maximumSize(missingMaxSize)
+                .expireAfterWrite(missingTtl)
+                .recordStats()
+                .build();
+        this.seen = Caffeine.newBuilder()
+                .maximumSize(admissionWindow)
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "images.hot");
+        CaffeineCacheMetrics.monitor(meterRegistry, missing, "images.missing");
+        Gauge.builder("images.cache.resident", this, ImageCache::residentBytes)
+                .baseUnit("bytes")
+                .description("Объём изображений в кэше")
+                .register(meterRegistry);
+        Gauge.builder("images.cache.hit.ratio", cache, c -> c.stats().hitRate())
+                .description("Доля запросов изображений, обслуженных из кэша")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Изображение из кэша.
+     * @param id идентификатор изображения
+     * @return запись или null при промахе
+     */
+    public CachedImage get(String id) {
+        return cache.getIfPresent(id);
+    }
+
+    /**
+     * Помещает изображение в кэш, если оно не превышает допустимый размер записи и уже запрашивалось недавно.
+     * При первом промахе id лишь запоминается, содержимое не читается.
+     * Содержимое читается через канал ресурса прямо в direct-буфер, минуя heap.
+     * @param id идентификатор изображения
+     * @param resource содержимое (файл или хранилище {@link ru.skypro.homework.service.ImageStore})
+     * @param contentType MIME-тип
+     * @param lastModified время изменения, мс
+     * @return закэшированная запись или null, если изображение слишком большое или запрошено впервые
+     * @throws IOException при ошибке чтения
+     */
+    public CachedImage put(String id, Resource resource, String contentType, long lastModified) throws IOException {
+        long size = resource.contentLength();
+        if (size > maxEntrySize) {
+            return null;
+        }
+        if (seen.asMap().remove(id) == null) {
+            seen.put(id, Boolean.TRUE);
+            return null;
+        }
+        ByteBuffer buffer = ByteBuffer.allocateDirect((int) size);
+        try (ReadableByteChannel channel = resource.readableChannel()) {
+            while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+                // читаем до конца
+            }
+        }
+        buffer.flip();
+        CachedImage image = new CachedImage(buffer.asReadOnlyBuffer(), contentType, lastModified);
+        cache.put(id, image);
+        return image;
+    }
+
+    /**
+     * Удаляет изображение из кэша сразу и повторно после commit текущей транзакции,
+     * чтобы конкурентное чтение не вернуло в кэш удаляемый файл.
+     * @param id идентификатор изображения
+     */
+    public void invalidate(String id) {
+        cache.invalidate(id);
+        seen.invalidate(id);
+        AfterCommit.run(() -> cache.invalidate(id));
+    }
+
+    /**
+     * @param id идентификатор изображения
+     * @return true, если недавно выяснилось, что файла изображения нет
+     */
+    public boolean isMissing(String id) {
+        return missing.getIfPresent(id) != null;
+    }
+
+    /**
+     * Запоминает, что файла изображения нет.
+     * @param id идентификатор изображения
+     */
+    public void markMissing(String id) {
+        missing.put(id, Boolean.TRUE);
+    }
+
+    /**
+     * Сбрасывает отрицательную запись: изображение с этим id только что сохранено.
+     * @param id идентификатор изображения
+     */
+    public void forgetMissing(String id) {
+        missing.invalidate(id);
+    }
+
+    long residentBytes() {
+        return cache.policy().eviction()
+                .map(eviction -> eviction.weightedSize().orElse(0L))
+                .orElse(0L);
+    }
+
+    /**
+     * Содержимое изображения в direct-буфере (только для чтения), его MIME-тип и время изменения файла.
+     */
+    public static final class CachedImage {
+        private final ByteBuffer data;
+        private final String contentType;
+        private final long lastModified;
+
+        CachedImage(ByteBuffer data, String contentType, long lastModified) {
+            this.data = data;
+            this.contentType = contentType;
+            this.lastModified = lastModified;
+        }
+
+        public String getContentType() {
+            return contentType;
+        }
+
+        public long getLastModified() {
+            return lastModified;
+        }
+
+        public int size() {
+            return data.capacity();
+        }
+
+        /**
+         * @return копия содержимого в массиве байтов
+         */
+        public byte[] toByteArray() {
+            byte[] bytes = new byte[data.capacity()];
+            data.duplicate().get(bytes);
+            return bytes;
+        }
+
+        /**
+         * @param filename имя файла для ответа
+         * @return ресурс, читающий содержимое прямо из буфера (поддерживает частичное чтение через skip)
+         */
+        public Resource asResource(String filename) {
+            return new ByteBufferResource(data, filename);
+        }
+    }
+}
@@ -0,0 +1,252 @@
+package ru.skypro.homework.service.impl;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import ru.skypro.homework.model.ImageEntity;
+import ru.skypro.homework.repository.ImageRepository;
+import ru.skypro.homework.service.ImageStore;
+import ru.skypro.homework.service.ImageVariant;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Collectors;
+
+/**
+ * Отложенное удаление содержимого изображений из хранилища.
+ * <p>
+ * Удаление регистрируется в транзакции, удалившей запись images, и ставится в очередь только после её фиксации;
+ * при откате запись и содержимое остаются на месте. Фоновый поток раз в images.deleter.interval забирает из очереди
+ * пачки по images.deleter.batch-size, одним запросом проверяет, что записи не появились снова, и удаляет содержимое,
+ * варианты и записи кэша. Запрос пользователя не ждёт файловых операций.
+ * </p>
+ * Повторная загрузка того же содержимого отменяет ожидающее удаление ({@link #cancel}) до записи в хранилище.
+ * Отмена запоминается на {@link #REWRITE_MEMORY}: {@link ImageReconciler} удаляет содержимое без записи только через
+ * {@link #purgeOrphan} под тем же замком и пропускает id, записанные заново, пока запись загрузки ещё не видна.
+ * Удаление выполняется не раньше images.deleter.delay после постановки в очередь, чтобы транзакция, создавшая
+ * запись заново на другом потоке или узле, успела зафиксироваться до проверки. Удаления, не выполненные
+ * до остановки приложения, подбирает {@link ImageReconciler}.
+ */
+@Slf4j
+@Component
+public class ImageDeleter {
+
+    /**
+     * Сколько помнить отмену удаления: с запасом дольше транзакции загрузки, записавшей содержимое заново.
+     */
+    static final Duration REWRITE_MEMORY = Duration.ofMinutes(10);
+
+    private final ImageRepository imageRepository;
+    private final ImageStore imageStore;
+    private final ImageCache imageCache;
+    private final ImageVariants imageVariants;
+    private final Path root;
+    private final int batchSize;
+    private final Duration delay;
+    private final ConcurrentMap<String, Long> pending = new ConcurrentHashMap<>();
+    /**
+     * id, содержимое которых записывается заново, и время отмены удаления.
+     */
+    private final ConcurrentMap<String, Long> rewritten = new ConcurrentHashMap<>();
+    private final ReentrantLock deleteLock = new ReentrantLock();
+    private final ScheduledExecutorService executor;
+    private final Counter deleted;
+
+    public ImageDeleter(ImageRepository imageRepository,
+                        ImageStore imageStore,
+                        ImageCache imageCache,
+                        ImageVariants imageVariants,
+                        MeterRegistry meterRegistry,
+                        @Value("${images.upload.dir:images}") String imagesDir,
+                        @Value("${images.deleter.batch-size:100}") int batchSize,
+                        @Value("${images.deleter.interval:1s}") Duration interval,
+                        @Value("${images.deleter.delay:1s}") Duration delay) {
+        this.imageRepository = imageRepository;
+        this.imageStore = imageStore;
+        this.imageCache = imageCache;
+        this.imageVariants = imageVariants;
+        this.root = Paths.get(imagesDir);
+        this.batchSize = Math.max(1, batchSize);
+        this.delay = delay;
+        this.deleted = Counter.builder("images.deleter.deleted")
+                .description("Изображения, удалённые из хранилища после фиксации транзакции")
+                .register(meterRegistry);
+        Gauge.builder("images.deleter.pending", pending, Map::size)
+                .description("Изображения в очереди на удаление")
+                .register(meterRegistry);
+        if (interval.isZero()) {
+            this.executor = null;
+        } else {
+            this.executor = Executors.newSingleThreadScheduledExecutor(task -> {
+                Thread thread = new Thread(task, "images-deleter");
+                thread.setDaemon(true);
+                return thread;
+            });
+            long millis = interval.toMillis();
+            executor.scheduleWithFixedDelay(this::flushQuietly, millis, millis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Ставит удаление содержимого в очередь после фиксации текущей транзакции (или сразу, если её нет).
+     * Записи кэша сбрасываются сразу после фиксации, чтобы изображение без записи не отдавалось из памяти.
+     * @param id идентификатор изображения, запись которого удалена
+     */
+    public void deleteAfterCommit(String id) {
+        AfterCommit.run(() -> {
+            invalidate(id);
+            pending.put(id, System.currentTimeMillis());
+        });
+    }
+
+    /**
+     * Отменяет ожидающее удаление. Если удаление уже выполняется, ждёт его завершения: после возврата
+     * содержимое можно записывать заново, и {@link #purgeOrphan} его не тронет.
+     * @param id идентификатор изображения
+     */
+    public void cancel(String id) {
+        // отметка ставится до проверки замка: удаление сироты, начатое после неё, эту отметку увидит
+        rewritten.put(id, System.currentTimeMillis());
+        if (!pending.containsKey(id) && !deleteLock.isLocked()) {
+            return;
+        }
+        deleteLock.lock();
+        try {
+            pending.remove(id);
+        } finally {
+            deleteLock.unlock();
+        }
+    }
+
+    /**
+     * Выполняет удаления, ожидавшие не меньше images.deleter.delay.
+     * @return количество удалённых изображений
+     */
+    public int flush() {
+        long forgetBefore = System.currentTimeMillis() - REWRITE_MEMORY.toMillis();
+        rewritten.values().removeIf(cancelledAt -> cancelledAt < forgetBefore);
+        int total = 0;
+        while (true) {
+            long due = System.currentTimeMillis() - delay.toMillis();
+            List<String> batch = new ArrayList<>(batchSize);
+            for (Map.Entry<String, Long> entry : pending.entrySet()) {
+                if (entry.getValue() <= due) {
+                    batch.add(entry.getKey());
+                    if (batch.size() >= batchSize) {
+                        break;
+                    }
+                }
+            }
+            if (batch.isEmpty()) {
+                return total;
+            }
+            Set<String> revived = imageRepository.findAllById(batch).stream()
+                    .map(ImageEntity::getId)
+                    .collect(Collectors.toSet());
+            for (String id : batch) {
+                deleteLock.lock();
+                try {
+                    Long queuedAt = pending.remove(id);
+                    if (queuedAt == null || revived.contains(id)) {
+                        continue;
+                    }
+                    purge(id);
+                    deleted.increment();
+                    total++;
+                } catch (IOException e) {
+                    log.warn("Не удалось удалить изображение {}: {}", id, e.getMessage());
+                } finally {
+                    deleteLock.unlock();
+                }
+            }
+        }
+    }
+
+    /**
+     * Удаляет содержимое, варианты и записи кэша изображения без проверок.
+     * @param id идентификатор изображения
+     * @throws IOException при ошибке удаления из хранилища
+     */
+    void purge(String id) throws IOException {
+        imageVariants.delete(ImageStoreLayout.path(root, id));
+        imageVariants.delete(ImageStoreLayout.legacyPath(root, id));
+        imageStore.delete(id);
+        invalidate(id);
+    }
+
+    /**
+     * Удаляет содержимое без записи в images под замком удаления, повторно проверив его после взятия замка:
+     * файл не изменялся позже modifiedBefore, удаление не отменялось позже modifiedBefore и записи по-прежнему нет.
+     * Загрузка того же содержимого либо ждёт завершения (в {@link #cancel}), либо оставила отметку,
+     * и содержимое остаётся на месте.
+     * @param id идентификатор изображения
+     * @param modifiedBefore граница времени изменения (мс), после которой содержимое считается свежим
+     * @param beforePurge действие над содержимым перед удалением (например, перенос в карантин)
+     * @return удалённое изображение или null, если удалять нельзя
+     * @throws IOException при ошибке чтения или удаления из хранилища
+     */
+    ImageStore.StoredImage purgeOrphan(String id, long modifiedBefore, OrphanAction beforePurge) throws IOException {
+        deleteLock.lock();
+        try {
+            Long cancelledAt = rewritten.get(id);
+            if (cancelledAt != null && cancelledAt > modifiedBefore) {
+                return null;
+            }
+            ImageStore.StoredImage image = imageStore.get(id);
+            if (image == null || image.lastModified() > modifiedBefore || imageRepository.existsById(id)) {
+                return null;
+            }
+            beforePurge.accept(image);
+            purge(id);
+            return image;
+        } finally {
+            deleteLock.unlock();
+        }
+    }
+
+    /**
+     * Действие над содержимым сироты перед его удалением.
+     */
+    @FunctionalInterface
+    interface OrphanAction {
+        void accept(ImageStore.StoredImage image) throws IOException;
+    }
+
+    @PreDestroy
+    public void close() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    private void invalidate(String id) {
+        imageCache.invalidate(id);
+        for (ImageVariant variant : ImageVariant.values()) {
+            imageCache.invalidate(id + "?size=" + variant.key());
+        }
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            log.warn("Отложенное удаление изображений прервано: {}", e.getMessage());
+        }
+    }
+}
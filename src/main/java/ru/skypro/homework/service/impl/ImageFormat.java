@@ -0,0 +1,210 @@
+package ru.skypro.homework.service.impl;
+
+import org.springframework.http.MediaType;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Определение формата и размеров изображения по заголовку файла, без декодирования пикселей.
+ * <p>
+ * Формат распознаётся по сигнатуре в первых байтах (JPEG, PNG, GIF, WebP), ширина и высота читаются
+ * из заголовка: IHDR для PNG, логический экран для GIF, заголовок VP8/VP8L/VP8X для WebP,
+ * первый маркер SOFn для JPEG (сегменты до него пропускаются по длине, не читаясь).
+ * Из файла читаются только нужные байты, поэтому проверка не зависит от его размера.
+ * </p>
+ */
+final class ImageFormat {
+
+    private static final byte[] PNG_SIGNATURE = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'};
+
+    private final String mediaType;
+    private final String extension;
+    private final int width;
+    private final int height;
+
+    private ImageFormat(String mediaType, String extension, long width, long height) {
+        this.mediaType = mediaType;
+        this.extension = extension;
+        this.width = (int) width;
+        this.height = (int) height;
+    }
+
+    /**
+     * @return MIME-тип, соответствующий содержимому
+     */
+    String mediaType() {
+        return mediaType;
+    }
+
+    /**
+     * @return расширение с точкой, например ".png"
+     */
+    String extension() {
+        return extension;
+    }
+
+    int width() {
+        return width;
+    }
+
+    int height() {
+        return height;
+    }
+
+    long pixels() {
+        return (long) width * height;
+    }
+
+    /**
+     * @param file файл изображения
+     * @return формат и размеры или null, если формат не поддерживается или заголовок повреждён
+     * @throws IOException при ошибке чтения файла
+     */
+    static ImageFormat detect(Path file) throws IOException {
+        try (FileChannel in = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer head = read(in, 0, (int) Math.min(in.size(), 30));
+            if (head == null || head.remaining() < 10) {
+                return null;
+            }
+            if (u8(head, 0) == 0xFF && u8(head, 1) == 0xD8 && u8(head, 2) == 0xFF) {
+                return jpeg(in);
+            }
+            if (startsWith(head, 0, PNG_SIGNATURE)) {
+                return png(head);
+            }
+            if (startsWith(head, 0, ascii("GIF87a")) || startsWith(head, 0, ascii("GIF89a"))) {
+                return of(MediaType.IMAGE_GIF_VALUE, ".gif", u16le(head, 6), u16le(head, 8));
+            }
+            if (startsWith(head, 0, ascii("RIFF")) && startsWith(head, 8, ascii("WEBP"))) {
+                return webp(head);
+            }
+            return null;
+        }
+    }
+
+    private static ImageFormat png(ByteBuffer head) {
+        if (head.remaining() < 24 || !startsWith(head, 12, ascii("IHDR"))) {
+            return null;
+        }
+        return of(MediaType.IMAGE_PNG_VALUE, ".png", head.getInt(16) & 0xFFFFFFFFL, head.getInt(20) & 0xFFFFFFFFL);
+    }
+
+    private static ImageFormat webp(ByteBuffer head) {
+        if (head.remaining() < 30) {
+            return null;
+        }
+        if (startsWith(head, 12, ascii("VP8 "))) {
+            // кадр VP8: 3 байта тега кадра, стартовый код 9D 01 2A, затем 14-битные ширина и высота
+            if (u8(head, 23) != 0x9D || u8(head, 24) != 0x01 || u8(head, 25) != 0x2A) {
+                return null;
+            }
+            return of("image/webp", ".webp", u16le(head, 26) & 0x3FFF, u16le(head, 28) & 0x3FFF);
+        }
+        if (startsWith(head, 12, ascii("VP8L"))) {
+            if (u8(head, 20) != 0x2F) {
+                return null;
+            }
+            long bits = u16le(head, 21) | (long) u16le(head, 23) << 16;
+            return of("image/webp", ".webp", (bits & 0x3FFF) + 1, ((bits >> 14) & 0x3FFF) + 1);
+        }
+        if (startsWith(head, 12, ascii("VP8X"))) {
+            return of("image/webp", ".webp", u24le(head, 24) + 1, u24le(head, 27) + 1);
+        }
+        return null;
+    }
+
+    /**
+     * Идёт по сегментам JPEG от начала файла до первого SOFn. Начало сканирования (SOS) раньше SOFn
+     * или выход за конец файла означают повреждённый файл.
+     */
+    private static ImageFormat jpeg(FileChannel in) throws IOException {
+        long position = 2;
+        long size = in.size();
+        while (position + 4 <= size) {
+            ByteBuffer marker = read(in, position, 4);
+            if (marker == null || u8(marker, 0) != 0xFF) {
+                return null;
+            }
+            int type = u8(marker, 1);
+            if (type == 0xFF) {
+                // байт-заполнитель перед маркером
+                position++;
+                continue;
+            }
+            if (type == 0x01 || (type >= 0xD0 && type <= 0xD8)) {
+                position += 2;
+                continue;
+            }
+            if (type == 0xD9 || type == 0xDA) {
+                return null;
+            }
+            int length = marker.getShort(2) & 0xFFFF;
+            if (length < 2) {
+                return null;
+            }
+            boolean frame = type >= 0xC0 && type <= 0xCF && type != 0xC4 && type != 0xC8 && type != 0xCC;
+            if (frame) {
+                ByteBuffer header = read(in, position + 4, 5);
+                if (header == null) {
+                    return null;
+                }
+                return of(MediaType.IMAGE_JPEG_VALUE, ".jpg", header.getShort(3) & 0xFFFF, header.getShort(1) & 0xFFFF);
+            }
+            position += 2 + length;
+        }
+        return null;
+    }
+
+    private static ImageFormat of(String mediaType, String extension, long width, long height) {
+        if (width <= 0 || height <= 0 || width > Integer.MAX_VALUE || height > Integer.MAX_VALUE) {
+            return null;
+        }
+        return new ImageFormat(mediaType, extension, width, height);
+    }
+
+    /**
+     * @return буфер ровно из length байт с позиции position или null, если файл короче
+     */
+    private static ByteBuffer read(FileChannel in, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (in.read(buffer, position + buffer.position()) < 0) {
+                return null;
+            }
+        }
+        return buffer.flip();
+    }
+
+    private static boolean startsWith(ByteBuffer buffer, int offset, byte[] prefix) {
+        if (buffer.remaining() < offset + prefix.length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if (buffer.get(offset + i) != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static byte[] ascii(String value) {
+        return value.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    private static int u8(ByteBuffer buffer, int offset) {
+        return buffer.get(offset) & 0xFF;
+    }
+
+    private static int u16le(ByteBuffer buffer, int offset) {
+        return u8(buffer, offset) | u8(buffer, offset + 1) << 8;
+    }
+
+    private static int u24le(ByteBuffer buffer, int offset) {
+        return u16le(buffer, offset) | u8(buffer, offset + 2) << 16;
+    }
+}
@@ -0,0 +1,280 @@
+package ru.skypro.homework.service.impl;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.io.Resource;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Component;
+import ru.skypro.homework.model.ImageEntity;
+import ru.skypro.homework.repository.ImageRepository;
+import ru.skypro.homework.service.ImageStore;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Фоновая сверка хранилища изображений с таблицей images.
+ * <p>
+ * Проход состоит из двух фаз. Сначала хранилище обходится страницами {@link ImageStore#list}: содержимое без записи
+ * в images (сироты, оставшиеся после сбоев удаления) переносится в карантин {dir}/quarantine или удаляется —
+ * по настройке images.reconciler.action. Затем таблица обходится по первичному ключу: записи без ссылок
+ * (ref_count = 0, удаление не дошло до конца) удаляются, а записи, чьего содержимого нет в хранилище,
+ * учитываются в метриках и логе — восстановить их нельзя, а удалить мешают ссылки объявлений и пользователей.
+ * </p>
+ * За один шаг обрабатывается images.reconciler.batch-size изображений, между шагами выдерживается пауза
+ * images.reconciler.pause, между проходами — images.reconciler.interval. Курсор сохраняется в {dir}/cursor
+ * после каждого шага, поэтому после перезапуска сверка продолжается с того же места.
+ * <p>
+ * Изображения моложе images.reconciler.grace не трогаются: содержимое записывается в хранилище до фиксации
+ * транзакции, создающей запись. Перед удалением наличие записи проверяется повторно. Запись без ссылок
+ * удаляется не раньше, чем через images.upload.sessions.ttl: столько живёт сессия поэтапной загрузки,
+ * и всё это время клиент может сослаться на её изображение.
+ * </p>
+ */
+@Slf4j
+@Component
+public class ImageReconciler {
+
+    static final String QUARANTINE_DIR = "quarantine";
+    private static final String CURSOR_FILE = "cursor";
+    private static final String STORE_PHASE = "store";
+    private static final String TABLE_PHASE = "table";
+
+    private final ImageRepository imageRepository;
+    private final ImageStore imageStore;
+    private final ImageDeleter imageDeleter;
+    private final Path dir;
+    private final boolean enabled;
+    private final int batchSize;
+    private final Duration pause;
+    private final Duration interval;
+    private final Duration grace;
+    private final Duration unreferencedGrace;
+    private final boolean quarantine;
+
+    private final Counter scannedImages;
+    private final Counter scannedRows;
+    private final Counter orphans;
+    private final Counter reclaimedBytes;
+    private final Counter missingContent;
+    private final Counter unreferencedRows;
+
+    private ScheduledExecutorService executor;
+    private String phase = STORE_PHASE;
+    private String cursor;
+
+    public ImageReconciler(ImageRepository imageRepository,
+                           ImageStore imageStore,
+                           ImageDeleter imageDeleter,
+                           MeterRegistry meterRegistry,
+                           @Value("${images.reconciler.dir:${images.upload.dir:images}/reconciler}") String dir,
+                           @Value("${images.reconciler.enabled:false}") boolean enabled,
+                           @Value("${images.reconciler.batch-size:200}") int batchSize,
+                           @Value("${images.reconciler.pause:1s}") Duration pause,
+                           @Value("${images.reconciler.interval:6h}") Duration interval,
+                           @Value("${images.reconciler.grace:1h}") Duration grace,
+                           @Value("${images.upload.sessions.ttl:24h}") Duration uploadSessionTtl,
+                           @Value("${images.reconciler.action:quarantine}") String action) {
+        this.imageRepository = imageRepository;
+        this.imageStore = imageStore;
+        this.imageDeleter = imageDeleter;
+        this.dir = Paths.get(dir);
+        this.enabled = enabled;
+        this.batchSize = Math.max(1, batchSize);
+        this.pause = pause;
+        this.interval = interval;
+        this.grace = grace;
+        this.unreferencedGrace = grace.compareTo(uploadSessionTtl) >= 0 ? grace : uploadSessionTtl;
+        this.quarantine = !"delete".equalsIgnoreCase(action);
+        this.scannedImages = Counter.builder("images.reconciler.scanned")
+                .tag("source", STORE_PHASE)
+                .description("Изображения, проверенные сверкой")
+                .register(meterRegistry);
+        this.scannedRows = Counter.builder("images.reconciler.scanned")
+                .tag("source", TABLE_PHASE)
+                .description("Изображения, проверенные сверкой")
+                .register(meterRegistry);
+        this.orphans = Counter.builder("images.reconciler.orphans")
+                .tag("action", quarantine ? "quarantined" : "deleted")
+                .description("Содержимое без записи в images, убранное из хранилища")
+                .register(meterRegistry);
+        this.reclaimedBytes = Counter.builder("images.reconciler.reclaimed")
+                .baseUnit("bytes")
+                .description("Объём содержимого, убранного из хранилища")
+                .register(meterRegistry);
+        this.missingContent = Counter.builder("images.reconciler.rows")
+                .tag("problem", "missing")
+                .description("Записи images, чьего содержимого нет в хранилище")
+                .register(meterRegistry);
+        this.unreferencedRows = Counter.builder("images.reconciler.rows")
+                .tag("problem", "unreferenced")
+                .description("Удалённые записи images без ссылок")
+                .register(meterRegistry);
+        try {
+            loadCursor();
+        } catch (IOException e) {
+            log.warn("Не удалось прочитать курсор сверки изображений, проход начнётся сначала: {}", e.getMessage());
+        }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onStartup() {
+        if (!enabled) {
+            return;
+        }
+        executor = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "images-reconciler");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.schedule(this::stepQuietly, pause.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Обрабатывает одну страницу текущей фазы и сохраняет курсор.
+     * @return true, если этим шагом завершён проход
+     * @throws IOException при ошибке чтения хранилища или записи курсора
+     */
+    public synchronized boolean step() throws IOException {
+        if (TABLE_PHASE.equals(phase)) {
+            List<ImageEntity> rows = imageRepository.findPageAfter(cursor == null ? "" : cursor, PageRequest.of(0, batchSize));
+            checkRows(rows);
+            if (rows.size() < batchSize) {
+                saveCursor(STORE_PHASE, null);
+                return true;
+            }
+            saveCursor(TABLE_PHASE, rows.get(rows.size() - 1).getId());
+            return false;
+        }
+        ImageStore.Page page = imageStore.list(cursor, batchSize);
+        removeOrphans(page.ids());
+        saveCursor(page.next() == null ? TABLE_PHASE : STORE_PHASE, page.next());
+        return false;
+    }
+
+    private void stepQuietly() {
+        Duration delay = interval;
+        try {
+            delay = step() ? interval : pause;
+        } catch (IOException | RuntimeException e) {
+            log.warn("Сверка изображений прервана, следующая попытка через {}: {}", interval, e.getMessage());
+        }
+        if (!executor.isShutdown()) {
+            executor.schedule(this::stepQuietly, delay.toMillis(), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void removeOrphans(List<String> ids) throws IOException {
+        if (ids.isEmpty()) {
+            return;
+        }
+        scannedImages.increment(ids.size());
+        Set<String> known = imageRepository.findAllById(ids).stream()
+                .map(ImageEntity::getId)
+                .collect(Collectors.toSet());
+        long threshold = System.currentTimeMillis() - grace.toMillis();
+        for (String id : ids) {
+            if (known.contains(id)) {
+                continue;
+            }
+            ImageStore.StoredImage image = imageStore.get(id);
+            if (image == null || image.lastModified() > threshold) {
+                continue;
+            }
+            // окончательная проверка и удаление — под замком удаления, согласованно с повторной загрузкой
+            image = imageDeleter.purgeOrphan(id, threshold,
+                    quarantine ? orphan -> moveToQuarantine(id, orphan.resource()) : orphan -> { });
+            if (image == null) {
+                continue;
+            }
+            orphans.increment();
+            reclaimedBytes.increment(image.size());
+            log.info("Изображение {} без записи в images {}", id, quarantine ? "перенесено в карантин" : "удалено");
+        }
+    }
+
+    private void checkRows(List<ImageEntity> rows) throws IOException {
+        scannedRows.increment(rows.size());
+        long now = System.currentTimeMillis();
+        long threshold = now - grace.toMillis();
+        long unreferencedThreshold = now - unreferencedGrace.toMillis();
+        for (ImageEntity row : rows) {
+            if (row.getCreatedAt() != null && row.getCreatedAt() > threshold) {
+                continue;
+            }
+            boolean sessionExpired = row.getCreatedAt() == null || row.getCreatedAt() <= unreferencedThreshold;
+            if (row.getRefCount() != null && row.getRefCount() <= 0 && sessionExpired
+                    && imageRepository.deleteIfUnreferenced(row.getId()) > 0) {
+                // содержимое станет сиротой и уберётся в следующей фазе обхода хранилища
+                unreferencedRows.increment();
+                log.info("Удалена запись изображения {} без ссылок", row.getId());
+                continue;
+            }
+            if (imageStore.get(row.getId()) == null) {
+                missingContent.increment();
+                log.warn("Запись изображения {} ссылается на отсутствующее содержимое", row.getId());
+            }
+        }
+    }
+
+    /**
+     * Файл на диске переносится переименованием, содержимое остальных хранилищ копируется потоком.
+     */
+    private void moveToQuarantine(String id, Resource resource) throws IOException {
+        Path target = dir.resolve(QUARANTINE_DIR).resolve(id);
+        Files.createDirectories(target.getParent());
+        if (resource.isFile()) {
+            Files.move(resource.getFile().toPath(), target, StandardCopyOption.REPLACE_EXISTING);
+        } else {
+            try (InputStream in = resource.getInputStream()) {
+                Files.copy(in, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+    }
+
+    private void loadCursor() throws IOException {
+        try {
+            List<String> lines = Files.readAllLines(dir.resolve(CURSOR_FILE), StandardCharsets.UTF_8);
+            if (!lines.isEmpty() && (STORE_PHASE.equals(lines.get(0)) || TABLE_PHASE.equals(lines.get(0)))) {
+                phase = lines.get(0);
+                cursor = lines.size() > 1 && !lines.get(1).isEmpty() ? lines.get(1) : null;
+            }
+        } catch (NoSuchFileException e) {
+            // первый запуск
+        }
+    }
+
+    private void saveCursor(String phase, String cursor) throws IOException {
+        this.phase = phase;
+        this.cursor = cursor;
+        Files.createDirectories(dir);
+        Path tmp = dir.resolve(CURSOR_FILE + ".part");
+        Files.writeString(tmp, phase + "\n" + (cursor == null ? "" : cursor) + "\n", StandardCharsets.UTF_8);
+        Files.move(tmp, dir.resolve(CURSOR_FILE), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+}
@@ -1,82 +1,231 @@
 package ru.skypro.homework.service.impl;
 
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.InputStreamSource;
+import org.springframework.core.io.Resource;
 import org.springframework.http.CacheControl;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.multipart.MultipartFile;
 import ru.skypro.homework.model.ImageEntity;
 import ru.skypro.homework.repository.ImageRepository;
+import ru.skypro.homework.service.ImageNotFoundException;
 import ru.skypro.homework.service.ImageService;
+import ru.skypro.homework.service.ImageStore;
+import ru.skypro.homework.service.ImageTooLargeException;
+import ru.skypro.homework.service.ImageVariant;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
 import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.time.Duration;
 import java.time.Instant;
 import java.util.Locale;
-import java.util.Optional;
 import java.util.UUID;
+import java.util.regex.Pattern;
 
 @Service
 public class ImageServiceImpl implements ImageService {
 
     private static final org.slf4j.Logger log = org.slf4j.LoggerFactory.getLogger(ImageServiceImpl.class);
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+    /**
+     * Идентификатор по содержимому: SHA-256 и расширение формата (у ранее сохранённых — расширение исходного имени).
+     */
+    private static final Pattern CONTENT_ID = Pattern.compile("[0-9a-f]{64}(\\.[^./\\\\]{1,32})?");
+    /**
+     * Прежний формат идентификатора: {prefix}_{uuid}{ext}, например ad_10_{uuid}.jpg.
+     */
+    private static final Pattern LEGACY_ID = Pattern.compile(
+            "[A-Za-z]+(_\\d+)?_[0-9a-fA-F]{8}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{12}(\\.[^./\\\\]{1,32})?");
 
     private final ImageRepository imageRepository;
+    private final ImageStore imageStore;
+    private final ImageCache imageCache;
+    private final ImageVariants imageVariants;
+    private final ImageDeleter imageDeleter;
+    private final long maxPixels;
 
     @Value("${images.upload.dir:images}")
     private String imagesDir;
 
-    public ImageServiceImpl(ImageRepository imageRepository) {
+    public ImageServiceImpl(ImageRepository imageRepository, ImageStore imageStore, ImageCache imageCache,
+                            ImageVariants imageVariants, ImageDeleter imageDeleter,
+                            @Value("${images.upload.max-pixels:40000000}") long maxPixels) {
         this.imageRepository = imageRepository;
+        this.imageStore = imageStore;
+        this.imageCache = imageCache;
+        this.imageVariants = imageVariants;
+        this.imageDeleter = imageDeleter;
+        this.maxPixels = maxPixels;
     }
 
     /**
      * Сохраняет изображение в файловой системе и записывает метаданные в БД.
+     * <p>
+     * Содержимое копируется из потока multipart-части во временный файл через канал с буфером
+     * фиксированного размера (64 КБ), размер и SHA-256 считаются по ходу записи.
+     * Файл целиком в памяти не держится.
+     * </p>
+     * Хранилище адресуется содержимым: идентификатор — SHA-256 файла с расширением определённого формата.
+     * Повторная загрузка тех же байтов не создаёт новый файл, а увеличивает счётчик ссылок ref_count
+     * существующей записи. Для новой записи после commit в фоне строятся размерные варианты ({@link ImageVariant}).
+     * Содержимое передаётся в {@link ImageStore}.
+     * <p>
+     * Имени и MIME-типу от клиента не доверяем: формат и размеры определяются по заголовку записанного файла
+     * ({@link ImageFormat}), без декодирования. Файл, не являющийся JPEG, PNG, GIF или WebP, а также изображение
+     * больше images.upload.max-pixels пикселей отклоняются до того, как попадут в хранилище и к построению вариантов.
+     * </p>
      * @param file исходный файл изображения
-     * @param prefix префикс для имени файла (например, ad_{id} или user_{id})
-     * @return сохранённая сущность изображения с присвоенным идентификатором
-     * @throws IllegalArgumentException если файл пустой или не предоставлен
+     * @param prefix не входит в идентификатор (он определяется содержимым); сохранён для совместимости вызовов
+     * @return сохранённая сущность изображения (новая или существующая с тем же содержимым)
+     * Отклонённый файл не откатывает транзакцию вызывающего кода: проверка идёт до изменений в БД,
+     * и вызывающий код может ответить на неё 400 или 413.
+     * @throws IllegalArgumentException если файл пустой, не предоставлен или не является изображением
+     * @throws ImageTooLargeException если изображение больше images.upload.max-pixels
      * @throws RuntimeException при ошибках чтения файла или записи на диск
      */
     @Override
+    @Transactional(noRollbackFor = IllegalArgumentException.class)
     public ImageEntity save(MultipartFile file, String prefix) {
         if (file == null || file.isEmpty()) {
             throw new IllegalArgumentException("Файл изображения пустой");
         }
-        String original = file.getOriginalFilename();
-        String ext = original != null && original.contains(".") ? original.substring(original.lastIndexOf('.')) : "";
-        String id = (prefix != null ? prefix : "img") + "_" + UUID.randomUUID() + ext;
-        byte[] bytes;
+        Path dir = Paths.get(imagesDir);
+        StoredFile stored;
+        ImageFormat format;
         try {
-            bytes = file.getBytes();
+            if (!Files.exists(dir)) {
+                Files.createDirectories(dir);
+            }
+            try (InputStream in = file.getInputStream()) {
+                stored = writeStreaming(in, dir);
+            }
+            try {
+                format = inspect(stored.tmp);
+            } catch (IOException | RuntimeException e) {
+                Files.deleteIfExists(stored.tmp);
+                throw e;
+            }
         } catch (IOException e) {
-            throw new RuntimeException("Не удалось прочитать содержимое файла", e);
+            throw new RuntimeException("Ошибка сохранения файла на диск", e);
         }
+        return persist(stored, format, true);
+    }
+
+    /**
+     * Сохраняет содержимое собранной по частям загрузки без ссылки на него (ref_count = 0).
+     * Формат проверяется так же, как при {@link #save(MultipartFile, String)}; SHA-256 считается повторным
+     * чтением файла. Запись без ссылок, на которую так и не сослались, удаляет {@link ImageReconciler}
+     * не раньше, чем истечёт сессия загрузки (images.upload.sessions.ttl).
+     */
+    @Override
+    @Transactional
+    public ImageEntity stage(Path file) {
+        StoredFile stored;
+        ImageFormat format;
         try {
-            Path dir = Paths.get(imagesDir);
-            if (!Files.exists(dir)) {
-                Files.createDirectories(dir);
+            long size = Files.size(file);
+            if (size == 0) {
+                throw new IllegalArgumentException("Файл изображения пустой");
             }
-            Files.write(dir.resolve(id), bytes);
+            format = inspect(file);
+            stored = new StoredFile(file, size, checksumOf(file));
+        } catch (IOException e) {
+            throw new RuntimeException("Ошибка чтения загруженного файла", e);
+        }
+        return persist(stored, format, false);
+    }
+
+    /**
+     * Добавляет ссылку на ранее сохранённое изображение.
+     * @throws IllegalArgumentException если id недопустимого вида
+     * @throws ImageNotFoundException если изображения нет (например, неиспользованная загрузка уже удалена)
+     */
+    @Override
+    @Transactional
+    public ImageEntity reference(String id) {
+        if (!isWellFormedId(id)) {
+            throw new IllegalArgumentException("Некорректный идентификатор изображения");
+        }
+        if (imageRepository.incrementRefCount(id) == 0) {
+            throw new ImageNotFoundException("Изображение " + id + " не найдено");
+        }
+        return imageRepository.findById(id)
+                .orElseThrow(() -> new ImageNotFoundException("Изображение " + id + " не найдено"));
+    }
+
+    /**
+     * Создаёт или находит запись изображения с тем же содержимым и передаёт файл в хранилище.
+     * @param addReference true — добавить ссылку (ref_count + 1); false — только сохранить содержимое
+     */
+    private ImageEntity persist(StoredFile stored, ImageFormat format, boolean addReference) {
+        String id = stored.checksum + format.extension();
+        try {
+            ImageEntity entity = null;
+            boolean created = false;
+            if (!addReference || imageRepository.incrementRefCount(id) == 0) {
+                entity = new ImageEntity();
+                entity.setId(id);
+                entity.setContentType(format.mediaType());
+                entity.setSize(stored.size);
+                entity.setWidth(format.width());
+                entity.setHeight(format.height());
+                entity.setChecksum(stored.checksum);
+                entity.setRefCount(addReference ? 1 : 0);
+                entity.setCreatedAt(Instant.now().toEpochMilli());
+                // вставка без исключения при конфликте: одновременная первая загрузка тех же байтов
+                // не обрывает транзакцию, а ссылка добавляется к созданной ею записи
+                created = imageRepository.insertIfAbsent(entity) > 0;
+                if (!created && addReference && imageRepository.incrementRefCount(id) == 0) {
+                    throw new IllegalStateException("Изображение " + id + " не найдено");
+                }
+            }
+            if (!created) {
+                entity = imageRepository.findById(id)
+                        .orElseThrow(() -> new IllegalStateException("Изображение " + id + " не найдено"));
+                if (!addReference && entity.getRefCount() <= 0) {
+                    // та же неиспользованная загрузка: срок её хранения отсчитывается заново
+                    entity.setCreatedAt(Instant.now().toEpochMilli());
+                }
+            }
+            // Содержимое с тем же id могло быть удалено последним владельцем прежней записи — записываем его всегда,
+            // предварительно отменив ещё не выполненное отложенное удаление.
+            imageDeleter.cancel(id);
+            imageStore.put(id, stored.tmp, null);
+            imageCache.forgetMissing(id);
+            if (created) {
+                imageVariants.generateAsync(variantBase(id), source(id));
+            }
+            return entity;
         } catch (IOException e) {
             throw new RuntimeException("Ошибка сохранения файла на диск", e);
+        } finally {
+            try { Files.deleteIfExists(stored.tmp); }
+            catch (IOException e) { log.warn("Не удалось удалить временный файл {}: {}", stored.tmp, e.getMessage()); }
         }
-        ImageEntity entity = new ImageEntity();
-        entity.setId(id);
-        entity.setContentType(file.getContentType());
-        entity.setSize(file.getSize());
-        entity.setCreatedAt(Instant.now().toEpochMilli());
-        return imageRepository.save(entity);
     }
 
     /**
-     * Загружает бинарное содержимое изображения из файловой системы по идентификатору.
+     * Загружает бинарное содержимое изображения по идентификатору.
+     * Горячие изображения берутся из {@link ImageCache} без обращения к диску; БД не используется вовсе.
      * @param id идентификатор изображения (имя файла)
      * @return объект с байтами изображения и MIME-типом
      * @throws IllegalArgumentException если изображение/файл не найден
@@ -85,19 +234,24 @@ public class ImageServiceImpl implements ImageService {
     @Override
     public ImageContent load(String id) {
         if (id == null) throw new IllegalArgumentException("ID изображения не указан");
-        Optional<ImageEntity> entityOpt = imageRepository.findById(id);
-        ImageEntity entity = entityOpt.orElseThrow(() -> new IllegalArgumentException("Изображение не найдено"));
+        ImageCache.CachedImage hot = imageCache.get(id);
+        if (hot != null) {
+            return new ImageContent(hot.toByteArray(), hot.getContentType());
+        }
         try {
-            Path path = Paths.get(imagesDir).resolve(id);
-            if (!Files.exists(path)) {
-                throw new IllegalArgumentException("Файл изображения не найден");
+            ImageStore.StoredImage image = find(id);
+            if (image == null) {
+                throw new IllegalArgumentException("Изображение не найдено");
             }
-            byte[] data = Files.readAllBytes(path);
-            String type = entity.getContentType();
-            if (type == null) {
-                type = Files.probeContentType(path);
+            String type = contentTypeOf(id, image);
+            type = type != null ? type : "application/octet-stream";
+            hot = imageStore.cacheable() ? imageCache.put(id, image.resource(), type, image.lastModified()) : null;
+            if (hot != null) {
+                return new ImageContent(hot.toByteArray(), type);
+            }
+            try (InputStream in = image.resource().getInputStream()) {
+                return new ImageContent(in.readAllBytes(), type);
             }
-            return new ImageContent(data, type != null ? type : "application/octet-stream");
         } catch (IOException e) {
             throw new RuntimeException("Ошибка чтения изображения", e);
         }
@@ -105,57 +259,320 @@ public class ImageServiceImpl implements ImageService {
 
     /**
      * Возвращает изображение как HTTP-ответ с корректными заголовками.
+     * <p>
+     * Горячие изображения отдаются из direct-буфера {@link ImageCache} без запроса метаданных и чтения диска.
+     * Остальные отдаются ресурсом {@link ImageStore}: файл файлового хранилища не читается в heap, а передаётся
+     * в сокет через sendfile / {@link FileChannel#transferTo} (см. {@link ru.skypro.homework.config.WebMvcConfig}).
+     * Заголовок Range обрабатывается Spring MVC: ответ 206 с запрошенным участком файла или 416.
+     * </p>
+     * Содержимое по id никогда не меняется, поэтому ответ кэшируется на год с пометкой immutable и несёт
+     * строгий ETag ({@link #getImageEtag(String, String)}). Идентификаторы недопустимого вида получают 404
+     * без обращения к диску.
+     * <p>
+     * Выдача не обращается к БД: MIME-тип следует из расширения в id (или сохранён в хранилище),
+     * а наличие изображения определяет само хранилище. Отсутствующие id запоминаются
+     * в отрицательном кэше {@link ImageCache}, и повторные запросы к ним не доходят до диска.
+     * </p>
+     * @param id идентификатор изображения (имя файла)
+     * @return 200 OK с файлом и Content-Type; 404 если не найдено; 500 при внутренней ошибке
+     */
+    @Override
+    public ResponseEntity<Resource> getImage(String id) {
+        return serve(id, null);
+    }
+
+    /**
+     * Возвращает размерный вариант изображения; отсутствующий вариант строится по запросу на ограниченном пуле
+     * генерации. Если очередь пула заполнена, отдаётся оригинал с Cache-Control: no-store.
      * @param id идентификатор изображения (имя файла)
-     * @return 200 OK с байтами и Content-Type; 404 если не найдено; 500 при внутренней ошибке
+     * @param size thumb, card или full
+     * @return 200 OK с вариантом (или оригиналом при перегрузке); 400 при неизвестном размере; 404 если не найдено; 500 при внутренней ошибке
      */
     @Override
-    public ResponseEntity<byte[]> getImage(String id) {
+    public ResponseEntity<Resource> getImage(String id, String size) {
+        ImageVariant variant;
         try {
-            ImageContent content = load(id);
-            String contentType = content.getContentType();
-            if (contentType == null) {
-                contentType = guessContentType(id);
-            }
-            HttpHeaders headers = new HttpHeaders();
-            headers.setCacheControl(CacheControl.maxAge(Duration.ofHours(1)).cachePublic());
-            if (contentType != null) {
-                try { headers.setContentType(MediaType.parseMediaType(contentType)); }
-                catch (Exception ignore) { headers.setContentType(MediaType.APPLICATION_OCTET_STREAM); }
-            } else {
-                headers.setContentType(MediaType.APPLICATION_OCTET_STREAM);
-            }
-            headers.setContentLength(content.getData().length);
-            return new ResponseEntity<>(content.getData(), headers, HttpStatus.OK);
+            variant = ImageVariant.of(size);
         } catch (IllegalArgumentException e) {
-            return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).build();
+        }
+        return serve(id, variant);
+    }
+
+    /**
+     * Строгий ETag изображения или его варианта, вычисляемый только из id: для идентификаторов по содержимому —
+     * сам SHA-256, для прежних имён — SHA-256 имени (они никогда не перезаписываются).
+     * @param id идентификатор изображения
+     * @param size размерный вариант или null для оригинала
+     * @return ETag в кавычках или null, если id недопустимого вида или размер неизвестен
+     */
+    @Override
+    public String getImageEtag(String id, String size) {
+        if (!isWellFormedId(id)) {
+            return null;
+        }
+        ImageVariant variant = null;
+        if (size != null) {
+            try {
+                variant = ImageVariant.of(size);
+            } catch (IllegalArgumentException e) {
+                return null;
+            }
+        }
+        return etagOf(id, variant);
+    }
+
+    /**
+     * Наличие изображения для условного запроса без If-None-Match. Отсутствующий id запоминается
+     * в отрицательном кэше так же, как при выдаче.
+     * @param id идентификатор изображения
+     * @return true, если изображение есть в кэше или хранилище
+     */
+    @Override
+    public boolean exists(String id) {
+        if (!isWellFormedId(id)) {
+            return false;
+        }
+        if (imageCache.get(id) != null) {
+            return true;
+        }
+        try {
+            return find(id) != null;
+        } catch (IOException e) {
+            log.warn("Не удалось проверить наличие изображения {}: {}", id, e.getMessage());
+            return false;
+        }
+    }
+
+    private ResponseEntity<Resource> serve(String id, ImageVariant variant) {
+        if (!isWellFormedId(id)) {
+            return notFound();
+        }
+        String key = variant != null ? id + "?size=" + variant.key() : id;
+        String etag = etagOf(id, variant);
+        try {
+            ImageCache.CachedImage hot = imageCache.get(key);
+            if (hot != null) {
+                return imageResponse(hot.asResource(id), hot.getContentType(), etag, hot.getLastModified());
+            }
+            ImageStore.StoredImage image = find(id);
+            if (image == null) {
+                return notFound();
+            }
+            String contentType = contentTypeOf(id, image);
+            Resource body = image.resource();
+            long lastModified = image.lastModified();
+            if (variant != null) {
+                Path path = imageVariants.variant(variantBase(id), variant, body);
+                if (path == null) {
+                    // пул генерации перегружен: отдаём оригинал, но не кэшируем его под ETag варианта
+                    return ResponseEntity.ok()
+                            .cacheControl(CacheControl.noStore())
+                            .contentType(mediaTypeOf(contentType))
+                            .body(body);
+                }
+                body = new FileSystemResource(path);
+                lastModified = Files.getLastModifiedTime(path).toMillis();
+            }
+            if (variant != null || imageStore.cacheable()) {
+                hot = imageCache.put(key, body, contentType, lastModified);
+                if (hot != null) {
+                    body = hot.asResource(id);
+                }
+            }
+            return imageResponse(body, contentType, etag, lastModified);
         } catch (Exception e) {
             log.error("Ошибка получения изображения {}: {}", id, e.getMessage(), e);
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
         }
     }
 
+    private ResponseEntity<Resource> imageResponse(Resource body, String contentType, String etag, long lastModified) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setCacheControl(IMMUTABLE_CACHE_CONTROL);
+        headers.setETag(etag);
+        headers.setLastModified(lastModified);
+        headers.setContentType(mediaTypeOf(contentType));
+        return new ResponseEntity<>(body, headers, HttpStatus.OK);
+    }
+
+    private static MediaType mediaTypeOf(String contentType) {
+        if (contentType == null) {
+            return MediaType.APPLICATION_OCTET_STREAM;
+        }
+        try { return MediaType.parseMediaType(contentType); }
+        catch (Exception ignore) { return MediaType.APPLICATION_OCTET_STREAM; }
+    }
+
     /**
-     * Удаляет изображение: файл на диске и запись в БД (если существует).
-     * Игнорирует отсутствующие ресурсы, пишет предупреждения в лог при сбоях удаления файла.
+     * 404 с коротким временем кэширования: повторные запросы несуществующих id поглощаются прокси и браузером.
+     */
+    private static ResponseEntity<Resource> notFound() {
+        return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                .cacheControl(CacheControl.maxAge(Duration.ofMinutes(1)).cachePublic())
+                .build();
+    }
+
+    /**
+     * @return изображение из хранилища или null (id запоминается в отрицательном кэше)
+     */
+    private ImageStore.StoredImage find(String id) throws IOException {
+        if (imageCache.isMissing(id)) {
+            return null;
+        }
+        ImageStore.StoredImage image = imageStore.get(id);
+        if (image == null) {
+            imageCache.markMissing(id);
+        }
+        return image;
+    }
+
+    /**
+     * MIME-тип по расширению в id, иначе сохранённый в хранилище.
+     */
+    private static String contentTypeOf(String id, ImageStore.StoredImage image) throws IOException {
+        String type = guessContentType(id);
+        return type != null ? type : image.contentType();
+    }
+
+    /**
+     * Варианты хранятся на локальном диске рядом с местом оригинала в шардированной раскладке,
+     * независимо от хранилища оригиналов: это производные данные, которые строятся заново по запросу.
+     */
+    private Path variantBase(String id) {
+        return ImageStoreLayout.path(Paths.get(imagesDir), id);
+    }
+
+    /**
+     * Источник оригинала для фонового построения вариантов: изображение ищется в момент построения.
+     */
+    private InputStreamSource source(String id) {
+        return () -> {
+            ImageStore.StoredImage image = imageStore.get(id);
+            if (image == null) {
+                throw new NoSuchFileException(id);
+            }
+            return image.resource().getInputStream();
+        };
+    }
+
+    private static boolean isWellFormedId(String id) {
+        return id != null && (CONTENT_ID.matcher(id).matches() || LEGACY_ID.matcher(id).matches());
+    }
+
+    private static String etagOf(String id, ImageVariant variant) {
+        String base = CONTENT_ID.matcher(id).matches() ? id.substring(0, 64) : hex(sha256().digest(id.getBytes(StandardCharsets.UTF_8)));
+        return "\"" + base + (variant != null ? "-" + variant.key() : "") + "\"";
+    }
+
+    /**
+     * Снимает одну ссылку на изображение. Когда ссылок не остаётся, удаляет запись в БД, а удаление
+     * содержимого, вариантов и записей кэша передаёт {@link ImageDeleter}: оно выполняется в фоне после
+     * фиксации транзакции и отменяется при её откате, поэтому запись не может ссылаться на удалённый файл.
+     * Пока изображение используется другими объявлениями или пользователями, файл остаётся на месте.
+     * Игнорирует отсутствующие ресурсы. Ошибки БД не перехватываются и откатывают транзакцию вызывающего кода.
      * @param id идентификатор изображения (имя файла)
      */
     @Override
+    @Transactional
     public void delete(String id) {
         if (id == null || id.isBlank()) return;
-        try {
-            if (!imageRepository.existsById(id)) return;
-            Path path = Paths.get(imagesDir).resolve(id);
-            if (Files.exists(path)) {
-                try { Files.delete(path); }
-                catch (IOException e) { log.warn("Не удалось удалить файл {}: {}", id, e.getMessage()); }
+        imageRepository.decrementRefCount(id);
+        if (imageRepository.deleteIfUnreferenced(id) == 0) return;
+        imageDeleter.deleteAfterCommit(id);
+    }
+
+    /**
+     * Копирует поток во временный файл каталога через канал, считая размер и SHA-256.
+     * Итоговое имя зависит от содержимого, поэтому файл переименовывается вызывающим кодом.
+     */
+    private StoredFile writeStreaming(InputStream in, Path dir) throws IOException {
+        MessageDigest digest = sha256();
+        Path tmp = dir.resolve("upload_" + UUID.randomUUID() + ".part");
+        long size = 0;
+        try (ReadableByteChannel source = Channels.newChannel(in);
+             FileChannel out = FileChannel.open(tmp, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+            ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+            int read;
+            while ((read = source.read(buffer)) != -1) {
+                digest.update(buffer.array(), 0, read);
+                size += read;
+                buffer.flip();
+                while (buffer.hasRemaining()) {
+                    out.write(buffer);
+                }
+                buffer.clear();
             }
-            imageRepository.deleteById(id);
-        } catch (Exception e) {
-            log.warn("Ошибка при удалении изображения {}: {}", id, e.getMessage());
+            out.force(false);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(tmp);
+            throw e;
+        }
+        return new StoredFile(tmp, size, hex(digest.digest()));
+    }
+
+    private static String checksumOf(Path file) throws IOException {
+        MessageDigest digest = sha256();
+        try (FileChannel in = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+            while (in.read(buffer) != -1) {
+                digest.update(buffer.array(), 0, buffer.position());
+                buffer.clear();
+            }
+        }
+        return hex(digest.digest());
+    }
+
+    /**
+     * Определяет формат по заголовку файла и проверяет число пикселей.
+     * @throws IllegalArgumentException если формат не поддерживается
+     * @throws ImageTooLargeException если изображение больше images.upload.max-pixels
+     */
+    private ImageFormat inspect(Path file) throws IOException {
+        ImageFormat format = ImageFormat.detect(file);
+        if (format == null) {
+            throw new IllegalArgumentException("Файл не является изображением JPEG, PNG, GIF или WebP");
+        }
+        if (format.pixels() > maxPixels) {
+            throw new ImageTooLargeException("Изображение " + format.width() + "x" + format.height()
+                    + " больше допустимых " + maxPixels + " пикселей");
+        }
+        return format;
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 недоступен", e);
+        }
+    }
+
+    private static String hex(byte[] bytes) {
+        char[] out = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            out[2 * i] = HEX[(bytes[i] >> 4) & 0xF];
+            out[2 * i + 1] = HEX[bytes[i] & 0xF];
+        }
+        return new String(out);
+    }
+
+    /**
+     * Результат потоковой записи: временный файл, его размер и SHA-256 (hex).
+     */
+    private static final class StoredFile {
+        private final Path tmp;
+        private final long size;
+        private final String checksum;
+
+        StoredFile(Path tmp, long size, String checksum) {
+            this.tmp = tmp;
+            this.size = size;
+            this.checksum = checksum;
         }
     }
 
-    private String guessContentType(String id) {
+    private static String guessContentType(String id) {
         String lower = id.toLowerCase(Locale.ROOT);
         if (lower.endsWith(".png")) return MediaType.IMAGE_PNG_VALUE;
         if (lower.endsWith(".jpg") || lower.endsWith(".jpeg")) return MediaType.IMAGE_JPEG_VALUE;
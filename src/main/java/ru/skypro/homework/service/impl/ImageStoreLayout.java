@@ -0,0 +1,83 @@
+package ru.skypro.homework.service.impl;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Раскладка файлов изображений по каталогам.
+ * <p>
+ * Файлы хранятся в двух уровнях каталогов по hex-префиксу: {root}/ab/cd/{id}. Для идентификаторов,
+ * адресуемых содержимым (SHA-256), префикс берётся из самого id, для прежних имён вида ad_{uuid}.jpg —
+ * из SHA-256 имени. Так в каждом каталоге остаётся не больше нескольких тысяч файлов даже при миллионах изображений.
+ * </p>
+ * Пока {@link ImageStoreMigration} переносит файлы из плоского каталога, чтение ищет файл сначала по новому пути,
+ * затем по старому ({root}/{id}).
+ * <p>
+ * Если MIME-тип не следует из расширения в id, он лежит рядом с файлом в {id}.type.
+ * </p>
+ */
+final class ImageStoreLayout {
+
+    static final String TYPE_SUFFIX = ".type";
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private ImageStoreLayout() {
+    }
+
+    /**
+     * @param root каталог хранилища
+     * @param id идентификатор изображения
+     * @return путь файла в шардированной раскладке
+     */
+    static Path path(Path root, String id) {
+        String key = isHexPrefix(id) ? id : sha256Hex(id);
+        return root.resolve(key.substring(0, 2)).resolve(key.substring(2, 4)).resolve(id);
+    }
+
+    /**
+     * @param root каталог хранилища
+     * @param id идентификатор изображения
+     * @return путь файла в прежней плоской раскладке
+     */
+    static Path legacyPath(Path root, String id) {
+        return root.resolve(id);
+    }
+
+    /**
+     * @param file путь к файлу изображения
+     * @return путь к файлу с MIME-типом изображения
+     */
+    static Path typePath(Path file) {
+        return file.resolveSibling(file.getFileName() + TYPE_SUFFIX);
+    }
+
+    private static boolean isHexPrefix(String id) {
+        if (id.length() < 4) {
+            return false;
+        }
+        for (int i = 0; i < 4; i++) {
+            char c = id.charAt(i);
+            if (!((c >= '0' && c <= '9') || (c >= 'a' && c <= 'f'))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String sha256Hex(String value) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(value.getBytes(StandardCharsets.UTF_8));
+            char[] out = new char[4];
+            for (int i = 0; i < 2; i++) {
+                out[2 * i] = HEX[(digest[i] >> 4) & 0xF];
+                out[2 * i + 1] = HEX[digest[i] & 0xF];
+            }
+            return new String(out);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 недоступен", e);
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package ru.skypro.homework.service.impl;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import ru.skypro.homework.service.ImageVariant;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+
+/**
+ * Онлайн-перенос файлов изображений из плоского каталога в шардированную раскладку {@link ImageStoreLayout}.
+ * <p>
+ * Включается настройкой images.layout.migration.enabled и выполняется в фоновом потоке после старта приложения,
+ * не останавливая выдачу: каждый файл переносится атомарным переименованием, а чтение до и после переноса
+ * находит файл по одному из двух путей. Перенос идёт пачками по images.layout.migration.batch-size файлов
+ * с паузой images.layout.migration.pause между ними, чтобы не забирать весь дисковый I/O.
+ * </p>
+ * Переносятся оригиналы из {root} и варианты из {root}/variants/{size}. Процесс идемпотентен:
+ * после перезапуска он продолжает с оставшихся в плоском каталоге файлов.
+ */
+@Slf4j
+@Component
+public class ImageStoreMigration {
+
+    private final Path root;
+    private final boolean enabled;
+    private final int batchSize;
+    private final Duration pause;
+
+    public ImageStoreMigration(@Value("${images.upload.dir:images}") String imagesDir,
+                               @Value("${images.layout.migration.enabled:false}") boolean enabled,
+                               @Value("${images.layout.migration.batch-size:500}") int batchSize,
+                               @Value("${images.layout.migration.pause:100ms}") Duration pause) {
+        this.root = Paths.get(imagesDir);
+        this.enabled = enabled;
+        this.batchSize = Math.max(1, batchSize);
+        this.pause = pause;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onStartup() {
+        if (!enabled) {
+            return;
+        }
+        Thread thread = new Thread(this::migrateQuietly, "images-layout-migration");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Переносит все файлы плоской раскладки.
+     * @return количество перенесённых файлов
+     * @throws IOException при ошибке чтения каталога
+     * @throws InterruptedException если поток прерван во время паузы
+     */
+    public int migrate() throws IOException, InterruptedException {
+        if (!Files.isDirectory(root)) {
+            return 0;
+        }
+        int moved = 0;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(root, Files::isRegularFile)) {
+            for (Path file : files) {
+                String id = file.getFileName().toString();
+                if (id.endsWith(".part") || id.endsWith(ImageStoreLayout.TYPE_SUFFIX)) {
+                    continue;
+                }
+                moved += move(file, ImageStoreLayout.path(root, id), moved);
+            }
+        }
+        for (ImageVariant variant : ImageVariant.values()) {
+            Path variantsDir = root.resolve(ImageVariants.VARIANTS_DIR).resolve(variant.key());
+            if (!Files.isDirectory(variantsDir)) {
+                continue;
+            }
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(variantsDir, Files::isRegularFile)) {
+                for (Path file : files) {
+                    String id = file.getFileName().toString();
+                    if (id.endsWith(".part")) {
+                        continue;
+                    }
+                    moved += move(file, ImageVariants.pathOf(ImageStoreLayout.path(root, id), variant), moved);
+                }
+            }
+        }
+        log.info("Перенос изображений в шардированные каталоги завершён: перенесено {} файлов", moved);
+        return moved;
+    }
+
+    private void migrateQuietly() {
+        try {
+            migrate();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException | RuntimeException e) {
+            log.warn("Перенос изображений в шардированные каталоги прерван", e);
+        }
+    }
+
+    /**
+     * Атомарно переименовывает файл; если файл с тем же именем уже в новой раскладке, старая копия удаляется
+     * (имя определяет содержимое).
+     * @return 1, если файл перенесён
+     */
+    private int move(Path from, Path to, int movedSoFar) throws IOException, InterruptedException {
+        Files.createDirectories(to.getParent());
+        if (Files.exists(to)) {
+            Files.deleteIfExists(from);
+            return 0;
+        }
+        Files.move(from, to, StandardCopyOption.ATOMIC_MOVE);
+        if ((movedSoFar + 1) % batchSize == 0 && !pause.isZero()) {
+            Thread.sleep(pause.toMillis());
+        }
+        return 1;
+    }
+}
@@ -0,0 +1,116 @@
+package ru.skypro.homework.service.impl;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Ограничение числа одновременных загрузок изображений.
+ * <p>
+ * Запись изображения занимает поток Tomcat на всё время приёма тела запроса и записи на диск. Одновременно
+ * выполняется не больше images.upload.bulkhead.max-concurrent загрузок, ещё images.upload.bulkhead.queue
+ * ждут освобождения места не дольше images.upload.bulkhead.max-wait. Остальные отклоняются сразу,
+ * поэтому всплеск загрузок занимает ограниченное число потоков, а остальные достаются чтению.
+ * </p>
+ * Метрики: images.upload.bulkhead.active, images.upload.bulkhead.queue, images.upload.bulkhead.wait
+ * и images.upload.bulkhead.rejected с причиной отказа.
+ */
+@Component
+public class ImageUploadBulkhead {
+
+    private final Semaphore permits;
+    private final int maxConcurrent;
+    private final int queueCapacity;
+    private final Duration maxWait;
+    private final AtomicInteger waiting = new AtomicInteger();
+    private final Timer waitTimer;
+    private final Counter rejectedQueueFull;
+    private final Counter rejectedTimeout;
+
+    public ImageUploadBulkhead(MeterRegistry meterRegistry,
+                               @Value("${images.upload.bulkhead.max-concurrent:4}") int maxConcurrent,
+                               @Value("${images.upload.bulkhead.queue:16}") int queueCapacity,
+                               @Value("${images.upload.bulkhead.max-wait:2s}") Duration maxWait) {
+        this.maxConcurrent = Math.max(1, maxConcurrent);
+        this.queueCapacity = Math.max(0, queueCapacity);
+        this.maxWait = maxWait;
+        this.permits = new Semaphore(this.maxConcurrent, true);
+        Gauge.builder("images.upload.bulkhead.active", this, ImageUploadBulkhead::active)
+                .description("Загрузки изображений, выполняющиеся сейчас")
+                .register(meterRegistry);
+        Gauge.builder("images.upload.bulkhead.queue", waiting, AtomicInteger::get)
+                .description("Загрузки изображений, ожидающие свободного места")
+                .register(meterRegistry);
+        this.waitTimer = Timer.builder("images.upload.bulkhead.wait")
+                .description("Время ожидания загрузки изображения в очереди")
+                .register(meterRegistry);
+        this.rejectedQueueFull = Counter.builder("images.upload.bulkhead.rejected")
+                .tag("reason", "queue-full")
+                .description("Загрузки изображений, отклонённые из-за перегрузки")
+                .register(meterRegistry);
+        this.rejectedTimeout = Counter.builder("images.upload.bulkhead.rejected")
+                .tag("reason", "timeout")
+                .description("Загрузки изображений, отклонённые из-за перегрузки")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Занимает место для загрузки, при необходимости ожидая в очереди.
+     * После успешного вызова место обязательно освобождается через {@link #exit()}.
+     * @return true, если место получено; false, если очередь заполнена или ожидание истекло
+     */
+    public boolean tryEnter() {
+        if (permits.tryAcquire()) {
+            waitTimer.record(0, TimeUnit.NANOSECONDS);
+            return true;
+        }
+        if (waiting.incrementAndGet() > queueCapacity) {
+            waiting.decrementAndGet();
+            rejectedQueueFull.increment();
+            return false;
+        }
+        long start = System.nanoTime();
+        boolean acquired = false;
+        try {
+            acquired = permits.tryAcquire(maxWait.toNanos(), TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            waiting.decrementAndGet();
+            waitTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+        if (!acquired) {
+            rejectedTimeout.increment();
+        }
+        return acquired;
+    }
+
+    /**
+     * Освобождает место, занятое {@link #tryEnter()}.
+     */
+    public void exit() {
+        permits.release();
+    }
+
+    /**
+     * @return количество выполняющихся загрузок
+     */
+    public int active() {
+        return maxConcurrent - permits.availablePermits();
+    }
+
+    /**
+     * @return количество загрузок, ожидающих в очереди
+     */
+    public int queued() {
+        return waiting.get();
+    }
+}
@@ -0,0 +1,333 @@
+package ru.skypro.homework.service.impl;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
+import ru.skypro.homework.dto.UploadSession;
+import ru.skypro.homework.model.ImageEntity;
+import ru.skypro.homework.service.ImageService;
+import ru.skypro.homework.service.ImageUploadService;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.Properties;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * Поэтапная загрузка изображений с хранением сессий на диске.
+ * <p>
+ * Сессия — два файла в каталоге images.upload.sessions.dir: {id}.part с принятыми байтами и {id}.session
+ * с владельцем. Смещение сессии — размер {id}.part, поэтому после обрыва или
+ * перезапуска приложения клиент продолжает с того места, которое успело попасть на диск. Части пишутся
+ * из потока запроса через буфер фиксированного размера (64 КБ) сразу в файл.
+ * </p>
+ * При завершении файл передаётся в {@link ImageService#stage}: формат проверяется по содержимому, изображение
+ * сохраняется без ссылок и получает идентификатор по содержимому. Сессии без активности дольше images.upload.sessions.ttl
+ * удаляются фоновым потоком раз в images.upload.sessions.cleanup-interval.
+ * <p>
+ * Сессии хранятся на локальном диске узла: при нескольких узлах запросы одной сессии должны попадать
+ * на один узел, либо каталог сессий должен быть общим.
+ * </p>
+ */
+@Slf4j
+@Service
+public class ImageUploadServiceImpl implements ImageUploadService {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final Pattern SESSION_ID = Pattern.compile("[0-9a-f]{8}-[0-9a-f]{4}-[0-9a-f]{4}-[0-9a-f]{4}-[0-9a-f]{12}");
+    private static final String PART_SUFFIX = ".part";
+    private static final String SESSION_SUFFIX = ".session";
+    private static final String OWNER = "owner";
+    private static final String IMAGE = "image";
+    private static final String SIZE = "size";
+
+    private final ImageService imageService;
+    private final Path dir;
+    private final long maxSize;
+    private final Duration ttl;
+    private final Set<String> busy = ConcurrentHashMap.newKeySet();
+    private final ScheduledExecutorService cleaner;
+
+    public ImageUploadServiceImpl(ImageService imageService,
+                                  @Value("${images.upload.sessions.dir:${images.upload.dir:images}/uploads}") String dir,
+                                  @Value("${images.upload.max-size:10MB}") DataSize maxSize,
+                                  @Value("${images.upload.sessions.ttl:24h}") Duration ttl,
+                                  @Value("${images.upload.sessions.cleanup-interval:1h}") Duration cleanupInterval) {
+        this.imageService = imageService;
+        this.dir = Paths.get(dir);
+        this.maxSize = maxSize.toBytes();
+        this.ttl = ttl;
+        if (cleanupInterval.isZero()) {
+            this.cleaner = null;
+        } else {
+            this.cleaner = Executors.newSingleThreadScheduledExecutor(task -> {
+                Thread thread = new Thread(task, "image-upload-cleanup");
+                thread.setDaemon(true);
+                return thread;
+            });
+            long millis = cleanupInterval.toMillis();
+            cleaner.scheduleWithFixedDelay(this::cleanupQuietly, millis, millis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @Override
+    public UploadSession create() throws IOException {
+        String owner = currentUser();
+        if (owner == null) {
+            throw new IllegalStateException("Текущий пользователь не найден");
+        }
+        String id = UUID.randomUUID().toString();
+        Properties session = new Properties();
+        session.setProperty(OWNER, owner);
+        Files.createDirectories(dir);
+        Files.createFile(partPath(id));
+        writeSession(id, session);
+        return toDto(id, session);
+    }
+
+    @Override
+    public UploadSession get(String id) throws IOException {
+        Properties session = readSession(id);
+        return session == null ? null : toDto(id, session);
+    }
+
+    @Override
+    public UploadSession append(String id, long offset, InputStream body) throws IOException {
+        Properties session = readSession(id);
+        if (session == null) {
+            return null;
+        }
+        if (session.getProperty(IMAGE) != null) {
+            throw new IllegalStateException("Загрузка уже завершена");
+        }
+        acquire(id);
+        try (FileChannel out = FileChannel.open(partPath(id), StandardOpenOption.WRITE)) {
+            long start = out.size();
+            if (offset != start) {
+                throw new IllegalStateException("Ожидается часть со смещением " + start);
+            }
+            ReadableByteChannel in = Channels.newChannel(body);
+            ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+            long position = start;
+            try {
+                while (in.read(buffer) != -1) {
+                    buffer.flip();
+                    if (position + buffer.remaining() > maxSize) {
+                        out.truncate(start);
+                        throw new IllegalArgumentException("Изображение больше " + maxSize + " байт");
+                    }
+                    while (buffer.hasRemaining()) {
+                        position += out.write(buffer, position);
+                    }
+                    buffer.clear();
+                }
+            } finally {
+                // принятое до обрыва остаётся на диске: клиент продолжит с нового смещения
+                out.force(false);
+            }
+        } catch (NoSuchFileException e) {
+            return null;
+        } finally {
+            busy.remove(id);
+        }
+        return toDto(id, session);
+    }
+
+    @Override
+    public UploadSession complete(String id) throws IOException {
+        Properties session = readSession(id);
+        if (session == null) {
+            return null;
+        }
+        if (session.getProperty(IMAGE) != null) {
+            return toDto(id, session);
+        }
+        acquire(id);
+        try {
+            // загрузку мог завершить параллельный запрос
+            session = readSession(id);
+            if (session == null || session.getProperty(IMAGE) != null) {
+                return session == null ? null : toDto(id, session);
+            }
+            Path part = partPath(id);
+            if (!Files.exists(part)) {
+                return null;
+            }
+            long size = Files.size(part);
+            ImageEntity image = imageService.stage(part);
+            session.setProperty(IMAGE, image.getId());
+            session.setProperty(SIZE, Long.toString(size));
+            writeSession(id, session);
+            return toDto(id, session);
+        } finally {
+            busy.remove(id);
+        }
+    }
+
+    @Override
+    public boolean cancel(String id) throws IOException {
+        if (readSession(id) == null) {
+            return false;
+        }
+        acquire(id);
+        try {
+            delete(id);
+            return true;
+        } finally {
+            busy.remove(id);
+        }
+    }
+
+    /**
+     * Удаляет сессии, в которые ничего не передавали дольше images.upload.sessions.ttl.
+     * @return количество удалённых сессий
+     * @throws IOException при ошибке чтения каталога
+     */
+    public int cleanup() throws IOException {
+        if (!Files.isDirectory(dir)) {
+            return 0;
+        }
+        long expired = System.currentTimeMillis() - ttl.toMillis();
+        int removed = 0;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                if (!name.endsWith(SESSION_SUFFIX)) {
+                    continue;
+                }
+                String id = name.substring(0, name.length() - SESSION_SUFFIX.length());
+                if (lastActivity(id) >= expired || !busy.add(id)) {
+                    continue;
+                }
+                try {
+                    delete(id);
+                    removed++;
+                } finally {
+                    busy.remove(id);
+                }
+            }
+        }
+        return removed;
+    }
+
+    @PreDestroy
+    public void close() {
+        if (cleaner != null) {
+            cleaner.shutdownNow();
+        }
+    }
+
+    private void cleanupQuietly() {
+        try {
+            int removed = cleanup();
+            if (removed > 0) {
+                log.info("Удалено истёкших сессий загрузки изображений: {}", removed);
+            }
+        } catch (IOException | RuntimeException e) {
+            log.warn("Очистка сессий загрузки изображений прервана: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Одна сессия обрабатывается одним запросом: параллельная передача частей привела бы к гонке за смещение.
+     */
+    private void acquire(String id) {
+        if (!busy.add(id)) {
+            throw new IllegalStateException("Сессия загрузки " + id + " занята другим запросом");
+        }
+    }
+
+    /**
+     * @return сессия текущего пользователя или null, если её нет, id некорректен или владелец другой
+     */
+    private Properties readSession(String id) throws IOException {
+        if (id == null || !SESSION_ID.matcher(id).matches()) {
+            return null;
+        }
+        Properties session = new Properties();
+        try (Reader reader = Files.newBufferedReader(sessionPath(id), StandardCharsets.UTF_8)) {
+            session.load(reader);
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+        String owner = currentUser();
+        return owner != null && owner.equals(session.getProperty(OWNER)) ? session : null;
+    }
+
+    private void writeSession(String id, Properties session) throws IOException {
+        Path tmp = dir.resolve(id + SESSION_SUFFIX + ".tmp");
+        try (Writer writer = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+            session.store(writer, null);
+        }
+        Files.move(tmp, sessionPath(id), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private void delete(String id) throws IOException {
+        Files.deleteIfExists(partPath(id));
+        Files.deleteIfExists(sessionPath(id));
+    }
+
+    private UploadSession toDto(String id, Properties session) throws IOException {
+        UploadSession dto = new UploadSession();
+        dto.setId(id);
+        dto.setImageId(session.getProperty(IMAGE));
+        Path part = partPath(id);
+        if (session.getProperty(SIZE) != null) {
+            dto.setOffset(Long.parseLong(session.getProperty(SIZE)));
+        } else {
+            dto.setOffset(Files.exists(part) ? Files.size(part) : 0);
+        }
+        dto.setExpiresAt(lastActivity(id) + ttl.toMillis());
+        return dto;
+    }
+
+    private long lastActivity(String id) throws IOException {
+        long last = 0;
+        for (Path path : new Path[]{partPath(id), sessionPath(id)}) {
+            try {
+                last = Math.max(last, Files.getLastModifiedTime(path).toMillis());
+            } catch (NoSuchFileException e) {
+                // после завершения загрузки остаётся только файл сессии
+            }
+        }
+        return last;
+    }
+
+    private Path partPath(String id) {
+        return dir.resolve(id + PART_SUFFIX);
+    }
+
+    private Path sessionPath(String id) {
+        return dir.resolve(id + SESSION_SUFFIX);
+    }
+
+    private static String currentUser() {
+        Authentication auth = SecurityContextHolder.getContext().getAuthentication();
+        return auth == null ? null : auth.getName();
+    }
+}
@@ -0,0 +1,317 @@
+package ru.skypro.homework.service.impl;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.InputStreamSource;
+import org.springframework.stereotype.Component;
+import ru.skypro.homework.service.ImageVariant;
+
+import javax.annotation.PreDestroy;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.MemoryCacheImageInputStream;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Iterator;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Генерация размерных вариантов изображений ({@link ImageVariant}).
+ * <p>
+ * Варианты хранятся рядом с оригиналами: {каталог оригинала}/variants/{size}/{id}, в том же формате,
+ * что и оригинал. После сохранения изображения все варианты строятся в фоне на ограниченном пуле
+ * (images.variants.threads потоков, очередь images.variants.queue задач); при переполнении очереди
+ * задача отбрасывается и вариант строится по первому запросу. Построение по запросу выполняется на том же пуле,
+ * поток запроса лишь ждёт результата; если очередь заполнена, вызывающий отдаёт оригинал.
+ * </p>
+ * Крупный оригинал декодируется с прореживанием (source subsampling) до стороны не меньше удвоенной стороны
+ * варианта, поэтому память на декодирование не растёт с размером оригинала.
+ * Если изображение не больше варианта или его формат не читается ImageIO, вариантом служит копия оригинала,
+ * чтобы повторные запросы не декодировали файл заново. Так же обрабатываются изображения больше
+ * images.upload.max-pixels пикселей (например, сохранённые до проверки при загрузке): размеры читаются
+ * из заголовка, и такой файл не декодируется.
+ * <p>
+ * Содержимое оригинала может приходить не из файла, а из {@link ru.skypro.homework.service.ImageStore}
+ * (параметр source); путь оригинала тогда лишь задаёт, где лежат варианты.
+ * </p>
+ */
+@Slf4j
+@Component
+public class ImageVariants {
+
+    static final String VARIANTS_DIR = "variants";
+
+    private final ThreadPoolExecutor executor;
+    private final long maxPixels;
+    private final ConcurrentMap<Path, CompletableFuture<Path>> inFlight = new ConcurrentHashMap<>();
+
+    public ImageVariants(@Value("${images.variants.threads:2}") int threads,
+                         @Value("${images.variants.queue:100}") int queueCapacity,
+                         @Value("${images.upload.max-pixels:40000000}") long maxPixels) {
+        this.maxPixels = maxPixels;
+        AtomicInteger counter = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), task -> {
+                    Thread thread = new Thread(task, "image-variants-" + counter.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+    }
+
+    /**
+     * Ставит построение всех вариантов в очередь после commit текущей транзакции.
+     * @param original путь к оригиналу
+     */
+    public void generateAsync(Path original) {
+        generateAsync(original, new FileSystemResource(original));
+    }
+
+    /**
+     * Ставит построение всех вариантов в очередь после commit текущей транзакции.
+     * @param original путь оригинала, рядом с которым лежат варианты
+     * @param source содержимое оригинала
+     */
+    public void generateAsync(Path original, InputStreamSource source) {
+        AfterCommit.run(() -> {
+            for (ImageVariant variant : ImageVariant.values()) {
+                try {
+                    executor.execute(() -> generateQuietly(original, variant, source));
+                } catch (RejectedExecutionException e) {
+                    log.debug("Очередь генерации вариантов заполнена, {} ({}) будет построен по запросу",
+                            original.getFileName(), variant.key());
+                }
+            }
+        });
+    }
+
+    /**
+     * Путь к готовому варианту; при отсутствии вариант строится на пуле генерации, поток запроса ждёт результата.
+     * Одновременные запросы одного варианта ждут единственного построения.
+     * @param original путь к оригиналу
+     * @param variant размер
+     * @return путь к файлу варианта или null, если очередь генерации заполнена
+     * @throws IOException при ошибке чтения оригинала или записи варианта
+     */
+    public Path variant(Path original, ImageVariant variant) throws IOException {
+        return variant(original, variant, new FileSystemResource(original));
+    }
+
+    /**
+     * Путь к готовому варианту; при отсутствии вариант строится из source на пуле генерации.
+     * @param original путь оригинала, рядом с которым лежат варианты
+     * @param variant размер
+     * @param source содержимое оригинала
+     * @return путь к файлу варианта или null, если очередь генерации заполнена (вызывающий отдаёт оригинал)
+     * @throws IOException при ошибке чтения оригинала или записи варианта
+     */
+    public Path variant(Path original, ImageVariant variant, InputStreamSource source) throws IOException {
+        Path target = pathOf(original, variant);
+        if (Files.isRegularFile(target)) {
+            return target;
+        }
+        CompletableFuture<Path> own = new CompletableFuture<>();
+        CompletableFuture<Path> running = inFlight.putIfAbsent(target, own);
+        if (running != null) {
+            return await(running);
+        }
+        try {
+            executor.execute(() -> {
+                try {
+                    build(own, source, variant, target);
+                } catch (IOException | RuntimeException e) {
+                    // ошибка передана ожидающим через own
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            inFlight.remove(target, own);
+            own.complete(null);
+            log.debug("Очередь генерации вариантов заполнена, вместо {} ({}) отдаётся оригинал",
+                    original.getFileName(), variant.key());
+            return null;
+        }
+        return await(own);
+    }
+
+    /**
+     * Удаляет все варианты изображения.
+     * @param original путь к оригиналу
+     */
+    public void delete(Path original) {
+        for (ImageVariant variant : ImageVariant.values()) {
+            try {
+                Files.deleteIfExists(pathOf(original, variant));
+            } catch (IOException e) {
+                log.warn("Не удалось удалить вариант {} ({}): {}", original.getFileName(), variant.key(), e.getMessage());
+            }
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    static Path pathOf(Path original, ImageVariant variant) {
+        return original.resolveSibling(VARIANTS_DIR).resolve(variant.key()).resolve(original.getFileName());
+    }
+
+    /**
+     * Фоновое построение: выполняется уже в потоке пула, поэтому строит сам, а не ставит задачу в очередь.
+     */
+    private void generateQuietly(Path original, ImageVariant variant, InputStreamSource source) {
+        Path target = pathOf(original, variant);
+        if (Files.isRegularFile(target)) {
+            return;
+        }
+        CompletableFuture<Path> own = new CompletableFuture<>();
+        if (inFlight.putIfAbsent(target, own) != null) {
+            return;
+        }
+        try {
+            build(own, source, variant, target);
+        } catch (NoSuchFileException e) {
+            // оригинал удалён раньше, чем до него дошла очередь
+        } catch (IOException | RuntimeException e) {
+            log.warn("Не удалось построить вариант {} ({}): {}", original.getFileName(), variant.key(), e.getMessage());
+        }
+    }
+
+    private static Path await(CompletableFuture<Path> running) throws IOException {
+        try {
+            return running.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Строит вариант, сообщает результат ожидающим через own и снимает отметку о построении.
+     */
+    private void build(CompletableFuture<Path> own, InputStreamSource source, ImageVariant variant, Path target)
+            throws IOException {
+        try {
+            render(source, variant, target);
+            own.complete(target);
+        } catch (IOException | RuntimeException e) {
+            own.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(target, own);
+        }
+    }
+
+    /**
+     * Строит вариант во временном файле и атомарно переименовывает его в итоговый.
+     */
+    private void render(InputStreamSource source, ImageVariant variant, Path target) throws IOException {
+        Files.createDirectories(target.getParent());
+        Path tmp = Files.createTempFile(target.getParent(), target.getFileName().toString(), ".part");
+        try {
+            if (!writeScaled(source, variant.getMaxSide(), tmp)) {
+                try (InputStream in = source.getInputStream()) {
+                    Files.copy(in, tmp, StandardCopyOption.REPLACE_EXISTING);
+                }
+            }
+            Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(tmp);
+            throw e;
+        }
+    }
+
+    /**
+     * @return false, если уменьшение не требуется или формат не поддерживается (вариант — копия оригинала)
+     */
+    private boolean writeScaled(InputStreamSource original, int maxSide, Path out) throws IOException {
+        BufferedImage source;
+        String format;
+        int width;
+        int height;
+        try (InputStream stream = original.getInputStream();
+             ImageInputStream in = new MemoryCacheImageInputStream(stream)) {
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(in);
+            if (!readers.hasNext()) {
+                return false;
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(in, true, true);
+                format = reader.getFormatName();
+                width = reader.getWidth(0);
+                height = reader.getHeight(0);
+                if (width <= maxSide && height <= maxSide || (long) width * height > maxPixels) {
+                    return false;
+                }
+                ImageReadParam param = reader.getDefaultReadParam();
+                int step = subsampling(width, height, maxSide);
+                if (step > 1) {
+                    param.setSourceSubsampling(step, step, 0, 0);
+                }
+                source = reader.read(0, param);
+            } finally {
+                reader.dispose();
+            }
+        }
+        double ratio = Math.min((double) maxSide / width, (double) maxSide / height);
+        int targetWidth = Math.max(1, (int) Math.round(width * ratio));
+        int targetHeight = Math.max(1, (int) Math.round(height * ratio));
+        boolean opaque = "jpeg".equalsIgnoreCase(format) || "jpg".equalsIgnoreCase(format) || !source.getColorModel().hasAlpha();
+        BufferedImage scaled = scale(source, targetWidth, targetHeight,
+                opaque ? BufferedImage.TYPE_INT_RGB : BufferedImage.TYPE_INT_ARGB);
+        return ImageIO.write(scaled, format, out.toFile());
+    }
+
+    /**
+     * Шаг прореживания, при котором большая сторона декодированного изображения остаётся не меньше
+     * удвоенной стороны варианта: дальше её уменьшает {@link #scale}, и качество не страдает.
+     */
+    static int subsampling(int width, int height, int maxSide) {
+        return Math.max(1, Math.max(width, height) / (2 * maxSide));
+    }
+
+    /**
+     * Уменьшение последовательными шагами не более чем вдвое: билинейная интерполяция
+     * на каждом шаге даёт качество, близкое к усреднению, без его стоимости.
+     */
+    private static BufferedImage scale(BufferedImage source, int width, int height, int type) {
+        BufferedImage current = source;
+        int w = source.getWidth();
+        int h = source.getHeight();
+        do {
+            w = Math.max(width, w / 2);
+            h = Math.max(height, h / 2);
+            BufferedImage next = new BufferedImage(w, h, type);
+            Graphics2D g = next.createGraphics();
+            try {
+                g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+                g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+                g.drawImage(current, 0, 0, w, h, null);
+            } finally {
+                g.dispose();
+            }
+            current = next;
+        } while (w != width || h != height);
+        return current;
+    }
+}
@@ -0,0 +1,91 @@
+package ru.skypro.homework.service.impl;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Непрозрачный курсор для keyset-пагинации.
+ * <p>
+ * Курсор хранит значения ключа сортировки последней выданной строки
+ * (например, id или пару price + id) и тип сортировки, для которой он был выдан.
+ * Наружу отдаётся как base64url-строка, клиент не должен разбирать её содержимое.
+ * </p>
+ */
+public final class KeysetCursor {
+
+    private static final String SEPARATOR = "|";
+    private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+    private static final Base64.Decoder DECODER = Base64.getUrlDecoder();
+
+    private final String[] values;
+
+    private KeysetCursor(String[] values) {
+        this.values = values;
+    }
+
+    /**
+     * Кодирует значения ключа в курсор.
+     * @param kind тип сортировки (проверяется при декодировании)
+     * @param values значения ключа последней строки страницы
+     * @return непрозрачный токен продолжения
+     */
+    public static String encode(String kind, Object... values) {
+        StringBuilder sb = new StringBuilder(kind);
+        for (Object value : values) {
+            sb.append(SEPARATOR).append(value);
+        }
+        return ENCODER.encodeToString(sb.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Декодирует курсор.
+     * @param token токен, полученный клиентом в поле next
+     * @param kind ожидаемый тип сортировки
+     * @param arity ожидаемое количество значений ключа
+     * @return разобранный курсор
+     * @throws IllegalArgumentException если токен повреждён или выдан для другой сортировки
+     */
+    public static KeysetCursor decode(String token, String kind, int arity) {
+        String raw;
+        try {
+            raw = new String(DECODER.decode(token), StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Некорректный курсор", e);
+        }
+        String[] parts = raw.split("\\" + SEPARATOR, -1);
+        if (parts.length != arity + 1 || !parts[0].equals(kind)) {
+            throw new IllegalArgumentException("Некорректный курсор");
+        }
+        String[] values = new String[arity];
+        System.arraycopy(parts, 1, values, 0, arity);
+        return new KeysetCursor(values);
+    }
+
+    /**
+     * Значение ключа как целое число.
+     * @param index позиция значения
+     * @return значение
+     * @throws IllegalArgumentException если значение не является числом
+     */
+    public int intAt(int index) {
+        try {
+            return Integer.parseInt(values[index]);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Некорректный курсор", e);
+        }
+    }
+
+    /**
+     * Значение ключа как число с плавающей точкой.
+     * @param index позиция значения
+     * @return значение
+     * @throws IllegalArgumentException если значение не является числом
+     */
+    public double doubleAt(int index) {
+        try {
+            return Double.parseDouble(values[index]);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Некорректный курсор", e);
+        }
+    }
+}
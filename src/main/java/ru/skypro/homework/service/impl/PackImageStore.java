@@ -0,0 +1,756 @@
+package ru.skypro.homework.service.impl;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.io.Resource;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+import ru.skypro.homework.service.ImageStore;
+
+import javax.annotation.PreDestroy;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+/**
+ * Хранилище изображений в сегментных файлах (pack-файлах) с чтением через отображение в память.
+ * <p>
+ * Содержимое дописывается в конец активного сегмента {dir}/{номер}.seg; когда сегмент достигает
+ * images.pack.segment-size, открывается следующий. Запись несёт заголовок с id, MIME-типом и длиной,
+ * удаление дописывает запись-надгробие. Положение живых изображений (сегмент, смещение, длина) хранится в памяти
+ * и сохраняется в компактный файл index.bin вместе с отметкой, до какого места сегментов он актуален:
+ * при старте индекс читается, а записи после отметки досчитываются из сегментов. Индекс сохраняется
+ * каждые images.pack.index.interval, поэтому после сбоя досчитывается только хвост за этот интервал.
+ * Оборванная сбоем запись в конце последнего сегмента отрезается.
+ * </p>
+ * Чтение идёт из отображённых в память сегментов, без open/read/close на каждое изображение, поэтому
+ * копировать изображения в {@link ImageCache} не нужно. Активный сегмент заранее растягивается до
+ * images.pack.segment-size и отображается один раз целиком, так что дописанные записи читаются без
+ * нового отображения. Фоновое уплотнение (каждые images.pack.compaction.interval)
+ * переписывает живые записи сегментов, где доля удалённых данных не меньше images.pack.compaction.threshold,
+ * в активный сегмент и удаляет старый файл; его отображение освобождается сборщиком мусора после завершения
+ * всех чтений. Надгробие из уплотняемого сегмента переносится вместе с живыми записями, если в более старом
+ * остающемся сегменте есть запись этого id: иначе восстановление по сегментам вернуло бы удалённое изображение.
+ * Выбирается настройкой images.store.type=pack.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "images.store.type", havingValue = "pack")
+public class PackImageStore implements ImageStore {
+
+    private static final int RECORD_MAGIC = 0x494d4731;
+    private static final int INDEX_MAGIC = 0x494d4749;
+    private static final byte PUT = 1;
+    private static final byte DELETE = 2;
+    private static final String SEGMENT_SUFFIX = ".seg";
+    private static final String INDEX_FILE = "index.bin";
+
+    private final Path dir;
+    private final long segmentSize;
+    private final double compactionThreshold;
+    private final ConcurrentNavigableMap<String, Entry> index = new ConcurrentSkipListMap<>();
+    private final ConcurrentNavigableMap<Integer, Segment> segments = new ConcurrentSkipListMap<>();
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private final ScheduledExecutorService maintenance;
+    private volatile Segment active;
+
+    public PackImageStore(@Value("${images.pack.dir:${images.upload.dir:images}/pack}") String packDir,
+                          @Value("${images.pack.segment-size:256MB}") DataSize segmentSize,
+                          @Value("${images.pack.compaction.threshold:0.5}") double compactionThreshold,
+                          @Value("${images.pack.compaction.interval:10m}") Duration compactionInterval,
+                          @Value("${images.pack.index.interval:1m}") Duration indexInterval) {
+        this.dir = Paths.get(packDir);
+        this.segmentSize = Math.min(segmentSize.toBytes(), Integer.MAX_VALUE);
+        this.compactionThreshold = compactionThreshold;
+        try {
+            open();
+        } catch (IOException e) {
+            throw new IllegalStateException("Не удалось открыть хранилище изображений " + dir, e);
+        }
+        if (compactionInterval.isZero() && indexInterval.isZero()) {
+            this.maintenance = null;
+        } else {
+            this.maintenance = Executors.newSingleThreadScheduledExecutor(task -> {
+                Thread thread = new Thread(task, "image-pack-maintenance");
+                thread.setDaemon(true);
+                return thread;
+            });
+            if (!compactionInterval.isZero()) {
+                long millis = compactionInterval.toMillis();
+                maintenance.scheduleWithFixedDelay(this::compactQuietly, millis, millis, TimeUnit.MILLISECONDS);
+            }
+            if (!indexInterval.isZero()) {
+                long millis = indexInterval.toMillis();
+                maintenance.scheduleWithFixedDelay(this::saveIndexQuietly, millis, millis, TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+    /**
+     * Дописывает содержимое в активный сегмент и сбрасывает его на диск. Уже сохранённый id не дописывается повторно.
+     */
+    @Override
+    public void put(String id, Path source, String contentType) throws IOException {
+        try {
+            append(id, source, contentType);
+        } finally {
+            Files.deleteIfExists(source);
+        }
+    }
+
+    private void append(String id, Path source, String contentType) throws IOException {
+        writeLock.lock();
+        try {
+            if (index.containsKey(id)) {
+                return;
+            }
+            long length = Files.size(source);
+            byte[] idBytes = id.getBytes(StandardCharsets.UTF_8);
+            byte[] typeBytes = contentType != null ? contentType.getBytes(StandardCharsets.UTF_8) : new byte[0];
+            int headerSize = headerSize(idBytes, typeBytes, true);
+            if (length > Integer.MAX_VALUE - headerSize) {
+                throw new IOException("Изображение " + id + " слишком велико для сегмента");
+            }
+            long timestamp = System.currentTimeMillis();
+            Segment segment = segmentFor(headerSize + length);
+            long start = segment.end;
+            writeFully(segment.channel, header(PUT, timestamp, idBytes, typeBytes, length), start);
+            try (FileChannel in = FileChannel.open(source, StandardOpenOption.READ)) {
+                long done = 0;
+                while (done < length) {
+                    long n = segment.channel.transferFrom(in, start + headerSize + done, length - done);
+                    if (n <= 0) {
+                        // конец сегмента не сдвигается, а затёртый заголовок не даст принять запись при восстановлении
+                        writeFully(segment.channel, ByteBuffer.allocate(4), start);
+                        throw new IOException("Файл изображения " + id + " прочитан не полностью");
+                    }
+                    done += n;
+                }
+            }
+            segment.channel.force(false);
+            segment.end = start + headerSize + length;
+            index.put(id, new Entry(segment.number, start + headerSize, (int) length, timestamp, contentType));
+            segment.liveBytes += headerSize + length;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public StoredImage get(String id) throws IOException {
+        // запись могла переехать при уплотнении между чтением индекса и поиском сегмента
+        for (int attempt = 0; attempt < 2; attempt++) {
+            Entry entry = index.get(id);
+            if (entry == null) {
+                return null;
+            }
+            Segment segment = segments.get(entry.segment);
+            if (segment != null) {
+                return new PackedImage(id, entry, segment.slice(entry.offset, entry.length));
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public void delete(String id) throws IOException {
+        writeLock.lock();
+        try {
+            Entry entry = index.get(id);
+            if (entry == null) {
+                return;
+            }
+            appendTombstone(id, System.currentTimeMillis()).channel.force(false);
+            index.remove(id);
+            Segment owner = segments.get(entry.segment);
+            if (owner != null) {
+                owner.liveBytes -= entry.recordSize(id);
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Индекс упорядочен по id, поэтому страница начинается сразу после курсора, без обхода всего индекса.
+     */
+    @Override
+    public Page list(String cursor, int limit) {
+        Map<String, Entry> tail = cursor == null ? index : index.tailMap(cursor, false);
+        List<String> ids = new ArrayList<>(limit);
+        for (String id : tail.keySet()) {
+            if (ids.size() >= limit) {
+                break;
+            }
+            ids.add(id);
+        }
+        return new Page(ids, ids.size() < limit ? null : ids.get(ids.size() - 1));
+    }
+
+    /**
+     * Чтение идёт из отображённых сегментов, копия в кэше не ускоряет его.
+     */
+    @Override
+    public boolean cacheable() {
+        return false;
+    }
+
+    /**
+     * Уплотняет закрытые сегменты, в которых доля удалённых данных не меньше порога.
+     * Сегменты обрабатываются и удаляются от старых к новым: после сбоя посреди удаления не может остаться
+     * сегмент с записью id без более нового сегмента с его надгробием.
+     * @return количество удалённых сегментов
+     * @throws IOException при ошибке чтения или записи сегментов
+     */
+    public int compact() throws IOException {
+        Map<Integer, List<String>> candidates = new TreeMap<>();
+        List<Segment> survivors = new ArrayList<>();
+        for (Segment segment : segments.values()) {
+            long size = segment.size();
+            if (segment != active && size > 0 && 1.0 - (double) segment.liveBytes / size >= compactionThreshold) {
+                candidates.put(segment.number, new ArrayList<>());
+            } else if (segment != active) {
+                survivors.add(segment);
+            }
+        }
+        if (candidates.isEmpty()) {
+            return 0;
+        }
+        for (Map.Entry<String, Entry> item : index.entrySet()) {
+            List<String> ids = candidates.get(item.getValue().segment);
+            if (ids != null) {
+                ids.add(item.getKey());
+            }
+        }
+        // id с записями в остающихся сегментах старше текущего кандидата; дополняется по мере продвижения
+        Set<String> olderPuts = new HashSet<>();
+        int scanned = 0;
+        for (Map.Entry<Integer, List<String>> candidate : candidates.entrySet()) {
+            Segment segment = segments.get(candidate.getKey());
+            for (String id : candidate.getValue()) {
+                relocate(id, segment);
+            }
+            List<Record> tombstones = new ArrayList<>();
+            scan(segment, 0, record -> {
+                if (record.kind == DELETE && !index.containsKey(record.id)) {
+                    tombstones.add(record);
+                }
+            });
+            if (tombstones.isEmpty()) {
+                continue;
+            }
+            for (; scanned < survivors.size() && survivors.get(scanned).number < segment.number; scanned++) {
+                scan(survivors.get(scanned), 0, record -> {
+                    if (record.kind == PUT) {
+                        olderPuts.add(record.id);
+                    }
+                });
+            }
+            for (Record tombstone : tombstones) {
+                if (olderPuts.contains(tombstone.id)) {
+                    carryTombstone(tombstone);
+                }
+            }
+        }
+        writeLock.lock();
+        try {
+            active.channel.force(false);
+            // индекс сохраняется до удаления сегментов: после сбоя он не должен ссылаться на удалённый файл
+            persistIndex();
+            for (Integer number : candidates.keySet()) {
+                Segment segment = segments.remove(number);
+                segment.channel.close();
+                Files.deleteIfExists(segment.path);
+            }
+        } finally {
+            writeLock.unlock();
+        }
+        log.info("Уплотнение хранилища изображений: удалено сегментов {}", candidates.size());
+        return candidates.size();
+    }
+
+    @PreDestroy
+    public void close() throws IOException {
+        if (maintenance != null) {
+            maintenance.shutdownNow();
+        }
+        writeLock.lock();
+        try {
+            persistIndex();
+            active.trim();
+            for (Segment segment : segments.values()) {
+                segment.channel.close();
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Сохраняет индекс, чтобы после сбоя досчитывать из сегментов только записи с последнего сохранения.
+     */
+    private void saveIndexQuietly() {
+        writeLock.lock();
+        try {
+            persistIndex();
+        } catch (IOException | RuntimeException e) {
+            log.warn("Индекс хранилища изображений не сохранён", e);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    private void compactQuietly() {
+        try {
+            compact();
+        } catch (IOException | RuntimeException e) {
+            log.warn("Уплотнение хранилища изображений прервано", e);
+        }
+    }
+
+    /**
+     * Переписывает живую запись закрытого сегмента в активный.
+     */
+    private void relocate(String id, Segment from) throws IOException {
+        writeLock.lock();
+        try {
+            Entry entry = index.get(id);
+            if (entry == null || entry.segment != from.number) {
+                return;
+            }
+            byte[] idBytes = id.getBytes(StandardCharsets.UTF_8);
+            byte[] typeBytes = entry.contentType != null
+                    ? entry.contentType.getBytes(StandardCharsets.UTF_8) : new byte[0];
+            int headerSize = headerSize(idBytes, typeBytes, true);
+            Segment segment = segmentFor(headerSize + (long) entry.length);
+            long start = segment.end;
+            writeFully(segment.channel, header(PUT, entry.timestamp, idBytes, typeBytes, entry.length), start);
+            writeFully(segment.channel, from.slice(entry.offset, entry.length), start + headerSize);
+            segment.end = start + headerSize + entry.length;
+            index.put(id, new Entry(segment.number, start + headerSize, entry.length, entry.timestamp, entry.contentType));
+            segment.liveBytes += headerSize + (long) entry.length;
+            from.liveBytes -= headerSize + (long) entry.length;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Переносит надгробие уплотняемого сегмента в активный, если id за это время не был записан заново.
+     */
+    private void carryTombstone(Record tombstone) throws IOException {
+        writeLock.lock();
+        try {
+            if (!index.containsKey(tombstone.id)) {
+                appendTombstone(tombstone.id, tombstone.timestamp);
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Дописывает надгробие в активный сегмент. Вызывается под writeLock.
+     * @return сегмент, в который записано надгробие
+     */
+    private Segment appendTombstone(String id, long timestamp) throws IOException {
+        ByteBuffer tombstone = header(DELETE, timestamp, id.getBytes(StandardCharsets.UTF_8), new byte[0], 0);
+        int size = tombstone.remaining();
+        Segment segment = segmentFor(size);
+        long start = segment.end;
+        writeFully(segment.channel, tombstone, start);
+        segment.end = start + size;
+        return segment;
+    }
+
+    /**
+     * Активный сегмент, в который поместится запись; при переполнении открывает следующий.
+     */
+    private Segment segmentFor(long recordSize) throws IOException {
+        Segment current = active;
+        long size = current.end;
+        if (size == 0 || size + recordSize <= segmentSize) {
+            return current;
+        }
+        current.seal();
+        Segment next = Segment.open(dir, current.number + 1);
+        next.activate(segmentSize);
+        segments.put(next.number, next);
+        active = next;
+        return next;
+    }
+
+    private void open() throws IOException {
+        Files.createDirectories(dir);
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, "*" + SEGMENT_SUFFIX)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                int number = Integer.parseInt(name.substring(0, name.length() - SEGMENT_SUFFIX.length()));
+                segments.put(number, Segment.open(dir, number));
+            }
+        }
+        if (segments.isEmpty()) {
+            segments.put(1, Segment.open(dir, 1));
+        }
+        int checkpointSegment = segments.firstKey();
+        long checkpointPosition = 0;
+        Path indexFile = dir.resolve(INDEX_FILE);
+        if (Files.exists(indexFile)) {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(indexFile)))) {
+                if (in.readInt() != INDEX_MAGIC) {
+                    throw new IOException("Неверный формат " + indexFile);
+                }
+                checkpointSegment = in.readInt();
+                checkpointPosition = in.readLong();
+                int count = in.readInt();
+                for (int i = 0; i < count; i++) {
+                    String id = in.readUTF();
+                    int segment = in.readInt();
+                    long offset = in.readLong();
+                    int length = in.readInt();
+                    long timestamp = in.readLong();
+                    String type = in.readUTF();
+                    index.put(id, new Entry(segment, offset, length, timestamp, type.isEmpty() ? null : type));
+                }
+            } catch (IOException e) {
+                log.warn("Индекс хранилища изображений {} не прочитан, он будет восстановлен по сегментам: {}",
+                        indexFile, e.getMessage());
+                index.clear();
+                checkpointSegment = segments.firstKey();
+                checkpointPosition = 0;
+            }
+        }
+        int last = segments.lastKey();
+        for (Segment segment : segments.tailMap(checkpointSegment, true).values()) {
+            long from = segment.number == checkpointSegment ? checkpointPosition : 0;
+            long end = replay(segment, from);
+            if (end < segment.size()) {
+                // нули после последней записи - заранее выделенное место активного сегмента, а не повреждение
+                boolean preallocated = isBlank(segment, end);
+                if (!preallocated) {
+                    log.warn("Сегмент {} повреждён после позиции {} (размер {})", segment.path, end, segment.size());
+                }
+                if (preallocated || segment.number == last) {
+                    segment.end = end;
+                    segment.channel.truncate(end);
+                    segment.channel.force(true);
+                }
+            }
+        }
+        index.values().removeIf(entry -> !segments.containsKey(entry.segment));
+        for (Map.Entry<String, Entry> item : index.entrySet()) {
+            segments.get(item.getValue().segment).liveBytes += item.getValue().recordSize(item.getKey());
+        }
+        for (Segment segment : segments.headMap(last, false).values()) {
+            segment.seal();
+        }
+        active = segments.get(last);
+        active.activate(segmentSize);
+    }
+
+    /**
+     * @return true, если с позиции from до конца сегмента (но не дальше заголовка записи) только нули
+     */
+    private static boolean isBlank(Segment segment, long from) throws IOException {
+        ByteBuffer tail = segment.slice(from, (int) Math.min(4, segment.size() - from));
+        while (tail.hasRemaining()) {
+            if (tail.get() != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Применяет к индексу записи сегмента начиная с позиции from.
+     * @return позиция конца последней целой записи
+     */
+    private long replay(Segment segment, long from) throws IOException {
+        return scan(segment, from, record -> {
+            if (record.kind == PUT) {
+                index.put(record.id, new Entry(segment.number, record.offset, record.length, record.timestamp,
+                        record.contentType.isEmpty() ? null : record.contentType));
+            } else {
+                index.remove(record.id);
+            }
+        });
+    }
+
+    /**
+     * Обходит целые записи сегмента начиная с позиции from (содержимое не читается).
+     * @return позиция конца последней целой записи
+     */
+    private static long scan(Segment segment, long from, Consumer<Record> visitor) throws IOException {
+        ByteBuffer data = segment.slice(0, (int) segment.size());
+        long position = from;
+        while (position < data.limit()) {
+            try {
+                data.position((int) position);
+                if (data.getInt() != RECORD_MAGIC) {
+                    break;
+                }
+                byte kind = data.get();
+                long timestamp = data.getLong();
+                String id = readString(data);
+                String type = readString(data);
+                if (kind == PUT) {
+                    long length = data.getLong();
+                    long offset = data.position();
+                    if (length < 0 || offset + length > data.limit()) {
+                        break;
+                    }
+                    visitor.accept(new Record(kind, id, timestamp, type, offset, (int) length));
+                    position = offset + length;
+                } else if (kind == DELETE) {
+                    visitor.accept(new Record(kind, id, timestamp, type, data.position(), 0));
+                    position = data.position();
+                } else {
+                    break;
+                }
+            } catch (BufferUnderflowException | IllegalArgumentException e) {
+                break;
+            }
+        }
+        return position;
+    }
+
+    /**
+     * Сохраняет индекс атомарной заменой файла. Вызывается под writeLock.
+     */
+    private void persistIndex() throws IOException {
+        Path indexFile = dir.resolve(INDEX_FILE);
+        Path tmp = dir.resolve(INDEX_FILE + ".part");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+            out.writeInt(INDEX_MAGIC);
+            out.writeInt(active.number);
+            out.writeLong(active.end);
+            Map<String, Entry> snapshot = new HashMap<>(index);
+            out.writeInt(snapshot.size());
+            for (Map.Entry<String, Entry> item : snapshot.entrySet()) {
+                Entry entry = item.getValue();
+                out.writeUTF(item.getKey());
+                out.writeInt(entry.segment);
+                out.writeLong(entry.offset);
+                out.writeInt(entry.length);
+                out.writeLong(entry.timestamp);
+                out.writeUTF(entry.contentType != null ? entry.contentType : "");
+            }
+        }
+        Files.move(tmp, indexFile, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Заголовок записи: magic, тип, время, id, MIME-тип и (для PUT) длина содержимого.
+     */
+    private static ByteBuffer header(byte kind, long timestamp, byte[] id, byte[] type, long length) {
+        ByteBuffer header = ByteBuffer.allocate(headerSize(id, type, kind == PUT));
+        header.putInt(RECORD_MAGIC).put(kind).putLong(timestamp);
+        header.putShort((short) id.length).put(id);
+        header.putShort((short) type.length).put(type);
+        if (kind == PUT) {
+            header.putLong(length);
+        }
+        return header.flip();
+    }
+
+    private static int headerSize(byte[] id, byte[] type, boolean put) {
+        return 4 + 1 + 8 + 2 + id.length + 2 + type.length + (put ? 8 : 0);
+    }
+
+    private static String readString(ByteBuffer data) {
+        byte[] bytes = new byte[data.getShort() & 0xFFFF];
+        data.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        long at = position;
+        while (buffer.hasRemaining()) {
+            at += channel.write(buffer, at);
+        }
+    }
+
+    /**
+     * Положение содержимого изображения в сегменте.
+     */
+    private static final class Entry {
+        private final int segment;
+        private final long offset;
+        private final int length;
+        private final long timestamp;
+        private final String contentType;
+
+        Entry(int segment, long offset, int length, long timestamp, String contentType) {
+            this.segment = segment;
+            this.offset = offset;
+            this.length = length;
+            this.timestamp = timestamp;
+            this.contentType = contentType;
+        }
+
+        long recordSize(String id) {
+            byte[] type = contentType != null ? contentType.getBytes(StandardCharsets.UTF_8) : new byte[0];
+            return headerSize(id.getBytes(StandardCharsets.UTF_8), type, true) + (long) length;
+        }
+    }
+
+    /**
+     * Запись сегмента, прочитанная при обходе: PUT с положением содержимого или надгробие DELETE.
+     */
+    private static final class Record {
+        private final byte kind;
+        private final String id;
+        private final long timestamp;
+        private final String contentType;
+        private final long offset;
+        private final int length;
+
+        Record(byte kind, String id, long timestamp, String contentType, long offset, int length) {
+            this.kind = kind;
+            this.id = id;
+            this.timestamp = timestamp;
+            this.contentType = contentType;
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+
+    /**
+     * Сегментный файл и его отображение в память. Отображение закрытого сегмента покрывает весь файл,
+     * активный сегмент растянут до размера сегмента и отображается целиком один раз. Заново отображается
+     * только сегмент с единственной записью больше размера сегмента.
+     */
+    private static final class Segment {
+        private final int number;
+        private final Path path;
+        private final FileChannel channel;
+        private volatile ByteBuffer map;
+        /**
+         * Конец последней записи, позиция следующей; меняется под writeLock после записи на диск.
+         */
+        private volatile long end;
+        /**
+         * Байты живых записей; меняется под writeLock, читается уплотнением.
+         */
+        private volatile long liveBytes;
+
+        private Segment(int number, Path path, FileChannel channel, long end) {
+            this.number = number;
+            this.path = path;
+            this.channel = channel;
+            this.end = end;
+        }
+
+        static Segment open(Path dir, int number) throws IOException {
+            Path path = dir.resolve(String.format("%08d%s", number, SEGMENT_SUFFIX));
+            FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE);
+            return new Segment(number, path, channel, channel.size());
+        }
+
+        long size() {
+            return end;
+        }
+
+        /**
+         * Растягивает файл до размера сегмента (без записи данных) и отображает его целиком.
+         */
+        void activate(long segmentSize) throws IOException {
+            if (channel.size() < segmentSize) {
+                writeFully(channel, ByteBuffer.allocate(1), segmentSize - 1);
+            }
+            map = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+
+        /**
+         * Отрезает незанятое место в конце файла.
+         */
+        void trim() throws IOException {
+            if (channel.size() > end) {
+                channel.truncate(end);
+            }
+        }
+
+        void seal() throws IOException {
+            trim();
+            map = channel.map(FileChannel.MapMode.READ_ONLY, 0, end);
+        }
+
+        ByteBuffer slice(long offset, int length) throws IOException {
+            ByteBuffer current = map;
+            if (current == null || offset + length > current.capacity()) {
+                synchronized (this) {
+                    current = map;
+                    if (current == null || offset + length > current.capacity()) {
+                        current = channel.map(FileChannel.MapMode.READ_ONLY, 0, end);
+                        map = current;
+                    }
+                }
+            }
+            ByteBuffer slice = current.duplicate();
+            slice.position((int) offset);
+            slice.limit((int) offset + length);
+            return slice.slice().asReadOnlyBuffer();
+        }
+    }
+
+    private static final class PackedImage implements StoredImage {
+        private final String id;
+        private final Entry entry;
+        private final ByteBuffer data;
+
+        PackedImage(String id, Entry entry, ByteBuffer data) {
+            this.id = id;
+            this.entry = entry;
+            this.data = data;
+        }
+
+        @Override
+        public Resource resource() {
+            return new ByteBufferResource(data, id);
+        }
+
+        @Override
+        public long size() {
+            return entry.length;
+        }
+
+        @Override
+        public long lastModified() {
+            return entry.timestamp;
+        }
+
+        @Override
+        public String contentType() {
+            return entry.contentType;
+        }
+    }
+}
@@ -0,0 +1,242 @@
+package ru.skypro.homework.service.impl;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.io.AbstractResource;
+import org.springframework.core.io.Resource;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.util.unit.DataSize;
+import ru.skypro.homework.service.ImageStore;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Хранилище изображений в PostgreSQL: содержимое — large object, метаданные — строка таблицы image_blobs.
+ * Нескольким узлам приложения достаточно общей базы данных, общий диск не нужен.
+ * <p>
+ * Содержимое передаётся частями по images.postgres.chunk-size в обе стороны (lo_put при записи, lo_get при чтении),
+ * поэтому в памяти не бывает больше одной части изображения. Запись выполняется в транзакции вызывающего:
+ * если сохранение изображения откатывается, large object откатывается вместе с ним.
+ * </p>
+ */
+@Component
+@ConditionalOnProperty(name = "images.store.type", havingValue = "postgres")
+public class PostgresImageStore implements ImageStore {
+
+    private final JdbcTemplate jdbcTemplate;
+    private final int chunkSize;
+
+    public PostgresImageStore(DataSource dataSource,
+                              @Value("${images.postgres.chunk-size:256KB}") DataSize chunkSize) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.chunkSize = (int) Math.min(Math.max(chunkSize.toBytes(), 1), Integer.MAX_VALUE);
+    }
+
+    /**
+     * Копирует временный файл в новый large object и удаляет файл. Если тот же id уже записан
+     * (в том числе параллельно), новый large object удаляется.
+     */
+    @Override
+    @Transactional
+    public void put(String id, Path source, String contentType) throws IOException {
+        try {
+            if (exists(id)) {
+                return;
+            }
+            long oid = jdbcTemplate.queryForObject("SELECT lo_create(0)", Long.class);
+            long size = 0;
+            byte[] buffer = new byte[chunkSize];
+            try (InputStream in = Files.newInputStream(source)) {
+                int read;
+                while ((read = in.readNBytes(buffer, 0, buffer.length)) > 0) {
+                    byte[] chunk = read == buffer.length ? buffer : Arrays.copyOf(buffer, read);
+                    jdbcTemplate.queryForList("SELECT lo_put(?::oid, ?, ?)", oid, size, chunk);
+                    size += read;
+                }
+            }
+            int inserted = jdbcTemplate.update("INSERT INTO image_blobs (id, content, size, content_type, created_at) "
+                    + "VALUES (?, ?::oid, ?, ?, ?) ON CONFLICT (id) DO NOTHING",
+                    id, oid, size, contentType, System.currentTimeMillis());
+            if (inserted == 0) {
+                unlink(oid);
+            }
+        } finally {
+            Files.deleteIfExists(source);
+        }
+    }
+
+    @Override
+    public StoredImage get(String id) {
+        List<BlobImage> images = jdbcTemplate.query(
+                "SELECT content, size, content_type, created_at FROM image_blobs WHERE id = ?",
+                (rs, rowNum) -> new BlobImage(rs.getLong("content"), rs.getLong("size"),
+                        rs.getString("content_type"), rs.getLong("created_at")),
+                id);
+        return images.isEmpty() ? null : images.get(0);
+    }
+
+    @Override
+    public Page list(String cursor, int limit) {
+        List<String> ids = jdbcTemplate.queryForList("SELECT id FROM image_blobs WHERE id > ? ORDER BY id LIMIT ?",
+                String.class, cursor == null ? "" : cursor, limit);
+        return new Page(ids, ids.size() < limit ? null : ids.get(ids.size() - 1));
+    }
+
+    @Override
+    @Transactional
+    public void delete(String id) {
+        for (Long oid : jdbcTemplate.queryForList("DELETE FROM image_blobs WHERE id = ? RETURNING content", Long.class, id)) {
+            unlink(oid);
+        }
+    }
+
+    private boolean exists(String id) {
+        return !jdbcTemplate.queryForList("SELECT 1 FROM image_blobs WHERE id = ?", Integer.class, id).isEmpty();
+    }
+
+    private void unlink(long oid) {
+        jdbcTemplate.queryForObject("SELECT lo_unlink(?::oid)", Integer.class, oid);
+    }
+
+    private final class BlobImage implements StoredImage {
+        private final long oid;
+        private final long size;
+        private final String contentType;
+        private final long createdAt;
+
+        BlobImage(long oid, long size, String contentType, long createdAt) {
+            this.oid = oid;
+            this.size = size;
+            this.contentType = contentType;
+            this.createdAt = createdAt;
+        }
+
+        @Override
+        public Resource resource() {
+            return new AbstractResource() {
+                @Override
+                public String getDescription() {
+                    return "large object " + oid;
+                }
+
+                @Override
+                public InputStream getInputStream() {
+                    return new LargeObjectInputStream(oid, size);
+                }
+
+                @Override
+                public long contentLength() {
+                    return size;
+                }
+
+                @Override
+                public long lastModified() {
+                    return createdAt;
+                }
+            };
+        }
+
+        @Override
+        public long size() {
+            return size;
+        }
+
+        @Override
+        public long lastModified() {
+            return createdAt;
+        }
+
+        @Override
+        public String contentType() {
+            return contentType;
+        }
+    }
+
+    /**
+     * Читает large object частями через lo_get; каждый запрос берёт соединение из пула только на время запроса.
+     * skip не читает пропускаемые байты, поэтому запросы с Range не выкачивают начало изображения.
+     */
+    private final class LargeObjectInputStream extends InputStream {
+        private final long oid;
+        private final long size;
+        private long position;
+        private byte[] chunk = new byte[0];
+        private int index;
+
+        LargeObjectInputStream(long oid, long size) {
+            this.oid = oid;
+            this.size = size;
+        }
+
+        @Override
+        public int read() throws IOException {
+            return fill() ? chunk[index++] & 0xff : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            if (!fill()) {
+                return -1;
+            }
+            int n = Math.min(len, chunk.length - index);
+            System.arraycopy(chunk, index, b, off, n);
+            index += n;
+            return n;
+        }
+
+        @Override
+        public long skip(long n) {
+            if (n <= 0) {
+                return 0;
+            }
+            long buffered = chunk.length - index;
+            if (n <= buffered) {
+                index += (int) n;
+                return n;
+            }
+            long skipped = Math.min(n, buffered + size - position);
+            position += skipped - buffered;
+            chunk = new byte[0];
+            index = 0;
+            return skipped;
+        }
+
+        @Override
+        public int available() {
+            return chunk.length - index;
+        }
+
+        private boolean fill() throws IOException {
+            if (index < chunk.length) {
+                return true;
+            }
+            if (position >= size) {
+                return false;
+            }
+            int length = (int) Math.min(chunkSize, size - position);
+            try {
+                chunk = jdbcTemplate.queryForObject("SELECT lo_get(?::oid, ?, ?)", byte[].class, oid, position, length);
+            } catch (DataAccessException e) {
+                throw new IOException("Не удалось прочитать large object " + oid, e);
+            }
+            if (chunk == null || chunk.length == 0) {
+                throw new IOException("Large object " + oid + " короче " + size + " байт");
+            }
+            index = 0;
+            position += chunk.length;
+            return true;
+        }
+    }
+}
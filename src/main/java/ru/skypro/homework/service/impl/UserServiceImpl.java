@@ -1,5 +1,6 @@
 package ru.skypro.homework.service.impl;
 
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
@@ -17,9 +18,12 @@ import ru.skypro.homework.model.UserEntity;
 import ru.skypro.homework.repository.AdRepository;
 import ru.skypro.homework.repository.UserRepository;
 import ru.skypro.homework.service.ImageService;
+import ru.skypro.homework.service.ImageTooLargeException;
 import ru.skypro.homework.service.UserService;
 
+import java.util.List;
 import java.util.Optional;
+import java.util.stream.Collectors;
 
 @Service
 public class UserServiceImpl implements UserService {
@@ -29,17 +33,26 @@ public class UserServiceImpl implements UserService {
     private final UserMapper userMapper;
     private final ImageService imageService;
     private final AdRepository adRepository;
+    private final AdReadCache adReadCache;
+    private final AdSearchIndex adSearchIndex;
+    private final AdVersions adVersions;
 
     public UserServiceImpl(UserRepository userRepository,
                            PasswordEncoder passwordEncoder,
                            UserMapper userMapper,
                            ImageService imageService,
-                           AdRepository adRepository) {
+                           AdRepository adRepository,
+                           AdReadCache adReadCache,
+                           AdSearchIndex adSearchIndex,
+                           AdVersions adVersions) {
         this.userRepository = userRepository;
         this.passwordEncoder = passwordEncoder;
         this.userMapper = userMapper;
         this.imageService = imageService;
         this.adRepository = adRepository;
+        this.adReadCache = adReadCache;
+        this.adSearchIndex = adSearchIndex;
+        this.adVersions = adVersions;
     }
 
     /**
@@ -75,6 +88,7 @@ public class UserServiceImpl implements UserService {
 
     /**
      * Обновляет профиль текущего пользователя.
+     * Сбрасывает закэшированные карточки объявлений пользователя, так как в них есть его имя и телефон.
      * @param updateUser DTO с новыми данными (имя, фамилия, телефон)
      * @return тот же DTO UpdateUser как подтверждение
      * @throws IllegalStateException если текущий пользователь не найден
@@ -88,13 +102,17 @@ public class UserServiceImpl implements UserService {
         }
         userMapper.updateEntity(updateUser, current);
         userRepository.save(current);
+        List<Integer> adIds = adRepository.findIdsByAuthor(current.getId());
+        adReadCache.invalidateDetails(adIds);
+        adVersions.touchDetails(adIds);
         return updateUser;
     }
 
     /**
      * Обновляет аватар текущего пользователя, удаляя предыдущий файл и запись при наличии.
      * @param image новое изображение аватара
-     * @return 200 OK при успехе, 400 при некорректном вводе, 500 при внутренней ошибке
+     * @return 200 OK при успехе, 400 при некорректном вводе или файле, не являющемся изображением,
+     * 413 при слишком большом изображении, 500 при внутренней ошибке
      */
     @Override
     @Transactional
@@ -115,6 +133,10 @@ public class UserServiceImpl implements UserService {
                 imageService.delete(oldImage.getId());
             }
             return ResponseEntity.ok().build();
+        } catch (ImageTooLargeException e) {
+            return ResponseEntity.status(HttpStatus.PAYLOAD_TOO_LARGE).build();
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
         } catch (RuntimeException e) {
             return ResponseEntity.internalServerError().build();
         }
@@ -131,16 +153,20 @@ public class UserServiceImpl implements UserService {
         if (current == null) {
             throw new IllegalStateException("Текущий пользователь не найден");
         }
-        adRepository.findAllByAuthor_Id(current.getId()).stream()
+        List<AdEntity> ads = adRepository.findAllByAuthor_Id(current.getId());
+        ads.stream()
                 .map(AdEntity::getImage)
                 .filter(java.util.Objects::nonNull)
                 .map(ImageEntity::getId)
-                .distinct()
                 .forEach(imageService::delete);
         if (current.getImage() != null) {
             imageService.delete(current.getImage().getId());
         }
         userRepository.delete(current);
+        List<Integer> adIds = ads.stream().map(AdEntity::getId).collect(Collectors.toList());
+        adReadCache.invalidateAds(adIds);
+        adVersions.touchAll(adIds);
+        adSearchIndex.removeAll(adIds);
     }
 
     /**
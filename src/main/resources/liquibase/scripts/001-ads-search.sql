@@ -0,0 +1,11 @@
+--liquibase formatted sql
+
+--changeset vladimirsa:015-ads-search-vector
+ALTER TABLE ads ADD COLUMN search_vector tsvector
+    GENERATED ALWAYS AS (
+        setweight(to_tsvector('russian', coalesce(title, '')), 'A') ||
+        setweight(to_tsvector('russian', coalesce(description, '')), 'B')
+    ) STORED;
+
+--changeset vladimirsa:016-index-ads-search-vector runInTransaction:false
+CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_ads_search_vector ON ads USING GIN (search_vector);
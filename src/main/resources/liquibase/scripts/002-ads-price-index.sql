@@ -0,0 +1,4 @@
+--liquibase formatted sql
+
+--changeset vladimirsa:017-index-ads-price-id runInTransaction:false
+CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_ads_price_id ON ads(price, id) INCLUDE (author_id, image_id, title);
@@ -0,0 +1,12 @@
+--liquibase formatted sql
+
+--changeset vladimirsa:018-create-per-table-sequences
+CREATE SEQUENCE users_seq INCREMENT BY 50;
+SELECT setval('users_seq', COALESCE((SELECT MAX(id) FROM users), 0) + 1, false);
+CREATE SEQUENCE ads_seq INCREMENT BY 50;
+SELECT setval('ads_seq', COALESCE((SELECT MAX(id) FROM ads), 0) + 1, false);
+CREATE SEQUENCE comments_seq INCREMENT BY 50;
+SELECT setval('comments_seq', COALESCE((SELECT MAX(id) FROM comments), 0) + 1, false);
+
+--changeset vladimirsa:019-drop-hibernate-sequence
+DROP SEQUENCE IF EXISTS hibernate_sequence;
@@ -0,0 +1,4 @@
+--liquibase formatted sql
+
+--changeset vladimirsa:020-add-images-checksum
+ALTER TABLE images ADD COLUMN IF NOT EXISTS checksum VARCHAR(64);
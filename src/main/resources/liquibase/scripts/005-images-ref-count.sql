@@ -0,0 +1,6 @@
+--liquibase formatted sql
+
+--changeset vladimirsa:021-add-images-ref-count
+ALTER TABLE images ADD COLUMN IF NOT EXISTS ref_count INTEGER NOT NULL DEFAULT 1;
+UPDATE images i SET ref_count =
+    (SELECT COUNT(*) FROM ads a WHERE a.image_id = i.id) + (SELECT COUNT(*) FROM users u WHERE u.image_id = i.id);
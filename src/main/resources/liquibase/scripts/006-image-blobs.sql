@@ -0,0 +1,10 @@
+--liquibase formatted sql
+
+--changeset vladimirsa:022-create-image-blobs
+CREATE TABLE IF NOT EXISTS image_blobs (
+    id           VARCHAR(255) PRIMARY KEY,
+    content      OID          NOT NULL,
+    size         BIGINT       NOT NULL,
+    content_type VARCHAR(255),
+    created_at   BIGINT       NOT NULL
+);
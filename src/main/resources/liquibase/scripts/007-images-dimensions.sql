@@ -0,0 +1,5 @@
+--liquibase formatted sql
+
+--changeset vladimirsa:023-add-images-dimensions
+ALTER TABLE images ADD COLUMN IF NOT EXISTS width INTEGER;
+ALTER TABLE images ADD COLUMN IF NOT EXISTS height INTEGER;
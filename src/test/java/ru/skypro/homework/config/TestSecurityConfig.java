@@ -25,6 +25,7 @@ public class TestSecurityConfig {
         return http
                 .csrf().disable()
                 .authorizeHttpRequests(auth -> auth
+                        .mvcMatchers("/ads/export").authenticated() // выгрузка каталога не публичная
                         .mvcMatchers(AUTH_WHITELIST).permitAll()
                         .anyRequest().authenticated() // Все остальное требует аутентификации
                 )
@@ -13,14 +13,25 @@ import org.springframework.mock.web.MockMultipartFile;
 import org.springframework.security.test.context.support.WithMockUser;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
 import org.springframework.web.multipart.MultipartFile;
 import ru.skypro.homework.config.TestSecurityConfig;
 import ru.skypro.homework.dto.*;
 import ru.skypro.homework.service.AdService;
+import ru.skypro.homework.service.ImageNotFoundException;
+import ru.skypro.homework.service.ImageTooLargeException;
+import ru.skypro.homework.service.ResourceVersion;
+import ru.skypro.homework.service.SerializedPage;
+import ru.skypro.homework.service.impl.AdExportLimiter;
 
 import java.util.Collections;
 import java.util.List;
+import java.util.function.Consumer;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.hasItem;
+import static org.junit.jupiter.api.Assertions.assertEquals;
 
 import static org.mockito.Mockito.*;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
@@ -41,15 +52,23 @@ public class AdControllerTest {
     @MockBean
     private AdService adService;
 
+    @MockBean
+    private AdExportLimiter exportLimiter;
+
     private CreateOrUpdateAd createOrUpdateAd;
     private Ad ad;
     private ExtendedAd extendedAd;
     private CreateOrUpdateComment createOrUpdateComment;
     private Comment comment;
     private MockMultipartFile imageFile;
+    private ResourceVersion version;
 
     @BeforeEach
     void setUp() {
+        version = new ResourceVersion("\"1700000000000-5\"", 1_700_000_000_000L);
+        when(adService.getCatalogVersion()).thenReturn(version);
+        when(adService.getAdVersion(anyInt())).thenReturn(version);
+
         // Инициализация тестовых данных перед каждым тестом
         createOrUpdateAd = new CreateOrUpdateAd();
         createOrUpdateAd.setTitle("Test Ad");
@@ -107,7 +126,7 @@ public class AdControllerTest {
         emptyAds.setResults(Collections.emptyList());
         emptyAds.setCount(0);
 
-        when(adService.getAllAds()).thenReturn(emptyAds);
+        when(adService.getAllAds(null, null, null, null, null)).thenReturn(emptyAds);
 
         // Act & Assert
         mockMvc.perform(get("/ads")
@@ -117,7 +136,7 @@ public class AdControllerTest {
                 .andExpect(jsonPath("$.results").isEmpty())
                 .andExpect(jsonPath("$.count").value(0));
 
-        verify(adService, times(1)).getAllAds();
+        verify(adService, times(1)).getAllAds(null, null, null, null, null);
     }
 
     /**
@@ -138,7 +157,7 @@ public class AdControllerTest {
         ads.setResults(List.of(ad));
         ads.setCount(1);
 
-        when(adService.getAllAds()).thenReturn(ads);
+        when(adService.getAllAds(null, null, null, null, null)).thenReturn(ads);
 
         // Act & Assert
         mockMvc.perform(get("/ads")
@@ -148,7 +167,313 @@ public class AdControllerTest {
                 .andExpect(jsonPath("$.results[0].title").value("Test Ad"))
                 .andExpect(jsonPath("$.count").value(1));
 
-        verify(adService, times(1)).getAllAds();
+        verify(adService, times(1)).getAllAds(null, null, null, null, null);
+    }
+
+    /**
+     * Тест постраничного получения объявлений
+     * Цель: Проверить передачу курсора и размера страницы в сервис и выдачу курсора следующей страницы
+     * Сценарий: Клиент запрашивает следующую страницу по курсору из предыдущего ответа
+     * Ожидаемый результат: HTTP 200 OK, в ответе поле next
+     */
+    @Test
+    @WithMockUser(username = "test@example.com", roles = {"USER"})
+    void getAllAds_WithCursor_ShouldPassCursorAndReturnNext() throws Exception {
+        // Arrange
+        Ads page = new Ads();
+        page.setResults(List.of(ad));
+        page.setCount(1);
+        page.setNext("next-token");
+
+        when(adService.getAllAds("cursor-token", 1, null, null, null)).thenReturn(page);
+
+        // Act & Assert
+        mockMvc.perform(get("/ads")
+                        .param("cursor", "cursor-token")
+                        .param("size", "1"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.count").value(1))
+                .andExpect(jsonPath("$.next").value("next-token"));
+
+        verify(adService, times(1)).getAllAds("cursor-token", 1, null, null, null);
+    }
+
+    /**
+     * Тест условного GET ленты
+     * Цель: Проверить выдачу ETag и ответ 304 при совпадении If-None-Match
+     * Сценарий: Клиент повторно запрашивает ленту с ETag из предыдущего ответа
+     * Ожидаемый результат: первый ответ 200 с ETag, второй — 304 без обращения к сервису за данными
+     */
+    @Test
+    void getAllAds_WithMatchingETag_ShouldReturnNotModified() throws Exception {
+        // Arrange
+        Ads page = new Ads();
+        page.setResults(List.of(ad));
+        page.setCount(1);
+        when(adService.getAllAds(null, null, null, null, null)).thenReturn(page);
+
+        // Act & Assert
+        mockMvc.perform(get("/ads"))
+                .andExpect(status().isOk())
+                .andExpect(header().string("ETag", version.getEtag()))
+                .andExpect(header().exists("Last-Modified"));
+
+        mockMvc.perform(get("/ads").header("If-None-Match", version.getEtag()))
+                .andExpect(status().isNotModified())
+                .andExpect(content().string(""));
+
+        verify(adService, times(1)).getAllAds(null, null, null, null, null);
+    }
+
+    /**
+     * Тест отдачи ленты из снимка
+     * Цель: Проверить выбор представления по Accept-Encoding и отдельный ETag для gzip
+     * Сценарий: Сервис отдаёт готовую страницу; клиент запрашивает её со сжатием и без
+     * Ожидаемый результат: gzip-тело с Content-Encoding и ETag с суффиксом -gzip, иначе исходные байты
+     */
+    @Test
+    void getAllAds_FromSnapshot_ShouldNegotiateEncoding() throws Exception {
+        // Arrange
+        byte[] identity = "{\"count\":0,\"results\":[]}".getBytes();
+        byte[] gzip = {31, -117, 8, 0};
+        when(adService.getListingSnapshot(null, null, null, null, null)).thenReturn(new SerializedPage(identity, gzip));
+        String gzipEtag = version.getEtag().replaceAll("\"$", "-gzip\"");
+
+        // Act & Assert
+        mockMvc.perform(get("/ads").header("Accept-Encoding", "br, gzip;q=0.8"))
+                .andExpect(status().isOk())
+                .andExpect(header().string("Content-Encoding", "gzip"))
+                .andExpect(header().string("ETag", gzipEtag))
+                .andExpect(header().stringValues("Vary", hasItem(containsString("Accept-Encoding"))))
+                .andExpect(content().bytes(gzip));
+
+        mockMvc.perform(get("/ads"))
+                .andExpect(status().isOk())
+                .andExpect(header().doesNotExist("Content-Encoding"))
+                .andExpect(header().string("ETag", version.getEtag()))
+                .andExpect(content().bytes(identity));
+
+        mockMvc.perform(get("/ads").header("Accept-Encoding", "gzip").header("If-None-Match", gzipEtag))
+                .andExpect(status().isNotModified());
+
+        verify(adService, never()).getAllAds(any(), any(), any(), any(), any());
+    }
+
+    /**
+     * Тест условного GET карточки
+     * Цель: Проверить, что при совпадении ETag карточка не загружается
+     * Сценарий: Клиент запрашивает объявление с актуальным ETag
+     * Ожидаемый результат: HTTP 304, сервис не вызывается за карточкой
+     */
+    @Test
+    void getAd_WithMatchingETag_ShouldNotLoadAd() throws Exception {
+        // Act & Assert
+        mockMvc.perform(get("/ads/1").header("If-None-Match", version.getEtag()))
+                .andExpect(status().isNotModified());
+
+        verify(adService, never()).getAdById(anyInt());
+    }
+
+    /**
+     * Тест фильтрации и сортировки по цене
+     * Цель: Проверить передачу диапазона цены и порядка сортировки в сервис
+     * Сценарий: Клиент запрашивает объявления дешевле 2000 по возрастанию цены
+     * Ожидаемый результат: HTTP 200 OK с отфильтрованной страницей
+     */
+    @Test
+    void getAllAds_WithPriceRangeAndSort_ShouldPassFilter() throws Exception {
+        // Arrange
+        Ads page = new Ads();
+        page.setResults(List.of(ad));
+        page.setCount(1);
+
+        when(adService.getAllAds(null, null, 500, 2000, "price_asc")).thenReturn(page);
+
+        // Act & Assert
+        mockMvc.perform(get("/ads")
+                        .param("minPrice", "500")
+                        .param("maxPrice", "2000")
+                        .param("sort", "price_asc"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.results[0].price").value(1000));
+
+        verify(adService, times(1)).getAllAds(null, null, 500, 2000, "price_asc");
+    }
+
+    /**
+     * Тест некорректных параметров ленты
+     * Цель: Проверить, что повреждённый курсор и неизвестный порядок сортировки не приводят к 500
+     * Сценарий: Анонимный клиент передаёт подделанный курсор, затем неизвестное значение sort
+     * Ожидаемый результат: HTTP 400 Bad Request в обоих случаях
+     */
+    @Test
+    void getAllAds_WithMalformedCursorOrSort_ShouldReturnBadRequest() throws Exception {
+        // Arrange
+        when(adService.getAllAds("tampered", null, null, null, null))
+                .thenThrow(new IllegalArgumentException("Некорректный курсор"));
+        when(adService.getListingSnapshot(null, null, null, null, "cheapest"))
+                .thenThrow(new IllegalArgumentException("Неизвестный порядок сортировки: cheapest"));
+
+        // Act & Assert
+        mockMvc.perform(get("/ads").param("cursor", "tampered"))
+                .andExpect(status().isBadRequest());
+        mockMvc.perform(get("/ads").param("sort", "cheapest"))
+                .andExpect(status().isBadRequest());
+
+        verify(adService, never()).getAllAds(null, null, null, null, "cheapest");
+    }
+
+    /**
+     * Тест поиска с повреждённым курсором
+     * Цель: Проверить, что некорректный курсор поиска и мгновенного поиска даёт 400, а не 500
+     * Сценарий: Анонимный клиент передаёт подделанный курсор в /ads/search и /ads/suggest
+     * Ожидаемый результат: HTTP 400 Bad Request
+     */
+    @Test
+    void searchAndSuggest_WithMalformedCursor_ShouldReturnBadRequest() throws Exception {
+        // Arrange
+        when(adService.searchAds("велосипед", "tampered", null))
+                .thenThrow(new IllegalArgumentException("Некорректный курсор"));
+        when(adService.suggestAds("вел", null, null, "tampered", null))
+                .thenThrow(new IllegalArgumentException("Некорректный курсор"));
+
+        // Act & Assert
+        mockMvc.perform(get("/ads/search").param("q", "велосипед").param("cursor", "tampered"))
+                .andExpect(status().isBadRequest());
+        mockMvc.perform(get("/ads/suggest").param("q", "вел").param("cursor", "tampered"))
+                .andExpect(status().isBadRequest());
+    }
+
+    /**
+     * Тест полнотекстового поиска
+     * Цель: Проверить передачу запроса, курсора и размера страницы в сервис
+     * Сценарий: Анонимный клиент ищет объявления по строке запроса
+     * Ожидаемый результат: HTTP 200 OK с найденными объявлениями и курсором следующей страницы
+     */
+    @Test
+    void searchAds_ShouldPassQueryAndReturnResults() throws Exception {
+        // Arrange
+        Ads page = new Ads();
+        page.setResults(List.of(ad));
+        page.setCount(1);
+        page.setNext("next-token");
+
+        when(adService.searchAds("велосипед", "cursor-token", 10)).thenReturn(page);
+
+        // Act & Assert
+        mockMvc.perform(get("/ads/search")
+                        .param("q", "велосипед")
+                        .param("cursor", "cursor-token")
+                        .param("size", "10"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.results[0].pk").value(1))
+                .andExpect(jsonPath("$.next").value("next-token"));
+
+        verify(adService, times(1)).searchAds("велосипед", "cursor-token", 10);
+    }
+
+    /**
+     * Тест мгновенного поиска
+     * Цель: Проверить передачу запроса и ценового фильтра в сервис
+     * Сценарий: Анонимный клиент ищет объявления по мере ввода в заданном диапазоне цен
+     * Ожидаемый результат: HTTP 200 OK с найденными объявлениями
+     */
+    @Test
+    void suggestAds_ShouldPassQueryAndPriceRange() throws Exception {
+        // Arrange
+        Ads page = new Ads();
+        page.setResults(List.of(ad));
+        page.setCount(1);
+
+        when(adService.suggestAds("вел", 500, 2000, null, null)).thenReturn(page);
+
+        // Act & Assert
+        mockMvc.perform(get("/ads/suggest")
+                        .param("q", "вел")
+                        .param("minPrice", "500")
+                        .param("maxPrice", "2000"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.count").value(1))
+                .andExpect(jsonPath("$.results[0].pk").value(1));
+
+        verify(adService, times(1)).suggestAds("вел", 500, 2000, null, null);
+    }
+
+    /**
+     * Тест потоковой выгрузки каталога
+     * Цель: Проверить, что каждая карточка пишется отдельной строкой NDJSON
+     * Сценарий: Сервис отдаёт две карточки через потребителя
+     * Ожидаемый результат: HTTP 200 OK, тело из двух JSON-строк, место в лимите выгрузок освобождено
+     */
+    @Test
+    @WithMockUser(username = "test@example.com", roles = {"USER"})
+    void exportAds_ShouldStreamNdjson() throws Exception {
+        // Arrange
+        when(exportLimiter.tryEnter()).thenReturn(true);
+        Ad second = new Ad();
+        second.setPk(2);
+        second.setTitle("Second");
+
+        doAnswer(invocation -> {
+            Consumer<Ad> consumer = invocation.getArgument(0);
+            consumer.accept(ad);
+            consumer.accept(second);
+            return null;
+        }).when(adService).exportAds(any());
+
+        // Act
+        MvcResult result = mockMvc.perform(get("/ads/export"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        // Assert
+        String body = mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_NDJSON))
+                .andReturn().getResponse().getContentAsString();
+        String[] lines = body.split("\n");
+        assertEquals(2, lines.length);
+        assertEquals(1, objectMapper.readValue(lines[0], Ad.class).getPk());
+        assertEquals(2, objectMapper.readValue(lines[1], Ad.class).getPk());
+        verify(exportLimiter, times(1)).exit();
+    }
+
+    /**
+     * Тест выгрузки каталога без аутентификации
+     * Цель: Проверить, что выгрузка, держащая соединение с БД, недоступна анонимно
+     * Сценарий: Неаутентифицированный пользователь запрашивает /ads/export
+     * Ожидаемый результат: HTTP 401 Unauthorized, сервис не вызывается
+     */
+    @Test
+    void exportAds_WithoutAuth_ShouldReturnUnauthorized() throws Exception {
+        // Act & Assert
+        mockMvc.perform(get("/ads/export"))
+                .andExpect(status().isUnauthorized());
+
+        verifyNoInteractions(exportLimiter);
+        verify(adService, never()).exportAds(any());
+    }
+
+    /**
+     * Тест выгрузки каталога сверх лимита одновременных выгрузок
+     * Цель: Проверить, что лишняя выгрузка отклоняется сразу, не занимая соединение с БД
+     * Сценарий: Лимитер не выдаёт место
+     * Ожидаемый результат: HTTP 503 с заголовком Retry-After, сервис не вызывается
+     */
+    @Test
+    @WithMockUser(username = "test@example.com", roles = {"USER"})
+    void exportAds_OverLimit_ShouldReturnServiceUnavailable() throws Exception {
+        // Arrange
+        when(exportLimiter.tryEnter()).thenReturn(false);
+        when(exportLimiter.retryAfterSeconds()).thenReturn("30");
+
+        // Act & Assert
+        mockMvc.perform(get("/ads/export"))
+                .andExpect(status().isServiceUnavailable())
+                .andExpect(header().string("Retry-After", "30"));
+
+        verify(adService, never()).exportAds(any());
+        verify(exportLimiter, never()).exit();
     }
 
     /**
@@ -232,7 +557,7 @@ public class AdControllerTest {
         emptyAds.setResults(Collections.emptyList());
         emptyAds.setCount(0);
 
-        when(adService.getAllAds()).thenReturn(emptyAds);
+        when(adService.getAllAds(null, null, null, null, null)).thenReturn(emptyAds);
 
         // Act & Assert
         mockMvc.perform(get("/ads")
@@ -242,7 +567,7 @@ public class AdControllerTest {
                 .andExpect(header().exists("Access-Control-Allow-Origin"))
                 .andExpect(header().string("Access-Control-Allow-Origin", "http://localhost:3000"));
 
-        verify(adService, times(1)).getAllAds();
+        verify(adService, times(1)).getAllAds(null, null, null, null, null);
     }
 
     /**
@@ -422,6 +747,77 @@ public class AdControllerTest {
         verify(adService, times(1)).updateImage(eq(1), any(MultipartFile.class));
     }
 
+    /**
+     * Тест отклонения файлов, которые не являются изображениями или слишком велики
+     */
+    @Test
+    @WithMockUser(username = "test@example.com", roles = {"USER"})
+    void uploadRejectedImage_ShouldReturnClientError() throws Exception {
+        // Arrange
+        MockMultipartFile propertiesFile = new MockMultipartFile(
+                "properties",
+                "",
+                MediaType.APPLICATION_JSON_VALUE,
+                objectMapper.writeValueAsBytes(createOrUpdateAd)
+        );
+        MockMultipartFile imageFile = new MockMultipartFile(
+                "image",
+                "script.jpg",
+                MediaType.IMAGE_JPEG_VALUE,
+                "<script>".getBytes()
+        );
+        doThrow(new IllegalArgumentException("Файл не является изображением JPEG, PNG, GIF или WebP"))
+                .when(adService).addAd(any(CreateOrUpdateAd.class), any());
+        when(adService.updateImage(eq(1), any(MultipartFile.class)))
+                .thenThrow(new ImageTooLargeException("Изображение 65000x65000 больше допустимых 40000000 пикселей"));
+
+        // Act & Assert
+        mockMvc.perform(MockMvcRequestBuilders.multipart("/ads")
+                        .file(propertiesFile)
+                        .file(imageFile))
+                .andExpect(status().isBadRequest());
+        mockMvc.perform(MockMvcRequestBuilders.multipart("/ads/1/image")
+                        .file(imageFile)
+                        .with(request -> {
+                            request.setMethod("PATCH");
+                            return request;
+                        }))
+                .andExpect(status().isPayloadTooLarge());
+    }
+
+    /**
+     * Тест ссылки на заранее загруженное изображение, которого нет или id которого некорректен
+     * Ожидаемый результат: 404 для неизвестного id, 400 для id недопустимого вида
+     */
+    @Test
+    @WithMockUser(username = "test@example.com", roles = {"USER"})
+    void uploadedImageReference_WhenMissingOrMalformed_ShouldReturnClientError() throws Exception {
+        // Arrange
+        String unknownId = "ab".repeat(32) + ".jpg";
+        doThrow(new ImageNotFoundException("Изображение " + unknownId + " не найдено"))
+                .when(adService).addAdWithUploadedImage(any(CreateOrUpdateAd.class), eq(unknownId));
+        doThrow(new IllegalArgumentException("Некорректный идентификатор изображения"))
+                .when(adService).addAdWithUploadedImage(any(CreateOrUpdateAd.class), eq("../secret"));
+        when(adService.updateImageFromUpload(1, unknownId))
+                .thenThrow(new ImageNotFoundException("Изображение " + unknownId + " не найдено"));
+        when(adService.updateImageFromUpload(1, "../secret"))
+                .thenThrow(new IllegalArgumentException("Некорректный идентификатор изображения"));
+
+        // Act & Assert
+        mockMvc.perform(post("/ads").param("imageId", unknownId)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(createOrUpdateAd)))
+                .andExpect(status().isNotFound());
+        mockMvc.perform(post("/ads").param("imageId", "../secret")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(createOrUpdateAd)))
+                .andExpect(status().isBadRequest());
+        mockMvc.perform(patch("/ads/1/image").param("imageId", unknownId))
+                .andExpect(status().isNotFound());
+        mockMvc.perform(patch("/ads/1/image").param("imageId", "../secret"))
+                .andExpect(status().isBadRequest());
+    }
+
     /**
      * Тест удаления объявления
      */
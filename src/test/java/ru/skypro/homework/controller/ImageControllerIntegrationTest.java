@@ -2,10 +2,14 @@ package ru.skypro.homework.controller;
 
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.context.annotation.Import;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.test.context.support.WithMockUser;
@@ -13,6 +17,9 @@ import org.springframework.test.web.servlet.MockMvc;
 import ru.skypro.homework.config.TestSecurityConfig;
 import ru.skypro.homework.service.ImageService;
 
+import java.nio.file.Files;
+import java.nio.file.Path;
+
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.ValueSource;
 import static org.mockito.ArgumentMatchers.anyString;
@@ -48,7 +55,7 @@ public class ImageControllerIntegrationTest {
         when(imageService.getImage(anyString()))
                 .thenReturn(ResponseEntity.ok()
                         .contentType(MediaType.IMAGE_JPEG)
-                        .body(imageData));
+                        .body(new ByteArrayResource(imageData)));
 
         // When & Then
         mockMvc.perform(get("/images/{id}", imageId))
@@ -106,7 +113,7 @@ public class ImageControllerIntegrationTest {
         when(imageService.getImage(anyString()))
                 .thenReturn(ResponseEntity.ok()
                         .contentType(MediaType.IMAGE_JPEG)
-                        .body(imageData));
+                        .body(new ByteArrayResource(imageData)));
 
         // When & Then
         mockMvc.perform(get("/images/{id}", imageId))
@@ -134,7 +141,7 @@ public class ImageControllerIntegrationTest {
         when(imageService.getImage(imageId))
                 .thenReturn(ResponseEntity.ok()
                         .contentType(MediaType.IMAGE_JPEG)
-                        .body(imageData));
+                        .body(new ByteArrayResource(imageData)));
 
         // When & Then
         mockMvc.perform(get("/images/{id}", imageId))
@@ -171,7 +178,7 @@ public class ImageControllerIntegrationTest {
         when(imageService.getImage(longId))
                 .thenReturn(ResponseEntity.ok()
                         .contentType(MediaType.IMAGE_JPEG)
-                        .body(imageData));
+                        .body(new ByteArrayResource(imageData)));
 
         // When & Then
         mockMvc.perform(get("/images/{id}", longId))
@@ -190,7 +197,7 @@ public class ImageControllerIntegrationTest {
         when(imageService.getImage(expectedId))
                 .thenReturn(ResponseEntity.ok()
                         .contentType(MediaType.IMAGE_JPEG)
-                        .body(new byte[]{1, 2, 3}));
+                        .body(new ByteArrayResource(new byte[]{1, 2, 3})));
 
         // When
         mockMvc.perform(get("/images/{id}", expectedId));
@@ -199,4 +206,77 @@ public class ImageControllerIntegrationTest {
         verify(imageService, times(1)).getImage(expectedId);
         verifyNoMoreInteractions(imageService);
     }
+
+    @Test
+    @DisplayName("GET /images/{id} - запрос с Range возвращает 206 и участок файла")
+    @WithMockUser
+    void getImage_WithRange_ShouldReturnPartialContent(@TempDir Path tempDir) throws Exception {
+        // Given
+        Path file = tempDir.resolve("range.jpg");
+        Files.write(file, new byte[]{10, 11, 12, 13, 14, 15, 16, 17});
+        when(imageService.getImage("range.jpg"))
+                .thenReturn(ResponseEntity.ok()
+                        .contentType(MediaType.IMAGE_JPEG)
+                        .body(new FileSystemResource(file)));
+
+        // When & Then
+        mockMvc.perform(get("/images/{id}", "range.jpg").header(HttpHeaders.RANGE, "bytes=2-4"))
+                .andExpect(status().isPartialContent())
+                .andExpect(header().string(HttpHeaders.CONTENT_RANGE, "bytes 2-4/8"))
+                .andExpect(header().longValue(HttpHeaders.CONTENT_LENGTH, 3))
+                .andExpect(content().bytes(new byte[]{12, 13, 14}));
+
+        mockMvc.perform(get("/images/{id}", "range.jpg"))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ACCEPT_RANGES, "bytes"))
+                .andExpect(content().bytes(new byte[]{10, 11, 12, 13, 14, 15, 16, 17}));
+    }
+
+    @Test
+    @DisplayName("GET /images/{id}?size= - запрос варианта изображения")
+    @WithMockUser
+    void getImage_WithSize_ShouldRequestVariant() throws Exception {
+        // Given
+        byte[] thumb = new byte[]{9, 9};
+        when(imageService.getImage("test.jpg", "thumb"))
+                .thenReturn(ResponseEntity.ok()
+                        .contentType(MediaType.IMAGE_JPEG)
+                        .body(new ByteArrayResource(thumb)));
+
+        // When & Then
+        mockMvc.perform(get("/images/{id}", "test.jpg").param("size", "thumb"))
+                .andExpect(status().isOk())
+                .andExpect(content().bytes(thumb));
+        verify(imageService, never()).getImage("test.jpg");
+    }
+
+    @Test
+    @DisplayName("GET /images/{id} - If-Modified-Since для существующего изображения даёт 304 без обращения к сервису выдачи")
+    @WithMockUser
+    void getImage_WithIfModifiedSince_ShouldReturnNotModified() throws Exception {
+        // Given
+        when(imageService.getImageEtag("test.jpg", null)).thenReturn("\"abc\"");
+        when(imageService.exists("test.jpg")).thenReturn(true);
+
+        // When & Then
+        mockMvc.perform(get("/images/{id}", "test.jpg")
+                        .header(HttpHeaders.IF_MODIFIED_SINCE, "Wed, 21 Oct 2015 07:28:00 GMT"))
+                .andExpect(status().isNotModified())
+                .andExpect(header().string(HttpHeaders.ETAG, "\"abc\""))
+                .andExpect(header().string(HttpHeaders.CACHE_CONTROL, ImageService.IMMUTABLE_CACHE_CONTROL));
+        verify(imageService, never()).getImage(anyString());
+    }
+
+    @Test
+    @DisplayName("GET /images/{id} - If-None-Match для недопустимого id передаётся в сервис")
+    @WithMockUser
+    void getImage_WithIfNoneMatchForUnknownId_ShouldDelegate() throws Exception {
+        // Given
+        when(imageService.getImageEtag("bogus", null)).thenReturn(null);
+        when(imageService.getImage("bogus")).thenReturn(ResponseEntity.notFound().build());
+
+        // When & Then
+        mockMvc.perform(get("/images/{id}", "bogus").header(HttpHeaders.IF_NONE_MATCH, "\"abc\""))
+                .andExpect(status().isNotFound());
+    }
 }
@@ -7,11 +7,18 @@ import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.Resource;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.web.context.request.ServletWebRequest;
+import org.springframework.web.context.request.WebRequest;
 import ru.skypro.homework.service.ImageService;
 
 import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.Mockito.*;
 
 @ExtendWith(MockitoExtension.class)
@@ -26,9 +33,11 @@ public class ImageControllerTest {
 
     private String testImageId;
     private byte[] testImageData;
+    private WebRequest webRequest;
 
     @BeforeEach
     void setUp() {
+        webRequest = new ServletWebRequest(new MockHttpServletRequest());
         // Подготовка тестовых данных
         testImageId = "img_123e4567-e89b-12d3-a456-426614174000.jpg";
         testImageData = new byte[]{1, 2, 3, 4, 5};
@@ -38,19 +47,19 @@ public class ImageControllerTest {
     @DisplayName("Успешное получение изображения по корректному ID")
     void getImage_WithValidId_ShouldReturnImage() {
         // Given - настройка моков
-        ResponseEntity<byte[]> expectedResponse = ResponseEntity.ok()
+        ResponseEntity<Resource> expectedResponse = ResponseEntity.ok()
                 .header("Content-Type", "image/jpeg")
-                .body(testImageData);
+                .body(new ByteArrayResource(testImageData));
 
         when(imageService.getImage(testImageId)).thenReturn(expectedResponse);
 
         // When - вызов тестируемого метода
-        ResponseEntity<byte[]> actualResponse = imageController.getImage(testImageId);
+        ResponseEntity<Resource> actualResponse = imageController.getImage(testImageId, null, webRequest);
 
         // Then - проверки
         assertNotNull(actualResponse, "Ответ не должен быть null");
         assertEquals(HttpStatus.OK, actualResponse.getStatusCode(), "Статус код должен быть 200 OK");
-        assertArrayEquals(testImageData, actualResponse.getBody(), "Данные изображения должны совпадать");
+        assertArrayEquals(testImageData, ((ByteArrayResource) actualResponse.getBody()).getByteArray(), "Данные изображения должны совпадать");
         verify(imageService, times(1)).getImage(testImageId);
     }
 
@@ -59,12 +68,12 @@ public class ImageControllerTest {
     void getImage_WithNonExistentId_ShouldReturnNotFound() {
         // Given
         String nonExistentId = "non_existent_image.jpg";
-        ResponseEntity<byte[]> expectedResponse = ResponseEntity.notFound().build();
+        ResponseEntity<Resource> expectedResponse = ResponseEntity.notFound().build();
 
         when(imageService.getImage(nonExistentId)).thenReturn(expectedResponse);
 
         // When
-        ResponseEntity<byte[]> actualResponse = imageController.getImage(nonExistentId);
+        ResponseEntity<Resource> actualResponse = imageController.getImage(nonExistentId, null, webRequest);
 
         // Then
         assertNotNull(actualResponse, "Ответ не должен быть null");
@@ -78,12 +87,12 @@ public class ImageControllerTest {
     void getImage_WhenServiceThrowsException_ShouldReturnInternalServerError() {
         // Given
         String problematicId = "problematic_image.jpg";
-        ResponseEntity<byte[]> expectedResponse = ResponseEntity.internalServerError().build();
+        ResponseEntity<Resource> expectedResponse = ResponseEntity.internalServerError().build();
 
         when(imageService.getImage(problematicId)).thenReturn(expectedResponse);
 
         // When
-        ResponseEntity<byte[]> actualResponse = imageController.getImage(problematicId);
+        ResponseEntity<Resource> actualResponse = imageController.getImage(problematicId, null, webRequest);
 
         // Then
         assertNotNull(actualResponse, "Ответ не должен быть null");
@@ -97,14 +106,14 @@ public class ImageControllerTest {
     void getImage_WithIdContainingDot_ShouldProcessCorrectly() {
         // Given
         String idWithDot = "image.with.dots.jpg";
-        ResponseEntity<byte[]> expectedResponse = ResponseEntity.ok()
+        ResponseEntity<Resource> expectedResponse = ResponseEntity.ok()
                 .header("Content-Type", "image/jpeg")
-                .body(testImageData);
+                .body(new ByteArrayResource(testImageData));
 
         when(imageService.getImage(idWithDot)).thenReturn(expectedResponse);
 
         // When
-        ResponseEntity<byte[]> actualResponse = imageController.getImage(idWithDot);
+        ResponseEntity<Resource> actualResponse = imageController.getImage(idWithDot, null, webRequest);
 
         // Then
         assertNotNull(actualResponse, "Ответ не должен быть null");
@@ -120,12 +129,12 @@ public class ImageControllerTest {
 
         for (String ext : extensions) {
             String imageId = "test_image" + ext;
-            ResponseEntity<byte[]> expectedResponse = ResponseEntity.ok()
-                    .body(testImageData);
+            ResponseEntity<Resource> expectedResponse = ResponseEntity.ok()
+                    .body(new ByteArrayResource(testImageData));
 
             when(imageService.getImage(imageId)).thenReturn(expectedResponse);
 
-            ResponseEntity<byte[]> response = imageController.getImage(imageId);
+            ResponseEntity<Resource> response = imageController.getImage(imageId, null, webRequest);
 
             assertNotNull(response, "Ответ для расширения " + ext + " не должен быть null");
             assertEquals(HttpStatus.OK, response.getStatusCode(),
@@ -141,7 +150,7 @@ public class ImageControllerTest {
         when(imageService.getImage(expectedId)).thenReturn(ResponseEntity.ok().build());
 
         // When
-        imageController.getImage(expectedId);
+        imageController.getImage(expectedId, null, webRequest);
 
         // Then
         verify(imageService, times(1)).getImage(expectedId);
@@ -153,15 +162,103 @@ public class ImageControllerTest {
     void getImage_WithSpecialCharactersInId_ShouldProcessCorrectly() {
         // Given
         String specialId = "image-123_456@test.jpg";
-        ResponseEntity<byte[]> expectedResponse = ResponseEntity.ok().build();
+        ResponseEntity<Resource> expectedResponse = ResponseEntity.ok().build();
 
         when(imageService.getImage(specialId)).thenReturn(expectedResponse);
 
         // When
-        ResponseEntity<byte[]> response = imageController.getImage(specialId);
+        ResponseEntity<Resource> response = imageController.getImage(specialId, null, webRequest);
 
         // Then
         assertNotNull(response, "Ответ не должен быть null");
         verify(imageService, times(1)).getImage(specialId);
     }
+
+    @Test
+    @DisplayName("Параметр size передаётся в сервис для выдачи варианта")
+    void getImage_WithSize_ShouldRequestVariant() {
+        // Given
+        ResponseEntity<Resource> expectedResponse = ResponseEntity.ok()
+                .body(new ByteArrayResource(testImageData));
+        when(imageService.getImage(testImageId, "thumb")).thenReturn(expectedResponse);
+
+        // When
+        ResponseEntity<Resource> response = imageController.getImage(testImageId, "thumb", webRequest);
+
+        // Then
+        assertSame(expectedResponse, response);
+        verify(imageService, times(1)).getImage(testImageId, "thumb");
+        verify(imageService, never()).getImage(testImageId);
+    }
+
+    @Test
+    @DisplayName("If-None-Match с совпадающим ETag - 304 без обращения к файлу")
+    void getImage_WithMatchingIfNoneMatch_ShouldReturnNotModified() {
+        // Given
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.addHeader(HttpHeaders.IF_NONE_MATCH, "W/\"other\", \"abc-thumb\"");
+        when(imageService.getImageEtag(testImageId, "thumb")).thenReturn("\"abc-thumb\"");
+
+        // When
+        ResponseEntity<Resource> response = imageController.getImage(testImageId, "thumb", new ServletWebRequest(request));
+
+        // Then
+        assertEquals(HttpStatus.NOT_MODIFIED, response.getStatusCode());
+        assertEquals("\"abc-thumb\"", response.getHeaders().getETag());
+        assertEquals(ImageService.IMMUTABLE_CACHE_CONTROL, response.getHeaders().getCacheControl());
+        verify(imageService, never()).getImage(anyString(), anyString());
+    }
+
+    @Test
+    @DisplayName("If-None-Match с другим ETag - изображение отдаётся полностью")
+    void getImage_WithStaleIfNoneMatch_ShouldReturnImage() {
+        // Given
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.addHeader(HttpHeaders.IF_NONE_MATCH, "\"stale\"");
+        ResponseEntity<Resource> expectedResponse = ResponseEntity.ok().body(new ByteArrayResource(testImageData));
+        when(imageService.getImageEtag(testImageId, null)).thenReturn("\"abc\"");
+        when(imageService.getImage(testImageId)).thenReturn(expectedResponse);
+
+        // When
+        ResponseEntity<Resource> response = imageController.getImage(testImageId, null, new ServletWebRequest(request));
+
+        // Then
+        assertSame(expectedResponse, response);
+        verify(imageService, never()).exists(anyString());
+    }
+
+    @Test
+    @DisplayName("If-Modified-Since - 304 только для существующего изображения")
+    void getImage_WithIfModifiedSince_ShouldReturnNotModifiedWhenExists() {
+        // Given
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.addHeader(HttpHeaders.IF_MODIFIED_SINCE, "Wed, 21 Oct 2015 07:28:00 GMT");
+        when(imageService.getImageEtag(testImageId, null)).thenReturn("\"abc\"");
+        when(imageService.exists(testImageId)).thenReturn(true);
+
+        // When
+        ResponseEntity<Resource> response = imageController.getImage(testImageId, null, new ServletWebRequest(request));
+
+        // Then
+        assertEquals(HttpStatus.NOT_MODIFIED, response.getStatusCode());
+        assertEquals("\"abc\"", response.getHeaders().getETag());
+        verify(imageService, never()).getImage(anyString());
+    }
+
+    @Test
+    @DisplayName("If-Modified-Since для отсутствующего изображения - 404, а не 304")
+    void getImage_WithIfModifiedSinceForMissingImage_ShouldReturnNotFound() {
+        // Given
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.addHeader(HttpHeaders.IF_MODIFIED_SINCE, "Wed, 21 Oct 2015 07:28:00 GMT");
+        when(imageService.getImageEtag(testImageId, null)).thenReturn("\"abc\"");
+        when(imageService.exists(testImageId)).thenReturn(false);
+        when(imageService.getImage(testImageId)).thenReturn(ResponseEntity.status(HttpStatus.NOT_FOUND).build());
+
+        // When
+        ResponseEntity<Resource> response = imageController.getImage(testImageId, null, new ServletWebRequest(request));
+
+        // Then
+        assertEquals(HttpStatus.NOT_FOUND, response.getStatusCode());
+    }
 }
@@ -0,0 +1,94 @@
+package ru.skypro.homework.filter;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import ru.skypro.homework.service.impl.ImageUploadBulkhead;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("Тестирование ImageUploadBulkheadFilter")
+public class ImageUploadBulkheadFilterTest {
+
+    private ImageUploadBulkhead bulkhead;
+    private ImageUploadBulkheadFilter filter;
+
+    @BeforeEach
+    void setUp() {
+        bulkhead = new ImageUploadBulkhead(new SimpleMeterRegistry(), 1, 0, Duration.ZERO);
+        filter = new ImageUploadBulkheadFilter(bulkhead, Duration.ofSeconds(7));
+    }
+
+    private static MockHttpServletRequest multipart(String method, String uri) {
+        MockHttpServletRequest request = new MockHttpServletRequest(method, uri);
+        request.setContentType(MediaType.MULTIPART_FORM_DATA_VALUE + "; boundary=x");
+        return request;
+    }
+
+    @Test
+    @DisplayName("загрузка при свободном месте проходит и освобождает место")
+    void upload_WithFreeSlot_ShouldPassAndRelease() throws Exception {
+        // Given
+        MockFilterChain chain = new MockFilterChain();
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        // When
+        filter.doFilter(multipart("PATCH", "/users/me/image"), response, chain);
+
+        // Then
+        assertNotNull(chain.getRequest(), "Запрос передан дальше по цепочке");
+        assertEquals(200, response.getStatus());
+        assertEquals(0, bulkhead.active());
+    }
+
+    @Test
+    @DisplayName("загрузка при перегрузке получает 503 и Retry-After, чтение проходит")
+    void upload_WhenSaturated_ShouldReturn503() throws Exception {
+        // Given
+        assertTrue(bulkhead.tryEnter());
+        MockFilterChain uploadChain = new MockFilterChain();
+        MockHttpServletResponse uploadResponse = new MockHttpServletResponse();
+        MockFilterChain readChain = new MockFilterChain();
+
+        // When
+        filter.doFilter(multipart("POST", "/ads"), uploadResponse, uploadChain);
+        filter.doFilter(new MockHttpServletRequest("GET", "/ads"), new MockHttpServletResponse(), readChain);
+
+        // Then
+        assertEquals(503, uploadResponse.getStatus());
+        assertEquals("7", uploadResponse.getHeader(HttpHeaders.RETRY_AFTER));
+        assertNull(uploadChain.getRequest(), "Тело запроса не читается");
+        assertNotNull(readChain.getRequest(), "Чтение не ограничивается");
+        assertEquals(1, bulkhead.active());
+    }
+
+    @Test
+    @DisplayName("части поэтапной загрузки ограничиваются, создание сессии и JSON-запросы — нет")
+    void uploadSessions_ShouldBeLimitedOnlyForContent() throws Exception {
+        // Given
+        assertTrue(bulkhead.tryEnter());
+        MockHttpServletResponse chunk = new MockHttpServletResponse();
+        MockHttpServletResponse create = new MockHttpServletResponse();
+        MockHttpServletRequest json = new MockHttpServletRequest("POST", "/ads");
+        json.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        MockHttpServletResponse jsonResponse = new MockHttpServletResponse();
+
+        // When
+        filter.doFilter(new MockHttpServletRequest("PUT", "/uploads/abc"), chunk, new MockFilterChain());
+        filter.doFilter(new MockHttpServletRequest("POST", "/uploads"), create, new MockFilterChain());
+        filter.doFilter(json, jsonResponse, new MockFilterChain());
+
+        // Then
+        assertEquals(503, chunk.getStatus());
+        assertEquals(200, create.getStatus());
+        assertEquals(200, jsonResponse.getStatus());
+    }
+}
@@ -5,12 +5,16 @@ import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
 import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.data.domain.PageRequest;
 import ru.skypro.homework.dto.Role;
 import ru.skypro.homework.model.AdEntity;
+import ru.skypro.homework.model.ImageEntity;
 import ru.skypro.homework.model.UserEntity;
 
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -229,6 +233,151 @@ public class AdRepositoryTest {
                 "Должно содержать второе объявление");
     }
 
+    /**
+     * Тест проверяет keyset-пагинацию карточек: страницы идут от новых к старым и не пересекаются
+     */
+    @Test
+    void findCardsBefore_ShouldReturnPagesWithoutOverlap() {
+        // Given - создаем еще два объявления
+        AdEntity secondAd = new AdEntity();
+        secondAd.setTitle("Second Ad");
+        secondAd.setPrice(2000);
+        secondAd.setAuthor(testUser);
+        entityManager.persistAndFlush(secondAd);
+
+        AdEntity thirdAd = new AdEntity();
+        thirdAd.setTitle("Third Ad");
+        thirdAd.setPrice(3000);
+        thirdAd.setAuthor(testUser);
+        entityManager.persistAndFlush(thirdAd);
+
+        // When - первая страница из двух элементов и продолжение после последнего id
+        List<AdCardView> firstPage = adRepository.findCardsBefore(Integer.MAX_VALUE, PageRequest.of(0, 2));
+        List<AdCardView> secondPage = adRepository.findCardsBefore(
+                firstPage.get(firstPage.size() - 1).getPk(), PageRequest.of(0, 2));
+
+        // Then - сначала новые объявления, вторая страница содержит оставшееся
+        assertEquals(2, firstPage.size(), "Первая страница должна быть полной");
+        assertEquals(thirdAd.getId(), firstPage.get(0).getPk(), "Первым должно идти самое новое объявление");
+        assertEquals(secondAd.getId(), firstPage.get(1).getPk());
+        assertEquals(1, secondPage.size(), "На второй странице должно остаться одно объявление");
+        assertEquals(testAd.getId(), secondPage.get(0).getPk());
+    }
+
+    /**
+     * Тест проверяет keyset-пагинацию по возрастанию цены с равными ценами и верхней границей диапазона
+     */
+    @Test
+    void findCardsByPriceAscAfter_ShouldPageByPriceThenId() {
+        // Given - два объявления с одинаковой ценой и одно дороже верхней границы
+        AdEntity samePrice = new AdEntity();
+        samePrice.setTitle("Same Price");
+        samePrice.setPrice(1000);
+        samePrice.setAuthor(testUser);
+        entityManager.persistAndFlush(samePrice);
+
+        AdEntity expensive = new AdEntity();
+        expensive.setTitle("Expensive");
+        expensive.setPrice(5000);
+        expensive.setAuthor(testUser);
+        entityManager.persistAndFlush(expensive);
+
+        // When - первая страница из одного элемента и продолжение после пары (price, id)
+        List<AdCardView> firstPage = adRepository.findCardsByPriceAscAfter(
+                Integer.MIN_VALUE, Integer.MIN_VALUE, 2000, PageRequest.of(0, 1));
+        AdCardView last = firstPage.get(0);
+        List<AdCardView> secondPage = adRepository.findCardsByPriceAscAfter(
+                last.getPrice(), last.getPk(), 2000, PageRequest.of(0, 10));
+
+        // Then - объявления с равной ценой идут по id, дорогое отсечено фильтром
+        assertEquals(testAd.getId(), last.getPk());
+        assertEquals(1, secondPage.size());
+        assertEquals(samePrice.getId(), secondPage.get(0).getPk());
+    }
+
+    /**
+     * Тест проверяет выдачу по убыванию цены с нижней границей диапазона
+     */
+    @Test
+    void findCardsByPriceDescAfter_ShouldRespectMinPrice() {
+        // Given
+        AdEntity cheap = new AdEntity();
+        cheap.setTitle("Cheap");
+        cheap.setPrice(100);
+        cheap.setAuthor(testUser);
+        entityManager.persistAndFlush(cheap);
+
+        AdEntity expensive = new AdEntity();
+        expensive.setTitle("Expensive");
+        expensive.setPrice(5000);
+        expensive.setAuthor(testUser);
+        entityManager.persistAndFlush(expensive);
+
+        // When
+        List<AdCardView> page = adRepository.findCardsByPriceDescAfter(
+                Integer.MAX_VALUE, Integer.MAX_VALUE, 500, PageRequest.of(0, 10));
+
+        // Then
+        assertEquals(List.of(expensive.getId(), testAd.getId()),
+                page.stream().map(AdCardView::getPk).collect(Collectors.toList()));
+    }
+
+    /**
+     * Тест проверяет, что проекция карточек заполняет поля из внешних ключей
+     * и не теряет объявления без изображения
+     */
+    @Test
+    void findCardsByAuthor_ShouldProjectForeignKeysIncludingMissingImage() {
+        // Given - объявление с изображением и объявление без него
+        ImageEntity image = new ImageEntity();
+        image.setId("ad_card.jpg");
+        image.setContentType("image/jpeg");
+        entityManager.persistAndFlush(image);
+
+        AdEntity withImage = new AdEntity();
+        withImage.setTitle("With Image");
+        withImage.setPrice(500);
+        withImage.setAuthor(testUser);
+        withImage.setImage(image);
+        entityManager.persistAndFlush(withImage);
+        entityManager.clear();
+
+        // When - получаем карточки автора
+        List<AdCardView> cards = adRepository.findCardsByAuthor(testUser.getId());
+
+        // Then - обе карточки на месте, поля заполнены
+        assertEquals(2, cards.size(), "Объявление без изображения не должно теряться");
+        AdCardView first = cards.get(0);
+        assertEquals(withImage.getId(), first.getPk());
+        assertEquals(testUser.getId(), first.getAuthor());
+        assertEquals("ad_card.jpg", first.getImageId());
+        assertEquals(500, first.getPrice());
+        assertEquals("With Image", first.getTitle());
+        assertNull(cards.get(1).getImageId(), "У объявления без изображения imageId должен быть null");
+    }
+
+    /**
+     * Тест проверяет потоковое чтение карточек всего каталога в порядке id
+     */
+    @Test
+    void streamAllCards_ShouldReturnAllAdsInIdOrder() {
+        // Given - второе объявление
+        AdEntity secondAd = new AdEntity();
+        secondAd.setTitle("Second Ad");
+        secondAd.setPrice(2000);
+        secondAd.setAuthor(testUser);
+        entityManager.persistAndFlush(secondAd);
+
+        // When - читаем поток карточек
+        List<Integer> ids;
+        try (Stream<AdCardView> cards = adRepository.streamAllCards()) {
+            ids = cards.map(AdCardView::getPk).collect(Collectors.toList());
+        }
+
+        // Then - все объявления в порядке возрастания id
+        assertEquals(List.of(testAd.getId(), secondAd.getId()), ids);
+    }
+
     /**
      * Тест проверяет, что связь с автором сохраняется правильно
      */
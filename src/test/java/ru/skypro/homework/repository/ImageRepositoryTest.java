@@ -6,6 +6,7 @@ import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
 import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
 import org.springframework.test.context.DynamicPropertyRegistry;
 import org.springframework.test.context.DynamicPropertySource;
 import org.testcontainers.containers.PostgreSQLContainer;
@@ -41,6 +42,9 @@ public class ImageRepositoryTest {
     @Autowired
     private ImageRepository imageRepository;
 
+    @Autowired
+    private TestEntityManager entityManager;
+
     private ImageEntity testImage1;
     private ImageEntity testImage2;
 
@@ -280,4 +284,53 @@ public class ImageRepositoryTest {
 
         assertEquals(1, imageRepository.count(), "Должно остаться 1 изображение");
     }
+
+    @Test
+    @DisplayName("refCount - запись удаляется только после снятия последней ссылки")
+    void refCount_ShouldDeleteOnlyUnreferencedImage() {
+        // Given
+        assertEquals(1, imageRepository.incrementRefCount(testImage1.getId()), "Ссылка добавляется к существующей записи");
+        assertEquals(0, imageRepository.incrementRefCount("missing.jpg"), "Для отсутствующей записи ничего не меняется");
+
+        // When
+        imageRepository.decrementRefCount(testImage1.getId());
+        int deletedWhileShared = imageRepository.deleteIfUnreferenced(testImage1.getId());
+        imageRepository.decrementRefCount(testImage1.getId());
+        int deletedLast = imageRepository.deleteIfUnreferenced(testImage1.getId());
+        entityManager.clear();
+
+        // Then
+        assertEquals(0, deletedWhileShared, "Пока остаётся ссылка, запись не удаляется");
+        assertEquals(1, deletedLast, "После снятия последней ссылки запись удаляется");
+        assertFalse(imageRepository.findById(testImage1.getId()).isPresent());
+        assertEquals(1, imageRepository.findById(testImage2.getId()).orElseThrow().getRefCount());
+    }
+
+    @Test
+    @DisplayName("insertIfAbsent - запись создаётся один раз, повторная вставка того же id ничего не меняет")
+    void insertIfAbsent_ShouldIgnoreExistingId() {
+        // Given
+        ImageEntity image = new ImageEntity();
+        image.setId("new_image_456.png");
+        image.setContentType("image/png");
+        image.setSize(256L);
+        image.setWidth(16);
+        image.setHeight(8);
+        image.setChecksum("ab".repeat(32));
+        image.setRefCount(1);
+        image.setCreatedAt(System.currentTimeMillis());
+
+        // When
+        int inserted = imageRepository.insertIfAbsent(image);
+        int duplicate = imageRepository.insertIfAbsent(image);
+        entityManager.clear();
+
+        // Then
+        assertEquals(1, inserted, "Новая запись создаётся");
+        assertEquals(0, duplicate, "Запись с тем же id не создаётся повторно и не вызывает ошибку");
+        ImageEntity stored = imageRepository.findById(image.getId()).orElseThrow();
+        assertEquals(1, stored.getRefCount());
+        assertEquals(16, stored.getWidth());
+        assertEquals("image/png", stored.getContentType());
+    }
 }
@@ -0,0 +1,32 @@
+package ru.skypro.homework.service.impl;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("Тестирование AdExportLimiter")
+public class AdExportLimiterTest {
+
+    @Test
+    @DisplayName("tryEnter - сверх лимита выгрузка отклоняется сразу, после exit место снова доступно")
+    void tryEnter_OverLimit_ShouldRejectUntilExit() {
+        // Given
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        AdExportLimiter limiter = new AdExportLimiter(meterRegistry, 2, Duration.ofSeconds(30));
+
+        // When & Then
+        assertTrue(limiter.tryEnter());
+        assertTrue(limiter.tryEnter());
+        assertFalse(limiter.tryEnter(), "Лимит исчерпан — ждать нельзя");
+        assertEquals(2, limiter.active());
+        assertEquals(1, meterRegistry.get("ads.export.rejected").counter().count());
+
+        limiter.exit();
+        assertTrue(limiter.tryEnter(), "Освобождённое место снова выдаётся");
+        assertEquals("30", limiter.retryAfterSeconds());
+    }
+}
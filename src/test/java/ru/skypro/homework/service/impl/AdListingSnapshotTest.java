@@ -0,0 +1,85 @@
+package ru.skypro.homework.service.impl;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.ObjectProvider;
+import ru.skypro.homework.dto.Ad;
+import ru.skypro.homework.dto.Ads;
+import ru.skypro.homework.service.AdService;
+import ru.skypro.homework.service.SerializedPage;
+
+import java.io.ByteArrayInputStream;
+import java.time.Duration;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@DisplayName("Тестирование AdListingSnapshot")
+public class AdListingSnapshotTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private AdService adService;
+    private AdVersions versions;
+    private AdListingSnapshot snapshot;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        adService = mock(AdService.class);
+        ObjectProvider<AdService> provider = mock(ObjectProvider.class);
+        when(provider.getObject()).thenReturn(adService);
+        versions = new AdVersions(event -> { }, 1000);
+        snapshot = new AdListingSnapshot(provider, objectMapper, versions, true, 2, Duration.ofMillis(500));
+    }
+
+    @Test
+    @DisplayName("rebuild - строит ограниченное число страниц по цепочке курсоров")
+    void rebuild_ShouldFollowCursorsUpToPageLimit() throws Exception {
+        // Given
+        when(adService.getAllAds(null, null, null, null, null)).thenReturn(page(3, "c1"));
+        when(adService.getAllAds("c1", null, null, null, null)).thenReturn(page(2, "c2"));
+
+        // When
+        snapshot.rebuild();
+
+        // Then
+        SerializedPage first = snapshot.page(null);
+        assertNotNull(first);
+        assertEquals(3, objectMapper.readValue(first.getIdentity(), Ads.class).getResults().get(0).getPk());
+        try (GZIPInputStream gzip = new GZIPInputStream(new ByteArrayInputStream(first.getGzip()))) {
+            assertArrayEquals(first.getIdentity(), gzip.readAllBytes(), "gzip должен распаковываться в то же тело");
+        }
+        assertNotNull(snapshot.page("c1"));
+        assertNull(snapshot.page("c2"), "Страницы сверх лимита не входят в снимок");
+        verify(adService, never()).getAllAds(eq("c2"), any(), any(), any(), any());
+    }
+
+    @Test
+    @DisplayName("page - после изменения ленты устаревший снимок не выдаётся")
+    void page_AfterCatalogChange_ShouldReturnNull() throws Exception {
+        // Given
+        when(adService.getAllAds(null, null, null, null, null)).thenReturn(page(1, null));
+        snapshot.rebuild();
+        assertNotNull(snapshot.page(null));
+
+        // When
+        versions.touch(1);
+
+        // Then
+        assertNull(snapshot.page(null));
+    }
+
+    private static Ads page(int pk, String next) {
+        Ad ad = new Ad();
+        ad.setPk(pk);
+        Ads ads = new Ads();
+        ads.setResults(List.of(ad));
+        ads.setCount(1);
+        ads.setNext(next);
+        return ads;
+    }
+}
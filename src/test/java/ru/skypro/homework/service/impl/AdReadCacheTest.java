@@ -0,0 +1,79 @@
+package ru.skypro.homework.service.impl;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import ru.skypro.homework.dto.Ads;
+import ru.skypro.homework.dto.ExtendedAd;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("Тестирование AdReadCache")
+public class AdReadCacheTest {
+
+    private SimpleMeterRegistry meterRegistry;
+    private AdReadCache cache;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        cache = new AdReadCache(meterRegistry, 10, 10, Duration.ofMinutes(1));
+    }
+
+    @Test
+    @DisplayName("page - повторный запрос обслуживается из кэша")
+    void page_SecondCall_ShouldNotInvokeLoader() {
+        // Given
+        AtomicInteger loads = new AtomicInteger();
+
+        // When
+        Ads first = cache.page("id||20", () -> { loads.incrementAndGet(); return new Ads(); });
+        Ads second = cache.page("id||20", () -> { loads.incrementAndGet(); return new Ads(); });
+
+        // Then
+        assertSame(first, second, "Должен вернуться закэшированный объект");
+        assertEquals(1, loads.get(), "Загрузчик должен вызываться один раз");
+        assertEquals(1.0, meterRegistry.get("cache.gets").tag("cache", "ads.pages").tag("result", "hit").functionCounter().count());
+    }
+
+    @Test
+    @DisplayName("invalidateAd - сбрасывает карточку и ленту")
+    void invalidateAd_ShouldEvictDetailAndPages() {
+        // Given
+        AtomicInteger loads = new AtomicInteger();
+        cache.page("id||20", () -> { loads.incrementAndGet(); return new Ads(); });
+        cache.detail(1, id -> { loads.incrementAndGet(); return new ExtendedAd(); });
+
+        // When - вне транзакции сброс выполняется сразу
+        cache.invalidateAd(1);
+        cache.page("id||20", () -> { loads.incrementAndGet(); return new Ads(); });
+        cache.detail(1, id -> { loads.incrementAndGet(); return new ExtendedAd(); });
+
+        // Then
+        assertEquals(4, loads.get(), "После инвалидации данные должны загружаться заново");
+    }
+
+    @Test
+    @DisplayName("invalidateDetails - сбрасывает только карточки, лента остаётся")
+    void invalidateDetails_ShouldKeepPages() {
+        // Given
+        AtomicInteger loads = new AtomicInteger();
+        cache.page("id||20", () -> { loads.incrementAndGet(); return new Ads(); });
+        cache.detail(1, id -> { loads.incrementAndGet(); return new ExtendedAd(); });
+        cache.detail(2, id -> { loads.incrementAndGet(); return new ExtendedAd(); });
+
+        // When
+        cache.invalidateDetails(List.of(1));
+        cache.page("id||20", () -> { loads.incrementAndGet(); return new Ads(); });
+        cache.detail(1, id -> { loads.incrementAndGet(); return new ExtendedAd(); });
+        cache.detail(2, id -> { loads.incrementAndGet(); return new ExtendedAd(); });
+
+        // Then
+        assertEquals(4, loads.get(), "Перезагрузиться должна только карточка объявления 1");
+    }
+}
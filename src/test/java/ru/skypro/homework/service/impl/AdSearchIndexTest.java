@@ -0,0 +1,144 @@
+package ru.skypro.homework.service.impl;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import ru.skypro.homework.dto.Ad;
+import ru.skypro.homework.mapper.AdMapper;
+import ru.skypro.homework.model.AdEntity;
+import ru.skypro.homework.model.UserEntity;
+import ru.skypro.homework.repository.AdIndexView;
+import ru.skypro.homework.repository.AdRepository;
+
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+@DisplayName("Тестирование AdSearchIndex")
+public class AdSearchIndexTest {
+
+    private SimpleMeterRegistry meterRegistry;
+    private AdSearchIndex index;
+
+    @BeforeEach
+    void setUp() {
+        AdRepository adRepository = mock(AdRepository.class);
+        when(adRepository.streamAllForIndex()).thenReturn(Stream.of(
+                row(1, "Велосипед горный", "Почти новый, 21 скорость", 15000),
+                row(2, "Детский велосипед", "Для ребёнка 5 лет", 3000),
+                row(3, "Самокат", "Электрический, ёмкая батарея", 20000)
+        ));
+        meterRegistry = new SimpleMeterRegistry();
+        index = new AdSearchIndex(adRepository, new AdMapper(), meterRegistry);
+        index.rebuild();
+    }
+
+    @Test
+    @DisplayName("search - слова через пробел пересекаются, результаты от новых к старым")
+    void search_Words_ShouldIntersect() {
+        assertEquals(List.of(2, 1), ids(index.search("велосипед ", null, null, Integer.MAX_VALUE, 10)));
+        assertEquals(List.of(1), ids(index.search("горный велосипед ", null, null, Integer.MAX_VALUE, 10)));
+    }
+
+    @Test
+    @DisplayName("search - OR объединяет группы, последнее слово ищется по префиксу")
+    void search_OrAndPrefix_ShouldUnion() {
+        assertEquals(List.of(3, 1), ids(index.search("горный OR самок", null, null, Integer.MAX_VALUE, 10)));
+        assertEquals(List.of(3), ids(index.search("емкая", null, null, Integer.MAX_VALUE, 10)), "ё и е должны совпадать");
+    }
+
+    @Test
+    @DisplayName("search - фильтр по цене и продолжение после курсора")
+    void search_PriceAndCursor_ShouldFilter() {
+        assertEquals(List.of(2), ids(index.search("велосипед ", null, 10000, Integer.MAX_VALUE, 10)));
+        assertEquals(List.of(1), ids(index.search("велосипед ", null, null, 2, 10)));
+    }
+
+    @Test
+    @DisplayName("search - префикс со множеством слов сливается от новых к старым с учётом курсора и лимита")
+    void search_ShortPrefixManyTerms_ShouldMergeTopDown() {
+        // Given
+        AdRepository adRepository = mock(AdRepository.class);
+        when(adRepository.streamAllForIndex()).thenReturn(IntStream.rangeClosed(1, 500)
+                .mapToObj(id -> row(id, "Модель м" + id, id % 2 == 0 ? "чётная" : "нечётная", id)));
+        AdSearchIndex many = new AdSearchIndex(adRepository, new AdMapper(), new SimpleMeterRegistry());
+        many.rebuild();
+
+        // When & Then
+        assertTrue(many.search("м", null, null, Integer.MAX_VALUE, 3).isEmpty(),
+                "Однобуквенное слово короче минимального префикса и ищется целиком");
+        assertEquals(List.of(500, 499, 498), ids(many.search("мо", null, null, Integer.MAX_VALUE, 3)));
+        assertEquals(List.of(499, 498, 497), ids(many.search("м4", null, null, Integer.MAX_VALUE, 3)));
+        assertEquals(List.of(301, 300, 30), ids(many.search("м499 OR м30", null, null, 302, 3)));
+        assertEquals(List.of(198, 196, 194), ids(many.search("чётная м1", null, null, 200, 3)));
+        assertEquals(List.of(49, 47), ids(many.search("нечетная м4", null, 49, 450, 2)));
+    }
+
+    @Test
+    @DisplayName("put/remove - инкрементальное обновление вне транзакции применяется сразу")
+    void putAndRemove_ShouldUpdateIndex() {
+        // Given
+        UserEntity author = new UserEntity();
+        author.setId(7);
+        AdEntity ad = new AdEntity();
+        ad.setId(3);
+        ad.setTitle("Велосипед складной");
+        ad.setPrice(9000);
+        ad.setAuthor(author);
+
+        // When
+        index.put(ad);
+        index.remove(1);
+
+        // Then
+        assertEquals(List.of(3, 2), ids(index.search("велосипед ", null, null, Integer.MAX_VALUE, 10)));
+        assertTrue(index.search("самокат", null, null, Integer.MAX_VALUE, 10).isEmpty(), "Старые слова документа должны быть удалены");
+        assertEquals(2.0, meterRegistry.get("ads.search.index.documents").gauge().value());
+        assertTrue(meterRegistry.get("ads.search.index.memory").gauge().value() > 0);
+        assertEquals(1, meterRegistry.get("ads.search.index.rebuild").timer().count());
+    }
+
+    private static List<Integer> ids(List<Ad> ads) {
+        return ads.stream().map(Ad::getPk).collect(Collectors.toList());
+    }
+
+    private static AdIndexView row(int id, String title, String description, int price) {
+        return new AdIndexView() {
+            @Override
+            public String getDescription() {
+                return description;
+            }
+
+            @Override
+            public Integer getPk() {
+                return id;
+            }
+
+            @Override
+            public Integer getAuthor() {
+                return 1;
+            }
+
+            @Override
+            public String getImageId() {
+                return null;
+            }
+
+            @Override
+            public Integer getPrice() {
+                return price;
+            }
+
+            @Override
+            public String getTitle() {
+                return title;
+            }
+        };
+    }
+}
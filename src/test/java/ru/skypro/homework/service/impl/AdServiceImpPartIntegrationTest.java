@@ -18,9 +18,12 @@ import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
 import ru.skypro.homework.config.TestSecurityConfig;
 import ru.skypro.homework.dto.*;
 import ru.skypro.homework.service.AdService;
+import ru.skypro.homework.service.ResourceVersion;
 
 import java.nio.charset.StandardCharsets;
 
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.when;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
 
@@ -46,6 +49,11 @@ public class AdServiceImpPartIntegrationTest {
 
     @BeforeEach
     void setUp() {
+        // Версии ленты и карточек для условных GET
+        ResourceVersion version = new ResourceVersion("\"1-1\"", 1_000L);
+        when(adService.getCatalogVersion()).thenReturn(version);
+        when(adService.getAdVersion(any())).thenReturn(version);
+
         // Подготовка тестовых данных
         testAdProperties = new CreateOrUpdateAd();
         testAdProperties.setTitle("Test Ad Title");
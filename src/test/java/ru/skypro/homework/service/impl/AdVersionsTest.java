@@ -0,0 +1,73 @@
+package ru.skypro.homework.service.impl;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import ru.skypro.homework.service.ResourceVersion;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("Тестирование AdVersions")
+public class AdVersionsTest {
+
+    private AdVersions versions;
+
+    @BeforeEach
+    void setUp() {
+        versions = new AdVersions(event -> { }, 1000);
+    }
+
+    @Test
+    @DisplayName("touch - меняет версию ленты и карточки, остальные карточки не затрагивает")
+    void touch_ShouldChangeCatalogAndAdVersion() {
+        // Given
+        ResourceVersion catalog = versions.catalog();
+        ResourceVersion other = versions.ad(2);
+
+        // When
+        versions.touch(1);
+
+        // Then
+        assertNotEquals(catalog.getEtag(), versions.catalog().getEtag());
+        assertEquals(versions.catalog().getEtag(), versions.ad(1).getEtag());
+        assertEquals(other.getEtag(), versions.ad(2).getEtag());
+        assertTrue(versions.catalog().getEtag().startsWith("\""), "ETag должен быть строгим (в кавычках)");
+    }
+
+    @Test
+    @DisplayName("touchDetails - меняет только версии карточек")
+    void touchDetails_ShouldKeepCatalogVersion() {
+        // Given
+        ResourceVersion catalog = versions.catalog();
+        ResourceVersion ad = versions.ad(1);
+
+        // When
+        versions.touchDetails(List.of(1));
+
+        // Then
+        assertEquals(catalog.getEtag(), versions.catalog().getEtag());
+        assertNotEquals(ad.getEtag(), versions.ad(1).getEtag());
+    }
+
+    @Test
+    @DisplayName("вытеснение - число версий ограничено, вытесненные карточки не получают прежнюю версию")
+    void touch_OverMaxSize_ShouldNotServeOlderVersion() {
+        // Given
+        AdVersions bounded = new AdVersions(event -> { }, 1);
+        ResourceVersion initial = bounded.ad(3);
+
+        // When
+        bounded.touch(1);
+        ResourceVersion first = bounded.ad(1);
+        bounded.touch(2);
+
+        // Then
+        assertEquals(bounded.catalog().getEtag(), bounded.ad(2).getEtag());
+        assertNotEquals(initial.getEtag(), bounded.ad(1).getEtag());
+        assertTrue(bounded.ad(1).getLastModified() >= first.getLastModified());
+        assertNotEquals(initial.getEtag(), bounded.ad(3).getEtag(),
+                "После вытеснения версия по умолчанию не меньше вытесненной");
+    }
+}
@@ -0,0 +1,47 @@
+package ru.skypro.homework.service.impl;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import ru.skypro.homework.service.ImageStore;
+import ru.skypro.homework.service.ImageVariant;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("Тестирование FileImageStore")
+public class FileImageStoreTest extends ImageStoreContractTest {
+
+    private FileImageStore store;
+
+    @BeforeEach
+    void setUp() {
+        store = new FileImageStore(tempDir.resolve("images").toString());
+    }
+
+    @Override
+    protected ImageStore store() {
+        return store;
+    }
+
+    @Test
+    @DisplayName("list - подкаталог вариантов в каталоге шарда не считается изображением")
+    void list_ShouldSkipVariantsDirectory() throws IOException {
+        // Given
+        String id = "ab" + "1".repeat(62) + ".jpg";
+        store.put(id, Files.write(Files.createTempFile(tempDir, "upload", ".part"), new byte[]{1}), null);
+        Path original = ImageStoreLayout.path(tempDir.resolve("images"), id);
+        Files.createDirectories(ImageVariants.pathOf(original, ImageVariant.CARD).getParent());
+
+        // When
+        ImageStore.Page page = store.list(null, 10);
+
+        // Then
+        assertEquals(List.of(id), page.ids());
+        assertNull(page.next());
+    }
+}
@@ -0,0 +1,95 @@
+package ru.skypro.homework.service.impl;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("Тестирование ImageCache")
+public class ImageCacheTest {
+
+    @TempDir
+    Path tempDir;
+
+    private SimpleMeterRegistry meterRegistry;
+    private ImageCache cache;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        cache = new ImageCache(meterRegistry, DataSize.ofKilobytes(1), DataSize.ofBytes(8), 100, Duration.ofSeconds(30), 100);
+    }
+
+    @Test
+    @DisplayName("put/get - содержимое файла отдаётся из буфера, в т.ч. с пропуском начала")
+    void put_SmallFile_ShouldBeServedFromBuffer() throws IOException {
+        // Given
+        Path file = tempDir.resolve("a.jpg");
+        Files.write(file, new byte[]{1, 2, 3, 4, 5});
+
+        // When
+        assertNull(cache.put("a.jpg", new FileSystemResource(file), "image/jpeg", 1000L),
+                "Первое обращение только запоминается");
+        assertNull(cache.get("a.jpg"));
+        cache.put("a.jpg", new FileSystemResource(file), "image/jpeg", 1000L);
+        Files.delete(file);
+        ImageCache.CachedImage image = cache.get("a.jpg");
+
+        // Then
+        assertNotNull(image, "Изображение должно быть в кэше");
+        assertEquals("image/jpeg", image.getContentType());
+        assertEquals(1000L, image.getLastModified());
+        assertArrayEquals(new byte[]{1, 2, 3, 4, 5}, image.toByteArray());
+        Resource resource = image.asResource("a.jpg");
+        assertEquals(5, resource.contentLength());
+        try (InputStream in = resource.getInputStream()) {
+            assertEquals(2, in.skip(2));
+            assertArrayEquals(new byte[]{3, 4, 5}, in.readAllBytes());
+        }
+    }
+
+    @Test
+    @DisplayName("put - файл крупнее допустимой записи не кэшируется")
+    void put_LargeFile_ShouldBeSkipped() throws IOException {
+        // Given
+        Path file = tempDir.resolve("big.jpg");
+        Files.write(file, new byte[9]);
+
+        // When & Then
+        assertNull(cache.put("big.jpg", new FileSystemResource(file), "image/jpeg", 1000L));
+        assertNull(cache.get("big.jpg"));
+    }
+
+    @Test
+    @DisplayName("invalidate - запись удаляется, метрики попаданий публикуются")
+    void invalidate_ShouldRemoveEntryAndRecordStats() throws IOException {
+        // Given
+        Path file = tempDir.resolve("b.png");
+        Files.write(file, new byte[]{7});
+        cache.put("b.png", new FileSystemResource(file), "image/png", 1000L);
+        cache.put("b.png", new FileSystemResource(file), "image/png", 1000L);
+        assertNotNull(cache.get("b.png"));
+
+        // When
+        cache.invalidate("b.png");
+
+        // Then
+        assertNull(cache.get("b.png"));
+        assertEquals(0.5, meterRegistry.get("images.cache.hit.ratio").gauge().value());
+        assertNotNull(meterRegistry.get("images.cache.resident").gauge());
+        assertEquals(1.0, meterRegistry.get("cache.gets").tag("cache", "images.hot").tag("result", "hit")
+                .functionCounter().count());
+    }
+}
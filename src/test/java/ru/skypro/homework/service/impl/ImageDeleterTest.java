@@ -0,0 +1,152 @@
+package ru.skypro.homework.service.impl;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import ru.skypro.homework.model.ImageEntity;
+import ru.skypro.homework.repository.ImageRepository;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+@DisplayName("Тестирование ImageDeleter")
+public class ImageDeleterTest {
+
+    private static final String IMAGE_ID = "ab".repeat(32) + ".jpg";
+
+    @TempDir
+    Path tempDir;
+
+    @Mock
+    private ImageRepository imageRepository;
+
+    @Mock
+    private ImageCache imageCache;
+
+    @Mock
+    private ImageVariants imageVariants;
+
+    private FileImageStore store;
+    private ImageDeleter imageDeleter;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        store = new FileImageStore(tempDir.toString());
+        store.put(IMAGE_ID, Files.write(tempDir.resolve("upload.part"), new byte[]{1, 2, 3}), null);
+        imageDeleter = new ImageDeleter(imageRepository, store, imageCache, imageVariants, new SimpleMeterRegistry(),
+                tempDir.toString(), 10, Duration.ZERO, Duration.ZERO);
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    @DisplayName("deleteAfterCommit - при откате транзакции удаление не ставится в очередь")
+    void deleteAfterCommit_WithRollback_ShouldKeepFile() throws IOException {
+        // Given
+        TransactionSynchronizationManager.initSynchronization();
+
+        // When
+        imageDeleter.deleteAfterCommit(IMAGE_ID);
+        TransactionSynchronizationManager.clearSynchronization();
+
+        // Then
+        assertEquals(0, imageDeleter.flush());
+        assertNotNull(store.get(IMAGE_ID));
+        verifyNoInteractions(imageCache);
+    }
+
+    @Test
+    @DisplayName("deleteAfterCommit - после фиксации кэш сбрасывается сразу, файл удаляется в фоне")
+    void deleteAfterCommit_WithCommit_ShouldDeleteOnFlush() throws IOException {
+        // Given
+        TransactionSynchronizationManager.initSynchronization();
+        imageDeleter.deleteAfterCommit(IMAGE_ID);
+        assertNotNull(store.get(IMAGE_ID), "До фиксации ничего не удаляется");
+
+        // When
+        List<TransactionSynchronization> synchronizations = TransactionSynchronizationManager.getSynchronizations();
+        TransactionSynchronizationManager.clearSynchronization();
+        synchronizations.forEach(TransactionSynchronization::afterCommit);
+
+        // Then
+        verify(imageCache).invalidate(IMAGE_ID);
+        assertNotNull(store.get(IMAGE_ID), "Файл удаляется фоновым потоком, а не в запросе");
+        assertEquals(1, imageDeleter.flush());
+        assertNull(store.get(IMAGE_ID));
+        verify(imageVariants).delete(ImageStoreLayout.path(tempDir, IMAGE_ID));
+    }
+
+    @Test
+    @DisplayName("flush - отменённое или снова созданное изображение не удаляется")
+    void flush_WithCancelledOrRevivedImage_ShouldKeepFile() throws IOException {
+        // Given
+        imageDeleter.deleteAfterCommit(IMAGE_ID);
+        imageDeleter.cancel(IMAGE_ID);
+
+        // When & Then
+        assertEquals(0, imageDeleter.flush());
+        assertNotNull(store.get(IMAGE_ID));
+
+        // Given
+        ImageEntity revived = new ImageEntity();
+        revived.setId(IMAGE_ID);
+        when(imageRepository.findAllById(any())).thenReturn(List.of(revived));
+        imageDeleter.deleteAfterCommit(IMAGE_ID);
+
+        // When & Then
+        assertEquals(0, imageDeleter.flush());
+        assertNotNull(store.get(IMAGE_ID));
+    }
+
+    @Test
+    @DisplayName("purgeOrphan - сирота удаляется под замком, повторная загрузка того же содержимого её защищает")
+    void purgeOrphan_ShouldSkipRewrittenContent() throws IOException {
+        // Given
+        Files.setLastModifiedTime(ImageStoreLayout.path(tempDir, IMAGE_ID),
+                FileTime.fromMillis(System.currentTimeMillis() - Duration.ofHours(2).toMillis()));
+        long threshold = System.currentTimeMillis() - Duration.ofHours(1).toMillis();
+        List<Long> quarantined = new ArrayList<>();
+
+        // When: загрузка того же содержимого отменила удаление, её запись ещё не зафиксирована
+        imageDeleter.cancel(IMAGE_ID);
+
+        // Then
+        assertNull(imageDeleter.purgeOrphan(IMAGE_ID, threshold, image -> quarantined.add(image.size())));
+        assertNotNull(store.get(IMAGE_ID));
+        assertTrue(quarantined.isEmpty());
+        verify(imageRepository, never()).existsById(any());
+
+        // Given: без повторной загрузки
+        ImageDeleter other = new ImageDeleter(imageRepository, store, imageCache, imageVariants, new SimpleMeterRegistry(),
+                tempDir.toString(), 10, Duration.ZERO, Duration.ZERO);
+        when(imageRepository.existsById(IMAGE_ID)).thenReturn(false);
+
+        // When & Then
+        assertNotNull(other.purgeOrphan(IMAGE_ID, threshold, image -> quarantined.add(image.size())));
+        assertNull(store.get(IMAGE_ID));
+        assertEquals(List.of(3L), quarantined, "Действие выполняется до удаления");
+    }
+}
@@ -0,0 +1,134 @@
+package ru.skypro.homework.service.impl;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("Тестирование ImageFormat")
+public class ImageFormatTest {
+
+    @TempDir
+    Path tempDir;
+
+    private Path write(String name, byte[] content) throws IOException {
+        return Files.write(tempDir.resolve(name), content);
+    }
+
+    private Path image(String format, int width, int height) throws IOException {
+        Path file = tempDir.resolve("image." + format);
+        ImageIO.write(new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB), format, file.toFile());
+        return file;
+    }
+
+    private static byte[] webp(String chunk, int... payload) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.writeBytes("RIFF".getBytes(StandardCharsets.US_ASCII));
+        out.writeBytes(new byte[]{0, 0, 0, 0});
+        out.writeBytes("WEBP".getBytes(StandardCharsets.US_ASCII));
+        out.writeBytes(chunk.getBytes(StandardCharsets.US_ASCII));
+        out.writeBytes(new byte[]{(byte) payload.length, 0, 0, 0});
+        for (int value : payload) {
+            out.write(value);
+        }
+        return out.toByteArray();
+    }
+
+    @Test
+    @DisplayName("detect - PNG, GIF и JPEG, записанные ImageIO")
+    void detect_ShouldReadFormatAndSizeFromHeader() throws IOException {
+        // When
+        ImageFormat png = ImageFormat.detect(image("png", 300, 200));
+        ImageFormat gif = ImageFormat.detect(image("gif", 17, 9));
+        ImageFormat jpeg = ImageFormat.detect(image("jpg", 1024, 768));
+
+        // Then
+        assertEquals("image/png", png.mediaType());
+        assertEquals(".png", png.extension());
+        assertEquals(300, png.width());
+        assertEquals(200, png.height());
+        assertEquals("image/gif", gif.mediaType());
+        assertEquals(17, gif.width());
+        assertEquals(9, gif.height());
+        assertEquals("image/jpeg", jpeg.mediaType());
+        assertEquals(".jpg", jpeg.extension());
+        assertEquals(1024, jpeg.width());
+        assertEquals(768, jpeg.height());
+        assertEquals(1024L * 768, jpeg.pixels());
+    }
+
+    @Test
+    @DisplayName("detect - JPEG: сегменты перед SOF пропускаются по длине")
+    void detect_JpegWithLargeMetadata_ShouldSkipSegments() throws IOException {
+        // Given: APP1 на 60 КБ перед кадром
+        byte[] original = Files.readAllBytes(image("jpg", 40, 30));
+        int appLength = 60 * 1024;
+        byte[] content = new byte[original.length + 2 + appLength];
+        content[0] = (byte) 0xFF;
+        content[1] = (byte) 0xD8;
+        content[2] = (byte) 0xFF;
+        content[3] = (byte) 0xE1;
+        content[4] = (byte) (appLength >> 8);
+        content[5] = (byte) appLength;
+        System.arraycopy(original, 2, content, 4 + appLength, original.length - 2);
+
+        // When
+        ImageFormat format = ImageFormat.detect(write("exif.jpg", content));
+
+        // Then
+        assertEquals(40, format.width());
+        assertEquals(30, format.height());
+    }
+
+    @Test
+    @DisplayName("detect - WebP: заголовки VP8X, VP8L и VP8")
+    void detect_Webp_ShouldReadCanvasSize() throws IOException {
+        // Given
+        byte[] extended = webp("VP8X", 0, 0, 0, 0, 0x7F, 0x07, 0, 0x37, 0x04, 0);
+        // 14 бит ширины-1 = 99, 14 бит высоты-1 = 49
+        int bits = 99 | 49 << 14;
+        byte[] lossless = webp("VP8L", 0x2F, bits & 0xFF, bits >> 8 & 0xFF, bits >> 16 & 0xFF, bits >> 24 & 0xFF, 0, 0, 0, 0, 0);
+        byte[] lossy = webp("VP8 ", 0, 0, 0, 0x9D, 0x01, 0x2A, 0x40, 0x01, 0xF0, 0x00);
+
+        // When
+        ImageFormat vp8x = ImageFormat.detect(write("x.webp", extended));
+        ImageFormat vp8l = ImageFormat.detect(write("l.webp", lossless));
+        ImageFormat vp8 = ImageFormat.detect(write("v.webp", lossy));
+
+        // Then
+        assertEquals("image/webp", vp8x.mediaType());
+        assertEquals(1920, vp8x.width());
+        assertEquals(1080, vp8x.height());
+        assertEquals(100, vp8l.width());
+        assertEquals(50, vp8l.height());
+        assertEquals(320, vp8.width());
+        assertEquals(240, vp8.height());
+    }
+
+    @Test
+    @DisplayName("detect - не изображение, обрезанный или нулевой заголовок")
+    void detect_UnknownOrBroken_ShouldReturnNull() throws IOException {
+        // Given
+        byte[] png = Files.readAllBytes(image("png", 10, 10));
+        byte[] truncatedPng = new byte[20];
+        System.arraycopy(png, 0, truncatedPng, 0, truncatedPng.length);
+        byte[] zeroGif = "GIF89a\0\0\0\0".getBytes(StandardCharsets.US_ASCII);
+        byte[] jpegWithoutFrame = {(byte) 0xFF, (byte) 0xD8, (byte) 0xFF, (byte) 0xDA, 0, 8, 0, 0, 0, 0, 0, 0};
+
+        // When & Then
+        assertNull(ImageFormat.detect(write("page.html", "<html><body></body></html>".getBytes(StandardCharsets.UTF_8))));
+        assertNull(ImageFormat.detect(write("empty", new byte[0])));
+        assertNull(ImageFormat.detect(write("truncated.png", truncatedPng)));
+        assertNull(ImageFormat.detect(write("zero.gif", zeroGif)));
+        assertNull(ImageFormat.detect(write("scan.jpg", jpegWithoutFrame)));
+    }
+}
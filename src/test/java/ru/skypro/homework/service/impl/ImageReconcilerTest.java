@@ -0,0 +1,141 @@
+package ru.skypro.homework.service.impl;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.PageRequest;
+import ru.skypro.homework.model.ImageEntity;
+import ru.skypro.homework.repository.ImageRepository;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+@DisplayName("Тестирование ImageReconciler")
+public class ImageReconcilerTest {
+
+    private static final String ORPHAN = "aa".repeat(32) + ".jpg";
+    private static final String FRESH_ORPHAN = "bb".repeat(32) + ".jpg";
+    private static final String REFERENCED = "cc".repeat(32) + ".jpg";
+    private static final String MISSING = "dd".repeat(32) + ".jpg";
+    private static final String UNREFERENCED = "ee".repeat(32) + ".jpg";
+
+    @TempDir
+    Path tempDir;
+
+    @Mock
+    private ImageRepository imageRepository;
+
+    @Mock
+    private ImageCache imageCache;
+
+    @Mock
+    private ImageVariants imageVariants;
+
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private FileImageStore store;
+
+    @BeforeEach
+    void setUp() {
+        store = new FileImageStore(tempDir.resolve("images").toString());
+    }
+
+    private ImageReconciler reconciler() {
+        ImageDeleter imageDeleter = new ImageDeleter(imageRepository, store, imageCache, imageVariants, meterRegistry,
+                tempDir.resolve("images").toString(), 10, Duration.ZERO, Duration.ZERO);
+        return new ImageReconciler(imageRepository, store, imageDeleter, meterRegistry,
+                tempDir.resolve("reconciler").toString(), true, 10,
+                Duration.ZERO, Duration.ofHours(6), Duration.ofHours(1), Duration.ofHours(12), "quarantine");
+    }
+
+    private void put(String id, byte[] content, Duration age) throws IOException {
+        store.put(id, Files.write(Files.createTempFile(tempDir, "upload", ".part"), content), null);
+        Files.setLastModifiedTime(ImageStoreLayout.path(tempDir.resolve("images"), id),
+                FileTime.fromMillis(System.currentTimeMillis() - age.toMillis()));
+    }
+
+    private static ImageEntity row(String id, int refCount) {
+        ImageEntity entity = new ImageEntity();
+        entity.setId(id);
+        entity.setRefCount(refCount);
+        entity.setCreatedAt(System.currentTimeMillis() - Duration.ofDays(1).toMillis());
+        return entity;
+    }
+
+    @Test
+    @DisplayName("step - сироты старше grace уходят в карантин, курсор переживает перезапуск, пропажи учитываются")
+    void step_ShouldQuarantineOrphansAndReportRows() throws IOException {
+        // Given
+        put(ORPHAN, new byte[]{1, 2, 3}, Duration.ofHours(2));
+        put(FRESH_ORPHAN, new byte[]{4}, Duration.ZERO);
+        put(REFERENCED, new byte[]{5}, Duration.ofHours(2));
+        when(imageRepository.findAllById(any())).thenReturn(List.of(row(REFERENCED, 1)));
+        when(imageRepository.existsById(ORPHAN)).thenReturn(false);
+
+        // When
+        boolean passDone = reconciler().step();
+
+        // Then
+        assertFalse(passDone);
+        assertNull(store.get(ORPHAN));
+        assertArrayEquals(new byte[]{1, 2, 3},
+                Files.readAllBytes(tempDir.resolve("reconciler").resolve(ImageReconciler.QUARANTINE_DIR).resolve(ORPHAN)));
+        assertNotNull(store.get(FRESH_ORPHAN), "Свежая загрузка могла ещё не зафиксировать запись");
+        assertNotNull(store.get(REFERENCED));
+        verify(imageVariants).delete(ImageStoreLayout.path(tempDir.resolve("images"), ORPHAN));
+        verify(imageCache).invalidate(ORPHAN);
+        assertEquals(1.0, meterRegistry.get("images.reconciler.orphans").counter().count());
+        assertEquals(3.0, meterRegistry.get("images.reconciler.reclaimed").counter().count());
+
+        // Given - новый экземпляр продолжает со второй фазы
+        when(imageRepository.findPageAfter("", PageRequest.of(0, 10)))
+                .thenReturn(List.of(row(REFERENCED, 1), row(MISSING, 1), row(UNREFERENCED, 0)));
+        when(imageRepository.deleteIfUnreferenced(UNREFERENCED)).thenReturn(1);
+
+        // When
+        passDone = reconciler().step();
+
+        // Then
+        assertTrue(passDone);
+        assertEquals(1.0, meterRegistry.get("images.reconciler.rows").tag("problem", "missing").counter().count());
+        assertEquals(1.0, meterRegistry.get("images.reconciler.rows").tag("problem", "unreferenced").counter().count());
+        assertEquals(3.0, meterRegistry.get("images.reconciler.scanned").tag("source", "table").counter().count());
+        assertTrue(Files.readString(tempDir.resolve("reconciler").resolve("cursor")).startsWith("store"));
+    }
+
+    @Test
+    @DisplayName("step - неиспользованная загрузка не удаляется, пока жива её сессия")
+    void step_ShouldKeepUnreferencedRowWithinUploadSessionTtl() throws IOException {
+        // Given: запись старше grace, но моложе срока жизни сессии загрузки
+        put(UNREFERENCED, new byte[]{6}, Duration.ofHours(2));
+        ImageEntity staged = row(UNREFERENCED, 0);
+        staged.setCreatedAt(System.currentTimeMillis() - Duration.ofHours(2).toMillis());
+        when(imageRepository.findAllById(any())).thenReturn(List.of(staged));
+        when(imageRepository.findPageAfter("", PageRequest.of(0, 10))).thenReturn(List.of(staged));
+        ImageReconciler reconciler = reconciler();
+
+        // When
+        reconciler.step();
+        boolean passDone = reconciler.step();
+
+        // Then
+        assertTrue(passDone);
+        verify(imageRepository, never()).deleteIfUnreferenced(any());
+        assertNotNull(store.get(UNREFERENCED));
+        assertEquals(0.0, meterRegistry.get("images.reconciler.rows").tag("problem", "unreferenced").counter().count());
+    }
+}
@@ -1,5 +1,6 @@
 package ru.skypro.homework.service.impl;
 
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
@@ -7,18 +8,33 @@ import org.junit.jupiter.api.extension.ExtendWith;
 import org.junit.jupiter.api.io.TempDir;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.dao.QueryTimeoutException;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.util.unit.DataSize;
 import org.springframework.web.multipart.MultipartFile;
 import ru.skypro.homework.model.ImageEntity;
 import ru.skypro.homework.repository.ImageRepository;
+import ru.skypro.homework.service.ImageNotFoundException;
+import ru.skypro.homework.service.ImageService;
+import ru.skypro.homework.service.ImageTooLargeException;
+import ru.skypro.homework.service.ImageVariant;
 
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
 import java.io.IOException;
 import java.lang.reflect.Field;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
 import java.util.Optional;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
@@ -28,10 +44,17 @@ import static org.mockito.Mockito.*;
 @DisplayName("Тестирование ImageServiceImpl")
 public class ImageServiceImplTest {
 
+    private static final long MAX_PIXELS = 40_000_000L;
+
     @Mock
     private ImageRepository imageRepository;
 
+    @Mock
+    private ImageVariants imageVariants;
+
     private ImageServiceImpl imageService;
+    private ImageCache imageCache;
+    private ImageDeleter imageDeleter;
 
     @TempDir
     Path tempDir;
@@ -41,12 +64,17 @@ public class ImageServiceImplTest {
 
     @BeforeEach
     void setUp() throws Exception {
-        imageService = new ImageServiceImpl(imageRepository);
+        imageCache = new ImageCache(new SimpleMeterRegistry(), DataSize.ofKilobytes(1), DataSize.ofBytes(64),
+                100, Duration.ofSeconds(30), 100);
+        FileImageStore imageStore = new FileImageStore(tempDir.toString());
+        imageDeleter = new ImageDeleter(imageRepository, imageStore, imageCache, imageVariants, new SimpleMeterRegistry(),
+                tempDir.toString(), 100, Duration.ZERO, Duration.ZERO);
+        imageService = new ImageServiceImpl(imageRepository, imageStore, imageCache, imageVariants, imageDeleter, MAX_PIXELS);
 
         // Устанавливаем imagesDir через reflection
         setImagesDir(tempDir.toString());
 
-        testFileContent = new byte[]{1, 2, 3, 4, 5};
+        testFileContent = jpegHeader(640, 480);
         testFile = new MockMultipartFile(
                 "test-image.jpg",
                 "test-image.jpg",
@@ -55,6 +83,19 @@ public class ImageServiceImplTest {
         );
     }
 
+    /**
+     * Заголовок JPEG без данных сканирования: формат и размеры определяются, декодировать нечего.
+     */
+    private static byte[] jpegHeader(int width, int height) {
+        return new byte[]{
+                (byte) 0xFF, (byte) 0xD8,
+                (byte) 0xFF, (byte) 0xE0, 0, 16, 'J', 'F', 'I', 'F', 0, 1, 1, 0, 0, 1, 0, 1, 0, 0,
+                (byte) 0xFF, (byte) 0xC0, 0, 17, 8, (byte) (height >> 8), (byte) height, (byte) (width >> 8), (byte) width,
+                3, 1, 0x22, 0, 2, 0x11, 1, 3, 0x11, 1,
+                (byte) 0xFF, (byte) 0xD9
+        };
+    }
+
     private void setImagesDir(String imagesDir) throws Exception {
         Field imagesDirField = ImageServiceImpl.class.getDeclaredField("imagesDir");
         imagesDirField.setAccessible(true);
@@ -66,7 +107,7 @@ public class ImageServiceImplTest {
     void save_WithValidFile_ShouldSaveSuccessfully() throws Exception {
         // Given
         String prefix = "user";
-        when(imageRepository.save(any(ImageEntity.class))).thenAnswer(invocation -> invocation.getArgument(0));
+        when(imageRepository.insertIfAbsent(any(ImageEntity.class))).thenReturn(1);
 
         // When
         ImageEntity result = imageService.save(testFile, prefix);
@@ -74,17 +115,74 @@ public class ImageServiceImplTest {
         // Then
         assertNotNull(result, "Результат не должен быть null");
         assertNotNull(result.getId(), "ID не должен быть null");
-        assertTrue(result.getId().startsWith(prefix + "_"), "ID должен начинаться с префикса");
+        assertEquals("21f0c388386728b853e4b386e488ffae6d3c649f043cbe6b12265e37e3db68f2.jpg", result.getId(),
+                "ID должен состоять из SHA-256 содержимого и расширения");
+        assertEquals(1, result.getRefCount(), "Новое изображение имеет одну ссылку");
         assertEquals("image/jpeg", result.getContentType(), "Content-Type должен совпадать");
+        assertEquals(640, result.getWidth(), "Ширина читается из заголовка");
+        assertEquals(480, result.getHeight(), "Высота читается из заголовка");
         assertEquals(testFile.getSize(), result.getSize(), "Размер должен совпадать");
         assertNotNull(result.getCreatedAt(), "Время создания не должно быть null");
 
         // Проверяем, что файл сохранен на диск
-        Path savedFile = tempDir.resolve(result.getId());
+        Path savedFile = tempDir.resolve("21").resolve("f0").resolve(result.getId());
         assertTrue(Files.exists(savedFile), "Файл должен быть сохранен на диск");
         assertArrayEquals(testFileContent, Files.readAllBytes(savedFile), "Содержимое файла должно совпадать");
+        assertEquals("21f0c388386728b853e4b386e488ffae6d3c649f043cbe6b12265e37e3db68f2", result.getChecksum(),
+                "Контрольная сумма SHA-256 должна считаться при записи");
+        try (Stream<Path> files = Files.walk(tempDir)) {
+            assertEquals(List.of(savedFile), files.filter(Files::isRegularFile).collect(Collectors.toList()),
+                    "Файл должен лежать в каталоге по hex-префиксу, временный файл не должен оставаться");
+        }
+        verify(imageVariants, times(1)).generateAsync(eq(savedFile), any());
+
+        verify(imageRepository, times(1)).insertIfAbsent(any(ImageEntity.class));
+    }
+
+    @Test
+    @DisplayName("save - повторная загрузка тех же байтов увеличивает счётчик ссылок без нового файла")
+    void save_WithSameContent_ShouldReuseExistingImage() throws Exception {
+        // Given
+        String id = "21f0c388386728b853e4b386e488ffae6d3c649f043cbe6b12265e37e3db68f2.jpg";
+        ImageEntity existing = new ImageEntity();
+        existing.setId(id);
+        existing.setRefCount(2);
+        when(imageRepository.incrementRefCount(id)).thenReturn(1);
+        when(imageRepository.findById(id)).thenReturn(Optional.of(existing));
+
+        // When
+        ImageEntity result = imageService.save(testFile, "ad_2");
+
+        // Then
+        assertSame(existing, result, "Должна вернуться существующая запись");
+        verify(imageRepository, never()).insertIfAbsent(any(ImageEntity.class));
+        verify(imageVariants, never()).generateAsync(any(), any());
+        try (Stream<Path> files = Files.walk(tempDir)) {
+            assertEquals(List.of(tempDir.resolve("21").resolve("f0").resolve(id)),
+                    files.filter(Files::isRegularFile).collect(Collectors.toList()),
+                    "На диске должен остаться один файл без временных");
+        }
+    }
+
+    @Test
+    @DisplayName("save - одновременная первая загрузка тех же байтов добавляет ссылку к созданной записи")
+    void save_WhenConcurrentUploadCreatedImage_ShouldAddReference() throws Exception {
+        // Given
+        String id = "21f0c388386728b853e4b386e488ffae6d3c649f043cbe6b12265e37e3db68f2.jpg";
+        ImageEntity existing = new ImageEntity();
+        existing.setId(id);
+        existing.setRefCount(2);
+        when(imageRepository.incrementRefCount(id)).thenReturn(0, 1);
+        when(imageRepository.insertIfAbsent(any(ImageEntity.class))).thenReturn(0);
+        when(imageRepository.findById(id)).thenReturn(Optional.of(existing));
 
-        verify(imageRepository, times(1)).save(any(ImageEntity.class));
+        // When
+        ImageEntity result = imageService.save(testFile, "ad_3");
+
+        // Then
+        assertSame(existing, result, "Должна вернуться запись, созданная другой загрузкой");
+        verify(imageRepository, times(2)).incrementRefCount(id);
+        verify(imageVariants, never()).generateAsync(any(), any());
     }
 
     @Test
@@ -113,84 +211,261 @@ public class ImageServiceImplTest {
         assertEquals("Файл изображения пустой", exception.getMessage());
     }
     @Test
-    @DisplayName("save - файл без расширения")
-    void save_FileWithoutExtension_ShouldWorkCorrectly() {
+    @DisplayName("save - расширение и MIME-тип определяются по содержимому, а не по данным клиента")
+    void save_WithMisleadingNameAndType_ShouldUseDetectedFormat() throws IOException {
         // Given
-        MultipartFile noExtensionFile = new MockMultipartFile(
-                "noextension",
-                "noextension",
-                "image/jpeg",
+        MultipartFile misnamedFile = new MockMultipartFile(
+                "picture",
+                "picture.png",
+                "text/html",
                 testFileContent
         );
-        when(imageRepository.save(any(ImageEntity.class))).thenAnswer(invocation -> invocation.getArgument(0));
+        when(imageRepository.insertIfAbsent(any(ImageEntity.class))).thenReturn(1);
 
         // When
-        ImageEntity result = imageService.save(noExtensionFile, "test");
+        ImageEntity result = imageService.save(misnamedFile, "test");
 
         // Then
-        assertNotNull(result.getId());
-        assertFalse(result.getId().contains("."), "ID не должен содержать точку если нет расширения");
+        assertTrue(result.getId().endsWith(".jpg"), "Расширение берётся из формата");
+        assertEquals("image/jpeg", result.getContentType());
+        Path typePath = ImageStoreLayout.typePath(ImageStoreLayout.path(tempDir, result.getId()));
+        assertFalse(Files.exists(typePath), "Тип следует из расширения и отдельно не хранится");
     }
 
     @Test
-    @DisplayName("load - успешная загрузка существующего изображения")
+    @DisplayName("save - файл, не являющийся изображением, отклоняется и не остаётся на диске")
+    void save_WithNonImageContent_ShouldReject() throws IOException {
+        // Given
+        MultipartFile script = new MockMultipartFile("image", "image.jpg", "image/jpeg",
+                "<script>alert(1)</script>".getBytes());
+
+        // When & Then
+        assertThrows(IllegalArgumentException.class, () -> imageService.save(script, "test"));
+        verify(imageRepository, never()).insertIfAbsent(any(ImageEntity.class));
+        try (Stream<Path> files = Files.walk(tempDir)) {
+            assertEquals(0, files.filter(Files::isRegularFile).count(), "Временный файл должен удаляться");
+        }
+    }
+
+    @Test
+    @DisplayName("save - изображение больше images.upload.max-pixels отклоняется по заголовку")
+    void save_WithTooManyPixels_ShouldRejectBeforeDecode() throws IOException {
+        // Given: 65 000 x 65 000 пикселей в заголовке из 41 байта
+        MultipartFile bomb = new MockMultipartFile("image", "bomb.jpg", "image/jpeg", jpegHeader(65_000, 65_000));
+
+        // When & Then
+        ImageTooLargeException exception = assertThrows(ImageTooLargeException.class,
+                () -> imageService.save(bomb, "test"));
+        assertTrue(exception.getMessage().contains("65000x65000"));
+        verify(imageRepository, never()).insertIfAbsent(any(ImageEntity.class));
+        verify(imageVariants, never()).generateAsync(any(), any());
+        try (Stream<Path> files = Files.walk(tempDir)) {
+            assertEquals(0, files.filter(Files::isRegularFile).count());
+        }
+    }
+
+    @Test
+    @DisplayName("load - успешная загрузка существующего изображения без обращения к БД")
     void load_WithExistingImage_ShouldReturnImageContent() throws IOException {
         // Given
         String imageId = "test-image.jpg";
-        ImageEntity imageEntity = new ImageEntity();
-        imageEntity.setId(imageId);
-        imageEntity.setContentType("image/jpeg");
-        imageEntity.setSize(5L);
 
         // Создаем тестовый файл на диске
         Path imagePath = tempDir.resolve(imageId);
         Files.write(imagePath, testFileContent);
 
-        when(imageRepository.findById(imageId)).thenReturn(Optional.of(imageEntity));
-
         // When
         ImageServiceImpl.ImageContent result = imageService.load(imageId);
 
         // Then
         assertNotNull(result, "Результат не должен быть null");
         assertArrayEquals(testFileContent, result.getData(), "Данные должны совпадать");
-        assertEquals("image/jpeg", result.getContentType(), "Content-Type должен совпадать");
-        verify(imageRepository, times(1)).findById(imageId);
+        assertEquals("image/jpeg", result.getContentType(), "Content-Type должен определяться по расширению");
+        verifyNoInteractions(imageRepository);
     }
 
     @Test
-    @DisplayName("load - изображение не найдено в БД")
-    void load_WithNonExistentImageInDb_ShouldThrowException() {
+    @DisplayName("load - файл не найден")
+    void load_WhenFileNotExistsOnDisk_ShouldThrowException() {
         // Given
-        String imageId = "non-existent.jpg";
-        when(imageRepository.findById(imageId)).thenReturn(Optional.empty());
+        String imageId = "missing-file.jpg";
 
         // When & Then
         IllegalArgumentException exception = assertThrows(IllegalArgumentException.class,
                 () -> imageService.load(imageId));
         assertEquals("Изображение не найдено", exception.getMessage());
-        verify(imageRepository, times(1)).findById(imageId);
+        verifyNoInteractions(imageRepository);
     }
 
     @Test
-    @DisplayName("load - файл не найден")
-    void load_WhenFileNotExistsOnDisk_ShouldThrowException() {
+    @DisplayName("getImage - крупный файл отдаётся ресурсом без загрузки в память")
+    void getImage_WithLargeFile_ShouldReturnFileResource() throws IOException {
         // Given
-        String imageId = "missing-file.jpg";
-        ImageEntity imageEntity = new ImageEntity();
-        imageEntity.setId(imageId);
-        imageEntity.setContentType("image/jpeg");
+        String imageId = "cd".repeat(32) + ".png";
+        Path imagePath = tempDir.resolve(imageId);
+        Files.write(imagePath, new byte[128]);
 
-        when(imageRepository.findById(imageId)).thenReturn(Optional.of(imageEntity));
+        // When
+        ResponseEntity<Resource> response = imageService.getImage(imageId);
+
+        // Then
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals(MediaType.IMAGE_PNG, response.getHeaders().getContentType(), "Тип должен определяться по расширению");
+        assertTrue(response.getBody() instanceof FileSystemResource, "Тело должно ссылаться на файл");
+        assertEquals(imagePath.toFile(), response.getBody().getFile());
+        assertEquals(128, response.getBody().contentLength());
+        assertEquals("\"" + "cd".repeat(32) + "\"", response.getHeaders().getETag());
+        assertEquals(ImageService.IMMUTABLE_CACHE_CONTROL, response.getHeaders().getCacheControl());
+        assertEquals(Files.getLastModifiedTime(imagePath).toMillis() / 1000 * 1000, response.getHeaders().getLastModified());
+    }
+
+    @Test
+    @DisplayName("getImage - горячее изображение отдаётся из кэша без БД и диска, delete сбрасывает кэш")
+    void getImage_WithSmallFile_ShouldServeFromCacheUntilDeleted() throws IOException {
+        // Given
+        String imageId = "ab".repeat(32) + ".jpg";
+        Files.write(tempDir.resolve(imageId), testFileContent);
+        when(imageRepository.deleteIfUnreferenced(imageId)).thenReturn(1);
+        assertTrue(imageService.getImage(imageId).getBody() instanceof FileSystemResource,
+                "Первое чтение отдаёт файл, не копируя его в кэш");
+        imageService.getImage(imageId);
+        Files.delete(tempDir.resolve(imageId));
+
+        // When
+        ResponseEntity<Resource> response = imageService.getImage(imageId);
+
+        // Then
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals(MediaType.IMAGE_JPEG, response.getHeaders().getContentType());
+        assertArrayEquals(testFileContent, response.getBody().getInputStream().readAllBytes());
+        assertArrayEquals(testFileContent, imageService.load(imageId).getData());
+        verify(imageRepository, never()).findById(anyString());
+
+        imageService.delete(imageId);
+        assertEquals(HttpStatus.NOT_FOUND, imageService.getImage(imageId).getStatusCode(),
+                "После удаления изображение не должно отдаваться из кэша");
+    }
+
+    @Test
+    @DisplayName("getImage(size) - вариант строится по запросу, неизвестный размер — 400")
+    void getImageWithSize_ShouldServeScaledVariant() throws Exception {
+        // Given
+        String imageId = "ef".repeat(32) + ".png";
+        Path imagePath = tempDir.resolve(imageId);
+        ImageIO.write(new BufferedImage(400, 200, BufferedImage.TYPE_INT_RGB), "png", imagePath.toFile());
+        imageService = new ImageServiceImpl(imageRepository, new FileImageStore(tempDir.toString()),
+                new ImageCache(new SimpleMeterRegistry(), DataSize.ofKilobytes(1), DataSize.ofBytes(16), 100, Duration.ofSeconds(30), 100),
+                new ImageVariants(1, 10, MAX_PIXELS), imageDeleter, MAX_PIXELS);
+        setImagesDir(tempDir.toString());
+
+        // When
+        ResponseEntity<Resource> response = imageService.getImage(imageId, "thumb");
+
+        // Then
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals(MediaType.IMAGE_PNG, response.getHeaders().getContentType());
+        BufferedImage thumb = ImageIO.read(response.getBody().getInputStream());
+        assertEquals(160, thumb.getWidth(), "Ширина должна уменьшиться до размера варианта");
+        assertEquals(80, thumb.getHeight(), "Пропорции должны сохраниться");
+        assertEquals(HttpStatus.BAD_REQUEST, imageService.getImage(imageId, "huge").getStatusCode());
+    }
+
+    @Test
+    @DisplayName("getImage(size) - при перегрузке генерации отдаётся оригинал без долгого кэширования")
+    void getImageWithSize_WhenVariantsOverloaded_ShouldServeOriginalUncached() throws Exception {
+        // Given
+        String imageId = "fa".repeat(32) + ".jpg";
+        Files.write(tempDir.resolve(imageId), testFileContent);
+        when(imageVariants.variant(any(), eq(ImageVariant.CARD), any())).thenReturn(null);
+
+        // When
+        ResponseEntity<Resource> response = imageService.getImage(imageId, "card");
+
+        // Then
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals(MediaType.IMAGE_JPEG, response.getHeaders().getContentType());
+        assertEquals("no-store", response.getHeaders().getCacheControl());
+        assertNull(response.getHeaders().getETag(), "ETag варианта не должен достаться оригиналу");
+        assertArrayEquals(testFileContent, response.getBody().getInputStream().readAllBytes());
+    }
+
+    @Test
+    @DisplayName("getImage - 404 без файла, повторные запросы отвечаются из отрицательного кэша")
+    void getImage_WhenMissing_ShouldReturnNotFoundAndRememberIt() throws IOException {
+        // Given
+        String imageId = "01".repeat(32) + ".jpg";
+        assertEquals(HttpStatus.NOT_FOUND, imageService.getImage(imageId).getStatusCode());
+        Files.write(tempDir.resolve(imageId), testFileContent);
 
         // When & Then
-        IllegalArgumentException exception = assertThrows(IllegalArgumentException.class,
-                () -> imageService.load(imageId));
-        assertEquals("Файл изображения не найден", exception.getMessage());
+        assertEquals(HttpStatus.NOT_FOUND, imageService.getImage(imageId).getStatusCode(),
+                "Отсутствие файла должно запоминаться");
+        imageCache.forgetMissing(imageId);
+        assertEquals(HttpStatus.OK, imageService.getImage(imageId).getStatusCode());
+        verifyNoInteractions(imageRepository);
+    }
+
+    @Test
+    @DisplayName("getImage - тип изображения без расширения берётся из файла .type рядом с ним")
+    void getImage_WithoutExtension_ShouldUseTypeFile() throws IOException {
+        // Given
+        String imageId = "aa".repeat(32);
+        Path imagePath = tempDir.resolve("aa").resolve("aa").resolve(imageId);
+        Files.createDirectories(imagePath.getParent());
+        Files.write(imagePath, testFileContent);
+        Files.writeString(ImageStoreLayout.typePath(imagePath), "image/webp");
+
+        // When
+        ResponseEntity<Resource> response = imageService.getImage(imageId);
+
+        // Then
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals(MediaType.parseMediaType("image/webp"), response.getHeaders().getContentType());
+    }
+
+    @Test
+    @DisplayName("getImage - id недопустимого вида даёт 404 без обращения к БД")
+    void getImage_WithMalformedId_ShouldReturnNotFoundWithoutLookup() {
+        // When & Then
+        for (String id : List.of("../secret.jpg", "test-image.jpg", "ab".repeat(31) + ".jpg")) {
+            ResponseEntity<Resource> response = imageService.getImage(id);
+            assertEquals(HttpStatus.NOT_FOUND, response.getStatusCode());
+            assertNull(imageService.getImageEtag(id, null));
+        }
+        verifyNoInteractions(imageRepository);
+    }
+
+    @Test
+    @DisplayName("exists - наличие проверяется по хранилищу без БД, отсутствие запоминается")
+    void exists_ShouldConsultStoreAndNegativeCache() throws IOException {
+        // Given
+        String imageId = "02".repeat(32) + ".jpg";
+        assertFalse(imageService.exists(imageId));
+        Files.write(tempDir.resolve(imageId), testFileContent);
+
+        // When & Then
+        assertFalse(imageService.exists(imageId), "Отсутствие файла должно запоминаться");
+        imageCache.forgetMissing(imageId);
+        assertTrue(imageService.exists(imageId));
+        assertFalse(imageService.exists("../secret.jpg"));
+        verifyNoInteractions(imageRepository);
+    }
+
+    @Test
+    @DisplayName("getImageEtag - строгий ETag зависит от id и размера")
+    void getImageEtag_ShouldBeDerivedFromId() {
+        String id = "ab".repeat(32) + ".jpg";
+        String legacyId = "ad_10_123e4567-e89b-12d3-a456-426614174000.jpg";
+
+        assertEquals("\"" + "ab".repeat(32) + "\"", imageService.getImageEtag(id, null));
+        assertEquals("\"" + "ab".repeat(32) + "-thumb\"", imageService.getImageEtag(id, "thumb"));
+        assertNull(imageService.getImageEtag(id, "huge"));
+        assertNotNull(imageService.getImageEtag(legacyId, null));
+        assertNotEquals(imageService.getImageEtag(legacyId, null), imageService.getImageEtag(legacyId, "card"));
     }
 
     @Test
-    @DisplayName("delete - успешное удаление существующего изображения")
+    @DisplayName("delete - последняя ссылка удаляет файл и запись")
     void delete_WithExistingImage_ShouldDeleteSuccessfully() throws IOException {
         // Given
         String imageId = "image-to-delete.jpg";
@@ -199,15 +474,48 @@ public class ImageServiceImplTest {
         Path imagePath = tempDir.resolve(imageId);
         Files.write(imagePath, testFileContent);
 
-        when(imageRepository.existsById(imageId)).thenReturn(true);
+        when(imageRepository.deleteIfUnreferenced(imageId)).thenReturn(1);
 
         // When
         imageService.delete(imageId);
 
         // Then
+        assertTrue(Files.exists(imagePath), "Файл удаляется в фоне, а не в запросе");
+        assertEquals(1, imageDeleter.flush());
         assertFalse(Files.exists(imagePath), "Файл должен быть удален с диска");
-        verify(imageRepository, times(1)).existsById(imageId);
-        verify(imageRepository, times(1)).deleteById(imageId);
+        verify(imageRepository, times(1)).decrementRefCount(imageId);
+        verify(imageRepository, times(1)).deleteIfUnreferenced(imageId);
+        verify(imageVariants, times(1)).delete(imagePath);
+    }
+
+    @Test
+    @DisplayName("delete - файл остаётся, пока на изображение есть другие ссылки")
+    void delete_WithRemainingReferences_ShouldKeepFile() throws IOException {
+        // Given
+        String imageId = "shared.jpg";
+        Path imagePath = tempDir.resolve(imageId);
+        Files.write(imagePath, testFileContent);
+        when(imageRepository.deleteIfUnreferenced(imageId)).thenReturn(0);
+
+        // When
+        imageService.delete(imageId);
+
+        // Then
+        assertTrue(Files.exists(imagePath), "Файл используется другими владельцами");
+        verify(imageRepository, times(1)).decrementRefCount(imageId);
+        verify(imageVariants, never()).delete(any());
+    }
+
+    @Test
+    @DisplayName("delete - ошибка БД передаётся вызывающему коду, файл не удаляется")
+    void delete_WhenRepositoryFails_ShouldPropagate() {
+        // Given
+        String imageId = "failing.jpg";
+        when(imageRepository.deleteIfUnreferenced(imageId)).thenThrow(new QueryTimeoutException("timeout"));
+
+        // When & Then
+        assertThrows(QueryTimeoutException.class, () -> imageService.delete(imageId));
+        assertEquals(0, imageDeleter.flush(), "Удаление содержимого не планируется");
     }
 
     @Test
@@ -215,16 +523,55 @@ public class ImageServiceImplTest {
     void delete_WithNullOrEmptyId_ShouldDoNothing() {
         // Given & When & Then - null ID
         imageService.delete(null);
-        verify(imageRepository, never()).existsById(any());
+        verify(imageRepository, never()).decrementRefCount(any());
 
         // Given & When & Then - пустой ID
         imageService.delete("");
-        verify(imageRepository, never()).existsById(any());
+        verify(imageRepository, never()).decrementRefCount(any());
 
         // Given & When & Then - ID с пробелами
         imageService.delete("   ");
-        verify(imageRepository, never()).existsById(any());
+        verify(imageRepository, never()).decrementRefCount(any());
     }
 
+    @Test
+    @DisplayName("stage - собранный файл сохраняется без ссылок, reference добавляет ссылку")
+    void stage_ThenReference_ShouldCreateUnreferencedImage() throws IOException {
+        // Given
+        String id = "21f0c388386728b853e4b386e488ffae6d3c649f043cbe6b12265e37e3db68f2.jpg";
+        Path upload = Files.write(tempDir.resolve("upload.part"), testFileContent);
+        when(imageRepository.insertIfAbsent(any(ImageEntity.class))).thenReturn(1);
+
+        // When
+        ImageEntity staged = imageService.stage(upload);
+
+        // Then
+        assertEquals(id, staged.getId(), "ID считается по содержимому собранного файла");
+        assertEquals(0, staged.getRefCount(), "Загруженное изображение ещё никем не используется");
+        assertFalse(Files.exists(upload), "Собранный файл переносится в хранилище");
+        assertArrayEquals(testFileContent, Files.readAllBytes(tempDir.resolve("21").resolve("f0").resolve(id)));
+        verify(imageRepository, never()).incrementRefCount(any());
+
+        // Given
+        when(imageRepository.incrementRefCount(id)).thenReturn(1);
+        when(imageRepository.findById(id)).thenReturn(Optional.of(staged));
 
+        // When & Then
+        assertSame(staged, imageService.reference(id));
+        verify(imageRepository, times(1)).incrementRefCount(id);
+    }
+
+    @Test
+    @DisplayName("reference - несуществующее или некорректное изображение")
+    void reference_WithUnknownImage_ShouldThrow() {
+        // Given
+        String id = "ab".repeat(32) + ".png";
+
+        // When & Then
+        assertThrows(ImageNotFoundException.class, () -> imageService.reference(id));
+        IllegalArgumentException malformed = assertThrows(IllegalArgumentException.class,
+                () -> imageService.reference("../secret"));
+        assertFalse(malformed instanceof ImageNotFoundException, "Некорректный id — это 400, а не 404");
+        verify(imageRepository, times(1)).incrementRefCount(any());
+    }
 }
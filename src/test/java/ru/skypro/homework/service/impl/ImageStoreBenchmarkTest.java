@@ -0,0 +1,81 @@
+package ru.skypro.homework.service.impl;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.util.unit.DataSize;
+import ru.skypro.homework.service.ImageStore;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Сравнение файлового и сегментного хранилищ на множестве мелких изображений.
+ * Запуск: mvn test -Dtest=ImageStoreBenchmarkTest -Dimages.benchmark=true
+ */
+@DisplayName("Сравнение производительности хранилищ изображений")
+@EnabledIfSystemProperty(named = "images.benchmark", matches = "true")
+public class ImageStoreBenchmarkTest {
+
+    private static final int IMAGES = 20_000;
+    private static final int IMAGE_SIZE = 8 * 1024;
+    private static final int READ_ROUNDS = 5;
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    @DisplayName("запись и чтение 20 000 изображений по 8 КБ")
+    void compareStores() throws IOException {
+        FileImageStore files = new FileImageStore(tempDir.resolve("files").toString());
+        PackImageStore pack = new PackImageStore(tempDir.resolve("pack").toString(),
+                DataSize.ofMegabytes(256), 0.5, Duration.ZERO, Duration.ZERO);
+        try {
+            run("file", files);
+            run("pack", pack);
+        } finally {
+            pack.close();
+        }
+    }
+
+    private void run(String name, ImageStore store) throws IOException {
+        Random random = new Random(42);
+        byte[] content = new byte[IMAGE_SIZE];
+        Files.createDirectories(tempDir.resolve("files"));
+
+        long writeStart = System.nanoTime();
+        for (int i = 0; i < IMAGES; i++) {
+            random.nextBytes(content);
+            Path source = Files.write(tempDir.resolve("files").resolve("upload_" + i + ".part"), content);
+            store.put(id(i), source, null);
+        }
+        long writeNanos = System.nanoTime() - writeStart;
+
+        long bytes = 0;
+        long readStart = System.nanoTime();
+        for (int round = 0; round < READ_ROUNDS; round++) {
+            for (int i = 0; i < IMAGES; i++) {
+                ImageStore.StoredImage image = store.get(id(i));
+                try (InputStream in = image.resource().getInputStream()) {
+                    bytes += in.readAllBytes().length;
+                }
+            }
+        }
+        long readNanos = System.nanoTime() - readStart;
+
+        assertEquals((long) IMAGES * IMAGE_SIZE * READ_ROUNDS, bytes);
+        System.out.printf("%s: запись %.1f мкс/изобр., чтение %.1f мкс/изобр.%n", name,
+                writeNanos / 1000.0 / IMAGES, readNanos / 1000.0 / IMAGES / READ_ROUNDS);
+    }
+
+    private static String id(int i) {
+        return String.format("%064x.jpg", i);
+    }
+}
@@ -0,0 +1,158 @@
+package ru.skypro.homework.service.impl;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import ru.skypro.homework.service.ImageStore;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Общие требования к {@link ImageStore}; каждая реализация проверяется наследником этого класса.
+ */
+public abstract class ImageStoreContractTest {
+
+    /**
+     * Больше части, которой хранилища передают содержимое, чтобы запись и чтение шли в несколько приёмов.
+     */
+    private static final int LARGE_SIZE = 3 * 1024 * 1024 + 17;
+
+    @TempDir
+    protected Path tempDir;
+
+    protected abstract ImageStore store();
+
+    private Path upload(byte[] content) throws IOException {
+        return Files.write(Files.createTempFile(tempDir, "upload", ".part"), content);
+    }
+
+    private static byte[] read(ImageStore.StoredImage image) throws IOException {
+        try (InputStream in = image.resource().getInputStream()) {
+            return in.readAllBytes();
+        }
+    }
+
+    private static byte[] random(int size) {
+        byte[] content = new byte[size];
+        new Random(size).nextBytes(content);
+        return content;
+    }
+
+    @Test
+    @DisplayName("контракт: put/get - содержимое, размер и MIME-тип сохраняются, исходный файл удаляется")
+    void put_ThenGet_ShouldReturnContent() throws IOException {
+        // Given
+        Path source = upload(new byte[]{1, 2, 3});
+
+        // When
+        long before = System.currentTimeMillis() - 2000;
+        store().put("contract.img", source, "image/webp");
+
+        // Then
+        assertFalse(Files.exists(source));
+        ImageStore.StoredImage image = store().get("contract.img");
+        assertNotNull(image);
+        assertArrayEquals(new byte[]{1, 2, 3}, read(image));
+        assertEquals(3, image.size());
+        assertEquals(3, image.resource().contentLength());
+        assertEquals("image/webp", image.contentType());
+        assertTrue(image.lastModified() >= before);
+    }
+
+    @Test
+    @DisplayName("контракт: get - отсутствующее изображение возвращает null")
+    void get_Missing_ShouldReturnNull() throws IOException {
+        assertNull(store().get("contract-missing.jpg"));
+    }
+
+    @Test
+    @DisplayName("контракт: put того же id повторно - содержимое остаётся читаемым")
+    void put_SameIdTwice_ShouldKeepContent() throws IOException {
+        // Given
+        store().put("contract-twice.jpg", upload(new byte[]{9, 8}), null);
+        Path second = upload(new byte[]{9, 8});
+
+        // When
+        store().put("contract-twice.jpg", second, null);
+
+        // Then
+        assertFalse(Files.exists(second));
+        assertArrayEquals(new byte[]{9, 8}, read(store().get("contract-twice.jpg")));
+    }
+
+    @Test
+    @DisplayName("контракт: delete - изображение удаляется, повторное удаление не ошибка")
+    void delete_ShouldRemoveImage() throws IOException {
+        // Given
+        store().put("contract-delete.jpg", upload(new byte[]{5}), null);
+
+        // When
+        store().delete("contract-delete.jpg");
+        store().delete("contract-delete.jpg");
+
+        // Then
+        assertNull(store().get("contract-delete.jpg"));
+    }
+
+    @Test
+    @DisplayName("контракт: большое изображение записывается и читается потоком, skip позиционирует чтение")
+    void largeImage_ShouldStreamInBothDirections() throws IOException {
+        // Given
+        byte[] content = random(LARGE_SIZE);
+        store().put("contract-large.jpg", upload(content), null);
+        ImageStore.StoredImage image = store().get("contract-large.jpg");
+
+        // When
+        byte[] whole = read(image);
+        byte[] tail;
+        try (InputStream in = image.resource().getInputStream()) {
+            long skip = LARGE_SIZE - 100;
+            while (skip > 0) {
+                long skipped = in.skip(skip);
+                assertTrue(skipped > 0);
+                skip -= skipped;
+            }
+            tail = in.readAllBytes();
+        }
+
+        // Then
+        assertEquals(LARGE_SIZE, image.size());
+        assertArrayEquals(content, whole);
+        assertArrayEquals(Arrays.copyOfRange(content, LARGE_SIZE - 100, LARGE_SIZE), tail);
+    }
+
+    @Test
+    @DisplayName("контракт: list - страницы по курсору обходят все сохранённые изображения")
+    void list_ShouldWalkAllImagesByCursor() throws IOException {
+        // Given
+        List<String> ids = List.of("0a" + "1".repeat(62) + ".jpg", "7f" + "2".repeat(62) + ".jpg",
+                "c3" + "3".repeat(62) + ".png", "ad_list_photo.jpg", "ff" + "4".repeat(62));
+        for (String id : ids) {
+            store().put(id, upload(new byte[]{1}), null);
+        }
+
+        // When
+        Set<String> listed = new HashSet<>();
+        String cursor = null;
+        int pages = 0;
+        do {
+            ImageStore.Page page = store().list(cursor, 2);
+            listed.addAll(page.ids());
+            cursor = page.next();
+            assertTrue(++pages <= ids.size() + 1, "Обход должен завершаться");
+        } while (cursor != null);
+
+        // Then
+        assertEquals(new HashSet<>(ids), listed);
+    }
+}
@@ -0,0 +1,57 @@
+package ru.skypro.homework.service.impl;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import ru.skypro.homework.service.ImageVariant;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("Тестирование ImageStoreLayout и ImageStoreMigration")
+public class ImageStoreMigrationTest {
+
+    private static final String CONTENT_ID = "74f81fe167d99b4cb41d6d0ccda82278caee9f3e2f25d5e5a3936ff3dcec60d0.jpg";
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    @DisplayName("path - два уровня каталогов по hex-префиксу id или хэшу прежнего имени")
+    void path_ShouldFanOutByHexPrefix() {
+        assertEquals(tempDir.resolve("74").resolve("f8").resolve(CONTENT_ID), ImageStoreLayout.path(tempDir, CONTENT_ID));
+
+        Path legacy = ImageStoreLayout.path(tempDir, "ad_1_photo.jpg");
+        assertEquals(tempDir, legacy.getParent().getParent().getParent());
+        assertTrue(legacy.getParent().getFileName().toString().matches("[0-9a-f]{2}"));
+        assertEquals(legacy, ImageStoreLayout.path(tempDir, "ad_1_photo.jpg"), "Раскладка должна быть детерминированной");
+    }
+
+    @Test
+    @DisplayName("migrate - переносит оригиналы и варианты, незавершённые загрузки остаются")
+    void migrate_ShouldMoveFlatFilesIntoShards() throws Exception {
+        // Given
+        Path flat = tempDir.resolve(CONTENT_ID);
+        Files.write(flat, new byte[]{1, 2, 3});
+        Path flatThumb = ImageVariants.pathOf(flat, ImageVariant.THUMB);
+        Files.createDirectories(flatThumb.getParent());
+        Files.write(flatThumb, new byte[]{4});
+        Files.write(tempDir.resolve("upload_x.part"), new byte[]{9});
+        ImageStoreMigration migration = new ImageStoreMigration(tempDir.toString(), true, 1, Duration.ZERO);
+
+        // When
+        int moved = migration.migrate();
+
+        // Then
+        Path sharded = ImageStoreLayout.path(tempDir, CONTENT_ID);
+        assertEquals(2, moved);
+        assertFalse(Files.exists(flat));
+        assertArrayEquals(new byte[]{1, 2, 3}, Files.readAllBytes(sharded));
+        assertArrayEquals(new byte[]{4}, Files.readAllBytes(ImageVariants.pathOf(sharded, ImageVariant.THUMB)));
+        assertTrue(Files.exists(tempDir.resolve("upload_x.part")), "Незавершённые загрузки не переносятся");
+        assertEquals(0, migration.migrate(), "Повторный запуск ничего не переносит");
+    }
+}
@@ -0,0 +1,86 @@
+package ru.skypro.homework.service.impl;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("Тестирование ImageUploadBulkhead")
+public class ImageUploadBulkheadTest {
+
+    private SimpleMeterRegistry meterRegistry;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+    }
+
+    private double rejected(String reason) {
+        return meterRegistry.get("images.upload.bulkhead.rejected").tag("reason", reason).counter().count();
+    }
+
+    @Test
+    @DisplayName("tryEnter - без очереди сверх лимита загрузка отклоняется сразу")
+    void tryEnter_OverLimitWithoutQueue_ShouldReject() {
+        // Given
+        ImageUploadBulkhead bulkhead = new ImageUploadBulkhead(meterRegistry, 2, 0, Duration.ofSeconds(10));
+
+        // When & Then
+        assertTrue(bulkhead.tryEnter());
+        assertTrue(bulkhead.tryEnter());
+        assertFalse(bulkhead.tryEnter(), "Очереди нет — ждать нельзя");
+        assertEquals(2, bulkhead.active());
+        assertEquals(1, rejected("queue-full"));
+        assertEquals(2.0, meterRegistry.get("images.upload.bulkhead.active").gauge().value());
+
+        bulkhead.exit();
+        assertTrue(bulkhead.tryEnter(), "Освободившееся место снова доступно");
+    }
+
+    @Test
+    @DisplayName("tryEnter - ожидание в очереди ограничено max-wait")
+    void tryEnter_WhenWaitExpires_ShouldReject() {
+        // Given
+        ImageUploadBulkhead bulkhead = new ImageUploadBulkhead(meterRegistry, 1, 1, Duration.ofMillis(20));
+        assertTrue(bulkhead.tryEnter());
+
+        // When
+        boolean entered = bulkhead.tryEnter();
+
+        // Then
+        assertFalse(entered);
+        assertEquals(1, rejected("timeout"));
+        assertEquals(0, bulkhead.queued());
+        assertTrue(meterRegistry.get("images.upload.bulkhead.wait").timer().max(TimeUnit.MILLISECONDS) >= 20);
+    }
+
+    @Test
+    @DisplayName("tryEnter - ожидающая загрузка получает место после exit, лишняя отклоняется")
+    void tryEnter_WhenSlotReleased_ShouldAdmitQueued() throws Exception {
+        // Given
+        ImageUploadBulkhead bulkhead = new ImageUploadBulkhead(meterRegistry, 1, 1, Duration.ofSeconds(10));
+        assertTrue(bulkhead.tryEnter());
+        CompletableFuture<Boolean> queued = CompletableFuture.supplyAsync(bulkhead::tryEnter);
+        long deadline = System.currentTimeMillis() + 5000;
+        while (bulkhead.queued() == 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+
+        // When
+        assertEquals(1.0, meterRegistry.get("images.upload.bulkhead.queue").gauge().value());
+        boolean overflow = bulkhead.tryEnter();
+        bulkhead.exit();
+
+        // Then
+        assertFalse(overflow, "Очередь заполнена");
+        assertTrue(queued.get(5, TimeUnit.SECONDS));
+        assertEquals(1, bulkhead.active());
+        assertEquals(0, bulkhead.queued());
+    }
+}
@@ -0,0 +1,140 @@
+package ru.skypro.homework.service.impl;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.core.context.SecurityContextImpl;
+import org.springframework.util.unit.DataSize;
+import ru.skypro.homework.dto.UploadSession;
+import ru.skypro.homework.model.ImageEntity;
+import ru.skypro.homework.service.ImageService;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+@DisplayName("Тестирование ImageUploadServiceImpl")
+public class ImageUploadServiceImplTest {
+
+    private static final String IMAGE_ID = "ab".repeat(32) + ".jpg";
+
+    @TempDir
+    Path tempDir;
+
+    @Mock
+    private ImageService imageService;
+
+    private ImageUploadServiceImpl uploads;
+
+    @BeforeEach
+    void setUp() {
+        uploads = new ImageUploadServiceImpl(imageService, tempDir.toString(), DataSize.ofBytes(8),
+                Duration.ofHours(1), Duration.ZERO);
+        login("user@test.ru");
+    }
+
+    @AfterEach
+    void tearDown() {
+        SecurityContextHolder.clearContext();
+    }
+
+    /**
+     * Ставит новый контекст, а не меняет текущий: другие тесты могут оставить в SecurityContextHolder мок.
+     */
+    private static void login(String email) {
+        SecurityContextHolder.setContext(new SecurityContextImpl(new UsernamePasswordAuthenticationToken(email, null)));
+    }
+
+    private UploadSession append(String id, long offset, byte... chunk) throws IOException {
+        return uploads.append(id, offset, new ByteArrayInputStream(chunk));
+    }
+
+    @Test
+    @DisplayName("append/complete - части дописываются по смещению, завершение возвращает imageId один раз")
+    void appendAndComplete_ShouldAssembleImage() throws IOException {
+        // Given
+        UploadSession session = uploads.create();
+        when(imageService.stage(any())).thenAnswer(invocation -> {
+            assertArrayEquals(new byte[]{1, 2, 3, 4, 5}, Files.readAllBytes(invocation.<Path>getArgument(0)));
+            ImageEntity image = new ImageEntity();
+            image.setId(IMAGE_ID);
+            return image;
+        });
+
+        // When
+        assertEquals(3, append(session.getId(), 0, (byte) 1, (byte) 2, (byte) 3).getOffset());
+        assertThrows(IllegalStateException.class, () -> append(session.getId(), 1, (byte) 9),
+                "Часть с неверным смещением отклоняется");
+        assertEquals(5, append(session.getId(), 3, (byte) 4, (byte) 5).getOffset());
+        UploadSession completed = uploads.complete(session.getId());
+
+        // Then
+        assertEquals(IMAGE_ID, completed.getImageId());
+        assertEquals(5, completed.getOffset());
+        assertEquals(IMAGE_ID, uploads.complete(session.getId()).getImageId(), "Повторное завершение идемпотентно");
+        verify(imageService, times(1)).stage(any());
+        assertThrows(IllegalStateException.class, () -> append(session.getId(), 5, (byte) 6));
+    }
+
+    @Test
+    @DisplayName("append - превышение максимального размера отбрасывает часть целиком")
+    void append_OverMaxSize_ShouldRejectChunk() throws IOException {
+        // Given
+        UploadSession session = uploads.create();
+        append(session.getId(), 0, new byte[6]);
+
+        // When & Then
+        assertThrows(IllegalArgumentException.class, () -> append(session.getId(), 6, new byte[3]));
+        assertEquals(6, uploads.get(session.getId()).getOffset());
+    }
+
+    @Test
+    @DisplayName("get - сессия другого пользователя или с некорректным id не находится")
+    void get_ForeignOrMalformedSession_ShouldReturnNull() throws IOException {
+        // Given
+        UploadSession session = uploads.create();
+
+        // When
+        login("other@test.ru");
+
+        // Then
+        assertNull(uploads.get(session.getId()));
+        assertNull(append(session.getId(), 0, (byte) 1));
+        assertNull(uploads.get("../" + session.getId()));
+    }
+
+    @Test
+    @DisplayName("cleanup - удаляются только сессии без активности дольше ttl")
+    void cleanup_ShouldRemoveExpiredSessions() throws IOException {
+        // Given
+        UploadSession expired = uploads.create();
+        UploadSession active = uploads.create();
+        FileTime old = FileTime.fromMillis(System.currentTimeMillis() - Duration.ofHours(2).toMillis());
+        Files.setLastModifiedTime(tempDir.resolve(expired.getId() + ".part"), old);
+        Files.setLastModifiedTime(tempDir.resolve(expired.getId() + ".session"), old);
+
+        // When
+        int removed = uploads.cleanup();
+
+        // Then
+        assertEquals(1, removed);
+        assertNull(uploads.get(expired.getId()));
+        assertFalse(Files.exists(tempDir.resolve(expired.getId() + ".part")));
+        assertNotNull(uploads.get(active.getId()));
+    }
+}
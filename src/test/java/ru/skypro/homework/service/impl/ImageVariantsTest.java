@@ -0,0 +1,165 @@
+package ru.skypro.homework.service.impl;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import ru.skypro.homework.service.ImageVariant;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("Тестирование ImageVariants")
+public class ImageVariantsTest {
+
+    @TempDir
+    Path tempDir;
+
+    private ImageVariants variants;
+
+    @BeforeEach
+    void setUp() {
+        variants = new ImageVariants(1, 10, 40_000_000L);
+    }
+
+    @AfterEach
+    void tearDown() {
+        variants.shutdown();
+    }
+
+    @Test
+    @DisplayName("variant - крупное изображение уменьшается с сохранением пропорций и формата")
+    void variant_LargeImage_ShouldBeScaledDown() throws IOException {
+        // Given
+        Path original = tempDir.resolve("wide.jpg");
+        ImageIO.write(new BufferedImage(1000, 2000, BufferedImage.TYPE_INT_RGB), "jpeg", original.toFile());
+
+        // When
+        Path card = variants.variant(original, ImageVariant.CARD);
+
+        // Then
+        assertEquals(tempDir.resolve("variants").resolve("card").resolve("wide.jpg"), card);
+        BufferedImage image = ImageIO.read(card.toFile());
+        assertEquals(240, image.getWidth());
+        assertEquals(480, image.getHeight());
+        assertEquals(card, variants.variant(original, ImageVariant.CARD), "Повторный запрос должен вернуть готовый файл");
+    }
+
+    @Test
+    @DisplayName("variant - маленькое или нечитаемое изображение копируется без увеличения")
+    void variant_SmallOrUnreadable_ShouldCopyOriginal() throws IOException {
+        // Given
+        Path small = tempDir.resolve("small.png");
+        ImageIO.write(new BufferedImage(50, 40, BufferedImage.TYPE_INT_ARGB), "png", small.toFile());
+        Path unknown = tempDir.resolve("photo.webp");
+        Files.write(unknown, new byte[]{1, 2, 3});
+
+        // When
+        Path smallFull = variants.variant(small, ImageVariant.FULL);
+        Path unknownThumb = variants.variant(unknown, ImageVariant.THUMB);
+
+        // Then
+        assertArrayEquals(Files.readAllBytes(small), Files.readAllBytes(smallFull));
+        assertArrayEquals(new byte[]{1, 2, 3}, Files.readAllBytes(unknownThumb));
+    }
+
+    @Test
+    @DisplayName("variant - изображение больше images.upload.max-pixels не декодируется, а копируется")
+    void variant_OverPixelLimit_ShouldCopyWithoutDecoding() throws IOException {
+        // Given
+        ImageVariants limited = new ImageVariants(1, 10, 1_000_000L);
+        Path original = tempDir.resolve("huge.jpg");
+        ImageIO.write(new BufferedImage(1000, 2000, BufferedImage.TYPE_INT_RGB), "jpeg", original.toFile());
+
+        // When
+        Path card = limited.variant(original, ImageVariant.CARD);
+
+        // Then
+        assertArrayEquals(Files.readAllBytes(original), Files.readAllBytes(card));
+        limited.shutdown();
+    }
+
+    @Test
+    @DisplayName("variant - крупный оригинал декодируется с прореживанием до удвоенной стороны варианта")
+    void variant_HugeImage_ShouldDecodeSubsampled() throws IOException {
+        // Given
+        Path original = tempDir.resolve("panorama.png");
+        ImageIO.write(new BufferedImage(4000, 1000, BufferedImage.TYPE_INT_RGB), "png", original.toFile());
+
+        // When
+        Path card = variants.variant(original, ImageVariant.CARD);
+
+        // Then
+        BufferedImage image = ImageIO.read(card.toFile());
+        assertEquals(480, image.getWidth());
+        assertEquals(120, image.getHeight());
+        assertEquals(4, ImageVariants.subsampling(4000, 1000, 480), "Большая сторона после прореживания не меньше 960");
+        assertEquals(1, ImageVariants.subsampling(900, 1000, 480), "Небольшой оригинал декодируется целиком");
+    }
+
+    @Test
+    @DisplayName("variant - при заполненной очереди генерации возвращается null, поток запроса не декодирует оригинал")
+    void variant_QueueFull_ShouldReturnNullWithoutRendering() throws IOException {
+        // Given
+        ImageVariants busy = new ImageVariants(1, 1, 40_000_000L);
+        CountDownLatch release = new CountDownLatch(1);
+        // thumb занимает единственный поток, card — единственное место в очереди
+        busy.generateAsync(tempDir.resolve("blocked.jpg"), () -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                throw new InterruptedIOException();
+            }
+            return new ByteArrayInputStream(new byte[]{1});
+        });
+        Path original = tempDir.resolve("other.jpg");
+        ImageIO.write(new BufferedImage(1000, 2000, BufferedImage.TYPE_INT_RGB), "jpeg", original.toFile());
+        AtomicBoolean read = new AtomicBoolean();
+
+        try {
+            // When
+            Path card = busy.variant(original, ImageVariant.CARD, () -> {
+                read.set(true);
+                return Files.newInputStream(original);
+            });
+
+            // Then
+            assertNull(card, "Вызывающий должен отдать оригинал");
+            assertFalse(read.get(), "Оригинал не должен читаться в потоке запроса");
+            assertFalse(Files.exists(ImageVariants.pathOf(original, ImageVariant.CARD)));
+        } finally {
+            release.countDown();
+            busy.shutdown();
+        }
+    }
+
+    @Test
+    @DisplayName("delete - удаляет все варианты изображения")
+    void delete_ShouldRemoveAllVariants() throws IOException {
+        // Given
+        Path original = tempDir.resolve("a.png");
+        ImageIO.write(new BufferedImage(300, 300, BufferedImage.TYPE_INT_RGB), "png", original.toFile());
+        for (ImageVariant variant : ImageVariant.values()) {
+            variants.variant(original, variant);
+        }
+
+        // When
+        variants.delete(original);
+
+        // Then
+        for (ImageVariant variant : ImageVariant.values()) {
+            assertFalse(Files.exists(ImageVariants.pathOf(original, variant)), variant.key());
+        }
+        assertTrue(Files.exists(original), "Оригинал не удаляется");
+    }
+}
@@ -0,0 +1,190 @@
+package ru.skypro.homework.service.impl;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.util.unit.DataSize;
+import ru.skypro.homework.service.ImageStore;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("Тестирование PackImageStore")
+public class PackImageStoreTest extends ImageStoreContractTest {
+
+    private PackImageStore contractStore;
+
+    @BeforeEach
+    void setUp() {
+        contractStore = new PackImageStore(tempDir.resolve("contract").toString(),
+                DataSize.ofMegabytes(1), 0.5, Duration.ZERO, Duration.ZERO);
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        contractStore.close();
+    }
+
+    @Override
+    protected ImageStore store() {
+        return contractStore;
+    }
+
+    private PackImageStore open(long segmentSize) {
+        return new PackImageStore(tempDir.resolve("pack").toString(), DataSize.ofBytes(segmentSize), 0.5,
+                Duration.ZERO, Duration.ZERO);
+    }
+
+    private Path upload(byte[] content) throws IOException {
+        return Files.write(Files.createTempFile(tempDir, "upload", ".part"), content);
+    }
+
+    private static byte[] read(ImageStore.StoredImage image) throws IOException {
+        try (InputStream in = image.resource().getInputStream()) {
+            return in.readAllBytes();
+        }
+    }
+
+    private long segmentCount() throws IOException {
+        try (Stream<Path> files = Files.list(tempDir.resolve("pack"))) {
+            return files.filter(file -> file.toString().endsWith(".seg")).count();
+        }
+    }
+
+    @Test
+    @DisplayName("put/get - содержимое и MIME-тип читаются из сегмента, исходный файл удаляется")
+    void put_ShouldAppendAndServeFromSegment() throws IOException {
+        // Given
+        PackImageStore store = open(1024);
+        Path source = upload(new byte[]{1, 2, 3});
+
+        // When
+        store.put("a.jpg", source, null);
+        store.put("b", upload(new byte[]{4, 5}), "image/webp");
+
+        // Then
+        assertFalse(Files.exists(source));
+        ImageStore.StoredImage a = store.get("a.jpg");
+        assertArrayEquals(new byte[]{1, 2, 3}, read(a));
+        assertEquals(3, a.size());
+        assertNull(a.contentType());
+        assertEquals("image/webp", store.get("b").contentType());
+        assertNull(store.get("missing"));
+        assertFalse(store.cacheable());
+        store.close();
+    }
+
+    @Test
+    @DisplayName("открытие - индекс восстанавливается из index.bin и дочитывается из сегментов")
+    void reopen_ShouldRestoreIndexAndReplayTail() throws IOException {
+        // Given
+        PackImageStore store = open(1024);
+        store.put("a", upload(new byte[]{1}), null);
+        store.put("b", upload(new byte[]{2}), null);
+        store.close();
+        PackImageStore reopened = open(1024);
+        reopened.put("c", upload(new byte[]{3}), null);
+        reopened.delete("a");
+        // сбой без сохранения индекса: index.bin не знает про c и удаление a
+
+        // When
+        PackImageStore recovered = open(1024);
+
+        // Then
+        assertNull(recovered.get("a"));
+        assertArrayEquals(new byte[]{2}, read(recovered.get("b")));
+        assertArrayEquals(new byte[]{3}, read(recovered.get("c")));
+        recovered.close();
+        reopened.close();
+    }
+
+    @Test
+    @DisplayName("открытие - оборванная запись в конце сегмента отрезается")
+    void reopen_WithTornTail_ShouldTruncate() throws IOException {
+        // Given
+        PackImageStore store = open(1024);
+        store.put("a", upload(new byte[]{1, 2}), null);
+        store.close();
+        Path segment = tempDir.resolve("pack").resolve("00000001.seg");
+        long size = Files.size(segment);
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.APPEND)) {
+            channel.write(ByteBuffer.wrap(new byte[]{0x49, 0x4d, 0x47}));
+        }
+
+        // When
+        PackImageStore recovered = open(1024);
+
+        // Then
+        assertArrayEquals(new byte[]{1, 2}, read(recovered.get("a")));
+        recovered.close();
+        assertEquals(size, Files.size(segment));
+    }
+
+    @Test
+    @DisplayName("compact - живые записи переносятся, сегмент с удалёнными данными удаляется")
+    void compact_ShouldReclaimDeletedSpace() throws IOException {
+        // Given
+        PackImageStore store = open(160);
+        store.put("a", upload(new byte[40]), null);
+        store.put("b", upload(new byte[40]), null);
+        store.put("c", upload(new byte[]{7, 7, 7}), null);
+        store.delete("a");
+        long before = segmentCount();
+
+        // When
+        int removed = store.compact();
+
+        // Then
+        assertEquals(1, removed);
+        assertEquals(before - 1, segmentCount());
+        assertFalse(Files.exists(tempDir.resolve("pack").resolve("00000001.seg")));
+        assertNull(store.get("a"));
+        assertEquals(40, read(store.get("b")).length);
+        assertArrayEquals(new byte[]{7, 7, 7}, read(store.get("c")));
+        store.close();
+
+        PackImageStore reopened = open(160);
+        assertNull(reopened.get("a"));
+        assertEquals(40, read(reopened.get("b")).length);
+        reopened.close();
+    }
+
+    @Test
+    @DisplayName("compact - надгробие переносится, пока запись id остаётся в более старом сегменте")
+    void compact_ShouldCarryTombstoneOfOlderRecord() throws IOException {
+        // Given
+        PackImageStore store = open(160);
+        store.put("x", upload(new byte[]{1}), null);
+        store.put("b", upload(new byte[80]), null);
+        store.put("c", upload(new byte[]{2}), null);
+        store.delete("x");
+        store.delete("c");
+        store.put("d", upload(new byte[100]), null);
+
+        // When
+        int removed = store.compact();
+        store.close();
+        Files.delete(tempDir.resolve("pack").resolve("index.bin"));
+
+        // Then
+        assertEquals(1, removed);
+        assertTrue(Files.exists(tempDir.resolve("pack").resolve("00000001.seg")));
+        assertFalse(Files.exists(tempDir.resolve("pack").resolve("00000002.seg")));
+        PackImageStore replayed = open(160);
+        assertNull(replayed.get("x"));
+        assertNull(replayed.get("c"));
+        assertEquals(80, read(replayed.get("b")).length);
+        assertEquals(100, read(replayed.get("d")).length);
+        replayed.close();
+    }
+}
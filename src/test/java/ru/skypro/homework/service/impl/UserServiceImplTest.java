@@ -22,10 +22,13 @@ import ru.skypro.homework.dto.User;
 import ru.skypro.homework.mapper.UserMapper;
 import ru.skypro.homework.model.ImageEntity;
 import ru.skypro.homework.model.UserEntity;
+import ru.skypro.homework.repository.AdRepository;
 import ru.skypro.homework.repository.UserRepository;
 import ru.skypro.homework.service.ImageService;
+import ru.skypro.homework.service.ImageTooLargeException;
 import ru.skypro.homework.service.UserService;
 
+import java.util.List;
 import java.util.Optional;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -41,6 +44,18 @@ public class UserServiceImplTest {
     @Mock
     private ImageService imageService;
 
+    @Mock
+    private AdRepository adRepository;
+
+    @Mock
+    private AdReadCache adReadCache;
+
+    @Mock
+    private AdSearchIndex adSearchIndex;
+
+    @Mock
+    private AdVersions adVersions;
+
     @Mock
     private PasswordEncoder passwordEncoder;
 
@@ -218,6 +233,25 @@ public class UserServiceImplTest {
         assertEquals("+79991234567", result.getPhone());
     }
 
+    /**
+     * Тест инвалидации карточек объявлений при изменении профиля
+     * В ExtendedAd есть имя и телефон автора, поэтому кэш его объявлений должен сбрасываться
+     */
+    @Test
+    void updateUser_ShouldInvalidateCachedAdsOfAuthor() {
+        // Arrange
+        when(securityContext.getAuthentication()).thenReturn(authentication);
+        when(authentication.getName()).thenReturn("test@example.com");
+        when(userRepository.findByEmail("test@example.com")).thenReturn(Optional.of(testUser));
+        when(adRepository.findIdsByAuthor(testUser.getId())).thenReturn(List.of(10, 11));
+
+        // Act
+        userService.updateUser(validUpdateUser);
+
+        // Assert
+        verify(adReadCache).invalidateDetails(List.of(10, 11));
+    }
+
     /**
      * Тест обновления пользователя, когда пользователь не найден
      */
@@ -405,6 +439,29 @@ public class UserServiceImplTest {
         verify(userRepository, never()).save(any(UserEntity.class));
     }
 
+    /**
+     * Тест обновления аватара файлом, который не является изображением или слишком велик
+     */
+    @Test
+    void updateUserImage_WithRejectedImage_ShouldReturnClientError() {
+        // Arrange
+        when(securityContext.getAuthentication()).thenReturn(authentication);
+        when(authentication.getName()).thenReturn("test@example.com");
+        when(userRepository.findByEmail("test@example.com")).thenReturn(Optional.of(testUser));
+        when(imageService.save(any(MultipartFile.class), anyString()))
+                .thenThrow(new IllegalArgumentException("Файл не является изображением JPEG, PNG, GIF или WebP"))
+                .thenThrow(new ImageTooLargeException("Изображение 65000x65000 больше допустимых 40000000 пикселей"));
+
+        // Act
+        ResponseEntity<Void> notImage = userService.updateUserImage(validImage);
+        ResponseEntity<Void> tooLarge = userService.updateUserImage(validImage);
+
+        // Assert
+        assertEquals(HttpStatus.BAD_REQUEST, notImage.getStatusCode(), "Файл неподдерживаемого формата - ошибка клиента");
+        assertEquals(HttpStatus.PAYLOAD_TOO_LARGE, tooLarge.getStatusCode(), "Слишком большое изображение - 413");
+        verify(userRepository, never()).save(any(UserEntity.class));
+    }
+
     /**
      * Тест обновления аватара, когда пользователь не найден
      */